@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.benchmarks;
+
+import aQute.bnd.osgi.Analyzer;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.P2Helper;
+import org.reficio.p2.bundler.ArtifactBundlerInstructions;
+import org.reficio.p2.bundler.ArtifactBundlerRequest;
+import org.reficio.p2.bundler.impl.AquteBundler;
+import org.reficio.p2.bundler.impl.AquteHelper;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bundling of a single jar: the complete {@link AquteBundler#execute} and its parts - the calculation of the
+ * instructions and the analysis of the jar content.
+ *
+ * @since 1.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BundlerBenchmark {
+
+    private static final String ARTIFACT_ID = "bundler";
+
+    @Param({"100", "1000"})
+    public int classCount;
+
+    @Param({"false", "true"})
+    public boolean signed;
+
+    @Param({"false", "true"})
+    public boolean bundle;
+
+    private File folder;
+    private P2Artifact p2Artifact;
+    private ResolvedArtifact resolvedArtifact;
+    private ArtifactBundlerRequest request;
+    private ArtifactBundlerInstructions instructions;
+    private AquteBundler bundler;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        QuietLog.install();
+        folder = createTempFolder();
+        File jar = SyntheticJars.createJar(folder, ARTIFACT_ID, classCount, signed, bundle);
+        Artifact artifact = new Artifact(SyntheticJars.GROUP_ID, ARTIFACT_ID, SyntheticJars.VERSION, "jar", "",
+                false, SyntheticJars.VERSION, jar);
+        resolvedArtifact = new ResolvedArtifact(artifact, null, true);
+        p2Artifact = new P2Artifact();
+        p2Artifact.setId(SyntheticJars.GROUP_ID + ":" + ARTIFACT_ID + ":" + SyntheticJars.VERSION);
+        // always bundle, a bundle would be copied as it is otherwise
+        p2Artifact.setOverride(true);
+        File output = new File(folder, "output");
+        request = P2Helper.createBundlerRequest(p2Artifact, resolvedArtifact, output);
+        instructions = P2Helper.createBundlerInstructions(p2Artifact, resolvedArtifact);
+        bundler = new AquteBundler(false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @Benchmark
+    public File bundlerExecute() {
+        bundler.execute(request, instructions);
+        return request.getBinaryOutputFile();
+    }
+
+    @Benchmark
+    public String buildAnalyzer() throws Exception {
+        Analyzer analyzer = AquteHelper.buildAnalyzer(request, instructions, false);
+        try {
+            analyzer.calcManifest();
+            return analyzer.getBsn();
+        } finally {
+            analyzer.close();
+        }
+    }
+
+    @Benchmark
+    public ArtifactBundlerInstructions createBundlerInstructions() {
+        return P2Helper.createBundlerInstructions(p2Artifact, resolvedArtifact);
+    }
+
+    static File createTempFolder() throws IOException {
+        File folder = File.createTempFile("p2-benchmark", "");
+        FileUtils.forceDelete(folder);
+        FileUtils.forceMkdir(folder);
+        return folder;
+    }
+
+}
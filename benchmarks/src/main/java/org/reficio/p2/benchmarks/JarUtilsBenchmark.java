@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.reficio.p2.utils.JarUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The jar manipulations of {@link JarUtils} performed on every bundle and feature of the site.
+ *
+ * @since 1.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JarUtilsBenchmark {
+
+    private static final String SNAPSHOT_VERSION = "1.0.0.20150101120000";
+
+    @Param({"100", "1000"})
+    public int classCount;
+
+    @Param({"false", "true"})
+    public boolean signed;
+
+    @Param({"true"})
+    public boolean bundle;
+
+    private File folder;
+    private File jar;
+    private File feature;
+    private File output;
+    private File unsignCopy;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        QuietLog.install();
+        folder = BundlerBenchmark.createTempFolder();
+        jar = SyntheticJars.createJar(folder, "jarutils", classCount, signed, bundle);
+        feature = SyntheticJars.createFeatureJar(folder, "org.reficio.synthetic.feature", classCount / 10);
+        output = new File(folder, "output.jar");
+        unsignCopy = new File(folder, "unsign.jar");
+    }
+
+    /**
+     * Signature removal modifies the jar in place, so every invocation gets a fresh copy.
+     */
+    @Setup(Level.Invocation)
+    public void copyJar() throws IOException {
+        FileUtils.copyFile(jar, unsignCopy);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @Benchmark
+    public boolean containsSignature() {
+        return JarUtils.containsSignature(jar);
+    }
+
+    @Benchmark
+    public File removeSignature() {
+        JarUtils.removeSignature(unsignCopy);
+        return unsignCopy;
+    }
+
+    @Benchmark
+    public File adjustSnapshotOutputVersion() {
+        JarUtils.adjustSnapshotOutputVersion(jar, output, SNAPSHOT_VERSION);
+        return output;
+    }
+
+    @Benchmark
+    public File adjustFeatureQualifierVersionWithTimestamp() {
+        JarUtils.adjustFeatureQualifierVersionWithTimestamp(feature, output);
+        return output;
+    }
+
+}
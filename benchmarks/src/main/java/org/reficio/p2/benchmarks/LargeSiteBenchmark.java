@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * End-to-end benchmark of the site goal on generated repositories of growing size. For every size a Maven
+ * repository, a p2 repository and a project referring to all their artifacts are generated, the site goal is run
+ * in a separate Maven process and the phase timings it reports in target/p2-metrics.json are collected.
+ * <p>
+ * Usage: java -cp target/benchmarks.jar org.reficio.p2.benchmarks.LargeSiteBenchmark [options]
+ * <pre>
+ *   --sizes 100,1000,5000   numbers of Maven artifacts
+ *   --fan-out 3             dependencies of every artifact
+ *   --classes 20            classes of every generated jar
+ *   --p2-bundles 20         bundles of the p2 repository
+ *   --work target/large-site
+ *   --mvn mvn               Maven executable
+ *   --local-repository dir  Maven local repository (defaults to the one of the user)
+ * </pre>
+ * The generated artifacts are removed from the local repository before every run, so that each run resolves
+ * them from the generated repository.
+ *
+ * @since 1.2.0
+ */
+public class LargeSiteBenchmark {
+
+    private static final String PLUGIN = "org.reficio:p2-maven-plugin:1.2.0-SNAPSHOT";
+    private static final Pattern PHASE = Pattern.compile(
+            "\"name\": \"([^\"]+)\",\\s*\"skipped\": (true|false),\\s*\"millis\": (\\d+)");
+
+    private final Map<String, String> options = new LinkedHashMap<String, String>();
+
+    public LargeSiteBenchmark(String[] args) {
+        options.put("sizes", "100,1000,5000");
+        options.put("fan-out", "3");
+        options.put("classes", "20");
+        options.put("p2-bundles", "20");
+        options.put("work", "target/large-site");
+        options.put("mvn", "mvn");
+        options.put("local-repository", new File(System.getProperty("user.home"), ".m2/repository").getPath());
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--") || !options.containsKey(args[i].substring(2))) {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LargeSiteBenchmark(args).run();
+    }
+
+    public void run() throws IOException, InterruptedException {
+        File work = new File(options.get("work")).getAbsoluteFile();
+        List<String> report = new ArrayList<String>();
+        report.add("artifacts,phase,millis");
+        for (String size : options.get("sizes").split(",")) {
+            int artifacts = Integer.parseInt(size.trim());
+            File folder = new File(work, "size-" + artifacts);
+            FileUtils.deleteDirectory(folder);
+            System.out.println(String.format("Generating %d artifacts in %s", artifacts, folder));
+            SyntheticRepository repository = new SyntheticRepository(folder)
+                    .generateMavenArtifacts(artifacts, integer("fan-out"), integer("classes"))
+                    .generateP2Bundles(integer("p2-bundles"), integer("classes"));
+            File project = new File(folder, "project");
+            FileUtils.writeStringToFile(new File(project, "pom.xml"), projectPom(repository), "UTF-8");
+
+            FileUtils.deleteDirectory(new File(options.get("local-repository"), SyntheticRepository.GROUP_ID.replace('.', '/')));
+            long start = System.currentTimeMillis();
+            int exitCode = runSite(project);
+            long wallMillis = System.currentTimeMillis() - start;
+            if (exitCode != 0) {
+                throw new IllegalStateException(String.format("Site build of %d artifacts failed, see %s", artifacts,
+                        new File(project, "build.log")));
+            }
+            Map<String, Long> phases = readPhases(new File(project, "target/p2-metrics.json"));
+            phases.put("maven-wall-clock", wallMillis);
+            System.out.println(String.format("%d artifacts:", artifacts));
+            for (Map.Entry<String, Long> phase : phases.entrySet()) {
+                System.out.println(String.format("  %-20s %8d ms", phase.getKey(), phase.getValue()));
+                report.add(String.format("%d,%s,%d", artifacts, phase.getKey(), phase.getValue()));
+            }
+        }
+        File csv = new File(work, "results.csv");
+        FileUtils.writeLines(csv, "UTF-8", report, "\n");
+        System.out.println("Results written to " + csv);
+    }
+
+    private int runSite(File project) throws IOException, InterruptedException {
+        // the persistent caches would serve the p2 bundles of the previous runs, every run has to download them
+        ProcessBuilder builder = new ProcessBuilder(options.get("mvn"), "-B",
+                "-Dmaven.repo.local=" + options.get("local-repository"), "-Dp2.downloadCache=false",
+                "-Dp2.bundleCache=false", PLUGIN + ":site");
+        builder.directory(project);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File(project, "build.log"));
+        return builder.start().waitFor();
+    }
+
+    /**
+     * Phases that were skipped (e.g. the feature phase of a site without features) are left out.
+     */
+    static Map<String, Long> readPhases(File metrics) throws IOException {
+        Map<String, Long> phases = new LinkedHashMap<String, Long>();
+        Matcher matcher = PHASE.matcher(FileUtils.readFileToString(metrics, "UTF-8"));
+        while (matcher.find()) {
+            if (!Boolean.parseBoolean(matcher.group(2))) {
+                phases.put(matcher.group(1), Long.parseLong(matcher.group(3)));
+            }
+        }
+        return phases;
+    }
+
+    private String projectPom(SyntheticRepository repository) {
+        StringBuilder pom = new StringBuilder();
+        pom.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        pom.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n");
+        pom.append("  <modelVersion>4.0.0</modelVersion>\n");
+        pom.append("  <groupId>org.reficio.synthetic</groupId>\n");
+        pom.append("  <artifactId>large-site</artifactId>\n");
+        pom.append("  <version>1.0.0</version>\n");
+        pom.append("  <packaging>pom</packaging>\n");
+        pom.append("  <repositories>\n");
+        appendRepository(pom, "synthetic-maven", repository.getMavenRepository(), null);
+        appendRepository(pom, "synthetic-p2", repository.getP2Repository(), "p2");
+        pom.append("  </repositories>\n");
+        pom.append("  <build>\n    <plugins>\n      <plugin>\n");
+        String[] coordinates = PLUGIN.split(":");
+        pom.append("        <groupId>").append(coordinates[0]).append("</groupId>\n");
+        pom.append("        <artifactId>").append(coordinates[1]).append("</artifactId>\n");
+        pom.append("        <version>").append(coordinates[2]).append("</version>\n");
+        pom.append("        <configuration>\n          <artifacts>\n");
+        appendArtifacts(pom, repository.getArtifactIds());
+        pom.append("          </artifacts>\n          <p2>\n");
+        appendArtifacts(pom, repository.getBundleIds());
+        pom.append("          </p2>\n        </configuration>\n");
+        pom.append("      </plugin>\n    </plugins>\n  </build>\n");
+        pom.append("</project>\n");
+        return pom.toString();
+    }
+
+    private static void appendRepository(StringBuilder pom, String id, File location, String layout) {
+        pom.append("    <repository>\n");
+        pom.append("      <id>").append(id).append("</id>\n");
+        pom.append("      <url>").append(location.toURI()).append("</url>\n");
+        if (layout != null) {
+            pom.append("      <layout>").append(layout).append("</layout>\n");
+        }
+        pom.append("    </repository>\n");
+    }
+
+    private static void appendArtifacts(StringBuilder pom, List<String> ids) {
+        for (String id : ids) {
+            pom.append("            <artifact><id>").append(id).append("</id></artifact>\n");
+        }
+    }
+
+    private int integer(String option) {
+        return Integer.parseInt(options.get(option));
+    }
+
+}
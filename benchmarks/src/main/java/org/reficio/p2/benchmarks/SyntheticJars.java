@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.benchmarks;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * Generates the jars the benchmarks operate on. The classes are minimal, but valid class files that refer to
+ * classes of the other generated packages, so that the analyzer has imports and exports to compute.
+ *
+ * @since 1.2.0
+ */
+public class SyntheticJars {
+
+    public static final String GROUP_ID = "org.reficio.synthetic";
+    public static final String VERSION = "1.0.0";
+
+    private static final int CLASSES_PER_PACKAGE = 50;
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+    private static final int JAVA_6_MAJOR_VERSION = 50;
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int ACC_PUBLIC_SUPER = 0x0021;
+    private static final int REFERENCES_PER_CLASS = 3;
+    private static final int PADDING_BYTES = 512;
+
+    private SyntheticJars() {
+    }
+
+    /**
+     * @param classCount number of classes in the jar
+     * @param signed     whether the jar contains (fake) signature files
+     * @param bundle     whether the jar has an OSGi manifest
+     */
+    public static File createJar(File folder, String artifactId, int classCount, boolean signed, boolean bundle)
+            throws IOException {
+        File jar = new File(folder, artifactId + "-" + VERSION + ".jar");
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest(artifactId, signed, bundle));
+        try {
+            if (signed) {
+                writeEntry(output, "META-INF/SYNTHETIC.SF", signatureFile().getBytes("UTF-8"));
+                writeEntry(output, "META-INF/SYNTHETIC.RSA", new byte[PADDING_BYTES]);
+            }
+            int packages = packageCount(classCount);
+            for (int i = 0; i < classCount; i++) {
+                String className = className(artifactId, i % packages, i);
+                writeEntry(output, className + ".class", classFile(artifactId, className, packages, i));
+            }
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+        return jar;
+    }
+
+    /**
+     * Creates a feature jar whose feature.xml has a qualifier version.
+     */
+    public static File createFeatureJar(File folder, String featureId, int pluginCount) throws IOException {
+        File jar = new File(folder, featureId + "-" + VERSION + ".jar");
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append(String.format("<feature id=\"%s\" label=\"%s\" version=\"%s.qualifier\">%n", featureId, featureId, VERSION));
+        for (int i = 0; i < pluginCount; i++) {
+            xml.append(String.format("  <plugin id=\"%s.plugin%d\" version=\"0.0.0\" unpack=\"false\"/>%n", featureId, i));
+        }
+        xml.append("</feature>\n");
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest(featureId, false, false));
+        try {
+            writeEntry(output, "feature.xml", xml.toString().getBytes("UTF-8"));
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+        return jar;
+    }
+
+    private static Manifest manifest(String artifactId, boolean signed, boolean bundle) {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (bundle) {
+            attributes.putValue("Bundle-ManifestVersion", "2");
+            attributes.putValue("Bundle-SymbolicName", GROUP_ID + "." + artifactId);
+            attributes.putValue("Bundle-Version", VERSION);
+        }
+        if (signed) {
+            Attributes digest = new Attributes();
+            digest.putValue("SHA-256-Digest", "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=");
+            manifest.getEntries().put(className(artifactId, 0, 0) + ".class", digest);
+        }
+        return manifest;
+    }
+
+    private static String signatureFile() {
+        return "Signature-Version: 1.0\r\nSHA-256-Digest-Manifest: AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=\r\n\r\n";
+    }
+
+    private static int packageCount(int classCount) {
+        return Math.max(1, classCount / CLASSES_PER_PACKAGE);
+    }
+
+    private static String className(String artifactId, int packageIndex, int classIndex) {
+        return String.format("org/reficio/synthetic/%s/p%d/Class%d", artifactId.replace('-', '_'), packageIndex, classIndex);
+    }
+
+    private static void writeEntry(JarOutputStream output, String name, byte[] content) throws IOException {
+        output.putNextEntry(new ZipEntry(name));
+        output.write(content);
+        output.closeEntry();
+    }
+
+    /**
+     * A class without fields and methods whose constant pool references classes of other packages of the jar and
+     * of java.util, followed by a string constant that gives it a realistic size.
+     */
+    private static byte[] classFile(String artifactId, String className, int packages, int classIndex) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CLASS_FILE_MAGIC);
+        out.writeShort(0);
+        out.writeShort(JAVA_6_MAJOR_VERSION);
+
+        String[] references = new String[REFERENCES_PER_CLASS + 1];
+        references[0] = "java/util/List";
+        for (int i = 1; i <= REFERENCES_PER_CLASS; i++) {
+            int packageIndex = (classIndex + i) % packages;
+            references[i] = className(artifactId, packageIndex, packageIndex);
+        }
+        // this class, its super class and the references: a Utf8 and a Class entry each, then the padding
+        int constants = 2 * (2 + references.length) + 1;
+        out.writeShort(constants + 1);
+        writeClassConstant(out, 1, className);
+        writeClassConstant(out, 3, "java/lang/Object");
+        for (int i = 0; i < references.length; i++) {
+            writeClassConstant(out, 5 + 2 * i, references[i]);
+        }
+        out.writeByte(CONSTANT_UTF8);
+        char[] padding = new char[PADDING_BYTES];
+        Arrays.fill(padding, 'x');
+        out.writeUTF(new String(padding));
+
+        out.writeShort(ACC_PUBLIC_SUPER);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(0); // methods
+        out.writeShort(0); // attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a Utf8 entry at the given index followed by the Class entry pointing to it.
+     */
+    private static void writeClassConstant(DataOutputStream out, int utf8Index, String internalName) throws IOException {
+        out.writeByte(CONSTANT_UTF8);
+        out.writeUTF(internalName);
+        out.writeByte(CONSTANT_CLASS);
+        out.writeShort(utf8Index);
+    }
+
+}
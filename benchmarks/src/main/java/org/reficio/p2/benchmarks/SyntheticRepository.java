@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.publisher.NativeBundlePublisher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates the repositories a synthetic site is built from: a Maven repository with a tree of artifacts where
+ * every artifact depends on the next {@code fanOut} artifacts of the tree, and a p2 repository with ready-made
+ * bundles. Both are plain folders that the build accesses through file URLs.
+ *
+ * @since 1.2.0
+ */
+public class SyntheticRepository {
+
+    public static final String GROUP_ID = "org.reficio.synthetic.site";
+
+    private final File mavenRepository;
+    private final File p2Repository;
+    private final List<String> artifactIds = new ArrayList<String>();
+    private final List<String> bundleIds = new ArrayList<String>();
+
+    public SyntheticRepository(File folder) {
+        this.mavenRepository = new File(folder, "maven");
+        this.p2Repository = new File(folder, "p2");
+    }
+
+    /**
+     * Artifact i depends on the artifacts fanOut * i + 1 ... fanOut * i + fanOut, so every artifact is reachable
+     * from the first one and the depth of the tree is logarithmic in the number of artifacts.
+     */
+    public SyntheticRepository generateMavenArtifacts(int count, int fanOut, int classCount) throws IOException {
+        for (int i = 0; i < count; i++) {
+            String artifactId = artifactId(i);
+            File folder = new File(mavenRepository, GROUP_ID.replace('.', '/') + "/" + artifactId + "/" + SyntheticJars.VERSION);
+            FileUtils.forceMkdir(folder);
+            SyntheticJars.createJar(folder, artifactId, classCount, false, false);
+            List<String> dependencies = new ArrayList<String>();
+            for (int j = fanOut * i + 1; j <= fanOut * i + fanOut && j < count; j++) {
+                dependencies.add(artifactId(j));
+            }
+            FileUtils.writeStringToFile(new File(folder, artifactId + "-" + SyntheticJars.VERSION + ".pom"),
+                    pom(artifactId, dependencies), "UTF-8");
+            artifactIds.add(artifactId);
+        }
+        return this;
+    }
+
+    public SyntheticRepository generateP2Bundles(int count, int classCount) throws IOException {
+        File plugins = new File(p2Repository.getParentFile(), "p2-source");
+        FileUtils.forceMkdir(plugins);
+        List<File> bundles = new ArrayList<File>();
+        for (int i = 0; i < count; i++) {
+            String artifactId = "bundle" + i;
+            bundles.add(SyntheticJars.createJar(plugins, artifactId, classCount, false, true));
+            bundleIds.add(SyntheticJars.GROUP_ID + "." + artifactId + ":" + SyntheticJars.VERSION);
+        }
+        NativeBundlePublisher.builder()
+                .bundles(bundles)
+                .features(new ArrayList<File>())
+                .repositoryLocation(p2Repository)
+                .compressSite(false)
+                .build()
+                .execute();
+        FileUtils.deleteDirectory(plugins);
+        return this;
+    }
+
+    public File getMavenRepository() {
+        return mavenRepository;
+    }
+
+    public File getP2Repository() {
+        return p2Repository;
+    }
+
+    /**
+     * @return ids of the generated Maven artifacts (groupId:artifactId:version)
+     */
+    public List<String> getArtifactIds() {
+        List<String> ids = new ArrayList<String>();
+        for (String artifactId : artifactIds) {
+            ids.add(GROUP_ID + ":" + artifactId + ":" + SyntheticJars.VERSION);
+        }
+        return ids;
+    }
+
+    /**
+     * @return ids of the generated p2 bundles (symbolicName:version)
+     */
+    public List<String> getBundleIds() {
+        return bundleIds;
+    }
+
+    private static String artifactId(int index) {
+        return String.format("artifact%05d", index);
+    }
+
+    private static String pom(String artifactId, List<String> dependencies) {
+        StringBuilder pom = new StringBuilder();
+        pom.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        pom.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n");
+        pom.append("  <modelVersion>4.0.0</modelVersion>\n");
+        pom.append("  <groupId>").append(GROUP_ID).append("</groupId>\n");
+        pom.append("  <artifactId>").append(artifactId).append("</artifactId>\n");
+        pom.append("  <version>").append(SyntheticJars.VERSION).append("</version>\n");
+        pom.append("  <dependencies>\n");
+        for (String dependency : dependencies) {
+            pom.append("    <dependency>\n");
+            pom.append("      <groupId>").append(GROUP_ID).append("</groupId>\n");
+            pom.append("      <artifactId>").append(dependency).append("</artifactId>\n");
+            pom.append("      <version>").append(SyntheticJars.VERSION).append("</version>\n");
+            pom.append("    </dependency>\n");
+        }
+        pom.append("  </dependencies>\n");
+        pom.append("</project>\n");
+        return pom.toString();
+    }
+
+}
@@ -18,22 +18,47 @@
  */
 package org.reficio.p2.resolver.eclipse.impl
 
+import org.apache.commons.io.FileUtils
 import org.apache.commons.io.FilenameUtils
 import org.reficio.p2.logger.Logger
+import org.reficio.p2.metrics.FlightRecorder
+import org.reficio.p2.metrics.FlightRecorder.FlightEvent
 import org.reficio.p2.resolver.eclipse.EclipseResolutionRequest
 import org.reficio.p2.resolver.eclipse.EclipseResolutionResponse
 import org.reficio.p2.resolver.eclipse.EclipseResolver
 
+import java.util.concurrent.ConcurrentHashMap
+
 class DefaultEclipseResolver implements EclipseResolver {
 
     final File target
     final List<?> repositories
+    // p2 download cache - the jars are immutable for a given id and version, so they are downloaded once
+    final File cache
+    // url every jar was downloaded from, by its name
+    final Map<String, String> origins = new ConcurrentHashMap<String, String>()
 
     def DefaultEclipseResolver(List<?> repositories, File target) {
+        this(repositories, target, null)
+    }
+
+    /**
+     * @param target folder the resolved jars are copied to, null to only download them into the cache
+     * @param cache folder of the p2 download cache, null if not used
+     */
+    def DefaultEclipseResolver(List<?> repositories, File target, File cache) {
         this.target = target
+        this.cache = cache
         this.repositories = new ArrayList<?>(repositories)
     }
 
+    /**
+     * @return url the jar was downloaded from, "cache" if it was taken from the cache, null if it was not resolved
+     */
+    String originOf(String name) {
+        return origins.get(name)
+    }
+
     @Override
     EclipseResolutionResponse resolve(EclipseResolutionRequest request) {
         List<File> result = []
@@ -50,6 +75,7 @@ class DefaultEclipseResolver implements EclipseResolver {
         if (!result) {
             throw new RuntimeException("Cannot resolve [$name] from any given repository")
         }
+        return result
     }
 
     File resolveSource(EclipseResolutionRequest request) {
@@ -58,10 +84,49 @@ class DefaultEclipseResolver implements EclipseResolver {
         if (!result) {
             Logger.getLog().warn("Cannot resolve source [$name] from any given repository")
         }
+        return result
     }
 
     File download(String name, File destination) {
+        FlightEvent event = FlightRecorder.begin(FlightRecorder.ECLIPSE_DOWNLOAD, name)
+        File result = null
+        try {
+            result = cache ? downloadCached(name, destination) : doDownload(name, new File(destination, name))
+            return result
+        } finally {
+            event.bytes(result?.length() ?: 0).commit(result ? FlightRecorder.SUCCESS : "not found")
+        }
+    }
+
+    private File downloadCached(String name, File destination) {
+        File cached = new File(cache, name)
+        if (cached.exists()) {
+            origins.put(name, "cache")
+            Logger.getLog().info("\tCached: " + cached)
+        } else {
+            // concurrent builds may download the same jar, each one into its own file
+            File tmp = new File(cache, name + "." + UUID.randomUUID() + ".tmp")
+            cache.mkdirs()
+            try {
+                if (!doDownload(name, tmp)) {
+                    return null
+                }
+                if (!tmp.renameTo(cached) && !cached.exists()) {
+                    throw new IOException("Cannot move " + tmp + " to the p2 cache")
+                }
+            } finally {
+                tmp.delete()
+            }
+        }
+        if (destination == null) {
+            return cached
+        }
         File file = new File(destination, name)
+        FileUtils.copyFile(cached, file)
+        return file
+    }
+
+    private File doDownload(String name, File file) {
         for (def repository : repositories) {
             if (repository.type == "p2") {
                 String url = repository.url + "/plugins/" + name
@@ -72,6 +137,7 @@ class DefaultEclipseResolver implements EclipseResolver {
                                 file << url.toURL()
                             }
                     if (file.exists()) {
+                        origins.put(name, url)
                         return file
                     }
                 } catch (Exception ex) {
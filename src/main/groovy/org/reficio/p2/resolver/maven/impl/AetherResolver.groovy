@@ -20,6 +20,8 @@ package org.reficio.p2.resolver.maven.impl
 
 import org.apache.commons.lang.StringUtils
 import org.reficio.p2.logger.Logger
+import org.reficio.p2.metrics.FlightRecorder
+import org.reficio.p2.metrics.FlightRecorder.FlightEvent
 import org.reficio.p2.resolver.maven.impl.facade.AetherFacade
 import org.reficio.p2.resolver.maven.Artifact
 import org.reficio.p2.resolver.maven.ArtifactResolutionRequest
@@ -35,7 +37,7 @@ import org.reficio.p2.resolver.maven.ResolvedArtifact
  */
 class AetherResolver implements ArtifactResolver {
 
-    static final String DEFAULT_SCOPE = "compile"
+    public static final String DEFAULT_SCOPE = "compile"
 
     final repositorySystem
     final repositorySystemSession
@@ -48,15 +50,103 @@ class AetherResolver implements ArtifactResolver {
     }
 
     AetherResolver(repositorySystem, repositorySystemSession, List<?> remoteRepositories, String scope) {
+        this(repositorySystem, repositorySystemSession, remoteRepositories, scope, null)
+    }
+
+    /**
+     * @param updatePolicy policy of the remote checks of the artifacts already in the local repository (e.g. of
+     *        the snapshots and of the missing sources) overriding the policies of the repositories, null to keep them
+     *        - see {@link #offlineFirstPolicy(int)}
+     */
+    AetherResolver(repositorySystem, repositorySystemSession, List<?> remoteRepositories, String scope,
+                   String updatePolicy) {
         this.repositorySystem = repositorySystem
-        this.repositorySystemSession = repositorySystemSession
         this.remoteRepositories = remoteRepositories
         this.scope = scope
         this.aether = Aether.facade(repositorySystemSession)
+        this.repositorySystemSession = updatePolicy ?
+                aether.newSessionWithUpdatePolicy(repositorySystemSession, updatePolicy) : repositorySystemSession
+    }
+
+    /**
+     * Update policy of the offline-first resolution: the local repository is trusted for the given number of
+     * minutes since the last remote check, a negative number trusts it forever. The artifacts missing in the local
+     * repository are always downloaded.
+     */
+    static String offlineFirstPolicy(int freshnessInMinutes) {
+        return freshnessInMinutes < 0 ? "never" : "interval:" + freshnessInMinutes
     }
 
     @Override
     ArtifactResolutionResult resolve(ArtifactResolutionRequest request) {
+        FlightEvent event = FlightRecorder.begin(FlightRecorder.RESOLVE, request.rootArtifactId)
+                .step(request.resolveTransitive ? "transitive" : "direct")
+        String outcome = FlightRecorder.FAILURE
+        try {
+            ArtifactResolutionResult result = doResolve(request)
+            long bytes = 0
+            for (ResolvedArtifact resolvedArtifact : result.resolvedArtifacts) {
+                bytes += resolvedArtifact.artifact.file?.length() ?: 0
+                bytes += resolvedArtifact.sourceArtifact?.file?.length() ?: 0
+            }
+            event.bytes(bytes)
+            outcome = FlightRecorder.SUCCESS
+            return result
+        } finally {
+            event.commit(outcome)
+        }
+    }
+
+    @Override
+    List<ArtifactResolutionResult> resolve(List<ArtifactResolutionRequest> requests) {
+        FlightEvent event = FlightRecorder.begin(FlightRecorder.RESOLVE, "${requests.size()} artifacts").step("batch")
+        String outcome = FlightRecorder.FAILURE
+        try {
+            List<List<Artifact>> binaries = resolveBinaries(requests)
+            List<Artifact> sourceRequests = []
+            for (int i = 0; i < requests.size(); i++) {
+                if (requests[i].resolveSource) {
+                    sourceRequests.addAll(binaries[i])
+                }
+            }
+            Map<Artifact, Artifact> sources = resolveSources(sourceRequests)
+            List<ArtifactResolutionResult> results = []
+            long bytes = 0
+            for (int i = 0; i < requests.size(); i++) {
+                List<ResolvedArtifact> resolved = []
+                for (Artifact binary : binaries[i]) {
+                    Artifact source = requests[i].resolveSource ? sources[binary] : null
+                    resolved += new ResolvedArtifact(binary, source, isRoot(requests[i], binary))
+                    bytes += (binary.file?.length() ?: 0) + (source?.file?.length() ?: 0)
+                }
+                results += new ArtifactResolutionResult(resolved)
+            }
+            event.bytes(bytes)
+            outcome = FlightRecorder.SUCCESS
+            return results
+        } finally {
+            event.commit(outcome)
+        }
+    }
+
+    @Override
+    List<String> resolveManagedDependencies(String pomId) {
+        def descriptorRequest = aether.newArtifactDescriptorRequest(aether.newDefaultArtifact(pomId), remoteRepositories)
+        def descriptorResult = repositorySystem.readArtifactDescriptor(repositorySystemSession, descriptorRequest)
+        List<String> ids = []
+        for (def dependency : descriptorResult.managedDependencies) {
+            def artifact = dependency.artifact
+            // the BOMs and other poms are not bundled
+            if (artifact.extension == "jar") {
+                ids += artifact.classifier ?
+                        "${artifact.groupId}:${artifact.artifactId}:${artifact.extension}:${artifact.classifier}:${artifact.version}".toString() :
+                        "${artifact.groupId}:${artifact.artifactId}:${artifact.version}".toString()
+            }
+        }
+        return ids
+    }
+
+    private ArtifactResolutionResult doResolve(ArtifactResolutionRequest request) {
         List<ResolvedArtifact> result = []
         List<Artifact> resolvedBinaries = resolveBinaries(request)
         for (Artifact resolvedBinary : resolvedBinaries) {
@@ -87,36 +177,151 @@ class AetherResolver implements ArtifactResolver {
         }
     }
 
+    /**
+     * The requests sharing the transitive flag and the excludes are resolved in one go.
+     */
+    private List<List<Artifact>> resolveBinaries(List<ArtifactResolutionRequest> requests) {
+        Map<String, List<Integer>> batches = new LinkedHashMap<String, List<Integer>>()
+        for (int i = 0; i < requests.size(); i++) {
+            String batch = "${requests[i].resolveTransitive} ${requests[i].excludes}"
+            batches.get(batch, []) << i
+        }
+        List<List<Artifact>> binaries = new ArrayList<List<Artifact>>(Collections.nCopies(requests.size(), null))
+        for (List<Integer> batch : batches.values()) {
+            List<ArtifactResolutionRequest> batchRequests = batch.collect { requests[it] }
+            List<List<?>> batchBinaries = batchRequests[0].resolveTransitive ?
+                    resolveWithTransitive(batchRequests) : resolveNoTransitive(batchRequests)
+            for (int i = 0; i < batch.size(); i++) {
+                binaries[batch[i]] = translateArtifactsAetherToGeneric(batchBinaries[i])
+            }
+        }
+        return binaries
+    }
+
+    private Map<Artifact, Artifact> resolveSources(List<Artifact> artifacts) {
+        Map<Artifact, Artifact> sources = [:]
+        if (artifacts.isEmpty()) {
+            return sources
+        }
+        def artifactRequests = artifacts.collect { populateSourceRequest(it) }
+        List<?> artifactResults
+        try {
+            artifactResults = repositorySystem.resolveArtifacts(repositorySystemSession, artifactRequests)
+        } catch (Exception ex) {
+            // will not fail if some sources not resolved
+            artifactResults = aether.getArtifactResults(ex)
+            if (artifactResults == null) {
+                throw ex
+            }
+        }
+        for (int i = 0; i < artifacts.size(); i++) {
+            def artifactResult = artifactResults[i]
+            if (artifactResult.artifact?.file != null) {
+                logProvenance(artifactResult)
+                sources[artifacts[i]] = aether.translateArtifactAetherToGeneric(artifactResult.artifact)
+            }
+        }
+        return sources
+    }
+
     private Artifact resolveSourceForArtifact(Artifact artifact) {
         def artifactRequest = populateSourceRequest(artifact)
-        def artifactResult = repositorySystem.resolveArtifact(repositorySystemSession, artifactRequest).artifact
-        return aether.translateArtifactAetherToGeneric(artifactResult)
+        def artifactResult = repositorySystem.resolveArtifact(repositorySystemSession, artifactRequest)
+        logProvenance(artifactResult)
+        return aether.translateArtifactAetherToGeneric(artifactResult.artifact)
     }
 
     private resolveNoTransitive(String artifact) {
         def artifactRequest = populateArtifactRequest(artifact)
-        return repositorySystem.resolveArtifact(repositorySystemSession, artifactRequest).artifact
+        def artifactResult = repositorySystem.resolveArtifact(repositorySystemSession, artifactRequest)
+        logProvenance(artifactResult)
+        return artifactResult.artifact
+    }
+
+    private List<List<?>> resolveNoTransitive(List<ArtifactResolutionRequest> requests) {
+        def artifactRequests = requests.collect { populateArtifactRequest(it.rootArtifactId) }
+        def artifactResults = repositorySystem.resolveArtifacts(repositorySystemSession, artifactRequests)
+        return artifactResults.collect { artifactResult ->
+            logProvenance(artifactResult)
+            [artifactResult.artifact]
+        }
+    }
+
+    private void logProvenance(artifactResult) {
+        def repository = artifactResult.repository
+        if (repository != null && aether.isRemoteRepository(repository)) {
+            Logger.getLog().info("\t[REMOTE ${repository.id}] ${artifactResult.artifact}")
+        } else {
+            Logger.getLog().debug("\t[LOCAL] ${artifactResult.artifact}")
+        }
     }
 
     private List<?> resolveWithTransitive(String artifact, List<String> excludes) {
         def collectRequest = populateCollectRequest(artifact)
         def dependencyNode = repositorySystem.collectDependencies(repositorySystemSession, collectRequest).root
         def dependencyRequest = aether.newDependencyRequest(dependencyNode, null)
-        dependencyRequest.filter = getFilter(artifact, transformExcludes(artifact, excludes))
-        repositorySystem.resolveDependencies(repositorySystemSession, dependencyRequest)
+        dependencyRequest.filter = getFilter([artifact], transformExcludes(artifact, excludes))
+        def dependencyResult = repositorySystem.resolveDependencies(repositorySystemSession, dependencyRequest)
+        for (def artifactResult : dependencyResult.artifactResults) {
+            logProvenance(artifactResult)
+        }
         def preorderNodeListGenerator = aether.newPreorderNodeListGenerator()
         dependencyNode.accept(preorderNodeListGenerator)
         return preorderNodeListGenerator.getArtifacts(false)
     }
 
-    private getFilter(final String artifactName, List<String> excludes) {
+    /**
+     * Collects one graph with all the root artifacts as its top-level dependencies, resolves it at once and
+     * splits it by the roots. A dependency shared by several roots is kept under one of them only, and a dependency
+     * required in several versions by different roots is kept in the version that wins the mediation only.
+     */
+    private List<List<?>> resolveWithTransitive(List<ArtifactResolutionRequest> requests) {
+        if (requests.size() == 1) {
+            return [resolveWithTransitive(requests[0].rootArtifactId, requests[0].excludes)]
+        }
+        List<String> rootIds = requests.collect { it.rootArtifactId }
+        def collectRequest = aether.newCollectRequest()
+        for (def remoteRepository : remoteRepositories) {
+            collectRequest.addRepository(remoteRepository)
+        }
+        for (String rootId : rootIds) {
+            collectRequest.addDependency(aether.newDependency(aether.newDefaultArtifact(rootId), scope))
+        }
+        def dependencyNode = repositorySystem.collectDependencies(repositorySystemSession, collectRequest).root
+        def dependencyRequest = aether.newDependencyRequest(dependencyNode, null)
+        dependencyRequest.filter = getFilter(rootIds, transformExcludes(rootIds.toString(), requests[0].excludes))
+        def dependencyResult = repositorySystem.resolveDependencies(repositorySystemSession, dependencyRequest)
+        for (def artifactResult : dependencyResult.artifactResults) {
+            logProvenance(artifactResult)
+        }
+        Map<String, ?> rootNodes = [:]
+        for (def child : dependencyNode.children) {
+            rootNodes[nodeKey(child.dependency.artifact)] = child
+        }
+        return requests.collect { request ->
+            def rootNode = rootNodes[nodeKey(aether.newDefaultArtifact(request.rootArtifactId))]
+            if (rootNode == null) {
+                // lost the version conflict with another root
+                return resolveWithTransitive(request.rootArtifactId, request.excludes)
+            }
+            def preorderNodeListGenerator = aether.newPreorderNodeListGenerator()
+            rootNode.accept(preorderNodeListGenerator)
+            return preorderNodeListGenerator.getArtifacts(false)
+        }
+    }
+
+    private static String nodeKey(artifact) {
+        return "${artifact.groupId}:${artifact.artifactId}:${artifact.extension}:${artifact.classifier}:${artifact.baseVersion}"
+    }
+
+    private getFilter(final Collection<String> rootArtifactNames, List<String> excludes) {
         def filter = aether.newPatternExclusionsDependencyFilter(excludes)
         def filterClosure = { node, List<?> parents ->
             boolean accepted = filter.accept(node, parents)
             if (!accepted) {
                 def artifact = node.dependency.artifact
                 String pattern = "${artifact.groupId}:${artifact.artifactId}:${artifact.baseVersion}"
-                if (pattern == artifactName) {
+                if (rootArtifactNames.contains(pattern)) {
                     return true
                 }
             }
@@ -18,13 +18,18 @@
  */
 package org.reficio.p2.resolver.maven.impl.facade
 
+import org.eclipse.aether.DefaultRepositorySystemSession
+import org.eclipse.aether.RepositorySystemSession
 import org.eclipse.aether.artifact.Artifact as AetherArtifact
 import org.eclipse.aether.artifact.DefaultArtifact
 import org.eclipse.aether.collection.CollectRequest
 import org.eclipse.aether.graph.Dependency
 import org.eclipse.aether.graph.DependencyFilter
 import org.eclipse.aether.graph.DependencyNode
+import org.eclipse.aether.repository.RemoteRepository
+import org.eclipse.aether.resolution.ArtifactDescriptorRequest
 import org.eclipse.aether.resolution.ArtifactRequest
+import org.eclipse.aether.resolution.ArtifactResolutionException
 import org.eclipse.aether.resolution.DependencyRequest
 import org.eclipse.aether.util.artifact.SubArtifact
 import org.eclipse.aether.util.filter.PatternExclusionsDependencyFilter
@@ -89,6 +94,26 @@ class AetherEclipseFacade implements AetherFacade {
         }
     }
 
+    @Override
+    def newArtifactDescriptorRequest(artifact, List<?> repositories) {
+        new ArtifactDescriptorRequest((AetherArtifact) artifact, (List<RemoteRepository>) repositories, null)
+    }
+
+    @Override
+    List<?> getArtifactResults(Exception exception) {
+        exception instanceof ArtifactResolutionException ? ((ArtifactResolutionException) exception).results : null
+    }
+
+    @Override
+    def newSessionWithUpdatePolicy(repositorySystemSession, String updatePolicy) {
+        new DefaultRepositorySystemSession((RepositorySystemSession) repositorySystemSession).setUpdatePolicy(updatePolicy)
+    }
+
+    @Override
+    boolean isRemoteRepository(repository) {
+        repository instanceof RemoteRepository
+    }
+
     @Override
     Artifact translateArtifactAetherToGeneric(artifact) {
         AetherArtifact aetherArtifact = (AetherArtifact) artifact
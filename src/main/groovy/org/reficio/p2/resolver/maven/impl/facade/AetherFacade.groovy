@@ -46,6 +46,21 @@ interface AetherFacade {
 
     def newDependencyFilter(filterClosure)
 
+    def newArtifactDescriptorRequest(artifact, List<?> repositories)
+
+    /**
+     * @return the results of a batch of artifact requests that failed partially, null if the exception
+     * is not an artifact resolution failure
+     */
+    List<?> getArtifactResults(Exception exception)
+
+    /**
+     * @return copy of the session using the given update policy instead of the policies of the repositories
+     */
+    def newSessionWithUpdatePolicy(repositorySystemSession, String updatePolicy)
+
+    boolean isRemoteRepository(repository)
+
     Artifact translateArtifactAetherToGeneric(artifact)
 
     def translateArtifactGenericToAether(Artifact artifact)
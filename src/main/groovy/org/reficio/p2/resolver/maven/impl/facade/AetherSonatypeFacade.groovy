@@ -19,13 +19,18 @@
 package org.reficio.p2.resolver.maven.impl.facade
 
 import org.reficio.p2.resolver.maven.Artifact
+import org.sonatype.aether.RepositorySystemSession
 import org.sonatype.aether.artifact.Artifact as AetherArtifact
 import org.sonatype.aether.collection.CollectRequest
 import org.sonatype.aether.graph.Dependency
 import org.sonatype.aether.graph.DependencyFilter
 import org.sonatype.aether.graph.DependencyNode
+import org.sonatype.aether.repository.RemoteRepository
+import org.sonatype.aether.resolution.ArtifactDescriptorRequest
 import org.sonatype.aether.resolution.ArtifactRequest
+import org.sonatype.aether.resolution.ArtifactResolutionException
 import org.sonatype.aether.resolution.DependencyRequest
+import org.sonatype.aether.util.DefaultRepositorySystemSession
 import org.sonatype.aether.util.artifact.DefaultArtifact
 import org.sonatype.aether.util.artifact.SubArtifact
 import org.sonatype.aether.util.filter.PatternExclusionsDependencyFilter
@@ -89,6 +94,26 @@ class AetherSonatypeFacade implements AetherFacade {
         }
     }
 
+    @Override
+    def newArtifactDescriptorRequest(artifact, List<?> repositories) {
+        new ArtifactDescriptorRequest((AetherArtifact) artifact, (List<RemoteRepository>) repositories, null)
+    }
+
+    @Override
+    List<?> getArtifactResults(Exception exception) {
+        exception instanceof ArtifactResolutionException ? ((ArtifactResolutionException) exception).results : null
+    }
+
+    @Override
+    def newSessionWithUpdatePolicy(repositorySystemSession, String updatePolicy) {
+        new DefaultRepositorySystemSession((RepositorySystemSession) repositorySystemSession).setUpdatePolicy(updatePolicy)
+    }
+
+    @Override
+    boolean isRemoteRepository(repository) {
+        repository instanceof RemoteRepository
+    }
+
     @Override
     Artifact translateArtifactAetherToGeneric(artifact) {
         AetherArtifact aetherArtifact = (AetherArtifact) artifact
@@ -22,7 +22,6 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 /**
  * Represents one &lt;artifact&gt; section in the plugin configuration.
@@ -36,7 +35,13 @@ import java.util.Objects;
 public class P2Artifact {
 
     /**
-     * Artifact id in the following format "groupId:artifactId:version"
+     * Suffix of the id of a BOM whose managed dependencies are imported as artifacts
+     */
+    public static final String BOM_SUFFIX = "@pom";
+
+    /**
+     * Artifact id in the following format "groupId:artifactId:version", or "groupId:artifactId:version@pom"
+     * to import all the managed dependencies of the BOM
      */
     private String id;
 
@@ -125,7 +130,34 @@ public class P2Artifact {
         this.excludes = excludes;
     }
 
-    public int getHash() {
-    	return Objects.hash(this.id, this.transitive, this.override, this.source, this.singleton, Objects.hash(this.getExcludes()), Objects.hash(this.getInstructions()));
+    public boolean isBom() {
+        return id != null && id.endsWith(BOM_SUFFIX);
+    }
+
+    /**
+     * @return id of the pom of the BOM in the "groupId:artifactId:pom:version" format
+     */
+    public String getBomPomId() {
+        String[] coordinates = id.substring(0, id.length() - BOM_SUFFIX.length()).split(":");
+        if (coordinates.length != 3) {
+            throw new IllegalArgumentException(String.format("Invalid BOM [%s], the supported notation is " +
+                    "<groupId>:<artifactId>:<version>%s", id, BOM_SUFFIX));
+        }
+        return coordinates[0] + ":" + coordinates[1] + ":pom:" + coordinates[2];
+    }
+
+    /**
+     * @return artifact imported from this BOM, configured the same way as the BOM
+     */
+    public P2Artifact importArtifact(String artifactId) {
+        P2Artifact artifact = new P2Artifact();
+        artifact.id = artifactId;
+        artifact.transitive = transitive;
+        artifact.override = override;
+        artifact.source = source;
+        artifact.singleton = singleton;
+        artifact.excludes = new ArrayList<String>(excludes);
+        artifact.instructions = new LinkedHashMap(instructions);
+        return artifact;
     }
 }
@@ -25,6 +25,7 @@ import org.apache.commons.lang.StringUtils;
 import org.reficio.p2.bundler.ArtifactBundlerInstructions;
 import org.reficio.p2.bundler.ArtifactBundlerRequest;
 import org.reficio.p2.bundler.impl.AquteHelper;
+import org.reficio.p2.resolver.eclipse.EclipseResolutionRequest;
 import org.reficio.p2.resolver.maven.Artifact;
 import org.reficio.p2.resolver.maven.ResolvedArtifact;
 import org.reficio.p2.utils.BundleUtils;
@@ -68,6 +69,14 @@ public class P2Helper {
         return new ArtifactBundlerRequest(binaryInputFile, binaryOutputFile, sourceInputFile, sourceOutputFile, shouldBundle);
     }
 
+    public static EclipseResolutionRequest createEclipseRequest(EclipseArtifact artifact) {
+        String[] tokens = artifact.getId().split(":");
+        if (tokens.length != 2) {
+            throw new RuntimeException("Wrong format " + artifact.getId());
+        }
+        return new EclipseResolutionRequest(tokens[0], tokens[1], artifact.shouldIncludeSources());
+    }
+
     private static File forceMkdirSilently(File folder) {
         try {
             FileUtils.forceMkdir(folder);
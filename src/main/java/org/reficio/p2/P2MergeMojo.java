@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.RepositoryMerger;
+import org.reficio.p2.utils.BuildTimestamp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Merges the p2 sites built by the shards of a build (see buildShardIndex and buildShardCount of the site goal)
+ * into one site. The jars are hard-linked and the metadata is merged, nothing is published again.
+ *
+ * @since 1.2.0
+ */
+@Mojo(
+        name = "merge",
+        defaultPhase = LifecyclePhase.PACKAGE
+)
+public class P2MergeMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", required = true, readonly = true)
+    private MavenProject project;
+
+    /**
+     * Folders of the p2 sites to merge.
+     */
+    @Parameter(property = "p2.mergeDirectories", required = true)
+    private List<File> mergeDirectories;
+
+    @Parameter(property = "p2.destinationDirectory", defaultValue = "${project.build.directory}/repository", required = true)
+    private File destinationDirectory;
+
+    @Parameter(defaultValue = "true")
+    private boolean compressSite;
+
+    @Parameter(defaultValue = "false")
+    private boolean xzCompressSite;
+
+    @Parameter(defaultValue = "6")
+    private int compressionLevel;
+
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp;
+
+    private Log log = getLog();
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        Logger.initialize(log);
+        BuildTimestamp.initialize(outputTimestamp);
+        try {
+            RepositoryMerger.builder()
+                    .sourceLocations(mergeDirectories)
+                    .repositoryLocation(destinationDirectory)
+                    .repositoryName(project.getName())
+                    .compressSite(compressSite)
+                    .xzCompressSite(xzCompressSite)
+                    .compressionLevel(compressionLevel)
+                    .build()
+                    .execute();
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Cannot merge the p2 sites into " + destinationDirectory, ex);
+        } finally {
+            BuildTimestamp.release();
+            Logger.release();
+        }
+    }
+
+}
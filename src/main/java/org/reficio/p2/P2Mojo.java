@@ -20,15 +20,24 @@ package org.reficio.p2;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -56,27 +65,50 @@ import org.eclipse.sisu.equinox.launching.internal.P2ApplicationLauncher;
 import org.reficio.p2.bundler.ArtifactBundler;
 import org.reficio.p2.bundler.ArtifactBundlerInstructions;
 import org.reficio.p2.bundler.ArtifactBundlerRequest;
+import org.reficio.p2.bundler.ArtifactDeduplicator;
 import org.reficio.p2.bundler.impl.AquteBundler;
+import org.reficio.p2.cache.BundleFiles;
+import org.reficio.p2.cache.FileCacheStore;
+import org.reficio.p2.cache.ReactorCache;
+import org.reficio.p2.fingerprint.BuildFingerprint;
+import org.reficio.p2.fingerprint.BuildStages;
+import org.reficio.p2.fingerprint.DigestService;
+import org.reficio.p2.fingerprint.ResolutionCache;
+import org.reficio.p2.fingerprint.StageFingerprints;
 import org.reficio.p2.logger.Logger;
+import org.reficio.p2.metrics.BuildMetrics;
+import org.reficio.p2.pipeline.StreamingPipeline;
+import org.reficio.p2.prefetch.Prefetcher;
 import org.reficio.p2.publisher.BundlePublisher;
-import org.reficio.p2.publisher.CategoryPublisher;
+import org.reficio.p2.publisher.CategoryPublishingService;
+import org.reficio.p2.publisher.CompositePublisher;
+import org.reficio.p2.publisher.MetadataCompressor;
+import org.reficio.p2.publisher.NativeBundlePublisher;
+import org.reficio.p2.publisher.SitePublisher;
+import org.reficio.p2.publisher.metadata.MetadataFiles;
 import org.reficio.p2.resolver.eclipse.EclipseResolutionRequest;
 import org.reficio.p2.resolver.eclipse.impl.DefaultEclipseResolver;
 import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ArtifactIdentity;
 import org.reficio.p2.resolver.maven.ArtifactResolutionRequest;
 import org.reficio.p2.resolver.maven.ArtifactResolutionResult;
 import org.reficio.p2.resolver.maven.ArtifactResolver;
 import org.reficio.p2.resolver.maven.ResolvedArtifact;
 import org.reficio.p2.resolver.maven.impl.AetherResolver;
+import org.reficio.p2.shard.BuildShard;
+import org.reficio.p2.shard.ShardManifest;
+import org.reficio.p2.utils.BuildTimestamp;
 import org.reficio.p2.utils.JarUtils;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 
-import edu.emory.mathcs.backport.java.util.Arrays;
-
 /**
  * Main plugin class
  *
@@ -93,11 +125,23 @@ import edu.emory.mathcs.backport.java.util.Arrays;
 )
 public class P2Mojo extends AbstractMojo implements Contextualizable {
 
-    private static final String BUNDLES_TOP_FOLDER = "/source";
-    private static final String FEATURES_DESTINATION_FOLDER = BUNDLES_TOP_FOLDER + "/features";
-    private static final String BUNDLES_DESTINATION_FOLDER = BUNDLES_TOP_FOLDER + "/plugins";
+    private static final String FEATURES_DESTINATION_FOLDER = "features";
+    private static final String BUNDLES_DESTINATION_FOLDER = "plugins";
     private static final String DEFAULT_CATEGORY_FILE = "category.xml";
     private static final String DEFAULT_CATEGORY_CLASSPATH_LOCATION = "/";
+    private static final String COMPOSITE_STATE_FILE = "p2-composite.properties";
+    private static final String DIGEST_CACHE_FOLDER = "digests";
+    private static final String STAGES_FOLDER = "p2-stages";
+    private static final String METRICS_FILE = "p2-metrics.json";
+    private static final String PREFETCH_REPORT_FILE = "p2-prefetch.txt";
+    private static final String P2_DOWNLOAD_CACHE = "p2";
+    private static final String RESOLVED_ARTIFACTS_FILE = "resolved-artifacts.txt";
+    private static final String RESOLVED_FEATURES_FILE = "resolved-features.txt";
+    private static final String RESOLVE_STAGE = "resolve";
+    private static final String BUNDLE_STAGE = "bundle";
+    private static final String PUBLISH_STAGE = "publish";
+    private static final String CATEGORY_STAGE = "category";
+    private static final String COMPRESS_STAGE = "compress";
 
     @Parameter(defaultValue = "${project}", required = true, readonly = true)
     private MavenProject project;
@@ -109,12 +153,22 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     @Requirement
     private BuildPluginManager pluginManager;
 
+    @Parameter(defaultValue = "${plugin.version}", readonly = true)
+    private String pluginVersion;
+
     @Parameter(defaultValue = "${project.build.directory}", required = true)
     private String buildDirectory;
 
     @Parameter(defaultValue = "${project.build.directory}/repository", required = true)
     private String destinationDirectory;
 
+    /**
+     * Folder of the wrapped plugins and features (in the plugins and features subfolders) - written by the bundle
+     * goal, read by the publish goal. The site goal removes it once the site is published.
+     */
+    @Parameter(property = "p2.bundleDirectory", defaultValue = "${project.build.directory}/source", required = true)
+    private File bundleDirectory;
+
     @Component
     @Requirement
     private P2ApplicationLauncher launcher;
@@ -148,6 +202,20 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     @Parameter(defaultValue = "true")
     private boolean compressSite;
 
+    /**
+     * Specifies whether to write xz compressed metadata (content.xml.xz and artifacts.xml.xz) next to the
+     * regular one. Clients that understand the p2.index written to the site fetch the much smaller xz files first.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean xzCompressSite;
+
+    /**
+     * Specifies the compression level of the site metadata, from 0 (no compression) to 9 (best compression).
+     * Applies to both the jar and the xz flavour.
+     */
+    @Parameter(defaultValue = "6")
+    private int compressionLevel;
+
     /**
      * Kill the forked process after a certain number of seconds. If set to 0, wait forever for the
      * process, never timing out.
@@ -161,6 +229,187 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     @Parameter(defaultValue = "")
     private String additionalArgs;
 
+    /**
+     * Specifies whether the categories should be published in-process (directly into the content metadata)
+     * instead of forking the Equinox p2 CategoryPublisher application. If the category file cannot be
+     * handled in-process the forked publisher is used as a fallback.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean inProcessCategoryPublishing;
+
+    /**
+     * Specifies whether the site metadata should be generated by the plugin itself, directly from the manifests
+     * of the bundled jars, instead of executing the Tycho publish-features-and-bundles goal.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean nativePublishing;
+
+    /**
+     * Specifies whether an existing site in the destination directory should be updated in place instead of
+     * being regenerated from scratch. Only artifacts whose content changed are copied again and artifacts that
+     * are no longer part of the site are removed. Requires nativePublishing.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean appendPublishing;
+
+    /**
+     * Specifies whether the site should be generated as a composite repository whose bundles are split into
+     * shards (child repositories): "groupId" shards the bundles by the prefix of their groupId,
+     * "size" packs them into shards of at most shardSizeInMegabytes. Only the shards that changed since the
+     * previous execution are republished. By default a single flat repository is generated.
+     */
+    @Parameter
+    private String shardBy;
+
+    /**
+     * Specifies how many leading segments of the groupId form the shard name if shardBy is "groupId".
+     */
+    @Parameter(defaultValue = "2")
+    private int shardGroupIdSegments;
+
+    /**
+     * Specifies the size budget of a single shard if shardBy is "size".
+     */
+    @Parameter(defaultValue = "100")
+    private int shardSizeInMegabytes;
+
+    /**
+     * Several update sites published from the bundles of one execution, each one with its own subset of the
+     * artifacts, categories and destination. If set, only these sites are published.
+     */
+    @Parameter
+    private List<P2Site> sites;
+
+    /**
+     * Splits the build between buildShardCount machines, this one taking the part buildShardIndex (0 based) of the
+     * artifacts sorted by their ids. The partial sites are then combined with the merge goal.
+     */
+    @Parameter(property = "p2.shardIndex", defaultValue = "0")
+    private int buildShardIndex;
+
+    @Parameter(property = "p2.shardCount", defaultValue = "1")
+    private int buildShardCount;
+
+    /**
+     * Manifest shared by the shards of the build (e.g. on a network file system) recording which shard bundles
+     * which transitive dependency, so that the dependencies common to several shards are bundled only once.
+     */
+    @Parameter(property = "p2.shardManifest")
+    private File buildShardManifest;
+
+    /**
+     * Timestamp used for the qualifiers of snapshots and features, the entries of the written jars and the site
+     * metadata, in ISO-8601 or as seconds since the epoch. If set (or if the SOURCE_DATE_EPOCH environment variable
+     * is set) the generated jars and metadata are reproducible.
+     */
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp;
+
+    /**
+     * Specifies whether the up-to-date state of the individual stages (resolve, bundle, publish, category) should be
+     * tracked in the build directory, so that a stage whose inputs did not change since the previous execution is
+     * skipped. Every stage logs why it was executed or skipped. The work folder is kept between the executions.
+     */
+    @Parameter(property = "p2.incremental", defaultValue = "false")
+    private boolean incrementalBuild;
+
+    /**
+     * Specifies how many of the slowest artifacts are listed at the end of the build. The wall time, bytes read and
+     * written and artifact counts of all the phases and artifacts are written to target/p2-metrics.json.
+     */
+    @Parameter(defaultValue = "10")
+    private int metricsSlowestArtifacts;
+
+    /**
+     * Specifies whether the artifacts should be bundled while the remaining ones are still being resolved. The
+     * resolved artifacts are handed over to the bundling threads through a bounded queue instead of being collected
+     * first, so the downloads overlap with the bundling. Ignored by incremental builds and when the artifacts checksum
+     * is generated, as both need all the artifacts resolved before the bundling starts.
+     */
+    @Parameter(property = "p2.streaming", defaultValue = "false")
+    private boolean streamingPipeline;
+
+    /**
+     * Specifies the number of threads bundling the artifacts in the streaming pipeline, 0 stands for the number
+     * of processors.
+     */
+    @Parameter(defaultValue = "0")
+    private int bundlingThreads;
+
+    /**
+     * Skips the transitive dependencies whose jar has the same content as a jar bundled before under different
+     * coordinates (e.g. relocated or republished artifacts). The artifact declared first is kept. The streaming
+     * pipeline is not used if enabled. Can be set with -Dp2.deduplicateArtifacts=true
+     */
+    @Parameter(property = "p2.deduplicateArtifacts", defaultValue = "false")
+    private boolean deduplicateArtifacts;
+
+    /**
+     * Resolves all the artifacts imported from a BOM in one dependency graph instead of one graph per artifact.
+     * Faster, but the versions of their transitive dependencies are mediated across all of them - an artifact may
+     * get a different version of a dependency than when resolved alone. Can be set with -Dp2.batchBomResolution=true
+     */
+    @Parameter(property = "p2.batchBomResolution", defaultValue = "false")
+    private boolean batchBomResolution;
+
+    /**
+     * Specifies whether the resolved artifacts and the finished bundles should be shared by the executions of the
+     * plugin in all the modules of a reactor build, so that an artifact declared in many modules is resolved and
+     * bundled only once. Only used if the reactor has more than one module.
+     */
+    @Parameter(property = "p2.reactorCache", defaultValue = "true")
+    private boolean reactorCache;
+
+    /**
+     * Specifies whether the bundles wrapped by the plugin should be kept in a persistent cache in cacheDirectory,
+     * shared by all the builds using it - also builds running at the same time in different processes. Snapshots
+     * are cached only if the build is reproducible (see outputTimestamp), as their qualifier is the build time.
+     */
+    @Parameter(property = "p2.bundleCache", defaultValue = "false")
+    private boolean persistentBundleCache;
+
+    /**
+     * Location of the persistent caches of the plugin. It also keeps the index of the file digests of each module, so
+     * that the digests of the unchanged jars survive a clean build.
+     */
+    @Parameter(property = "p2.cacheDirectory", defaultValue = "${settings.localRepository}/.cache/p2-maven-plugin")
+    private File cacheDirectory;
+
+    /**
+     * Specifies how long a build waits for another build writing the same cache entry before it considers the lock
+     * stale and writes the entry itself.
+     */
+    @Parameter(defaultValue = "300")
+    private int cacheLockTimeoutInSeconds;
+
+    /**
+     * Specifies whether the jars of the p2 artifacts should be kept in a download cache in cacheDirectory, so that
+     * they are downloaded only once (e.g. by the prefetch goal) and the later builds can run offline.
+     */
+    @Parameter(property = "p2.downloadCache", defaultValue = "true")
+    private boolean p2DownloadCache;
+
+    /**
+     * Specifies whether the artifacts already in the local repository should be used without checking the remote
+     * repositories (e.g. for newer snapshots or for sources missing before) as long as they were checked within
+     * offlineFreshnessInMinutes. The artifacts missing in the local repository are still downloaded.
+     */
+    @Parameter(property = "p2.offlineFirst", defaultValue = "false")
+    private boolean offlineFirstResolution;
+
+    /**
+     * How long the local repository is trusted by the offline-first resolution since the last remote check;
+     * -1 trusts it forever.
+     */
+    @Parameter(property = "p2.offlineFreshnessInMinutes", defaultValue = "1440")
+    private int offlineFreshnessInMinutes;
+
+    /**
+     * Number of the artifacts the prefetch goal downloads at the same time.
+     */
+    @Parameter(property = "p2.prefetchThreads", defaultValue = "8")
+    private int prefetchThreads;
+
     /**
      * Dependency injection container - used to get some components programatically
      */
@@ -203,7 +452,8 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
 
     // artifacts checksum parameters
     /**
-     * Whether to generate a checksum of all declared artifacts before executing this goal.
+     * Whether to generate a checksum of the build before executing this goal: a SHA-256 fingerprint of the whole
+     * configuration, the resolved artifacts (including the content of their files) and the plugin version.
      * The checksum will be output to a "p2.hash" file.
      * It can be used to skip this goal if the generated checksum is the same as the one in the file.
      */
@@ -231,6 +481,49 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
      */
     private Log log = getLog();
 
+    private DigestService digests;
+
+    private final BuildMetrics metrics = new BuildMetrics();
+
+    /**
+     * Cache shared by the modules of the reactor, null if not used.
+     */
+    private ReactorCache sharedCache;
+
+    /**
+     * Persistent cache of the wrapped bundles, null if not used.
+     */
+    private FileCacheStore bundleStore;
+
+    /**
+     * Up-to-date state of the stages, null if the build is not incremental.
+     */
+    private BuildStages stages;
+
+    /**
+     * Claims of the transitive dependencies of the shards of the build, null if not used.
+     */
+    private ShardManifest shardManifest;
+
+    /**
+     * Ids of the artifacts configured for all the shards of the build; they are bundled by their own shard, never
+     * claimed as a transitive dependency of another one.
+     */
+    private final Set<String> shardRoots = new HashSet<String>();
+
+    private ArtifactResolver artifactResolver;
+
+    private ArtifactDeduplicator deduplicator;
+
+    /**
+     * BOM of every artifact imported from a BOM
+     */
+    private final Map<P2Artifact, String> importedBoms = new HashMap<P2Artifact, String>();
+
+    private Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts;
+
+    private Multimap<P2Artifact, ResolvedArtifact> resolvedFeatures;
+
     /**
      * Folder which the jar files bundled by the ArtifactBundler will be copied to
      */
@@ -248,44 +541,403 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     @Override
     public void execute() {
         try {
+            metrics.startPhase("initialize");
             initializeEnvironment();
-            initializeRepositorySystem();
-            if (checkForHash()) {
-            	getLog().info("Skipping execution because the p2 site was already generated for this set of declared artifacts");
-            	return;
+            if (isPrefetching()) {
+                initializeRepositorySystem();
+                initializeArtifacts();
+                executePrefetch();
+                return;
+            }
+            if (isBundling()) {
+                initializeRepositorySystem();
+                initializeArtifacts();
+                if (isStreamingPipeline()) {
+                    executeStreamingPipeline();
+                } else {
+                    metrics.startPhase("resolve");
+                    executeResolveStage();
+                    deduplicator.findDuplicates(artifacts, resolvedArtifacts);
+                    if (isPublishing() && checkForHash(resolvedArtifacts, resolvedFeatures)) {
+                        getLog().info("Skipping execution because the p2 site was already generated for this set of declared artifacts");
+                        return;
+                    }
+                    executeBundleStage();
+                }
+            }
+            if (isPublishing()) {
+                checkBundleDirectory();
+                if (!sites.isEmpty()) {
+                    executeSitePublishers();
+                } else if (StringUtils.isNotBlank(shardBy)) {
+                    metrics.startPhase("composite");
+                    executeCompositePublisher();
+                    metrics.addBytesWritten(BuildMetrics.sizeOf(new File(destinationDirectory)));
+                } else {
+                    executePublishStages();
+                }
+            }
+            if (isBundling() && isPublishing()) {
+                cleanupEnvironment();
             }
-            processArtifacts();
-            processFeatures();
-            processEclipseArtifacts();
-            executeP2PublisherPlugin();
-            executeCategoryPublisher();
-            cleanupEnvironment();
             saveHash();
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            saveDigests();
+            writeMetrics();
+            BuildTimestamp.release();
+            Logger.release();
         }
     }
 
-	private String computeHashForArtifacts() {
-    	List<Integer> artifactsHashes = new ArrayList<Integer>();
-    	for (P2Artifact p2Artifact : artifacts) {
-    		artifactsHashes.add(p2Artifact.getHash());
-		}
-    	Integer finalHash = Arrays.hashCode(artifactsHashes.toArray(new Integer[0]));
+    /**
+     * Whether the goal only downloads the artifacts into the local repository and the p2 download cache.
+     */
+    protected boolean isPrefetching() {
+        return false;
+    }
+
+    /**
+     * Whether the goal resolves and wraps the artifacts into the bundle directory.
+     */
+    protected boolean isBundling() {
+        return true;
+    }
+
+    /**
+     * Whether the goal publishes the content of the bundle directory as a p2 repository.
+     */
+    protected boolean isPublishing() {
+        return true;
+    }
+
+    /**
+     * Resolves all the artifacts, features and p2 artifacts in parallel without bundling anything and reports
+     * what was downloaded and from where.
+     */
+    private void executePrefetch() throws IOException, InterruptedException {
+        metrics.startPhase("prefetch");
+        final DefaultEclipseResolver eclipseResolver = new DefaultEclipseResolver(projectRepos, null,
+                new File(cacheDirectory, P2_DOWNLOAD_CACHE));
+        Prefetcher.builder()
+                .artifacts(Iterables.concat(artifacts, features))
+                .eclipseArtifacts(p2)
+                .resolver(new Prefetcher.Resolver() {
+                    @Override
+                    public List<ResolvedArtifact> resolve(P2Artifact p2Artifact) {
+                        logResolving(p2Artifact);
+                        return resolveArtifact(p2Artifact).getResolvedArtifacts();
+                    }
+
+                    @Override
+                    public Map<File, String> resolve(EclipseArtifact eclipseArtifact) {
+                        logResolving(eclipseArtifact);
+                        Map<File, String> origins = new LinkedHashMap<File, String>();
+                        EclipseResolutionRequest request = P2Helper.createEclipseRequest(eclipseArtifact);
+                        for (File file : eclipseResolver.resolve(request).getResolved()) {
+                            if (file != null) {
+                                origins.put(file, eclipseResolver.originOf(file.getName()));
+                            }
+                        }
+                        return origins;
+                    }
+                })
+                .threads(prefetchThreads)
+                .reportFile(new File(buildDirectory, PREFETCH_REPORT_FILE))
+                .skipInvalidArtifacts(skipInvalidArtifacts)
+                .build()
+                .execute();
+    }
+
+    /**
+     * Publishes the sites in parallel, each one directly from its part of the shared bundles.
+     */
+    private void executeSitePublishers() throws IOException, InterruptedException {
+        metrics.startPhase("sites");
+        prepareCategoryLocationFile();
+        List<File> repositories = SitePublisher.builder()
+                .sites(sites)
+                .artifacts(artifacts, resolvedArtifacts)
+                .features(features, resolvedFeatures)
+                .eclipseArtifacts(p2)
+                .bundlesFolder(bundlesDestinationFolder)
+                .featuresFolder(featuresDestinationFolder)
+                .destinationDirectory(new File(destinationDirectory))
+                .categoryFileLocation(categoryFileURL)
+                .categoryPublishing(createCategoryPublishingService(new Supplier<P2ApplicationLauncher>() {
+                    @Override
+                    public P2ApplicationLauncher get() {
+                        return lookupLauncher();
+                    }
+                }))
+                .deduplicator(deduplicator)
+                .digestService(digests)
+                .compressSite(compressSite)
+                .xzCompressSite(xzCompressSite)
+                .compressionLevel(compressionLevel)
+                .build()
+                .execute();
+        for (File repository : repositories) {
+            metrics.addBytesWritten(BuildMetrics.sizeOf(repository));
+        }
+    }
+
+    private void checkBundleDirectory() throws IOException {
+        if (!bundlesDestinationFolder.isDirectory() && !featuresDestinationFolder.isDirectory()) {
+            throw new FileNotFoundException("There are no bundles to publish in " + bundleDirectory.getAbsolutePath()
+                    + " - run the bundle goal first");
+        }
+    }
+
+    private void writeMetrics() {
+        metrics.finish();
+        try {
+            File report = new File(buildDirectory, METRICS_FILE);
+            metrics.writeJson(report, metricsSlowestArtifacts);
+            log.info("Build metrics (" + report.getAbsolutePath() + "):");
+            metrics.logSummary(metricsSlowestArtifacts);
+        } catch (IOException ex) {
+            log.warn("Cannot write the build metrics: " + ex.getMessage());
+        }
+    }
+
+    private void saveDigests() {
+        if (digests == null) {
+            return;
+        }
+        try {
+            digests.save();
+        } catch (IOException ex) {
+            log.warn("Cannot save the file digests: " + ex.getMessage());
+        } finally {
+            digests.shutdown();
+        }
+    }
+
+    private void executeResolveStage() throws IOException {
+        BuildFingerprint fingerprint = null;
+        if (stages != null) {
+            fingerprint = stageFingerprints().resolution();
+            File stagesFolder = new File(buildDirectory, STAGES_FOLDER);
+            Multimap<P2Artifact, ResolvedArtifact> cachedArtifacts =
+                    ResolutionCache.load(new File(stagesFolder, RESOLVED_ARTIFACTS_FILE), artifacts);
+            Multimap<P2Artifact, ResolvedArtifact> cachedFeatures =
+                    ResolutionCache.load(new File(stagesFolder, RESOLVED_FEATURES_FILE), features);
+            if (!stages.shouldRun(RESOLVE_STAGE, fingerprint, checkResolutionCache(cachedArtifacts, cachedFeatures))) {
+                metrics.skipPhase();
+                resolvedArtifacts = cachedArtifacts;
+                resolvedFeatures = cachedFeatures;
+                return;
+            }
+        }
+        resolvedArtifacts = resolveArtifacts();
+        resolvedFeatures = resolveFeatures();
+        if (stages != null) {
+            File stagesFolder = new File(buildDirectory, STAGES_FOLDER);
+            ResolutionCache.save(new File(stagesFolder, RESOLVED_ARTIFACTS_FILE), resolvedArtifacts);
+            ResolutionCache.save(new File(stagesFolder, RESOLVED_FEATURES_FILE), resolvedFeatures);
+            stages.completed(RESOLVE_STAGE, fingerprint);
+        }
+    }
+
+    private static String checkResolutionCache(Multimap<P2Artifact, ResolvedArtifact> cachedArtifacts,
+                                               Multimap<P2Artifact, ResolvedArtifact> cachedFeatures) {
+        if (cachedArtifacts == null || cachedFeatures == null) {
+            return "the resolved artifacts are not available any more";
+        }
+        for (ResolvedArtifact resolved : Iterables.concat(cachedArtifacts.values(), cachedFeatures.values())) {
+            if (resolved.getArtifact().isSnapshot()) {
+                return String.format("snapshot [%s] has to be resolved again", resolved.getArtifact());
+            }
+        }
+        return null;
+    }
+
+    private void executeBundleStage() throws IOException {
+        metrics.startPhase("bundle");
+        BuildFingerprint fingerprint = null;
+        if (stages != null) {
+            fingerprint = stageFingerprints().bundle(resolvedArtifacts, resolvedFeatures);
+            String outdated = bundleDirectory.isDirectory() ? null : "the work folder does not exist";
+            if (!stages.shouldRun(BUNDLE_STAGE, fingerprint, outdated)) {
+                metrics.skipPhase();
+                return;
+            }
+        }
+        prepareWorkFolder();
+        processArtifacts(resolvedArtifacts);
+        metrics.startPhase("features");
+        processFeatures(resolvedFeatures);
+        metrics.startPhase("eclipse");
+        processEclipseArtifacts();
+        if (stages != null) {
+            stages.completed(BUNDLE_STAGE, fingerprint);
+        }
+    }
+
+    private boolean isStreamingPipeline() {
+        if (streamingPipeline && (stages != null || artifactsChecksumGenerate || !sites.isEmpty() || deduplicateArtifacts)) {
+            log.warn("The streaming pipeline is not used as the incremental build, the artifacts checksum, " +
+                    "the sites and the deduplication need all the artifacts resolved before bundling");
+            return false;
+        }
+        return streamingPipeline;
+    }
+
+    /**
+     * Resolves and bundles the artifacts at the same time; the artifacts are not retained once they are bundled.
+     */
+    private void executeStreamingPipeline() throws IOException {
+        metrics.startPhase("pipeline");
+        prepareWorkFolder();
+        StreamingPipeline.builder()
+                .artifacts(artifacts)
+                .resolver(new StreamingPipeline.Resolver() {
+                    @Override
+                    public List<ResolvedArtifact> resolve(P2Artifact p2Artifact) {
+                        logResolving(p2Artifact);
+                        return resolveArtifact(p2Artifact).getResolvedArtifacts();
+                    }
+                })
+                .bundler(new StreamingPipeline.Bundler() {
+                    @Override
+                    public void bundle(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
+                        if (claimForShard(resolvedArtifact) || resolvedArtifact.isRoot()) {
+                            bundleArtifact(p2Artifact, resolvedArtifact);
+                        }
+                    }
+                })
+                .threads(bundlingThreads > 0 ? bundlingThreads : Runtime.getRuntime().availableProcessors())
+                .skipInvalidArtifacts(skipInvalidArtifacts)
+                .build()
+                .execute();
+        metrics.startPhase("features");
+        processFeatures(resolveFeatures());
+        metrics.startPhase("eclipse");
+        processEclipseArtifacts();
+    }
+
+    /**
+     * The categories are published into the content metadata, so they cannot be republished without
+     * publishing the metadata again; the compression always comes last.
+     */
+    private void executePublishStages() throws IOException, AbstractMojoExecutionException {
+        BuildFingerprint publishFingerprint = null;
+        BuildFingerprint categoryFingerprint = null;
+        BuildFingerprint compressFingerprint = null;
+        metrics.startPhase("publish");
+        if (stages != null) {
+            StageFingerprints fingerprints = stageFingerprints();
+            publishFingerprint = fingerprints.publish(bundleDirectory);
+            categoryFingerprint = fingerprints.category();
+            compressFingerprint = fingerprints.compress();
+            String outdated = checkSiteMetadata();
+            if (outdated == null && stages.whyOutdated(CATEGORY_STAGE, categoryFingerprint, null) != null) {
+                outdated = "the categories changed";
+            }
+            if (!stages.shouldRun(PUBLISH_STAGE, publishFingerprint, outdated)) {
+                metrics.skipPhase();
+                // the publish stage runs whenever the categories change, so only the compression may be outdated
+                metrics.startPhase("category");
+                stages.shouldRun(CATEGORY_STAGE, categoryFingerprint, null);
+                metrics.skipPhase();
+                executeCompressStage(compressFingerprint, true);
+                return;
+            }
+        }
+        metrics.addBytesRead(BuildMetrics.sizeOf(bundleDirectory));
+        executeP2PublisherPlugin();
+        metrics.addBytesWritten(BuildMetrics.sizeOf(new File(destinationDirectory)));
+        metrics.startPhase("category");
+        if (stages == null) {
+            executeCategoryPublisher();
+            metrics.startPhase("compress");
+            executeMetadataCompression();
+            return;
+        }
+        stages.completed(PUBLISH_STAGE, publishFingerprint);
+        if (stages.shouldRun(CATEGORY_STAGE, categoryFingerprint, null, PUBLISH_STAGE)) {
+            executeCategoryPublisher();
+            stages.completed(CATEGORY_STAGE, categoryFingerprint);
+        } else {
+            metrics.skipPhase();
+        }
+        executeCompressStage(compressFingerprint, false);
+    }
+
+    /**
+     * @param recompress whether the metadata was compressed before with the previous options
+     */
+    private void executeCompressStage(BuildFingerprint compressFingerprint, boolean recompress) throws IOException {
+        metrics.startPhase("compress");
+        if (!stages.shouldRun(COMPRESS_STAGE, compressFingerprint, null, PUBLISH_STAGE, CATEGORY_STAGE)) {
+            metrics.skipPhase();
+            return;
+        }
+        MetadataCompressor compressor = createMetadataCompressor(new File(destinationDirectory));
+        if (recompress) {
+            compressor.recompress();
+        } else {
+            compressor.execute();
+        }
+        stages.completed(COMPRESS_STAGE, compressFingerprint);
+    }
+
+    private String checkSiteMetadata() {
+        File repository = new File(destinationDirectory);
+        if (!MetadataFiles.exists(repository, MetadataFiles.CONTENT)
+                || !MetadataFiles.exists(repository, MetadataFiles.ARTIFACTS)) {
+            return "the site metadata does not exist";
+        }
+        return null;
+    }
 
-    	return finalHash.toString();
+    /**
+     * Built on each use as the shard selects its part of the artifacts.
+     */
+    private StageFingerprints stageFingerprints() {
+        return StageFingerprints.builder()
+                .digestService(digests)
+                .pluginVersion(pluginVersion)
+                .artifacts(artifacts)
+                .features(features)
+                .eclipseArtifacts(p2)
+                .sites(sites)
+                .repositories(projectRepos)
+                .batchBomResolution(batchBomResolution)
+                .pedantic(pedantic)
+                .skipInvalidArtifacts(skipInvalidArtifacts)
+                .deduplicateArtifacts(deduplicateArtifacts)
+                .destinationDirectory(new File(destinationDirectory))
+                .repositoryName(project.getName())
+                .additionalArgs(additionalArgs)
+                .nativePublishing(nativePublishing)
+                .appendPublishing(appendPublishing)
+                .inProcessCategoryPublishing(inProcessCategoryPublishing)
+                .categoryFileURL(categoryFileURL)
+                .compressSite(compressSite)
+                .xzCompressSite(xzCompressSite)
+                .compressionLevel(compressionLevel)
+                .shardBy(shardBy)
+                .shardGroupIdSegments(shardGroupIdSegments)
+                .shardSizeInMegabytes(shardSizeInMegabytes)
+                .build();
     }
 
-    private boolean checkForHash() {
+    private boolean checkForHash(Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts,
+                                 Multimap<P2Artifact, ResolvedArtifact> resolvedFeatures) throws IOException {
     	if (!artifactsChecksumGenerate) {
     		// build will not generate a hash so it is not possible to check
     		return false;
     	}
-    	// generate the dependencies checksum
-    	this.artifactsChecksumHash = computeHashForArtifacts();
+    	// generate the build fingerprint
+    	this.artifactsChecksumHash = stageFingerprints().build(resolvedArtifacts, resolvedFeatures);
+    	log.debug("Build fingerprint: " + artifactsChecksumHash);
 
-    	// skip if equal and file exists : let's check
-		if (artifactsChecksumSkipIfEqual && artifactsChecksum != null && artifactsChecksum.exists()) {
+    	// skip if equal and both the file and the site exist : let's check
+		if (artifactsChecksumSkipIfEqual && artifactsChecksum != null && artifactsChecksum.exists()
+				&& new File(destinationDirectory).isDirectory()) {
 			Properties prop = new Properties();
 			InputStream input = null;
 
@@ -343,14 +995,94 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
 
 	private void initializeEnvironment() throws IOException {
         Logger.initialize(log);
-        bundlesDestinationFolder = new File(buildDirectory, BUNDLES_DESTINATION_FOLDER);
-        featuresDestinationFolder = new File(buildDirectory, FEATURES_DESTINATION_FOLDER);
-        FileUtils.deleteDirectory(new File(buildDirectory, BUNDLES_TOP_FOLDER));
-        FileUtils.forceMkdir(bundlesDestinationFolder);
-        FileUtils.forceMkdir(featuresDestinationFolder);
+        BuildTimestamp timestamp = BuildTimestamp.initialize(outputTimestamp);
+        if (timestamp.isReproducible()) {
+            log.info("Reproducible build with the timestamp " + timestamp.getQualifier());
+        }
+        bundlesDestinationFolder = new File(bundleDirectory, BUNDLES_DESTINATION_FOLDER);
+        featuresDestinationFolder = new File(bundleDirectory, FEATURES_DESTINATION_FOLDER);
+        digests = DigestService.load(DigestService.indexFile(new File(cacheDirectory, DIGEST_CACHE_FOLDER),
+                new File(buildDirectory)), Runtime.getRuntime().availableProcessors());
+        stages = incrementalBuild ? new BuildStages(new File(buildDirectory, STAGES_FOLDER)) : null;
+        deduplicator = new ArtifactDeduplicator(digests, deduplicateArtifacts);
+        sharedCache = lookupReactorCache();
+        bundleStore = persistentBundleCache ? FileCacheStore.open(new File(cacheDirectory, "bundles"),
+                TimeUnit.SECONDS.toMillis(cacheLockTimeoutInSeconds)) : null;
         artifacts = artifacts != null ? artifacts : new ArrayList<P2Artifact>();
         features = features != null ? features : new ArrayList<P2Artifact>();
         p2 = p2 != null ? p2 : new ArrayList<EclipseArtifact>();
+        sites = sites != null ? sites : new ArrayList<P2Site>();
+        if (!sites.isEmpty() && !isBundling()) {
+            throw new IllegalStateException("The sites can be published only by the goal bundling their artifacts");
+        }
+    }
+
+    private void initializeArtifacts() throws IOException {
+        importBoms();
+        initializeBuildShard();
+    }
+
+    /**
+     * Replaces every BOM with the artifacts managed by it. The artifacts configured explicitly take precedence.
+     */
+    private void importBoms() {
+        Set<String> configuredIds = new HashSet<String>();
+        for (P2Artifact p2Artifact : artifacts) {
+            configuredIds.add(p2Artifact.getId());
+        }
+        List<P2Artifact> imported = new ArrayList<P2Artifact>();
+        for (P2Artifact p2Artifact : artifacts) {
+            if (!p2Artifact.isBom()) {
+                imported.add(p2Artifact);
+                continue;
+            }
+            List<String> managedIds = getArtifactResolver().resolveManagedDependencies(p2Artifact.getBomPomId());
+            int count = 0;
+            for (String managedId : managedIds) {
+                if (configuredIds.add(managedId)) {
+                    P2Artifact managedArtifact = p2Artifact.importArtifact(managedId);
+                    imported.add(managedArtifact);
+                    importedBoms.put(managedArtifact, p2Artifact.getId());
+                    count++;
+                }
+            }
+            log.info(String.format("Imported %d artifacts managed by bom=[%s]", count, p2Artifact.getId()));
+        }
+        artifacts = imported;
+    }
+
+    private void initializeBuildShard() throws IOException {
+        BuildShard shard = new BuildShard(buildShardIndex, buildShardCount);
+        if (shard.isWholeBuild()) {
+            return;
+        }
+        Function<P2Artifact, String> artifactId = new Function<P2Artifact, String>() {
+            @Override
+            public String apply(P2Artifact artifact) {
+                return artifact.getId();
+            }
+        };
+        String buildId = stageFingerprints().shardBuild(shard.getCount());
+        for (P2Artifact artifact : artifacts) {
+            shardRoots.add(artifact.getId());
+        }
+        artifacts = shard.select(artifacts, artifactId);
+        features = shard.select(features, artifactId);
+        p2 = shard.select(p2, new Function<EclipseArtifact, String>() {
+            @Override
+            public String apply(EclipseArtifact artifact) {
+                return artifact.getId();
+            }
+        });
+        shardManifest = buildShardManifest != null ? new ShardManifest(buildShardManifest, shard, buildId) : null;
+        log.info(String.format("Building shard %s: %d artifacts, %d features, %d p2 artifacts", shard,
+                artifacts.size(), features.size(), p2.size()));
+    }
+
+    private void prepareWorkFolder() throws IOException {
+        FileUtils.deleteDirectory(bundleDirectory);
+        FileUtils.forceMkdir(bundlesDestinationFolder);
+        FileUtils.forceMkdir(featuresDestinationFolder);
     }
 
     private void initializeRepositorySystem() {
@@ -361,6 +1093,30 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
             repoSystem = lookup("org.sonatype.aether.RepositorySystem");
         }
         Preconditions.checkNotNull(repoSystem, "Could not initialize RepositorySystem");
+        artifactResolver = new AetherResolver(repoSystem, repoSession, projectRepos, AetherResolver.DEFAULT_SCOPE,
+                offlineFirstResolution ? AetherResolver.offlineFirstPolicy(offlineFreshnessInMinutes) : null);
+    }
+
+    private ReactorCache lookupReactorCache() {
+        if (!reactorCache || session == null || session.getProjects() == null || session.getProjects().size() < 2) {
+            return null;
+        }
+        try {
+            ReactorCache cache = container.lookup(ReactorCache.class);
+            cache.attach(session);
+            return cache;
+        } catch (ComponentLookupException ex) {
+            log.warn("The reactor cache is not available: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private P2ApplicationLauncher lookupLauncher() {
+        try {
+            return container.lookup(P2ApplicationLauncher.class);
+        } catch (ComponentLookupException ex) {
+            throw new RuntimeException("Cannot create the p2 application launcher", ex);
+        }
     }
 
     private Object lookup(String role) {
@@ -371,23 +1127,23 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
         return null;
     }
 
-    private void processArtifacts() {
-        Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts = resolveArtifacts();
-        Set<Artifact> processedArtifacts = processRootArtifacts(resolvedArtifacts);
+    private void processArtifacts(Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts) {
+        Set<ArtifactIdentity> processedArtifacts = processRootArtifacts(resolvedArtifacts);
         processTransitiveArtifacts(resolvedArtifacts, processedArtifacts);
     }
 
-    private Set<Artifact> processRootArtifacts(Multimap<P2Artifact, ResolvedArtifact> processedArtifacts) {
-        Set<Artifact> bundledArtifacts = Sets.newHashSet();
+    private Set<ArtifactIdentity> processRootArtifacts(Multimap<P2Artifact, ResolvedArtifact> processedArtifacts) {
+        Set<ArtifactIdentity> bundledArtifacts = Sets.newHashSet();
         for (P2Artifact p2Artifact : artifacts) {
             for (ResolvedArtifact resolvedArtifact : processedArtifacts.get(p2Artifact)) {
                 if (resolvedArtifact.isRoot()) {
-                    if (bundledArtifacts.add(resolvedArtifact.getArtifact())) {
+                    if (bundledArtifacts.add(resolvedArtifact.getArtifact().getIdentity())) {
+                        claimForShard(resolvedArtifact);
                         bundleArtifact(p2Artifact, resolvedArtifact);
                     } else {
                         String message = String.format("p2-maven-plugin misconfiguration" +
                                 "\n\n\tJar [%s] is configured as an artifact multiple times. " +
-                                "\n\tRemove the duplicate artifact definitions.\n", resolvedArtifact.getArtifact());
+                                "\n\tRemove the duplicate artifact definitions.\n", resolvedArtifact.getArtifact().getIdentity());
                         throw new RuntimeException(message);
                     }
                 }
@@ -396,15 +1152,16 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
         return bundledArtifacts;
     }
 
-    private void processTransitiveArtifacts(Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts, Set<Artifact> bundledArtifacts) {
+    private void processTransitiveArtifacts(Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts, Set<ArtifactIdentity> bundledArtifacts) {
         // then bundle transitive artifacts
         for (P2Artifact p2Artifact : artifacts) {
             for (ResolvedArtifact resolvedArtifact : resolvedArtifacts.get(p2Artifact)) {
                 if (!resolvedArtifact.isRoot()) {
-                    if (!bundledArtifacts.contains(resolvedArtifact.getArtifact())) {
+                    ArtifactIdentity identity = resolvedArtifact.getArtifact().getIdentity();
+                    if (!bundledArtifacts.contains(identity) && claimForShard(resolvedArtifact)) {
                         try {
                             bundleArtifact(p2Artifact, resolvedArtifact);
-                            bundledArtifacts.add(resolvedArtifact.getArtifact());
+                            bundledArtifacts.add(identity);
                         } catch (final RuntimeException ex) {
                             if (skipInvalidArtifacts) {
                                 log.warn(String.format("Skip artifact=[%s]: %s", p2Artifact.getId(), ex.getMessage()));
@@ -413,17 +1170,48 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
                             }
                         }
                     } else {
-                        log.debug(String.format("Not bundling transitive dependency since it has already been bundled [%s]", resolvedArtifact.getArtifact()));
+                        log.debug(String.format("Not bundling transitive dependency since it has already been bundled [%s]", identity));
                     }
                 }
             }
         }
     }
 
-    private void processFeatures() {
-        // artifacts should already have been resolved by processArtifacts()
-        Multimap<P2Artifact, ResolvedArtifact> resolvedFeatures = resolveFeatures();
-        // then bundle the artifacts including the transitive dependencies (if specified so)
+    /**
+     * Records in the shard manifest that this shard bundles the artifact, unless another shard does.
+     *
+     * @return true if this shard bundles the artifact
+     */
+    private boolean isShardRoot(Artifact artifact) {
+        return shardRoots.contains(artifact.getShortId()) || shardRoots.contains(artifact.getExtendedId())
+                || shardRoots.contains(artifact.getLongId());
+    }
+
+    private boolean claimForShard(ResolvedArtifact resolvedArtifact) {
+        if (shardManifest == null) {
+            return true;
+        }
+        Artifact artifact = resolvedArtifact.getArtifact();
+        ArtifactIdentity identity = artifact.getIdentity();
+        if (!resolvedArtifact.isRoot() && isShardRoot(artifact)) {
+            Logger.getLog().debug(String.format(
+                    "Not bundling transitive dependency since the shard configuring it bundles it [%s]", identity));
+            return false;
+        }
+        try {
+            if (shardManifest.claim(identity.getLongId())) {
+                return true;
+            }
+            Logger.getLog().debug(String.format(
+                    "Not bundling transitive dependency since another shard bundles it [%s]", identity));
+            return false;
+        } catch (IOException ex) {
+            throw new RuntimeException("Cannot update the shard manifest " + buildShardManifest, ex);
+        }
+    }
+
+    private void processFeatures(Multimap<P2Artifact, ResolvedArtifact> resolvedFeatures) {
+        // bundle the artifacts including the transitive dependencies (if specified so)
         log.info("Resolved " + resolvedFeatures.size() + " features");
         for (P2Artifact p2Artifact : features) {
             for (ResolvedArtifact resolvedArtifact : resolvedFeatures.get(p2Artifact)) {
@@ -434,14 +1222,49 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
 
     private Multimap<P2Artifact, ResolvedArtifact> resolveArtifacts() {
         Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts = ArrayListMultimap.create();
+        Set<String> resolvedBoms = new HashSet<String>();
         for (P2Artifact p2Artifact : artifacts) {
-            logResolving(p2Artifact);
-            ArtifactResolutionResult resolutionResult = resolveArtifact(p2Artifact);
-            resolvedArtifacts.putAll(p2Artifact, resolutionResult.getResolvedArtifacts());
+            String bom = batchBomResolution ? importedBoms.get(p2Artifact) : null;
+            if (bom == null) {
+                logResolving(p2Artifact);
+                ArtifactResolutionResult resolutionResult = resolveArtifact(p2Artifact);
+                resolvedArtifacts.putAll(p2Artifact, resolutionResult.getResolvedArtifacts());
+            } else if (resolvedBoms.add(bom)) {
+                resolvedArtifacts.putAll(resolveImportedArtifacts(bom));
+            }
         }
         return resolvedArtifacts;
     }
 
+    /**
+     * Resolves all the artifacts imported from the BOM together, if batchBomResolution is enabled.
+     */
+    private Multimap<P2Artifact, ResolvedArtifact> resolveImportedArtifacts(String bom) {
+        List<P2Artifact> imported = new ArrayList<P2Artifact>();
+        List<ArtifactResolutionRequest> resolutionRequests = new ArrayList<ArtifactResolutionRequest>();
+        for (P2Artifact p2Artifact : artifacts) {
+            if (bom.equals(importedBoms.get(p2Artifact))) {
+                imported.add(p2Artifact);
+                resolutionRequests.add(createResolutionRequest(p2Artifact));
+            }
+        }
+        log.info(String.format("Resolving %d artifacts of bom=[%s] transitive=[%s] source=[%s]", imported.size(), bom,
+                imported.get(0).shouldIncludeTransitive(), imported.get(0).shouldIncludeSources()));
+        BuildMetrics.ArtifactTimer timer = metrics.startArtifact(bom);
+        List<ArtifactResolutionResult> resolutionResults = getArtifactResolver().resolve(resolutionRequests);
+        Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts = ArrayListMultimap.create();
+        long resolvedBytes = 0;
+        for (int i = 0; i < imported.size(); i++) {
+            logResolved(resolutionRequests.get(i), resolutionResults.get(i));
+            for (ResolvedArtifact resolvedArtifact : resolutionResults.get(i).getResolvedArtifacts()) {
+                resolvedArtifacts.put(imported.get(i), resolvedArtifact);
+                resolvedBytes += sizeOf(resolvedArtifact);
+            }
+        }
+        timer.stop(resolvedBytes, 0);
+        return resolvedArtifacts;
+    }
+
     private Multimap<P2Artifact, ResolvedArtifact> resolveFeatures() {
         Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts = ArrayListMultimap.create();
         for (P2Artifact p2Artifact : features) {
@@ -453,52 +1276,177 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     }
 
     private void logResolving(EclipseArtifact p2) {
-        log.info(String.format("Resolving artifact=[%s] source=[%s]", p2.getId(),
+        Logger.getLog().info(String.format("Resolving artifact=[%s] source=[%s]", p2.getId(),
                 p2.shouldIncludeSources()));
     }
 
     private void logResolving(P2Artifact p2) {
-        log.info(String.format("Resolving artifact=[%s] transitive=[%s] source=[%s]", p2.getId(), p2.shouldIncludeTransitive(),
-                p2.shouldIncludeSources()));
+        Logger.getLog().info(String.format("Resolving artifact=[%s] transitive=[%s] source=[%s]", p2.getId(),
+                p2.shouldIncludeTransitive(), p2.shouldIncludeSources()));
     }
 
     private ArtifactResolutionResult resolveArtifact(P2Artifact p2Artifact) {
-        ArtifactResolutionRequest resolutionRequest = ArtifactResolutionRequest.builder()
+        BuildMetrics.ArtifactTimer timer = metrics.startArtifact(p2Artifact.getId());
+        ArtifactResolutionRequest resolutionRequest = createResolutionRequest(p2Artifact);
+        ArtifactResolutionResult resolutionResult = resolve(resolutionRequest);
+        logResolved(resolutionRequest, resolutionResult);
+        long resolvedBytes = 0;
+        for (ResolvedArtifact resolvedArtifact : resolutionResult.getResolvedArtifacts()) {
+            resolvedBytes += sizeOf(resolvedArtifact);
+        }
+        timer.stop(resolvedBytes, 0);
+        return resolutionResult;
+    }
+
+    private static ArtifactResolutionRequest createResolutionRequest(P2Artifact p2Artifact) {
+        return ArtifactResolutionRequest.builder()
                 .rootArtifactId(p2Artifact.getId())
                 .resolveSource(p2Artifact.shouldIncludeSources())
                 .resolveTransitive(p2Artifact.shouldIncludeTransitive())
                 .excludes(p2Artifact.getExcludes())
                 .build();
-        ArtifactResolutionResult resolutionResult = getArtifactResolver().resolve(resolutionRequest);
-        logResolved(resolutionRequest, resolutionResult);
-        return resolutionResult;
+    }
+
+    private ArtifactResolutionResult resolve(final ArtifactResolutionRequest resolutionRequest) {
+        if (sharedCache == null) {
+            return getArtifactResolver().resolve(resolutionRequest);
+        }
+        return new ArtifactResolutionResult(sharedCache.resolve(getResolutionCacheKey(resolutionRequest),
+                new Callable<List<ResolvedArtifact>>() {
+                    @Override
+                    public List<ResolvedArtifact> call() {
+                        return getArtifactResolver().resolve(resolutionRequest).getResolvedArtifacts();
+                    }
+                }));
+    }
+
+    /**
+     * The modules may declare different repositories, so they are part of the key.
+     */
+    private String getResolutionCacheKey(ArtifactResolutionRequest resolutionRequest) {
+        List<String> excludes = new ArrayList<String>(resolutionRequest.getExcludes());
+        Collections.sort(excludes);
+        return String.format("%s transitive=%s source=%s excludes=%s repositories=%s",
+                resolutionRequest.getRootArtifactId(), resolutionRequest.isResolveTransitive(),
+                resolutionRequest.isResolveSource(), excludes, projectRepos);
     }
 
     private ArtifactResolver getArtifactResolver() {
-        return new AetherResolver(repoSystem, repoSession, projectRepos);
+        return artifactResolver;
     }
 
     private void logResolved(ArtifactResolutionRequest resolutionRequest, ArtifactResolutionResult resolutionResult) {
         for (ResolvedArtifact resolvedArtifact : resolutionResult.getResolvedArtifacts()) {
-            log.info("\t [JAR] " + resolvedArtifact.getArtifact());
+            Logger.getLog().info("\t [JAR] " + resolvedArtifact.getArtifact());
             if (resolvedArtifact.getSourceArtifact() != null) {
-                log.info("\t [SRC] " + resolvedArtifact.getSourceArtifact().toString());
+                Logger.getLog().info("\t [SRC] " + resolvedArtifact.getSourceArtifact().toString());
             } else if (resolutionRequest.isResolveSource()) {
-                log.warn("\t [SRC] Failed to resolve source for artifact " + resolvedArtifact.getArtifact().toString());
+                Logger.getLog().warn("\t [SRC] Failed to resolve source for artifact " + resolvedArtifact.getArtifact().toString());
             }
         }
     }
 
     private void bundleArtifact(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
+        if (deduplicator.isDuplicate(resolvedArtifact)) {
+            return;
+        }
+        BuildMetrics.ArtifactTimer timer = metrics.startArtifact(resolvedArtifact.getArtifact().toString());
         P2Validator.validateBundleRequest(p2Artifact, resolvedArtifact);
         ArtifactBundler bundler = getArtifactBundler();
         ArtifactBundlerInstructions bundlerInstructions = P2Helper.createBundlerInstructions(p2Artifact, resolvedArtifact);
         ArtifactBundlerRequest bundlerRequest = P2Helper.createBundlerRequest(p2Artifact, resolvedArtifact, bundlesDestinationFolder);
-        bundler.execute(bundlerRequest, bundlerInstructions);
+        String cacheKey = getBundleCacheKey(p2Artifact, resolvedArtifact);
+        if (!restoreSharedBundle(cacheKey, resolvedArtifact, bundlerRequest)) {
+            executeBundler(cacheKey, resolvedArtifact, bundler, bundlerRequest, bundlerInstructions);
+            storeSharedBundle(cacheKey, resolvedArtifact, bundlerRequest);
+        }
+        deduplicator.reportBundleConflict(resolvedArtifact, bundlerRequest.getBinaryOutputFile());
+        timer.stop(sizeOf(resolvedArtifact),
+                BuildMetrics.sizeOf(bundlerRequest.getBinaryOutputFile(), bundlerRequest.getSourceOutputFile()));
+    }
+
+    /**
+     * Bundles the artifact or takes the bundle from the persistent cache, where another build may be writing it at
+     * the same time.
+     */
+    private void executeBundler(String cacheKey, ResolvedArtifact resolvedArtifact, final ArtifactBundler bundler,
+                                final ArtifactBundlerRequest bundlerRequest,
+                                final ArtifactBundlerInstructions bundlerInstructions) {
+        if (bundleStore == null || (resolvedArtifact.isSnapshot() && !BuildTimestamp.get().isReproducible())) {
+            bundler.execute(bundlerRequest, bundlerInstructions);
+            return;
+        }
+        final AtomicBoolean executed = new AtomicBoolean();
+        try {
+            File entry = bundleStore.computeIfAbsent(cacheKey, new FileCacheStore.EntryWriter() {
+                @Override
+                public void write(File folder) throws IOException {
+                    bundler.execute(bundlerRequest, bundlerInstructions);
+                    executed.set(true);
+                    BundleFiles.write(folder, bundlerRequest.getBinaryOutputFile(), bundlerRequest.getSourceOutputFile());
+                }
+            });
+            if (!executed.get()) {
+                BundleFiles.restore(entry, bundlerRequest.getBinaryOutputFile(), bundlerRequest.getSourceOutputFile());
+                Logger.getLog().info("\t [CACHED] " + bundlerRequest.getBinaryInputFile().getName());
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Cannot use the bundle cache for " + resolvedArtifact.getArtifact(), ex);
+        }
+    }
+
+    private boolean restoreSharedBundle(String cacheKey, ResolvedArtifact resolvedArtifact,
+                                        ArtifactBundlerRequest bundlerRequest) {
+        if (sharedCache == null) {
+            return false;
+        }
+        try {
+            if (sharedCache.restoreBundle(cacheKey,
+                    bundlerRequest.getBinaryOutputFile(), bundlerRequest.getSourceOutputFile())) {
+                Logger.getLog().info("\t [SHARED] " + bundlerRequest.getBinaryInputFile().getName());
+                return true;
+            }
+            return false;
+        } catch (IOException ex) {
+            throw new RuntimeException("Cannot restore the bundle of " + resolvedArtifact.getArtifact(), ex);
+        }
+    }
+
+    private void storeSharedBundle(String cacheKey, ResolvedArtifact resolvedArtifact,
+                                   ArtifactBundlerRequest bundlerRequest) {
+        if (sharedCache == null) {
+            return;
+        }
+        try {
+            sharedCache.storeBundle(cacheKey, bundlerRequest.getBinaryOutputFile(), bundlerRequest.getSourceOutputFile());
+        } catch (IOException ex) {
+            Logger.getLog().warn("Cannot share the bundle of " + resolvedArtifact.getArtifact() + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Everything the bundle depends on: the configuration of the artifact, the resolved files and the options
+     * of the bundler; null if no cache is used.
+     */
+    private String getBundleCacheKey(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
+        if (sharedCache == null && bundleStore == null) {
+            return null;
+        }
+        try {
+            return stageFingerprints().bundleCacheKey(p2Artifact, resolvedArtifact);
+        } catch (IOException ex) {
+            throw new RuntimeException("Cannot compute the fingerprint of " + resolvedArtifact.getArtifact(), ex);
+        }
+    }
+
+    private static long sizeOf(ResolvedArtifact resolvedArtifact) {
+        Artifact source = resolvedArtifact.getSourceArtifact();
+        return BuildMetrics.sizeOf(resolvedArtifact.getArtifact().getFile(), source != null ? source.getFile() : null);
     }
 
     private void handleFeature(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
         log.debug("Handling feature " + p2Artifact.getId());
+        BuildMetrics.ArtifactTimer timer = metrics.startArtifact(resolvedArtifact.getArtifact().toString());
         ArtifactBundlerRequest bundlerRequest = P2Helper.createBundlerRequest(p2Artifact, resolvedArtifact, featuresDestinationFolder);
         try {
             File inputFile = bundlerRequest.getBinaryInputFile();
@@ -506,21 +1454,21 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
             //This will also copy the input to the output
             JarUtils.adjustFeatureQualifierVersionWithTimestamp(inputFile, outputFile);
             log.info("Copied " + inputFile + " to " + outputFile);
+            timer.stop(BuildMetrics.sizeOf(inputFile), BuildMetrics.sizeOf(outputFile));
         } catch (Exception ex) {
             throw new RuntimeException("Error while bundling jar or source: " + bundlerRequest.getBinaryInputFile().getName(), ex);
         }
     }
 
     private void processEclipseArtifacts() {
-        DefaultEclipseResolver resolver = new DefaultEclipseResolver(projectRepos, bundlesDestinationFolder);
+        DefaultEclipseResolver resolver = new DefaultEclipseResolver(projectRepos, bundlesDestinationFolder,
+                p2DownloadCache ? new File(cacheDirectory, P2_DOWNLOAD_CACHE) : null);
         for (EclipseArtifact artifact : p2) {
             logResolving(artifact);
-            String[] tokens = artifact.getId().split(":");
-            if (tokens.length != 2) {
-                throw new RuntimeException("Wrong format " + artifact.getId());
-            }
-            EclipseResolutionRequest request = new EclipseResolutionRequest(tokens[0], tokens[1], artifact.shouldIncludeSources());
-            resolver.resolve(request);
+            EclipseResolutionRequest request = P2Helper.createEclipseRequest(artifact);
+            BuildMetrics.ArtifactTimer timer = metrics.startArtifact(artifact.getId());
+            List<File> resolved = resolver.resolve(request).getResolved();
+            timer.stop(0, BuildMetrics.sizeOf(resolved.toArray(new File[resolved.size()])));
         }
     }
 
@@ -529,31 +1477,108 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     }
 
     private void executeP2PublisherPlugin() throws IOException, MojoExecutionException {
-        prepareDestinationDirectory();
+        boolean append = isAppendPublishing();
+        if (!append) {
+            prepareDestinationDirectory();
+        }
+        if (nativePublishing) {
+            NativeBundlePublisher.builder()
+                    .sourceLocation(bundleDirectory)
+                    .repositoryLocation(new File(destinationDirectory))
+                    .repositoryName(project.getName())
+                    .compressSite(false)
+                    .append(append)
+                    .digestService(digests)
+                    .build()
+                    .execute();
+            return;
+        }
         BundlePublisher publisher = BundlePublisher.builder()
                 .mavenProject(project)
                 .mavenSession(session)
                 .buildPluginManager(pluginManager)
-                .compressSite(compressSite)
+                .compressSite(false)
                 .additionalArgs(additionalArgs)
+                .sourceLocation(bundleDirectory)
                 .build();
         publisher.execute();
     }
 
+    private boolean isAppendPublishing() {
+        if (appendPublishing && !nativePublishing) {
+            Logger.getLog().warn("appendPublishing requires nativePublishing - the site will be published from scratch");
+            return false;
+        }
+        return appendPublishing;
+    }
+
     private void prepareDestinationDirectory() throws IOException {
         FileUtils.deleteDirectory(new File(destinationDirectory));
     }
 
     private void executeCategoryPublisher() throws AbstractMojoExecutionException, IOException {
         prepareCategoryLocationFile();
-        CategoryPublisher publisher = CategoryPublisher.builder()
-                .p2ApplicationLauncher(launcher)
+        createCategoryPublishingService(Suppliers.ofInstance(launcher))
+                .publish(categoryFileURL, destinationDirectory, inProcessCategoryPublishing);
+    }
+
+    /**
+     * @param launchers supplies the launchers of the forked publisher, see {@link CategoryPublishingService}
+     */
+    private CategoryPublishingService createCategoryPublishingService(Supplier<P2ApplicationLauncher> launchers) {
+        return CategoryPublishingService.builder()
+                .launchers(launchers)
                 .additionalArgs(additionalArgs)
                 .forkedProcessTimeoutInSeconds(forkedProcessTimeoutInSeconds)
-                .categoryFileLocation(categoryFileURL)
-                .metadataRepositoryLocation(destinationDirectory)
                 .build();
-        publisher.execute();
+    }
+
+    /**
+     * The publishers always write plain metadata, the compression is applied once the categories are published.
+     */
+    private void executeMetadataCompression() throws IOException {
+        executeMetadataCompression(new File(destinationDirectory));
+    }
+
+    private void executeMetadataCompression(File repositoryLocation) throws IOException {
+        createMetadataCompressor(repositoryLocation).execute();
+    }
+
+    private MetadataCompressor createMetadataCompressor(File repositoryLocation) {
+        return MetadataCompressor.builder()
+                .repositoryLocation(repositoryLocation)
+                .compressSite(compressSite)
+                .xzCompressSite(xzCompressSite)
+                .compressionLevel(compressionLevel)
+                .build();
+    }
+
+    private void executeCompositePublisher() throws IOException {
+        prepareCategoryLocationFile();
+        CompositePublisher.builder()
+                .sourceLocation(bundleDirectory)
+                .repositoryLocation(new File(destinationDirectory))
+                .repositoryName(project.getName())
+                .shardStrategy(getShardStrategy())
+                .groupIdSegments(shardGroupIdSegments)
+                .shardSize(shardSizeInMegabytes * 1024L * 1024L)
+                .categoryFileLocation(categoryFileURL)
+                .stateFile(new File(buildDirectory, COMPOSITE_STATE_FILE))
+                .compressSite(compressSite)
+                .xzCompressSite(xzCompressSite)
+                .compressionLevel(compressionLevel)
+                .digestService(digests)
+                .build()
+                .execute();
+    }
+
+    private CompositePublisher.ShardStrategy getShardStrategy() {
+        if ("groupId".equalsIgnoreCase(shardBy)) {
+            return CompositePublisher.ShardStrategy.GROUP_ID;
+        } else if ("size".equalsIgnoreCase(shardBy)) {
+            return CompositePublisher.ShardStrategy.SIZE;
+        }
+        throw new IllegalArgumentException("Unsupported shardBy value [" + shardBy + "], expected groupId or size");
     }
 
     private void prepareCategoryLocationFile() throws IOException {
@@ -570,11 +1595,14 @@ public class P2Mojo extends AbstractMojo implements Contextualizable {
     }
 
     private void cleanupEnvironment() throws IOException {
-        File workFolder = new File(buildDirectory, BUNDLES_TOP_FOLDER);
+        if (incrementalBuild) {
+            // the bundles are the inputs of the publish stage of the next execution
+            return;
+        }
         try {
-            FileUtils.deleteDirectory(workFolder);
+            FileUtils.deleteDirectory(bundleDirectory);
         } catch (IOException ex) {
-            log.warn("Cannot cleanup the work folder " + workFolder.getAbsolutePath());
+            log.warn("Cannot cleanup the work folder " + bundleDirectory.getAbsolutePath());
         }
     }
 
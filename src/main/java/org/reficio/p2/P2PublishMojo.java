@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2;
+
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Publishes the plugins and features of an existing bundle directory (e.g. written by the bundle goal) as a p2
+ * repository, without resolving or wrapping anything - the metadata and the categories can be regenerated without
+ * bundling the artifacts again. Takes the same configuration as the site goal.
+ *
+ * @since 1.2.0
+ */
+@Mojo(
+        name = "publish",
+        defaultPhase = LifecyclePhase.PACKAGE
+)
+public class P2PublishMojo extends P2Mojo {
+
+    @Override
+    protected boolean isBundling() {
+        return false;
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One of several update sites published by one execution from the shared bundles.
+ * This class is mutable only because the values are set by Maven using the setters.
+ *
+ * @since 1.2.0
+ */
+public class P2Site {
+
+    /**
+     * Name of the site, also the name of its folder.
+     */
+    private String name;
+
+    /**
+     * Ids of the configured artifacts, features and p2 artifacts published by the site (with their transitive
+     * dependencies, if configured so); all of them if empty.
+     */
+    private List<String> includes = new ArrayList<String>();
+
+    /**
+     * Category definitions of the site, the categoryFileURL of the plugin if not set.
+     */
+    private String categoryFileURL;
+
+    /**
+     * Folder of the site, the folder named after the site in the destinationDirectory of the plugin if not set.
+     */
+    private String destinationDirectory;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public void setIncludes(List<String> includes) {
+        this.includes = includes;
+    }
+
+    public boolean includes(String id) {
+        return includes == null || includes.isEmpty() || includes.contains(id);
+    }
+
+    public String getCategoryFileURL() {
+        return categoryFileURL;
+    }
+
+    public void setCategoryFileURL(String categoryFileURL) {
+        this.categoryFileURL = categoryFileURL;
+    }
+
+    public String getDestinationDirectory() {
+        return destinationDirectory;
+    }
+
+    public void setDestinationDirectory(String destinationDirectory) {
+        this.destinationDirectory = destinationDirectory;
+    }
+
+}
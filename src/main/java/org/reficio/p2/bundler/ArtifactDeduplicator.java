@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.bundler;
+
+import com.google.common.collect.Multimap;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.fingerprint.DigestService;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ArtifactIdentity;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Skips the transitive dependencies having the same content as another bundled artifact, if enabled, and reports
+ * the bundles of different artifacts that have the same symbolic name and version.
+ *
+ * @since 1.2.0
+ */
+public class ArtifactDeduplicator {
+
+    private final DigestService digests;
+    private final boolean enabled;
+    private final DuplicateDetector bundles;
+
+    /**
+     * Bundle kept for every transitive dependency skipped as a duplicate
+     */
+    private final Map<ArtifactIdentity, ResolvedArtifact> duplicates = new HashMap<ArtifactIdentity, ResolvedArtifact>();
+
+    public ArtifactDeduplicator(DigestService digests, boolean enabled) {
+        this.digests = digests;
+        this.enabled = enabled;
+        this.bundles = new DuplicateDetector(digests);
+    }
+
+    /**
+     * Decides which transitive dependencies are not bundled as they have the same content as another artifact.
+     * The artifacts are visited in the order they are bundled in - the roots first, then the transitive dependencies,
+     * in the declaration order - so the first one is kept; the configured artifacts are always bundled.
+     */
+    public void findDuplicates(List<P2Artifact> artifacts, Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts)
+            throws IOException {
+        duplicates.clear();
+        if (!enabled) {
+            return;
+        }
+        DuplicateDetector detector = new DuplicateDetector(digests);
+        for (boolean roots : new boolean[]{true, false}) {
+            for (P2Artifact p2Artifact : artifacts) {
+                for (ResolvedArtifact resolvedArtifact : resolvedArtifacts.get(p2Artifact)) {
+                    if (resolvedArtifact.isRoot() != roots) {
+                        continue;
+                    }
+                    ResolvedArtifact original = detector.claimContent(resolvedArtifact);
+                    if (original == null) {
+                        continue;
+                    }
+                    if (roots) {
+                        Logger.getLog().warn(String.format(
+                                "Artifact [%s] has the same content as [%s] - bundling both as configured",
+                                resolvedArtifact.getArtifact(), original.getArtifact()));
+                    } else {
+                        duplicates.put(resolvedArtifact.getArtifact().getIdentity(), original);
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean isDuplicate(ResolvedArtifact resolvedArtifact) {
+        ResolvedArtifact original = getOriginal(resolvedArtifact);
+        if (original == null) {
+            return false;
+        }
+        Logger.getLog().info(String.format("\t [DUPLICATE] %s has the same content as %s - skipping",
+                resolvedArtifact.getArtifact(), original.getArtifact()));
+        return true;
+    }
+
+    /**
+     * @return the artifact whose bundle is published instead of the given one, the given one if it is bundled
+     */
+    public ResolvedArtifact getBundled(ResolvedArtifact resolvedArtifact) {
+        ResolvedArtifact original = getOriginal(resolvedArtifact);
+        return original != null ? original : resolvedArtifact;
+    }
+
+    public void reportBundleConflict(ResolvedArtifact resolvedArtifact, File bundle) {
+        try {
+            Artifact other = bundles.claimBundle(resolvedArtifact.getArtifact(), bundle);
+            if (other != null) {
+                Logger.getLog().warn(String.format("The bundles of [%s] and [%s] have the same symbolic name and " +
+                        "version - only one of them is published", resolvedArtifact.getArtifact(), other));
+            }
+        } catch (IOException ex) {
+            Logger.getLog().warn("Cannot read the manifest of " + bundle + ": " + ex.getMessage());
+        }
+    }
+
+    private ResolvedArtifact getOriginal(ResolvedArtifact resolvedArtifact) {
+        return resolvedArtifact.isRoot() ? null : duplicates.get(resolvedArtifact.getArtifact().getIdentity());
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.bundler;
+
+import org.reficio.p2.fingerprint.DigestService;
+import org.reficio.p2.publisher.metadata.UnitFactory;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Detects the artifacts that end up as the same bundle: relocated or republished artifacts whose jars have the
+ * same content under different coordinates, and the bundles of different artifacts having the same symbolic name
+ * and version, of which only one can be published. The first artifact recorded is the one kept, so the artifacts
+ * have to be recorded in a deterministic order. Safe to use from several bundling threads.
+ *
+ * @since 1.2.0
+ */
+public class DuplicateDetector {
+
+    private final DigestService digests;
+    private final ConcurrentMap<String, ResolvedArtifact> contents = new ConcurrentHashMap<String, ResolvedArtifact>();
+    private final ConcurrentMap<String, Artifact> bundles = new ConcurrentHashMap<String, Artifact>();
+
+    public DuplicateDetector(DigestService digests) {
+        this.digests = digests;
+    }
+
+    /**
+     * Records the content of the jar of the artifact.
+     *
+     * @return the artifact with the same content recorded before, null if the content is new
+     */
+    public ResolvedArtifact claimContent(ResolvedArtifact resolvedArtifact) throws IOException {
+        ResolvedArtifact owner = contents.putIfAbsent(digests.digest(resolvedArtifact.getArtifact().getFile()),
+                resolvedArtifact);
+        return owner == null || isSame(owner.getArtifact(), resolvedArtifact.getArtifact()) ? null : owner;
+    }
+
+    /**
+     * Records the symbolic name and the version of the bundle created for the artifact.
+     *
+     * @return the other artifact whose bundle has the same symbolic name and version, null if there is none
+     */
+    public Artifact claimBundle(Artifact artifact, File bundle) throws IOException {
+        Manifest manifest = readManifest(bundle);
+        String symbolicName = manifest != null ? UnitFactory.bundleSymbolicName(manifest) : null;
+        if (symbolicName == null) {
+            return null;
+        }
+        Artifact owner = bundles.putIfAbsent(symbolicName + "_" + UnitFactory.bundleVersion(manifest), artifact);
+        return owner == null || isSame(owner, artifact) ? null : owner;
+    }
+
+    private static boolean isSame(Artifact first, Artifact second) {
+        return first.getIdentity().equals(second.getIdentity());
+    }
+
+    private static Manifest readManifest(File jar) throws IOException {
+        JarFile jarFile = new JarFile(jar);
+        try {
+            return jarFile.getManifest();
+        } finally {
+            jarFile.close();
+        }
+    }
+
+}
@@ -25,6 +25,8 @@ import org.reficio.p2.bundler.ArtifactBundler;
 import org.reficio.p2.bundler.ArtifactBundlerInstructions;
 import org.reficio.p2.bundler.ArtifactBundlerRequest;
 import org.reficio.p2.logger.Logger;
+import org.reficio.p2.metrics.FlightRecorder;
+import org.reficio.p2.metrics.FlightRecorder.FlightEvent;
 import org.reficio.p2.utils.BundleUtils;
 import org.reficio.p2.utils.JarUtils;
 
@@ -89,30 +91,51 @@ public class AquteBundler implements ArtifactBundler {
     }
 
     private void handleVanillaJarWrap(ArtifactBundlerRequest request, ArtifactBundlerInstructions instructions) throws Exception {
+        String artifact = request.getBinaryInputFile().getName();
+        FlightEvent event = FlightRecorder.begin(FlightRecorder.BUNDLE, artifact).step("analyze")
+                .bytes(request.getBinaryInputFile().length());
+        String outcome = FlightRecorder.FAILURE;
         Analyzer analyzer = AquteHelper.buildAnalyzer(request, instructions, pedantic);
         try {
-            populateJar(analyzer, request.getBinaryOutputFile());
+            Jar jar = analyzer.getJar();
+            try {
+                jar.setManifest(analyzer.calcManifest());
+                outcome = FlightRecorder.SUCCESS;
+            } finally {
+                event.commit(outcome);
+            }
+            writeJar(jar, artifact, request.getBinaryOutputFile());
             bundleUtils.reportErrors(analyzer);
             removeSignature(request.getBinaryOutputFile());
+            JarUtils.normalizeJar(request.getBinaryOutputFile());
         } finally {
             analyzer.close();
         }
     }
 
-    private void populateJar(Analyzer analyzer, File outputFile) throws Exception {
-        Jar jar = analyzer.getJar();
-        jar.setManifest(analyzer.calcManifest());
+    private void writeJar(Jar jar, String artifact, File outputFile) throws Exception {
+        FlightEvent event = FlightRecorder.begin(FlightRecorder.BUNDLE, artifact).step("write");
+        String outcome = FlightRecorder.FAILURE;
         try {
             jar.write(outputFile);
+            outcome = FlightRecorder.SUCCESS;
         } finally {
             jar.close();
+            event.bytes(outputFile.length()).commit(outcome);
         }
     }
 
     private void removeSignature(File jar) {
         if (JarUtils.containsSignature(jar)) {
             log().info("\t [UNSIGN] " + jar.getName());
-            JarUtils.removeSignature(jar);
+            FlightEvent event = FlightRecorder.begin(FlightRecorder.BUNDLE, jar.getName()).step("unsign");
+            String outcome = FlightRecorder.FAILURE;
+            try {
+                JarUtils.removeSignature(jar);
+                outcome = FlightRecorder.SUCCESS;
+            } finally {
+                event.bytes(jar.length()).commit(outcome);
+            }
         }
     }
 
@@ -150,10 +173,12 @@ public class AquteBundler implements ArtifactBundler {
             Manifest manifest = getManifest(jar);
             decorateSourceManifest(manifest, name, referencedBundleSymbolicName, symbolicName, version);
             jar.setManifest(manifest);
-            jar.write(request.getSourceOutputFile());
-        } finally {
+        } catch (Exception ex) {
             jar.close();
+            throw ex;
         }
+        writeJar(jar, request.getSourceInputFile().getName(), request.getSourceOutputFile());
+        JarUtils.normalizeJar(request.getSourceOutputFile());
     }
 
     private Manifest getManifest(Jar jar) throws Exception {
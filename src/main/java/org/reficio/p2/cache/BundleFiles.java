@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.cache;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Layout of a cached bundle: the bundle and, if there is one, its source bundle.
+ *
+ * @since 1.2.0
+ */
+public final class BundleFiles {
+
+    private static final String BINARY = "binary.jar";
+    private static final String SOURCE = "source.jar";
+
+    private BundleFiles() {
+    }
+
+    public static void write(File folder, File binaryFile, File sourceFile) throws IOException {
+        FileUtils.copyFile(binaryFile, new File(folder, BINARY));
+        if (sourceFile != null && sourceFile.isFile()) {
+            FileUtils.copyFile(sourceFile, new File(folder, SOURCE));
+        }
+    }
+
+    public static void restore(File folder, File binaryFile, File sourceFile) throws IOException {
+        FileUtils.copyFile(new File(folder, BINARY), binaryFile);
+        File source = new File(folder, SOURCE);
+        if (source.exists() && sourceFile != null) {
+            FileUtils.copyFile(source, sourceFile);
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Persistent cache of folders shared by concurrent builds, also across processes (e.g. several builds of a CI agent
+ * using the same local repository).
+ * <p>
+ * An entry is written to a private temporary folder and published by renaming it, so it is either complete or not
+ * visible at all; published entries are never modified, so reading them takes no lock. Writers lock a stripe
+ * of the keys (all the keys with the same prefix) with a file lock, so a process that finds another one writing the
+ * same entry waits for it and then reuses it instead of doing the same work. The operating system releases the lock
+ * of a crashed process; a lock that is not released within the timeout (e.g. a hung build or a file system without
+ * locking) is ignored, the entry is written without it - the rename keeps it consistent. Temporary folders left
+ * behind by crashed builds are removed when the store is opened.
+ * <p>
+ * The keys have to be hexadecimal digests (e.g. {@link org.reficio.p2.fingerprint.BuildFingerprint#compute()}).
+ *
+ * @since 1.2.0
+ */
+public class FileCacheStore {
+
+    /**
+     * Writes the content of a new entry.
+     */
+    public interface EntryWriter {
+        void write(File folder) throws IOException;
+    }
+
+    private static final String ENTRIES = "entries";
+    private static final String LOCKS = "locks";
+    private static final String TMP = "tmp";
+    private static final int STRIPE_PREFIX_LENGTH = 2;
+    private static final long STALE_TMP_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long LOCK_RETRY_MILLIS = 100;
+
+    /**
+     * File locks are held by the whole process, the threads of one process are serialized on these locks first.
+     */
+    private static final ConcurrentMap<String, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<String, ReentrantLock>();
+
+    private final File root;
+    private final long lockTimeoutMillis;
+
+    private FileCacheStore(File root, long lockTimeoutMillis) {
+        this.root = root;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+    }
+
+    public static FileCacheStore open(File root, long lockTimeoutMillis) throws IOException {
+        checkArgument(lockTimeoutMillis >= 0, "lockTimeoutMillis cannot be negative");
+        FileCacheStore store = new FileCacheStore(root, lockTimeoutMillis);
+        FileUtils.forceMkdir(new File(root, ENTRIES));
+        FileUtils.forceMkdir(new File(root, LOCKS));
+        FileUtils.forceMkdir(new File(root, TMP));
+        store.removeStaleTemporaryFolders();
+        return store;
+    }
+
+    /**
+     * @return the folder of the published entry, null if there is none
+     */
+    public File get(String key) {
+        File entry = entryFolder(key);
+        return entry.isDirectory() ? entry : null;
+    }
+
+    /**
+     * @return the folder of the entry, written by the given writer unless it has already been published
+     */
+    public File computeIfAbsent(String key, EntryWriter writer) throws IOException {
+        File entry = get(key);
+        if (entry != null) {
+            return entry;
+        }
+        String stripe = key.substring(0, Math.min(STRIPE_PREFIX_LENGTH, key.length()));
+        ReentrantLock processLock = processLock(stripe);
+        boolean locked = lockWithinTimeout(processLock);
+        try {
+            RandomAccessFile lockFile = new RandomAccessFile(new File(new File(root, LOCKS), stripe + ".lock"), "rw");
+            try {
+                FileLock lock = acquire(lockFile.getChannel(), stripe);
+                try {
+                    entry = get(key);
+                    return entry != null ? entry : publish(key, writer);
+                } finally {
+                    if (lock != null) {
+                        lock.release();
+                    }
+                }
+            } finally {
+                IOUtils.closeQuietly(lockFile);
+            }
+        } finally {
+            if (locked) {
+                processLock.unlock();
+            }
+        }
+    }
+
+    private File publish(String key, EntryWriter writer) throws IOException {
+        File tmp = new File(new File(root, TMP), UUID.randomUUID().toString());
+        FileUtils.forceMkdir(tmp);
+        try {
+            writer.write(tmp);
+            File entry = entryFolder(key);
+            FileUtils.forceMkdir(entry.getParentFile());
+            if (!tmp.renameTo(entry) && !entry.isDirectory()) {
+                throw new IOException("Cannot publish the cache entry " + entry);
+            }
+            return entry;
+        } finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * @return the lock, null if it could not be acquired within the timeout
+     */
+    private FileLock acquire(FileChannel channel, String stripe) throws IOException {
+        long deadline = System.currentTimeMillis() + lockTimeoutMillis;
+        while (true) {
+            try {
+                FileLock lock = channel.tryLock();
+                if (lock != null) {
+                    return lock;
+                }
+            } catch (OverlappingFileLockException ex) {
+                // held by another store instance of this process, wait as for another process
+            } catch (IOException ex) {
+                Logger.getLog().warn(String.format("Cannot lock the cache stripe [%s], continuing without the lock: %s",
+                        stripe, ex.getMessage()));
+                return null;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                Logger.getLog().warn(String.format("The cache stripe [%s] has been locked for more than %d ms, " +
+                        "considering the lock stale", stripe, lockTimeoutMillis));
+                return null;
+            }
+            sleep();
+        }
+    }
+
+    private boolean lockWithinTimeout(ReentrantLock lock) throws IOException {
+        try {
+            return lock.tryLock(lockTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the cache lock");
+        }
+    }
+
+    private void removeStaleTemporaryFolders() {
+        File[] folders = new File(root, TMP).listFiles();
+        if (folders == null) {
+            return;
+        }
+        long threshold = System.currentTimeMillis() - STALE_TMP_MILLIS;
+        for (File folder : folders) {
+            if (folder.lastModified() < threshold) {
+                FileUtils.deleteQuietly(folder);
+            }
+        }
+    }
+
+    private File entryFolder(String key) {
+        String stripe = key.substring(0, Math.min(STRIPE_PREFIX_LENGTH, key.length()));
+        return new File(new File(new File(root, ENTRIES), stripe), key);
+    }
+
+    private ReentrantLock processLock(String stripe) {
+        String id = new File(root, stripe).getAbsolutePath();
+        ReentrantLock lock = PROCESS_LOCKS.get(id);
+        if (lock == null) {
+            ReentrantLock created = new ReentrantLock();
+            lock = PROCESS_LOCKS.putIfAbsent(id, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+    private static void sleep() throws IOException {
+        try {
+            Thread.sleep(LOCK_RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the cache lock");
+        }
+    }
+
+}
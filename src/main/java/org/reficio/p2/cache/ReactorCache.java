@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Resolved artifacts and finished bundles shared by all the executions of the plugin in a reactor build.
+ * <p>
+ * The component is a singleton of the plugin realm, which Maven reuses for all the modules of a build; the cached
+ * entries are dropped as soon as the component is attached to a different session, so they never outlive the
+ * reactor. The bundles are copied to a private temporary folder as the work folders of the modules are cleaned
+ * up after publishing. All operations are thread-safe, modules built in parallel (mvn -T) resolve an artifact
+ * only once: concurrent requests for the same key wait for the first one.
+ *
+ * @since 1.2.0
+ */
+@Component(role = ReactorCache.class)
+public class ReactorCache implements Disposable {
+
+    private final ConcurrentMap<String, FutureTask<List<ResolvedArtifact>>> resolutions =
+            new ConcurrentHashMap<String, FutureTask<List<ResolvedArtifact>>>();
+    private final ConcurrentMap<String, File> bundles = new ConcurrentHashMap<String, File>();
+    private WeakReference<Object> session = new WeakReference<Object>(null);
+    private File folder;
+
+    /**
+     * Binds the cache to the session of the current build. The executions of the modules built in parallel get
+     * clones of the session, they share its request though.
+     */
+    public void attach(MavenSession session) {
+        attach(session.getRequest());
+    }
+
+    synchronized void attach(Object sessionKey) {
+        if (session.get() == sessionKey) {
+            return;
+        }
+        clear();
+        session = new WeakReference<Object>(sessionKey);
+    }
+
+    /**
+     * @return the cached result of the resolution, the resolution is executed only if there is none yet
+     */
+    public List<ResolvedArtifact> resolve(String key, Callable<List<ResolvedArtifact>> resolution) {
+        FutureTask<List<ResolvedArtifact>> task = new FutureTask<List<ResolvedArtifact>>(resolution);
+        FutureTask<List<ResolvedArtifact>> cached = resolutions.putIfAbsent(key, task);
+        if (cached == null) {
+            cached = task;
+            task.run();
+        } else {
+            Logger.getLog().debug("Reusing the resolution of " + key);
+        }
+        try {
+            return new ArrayList<ResolvedArtifact>(cached.get());
+        } catch (ExecutionException e) {
+            // failures are not cached, another module may be configured differently
+            resolutions.remove(key, cached);
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the resolution of " + key, e);
+        }
+    }
+
+    /**
+     * Copies the cached bundle (and its source bundle, if any) to the given files.
+     *
+     * @return false if the bundle is not cached
+     */
+    public boolean restoreBundle(String key, File binaryOutputFile, File sourceOutputFile) throws IOException {
+        File entry = bundles.get(key);
+        if (entry == null) {
+            return false;
+        }
+        BundleFiles.restore(entry, binaryOutputFile, sourceOutputFile);
+        return true;
+    }
+
+    /**
+     * Caches the bundle; the entry becomes visible only once it is complete.
+     */
+    public void storeBundle(String key, File binaryOutputFile, File sourceOutputFile) throws IOException {
+        if (bundles.containsKey(key) || !binaryOutputFile.isFile()) {
+            return;
+        }
+        File entry = new File(getFolder(), UUID.randomUUID().toString());
+        BundleFiles.write(entry, binaryOutputFile, sourceOutputFile);
+        if (bundles.putIfAbsent(key, entry) != null) {
+            FileUtils.deleteQuietly(entry);
+        }
+    }
+
+    @Override
+    public synchronized void dispose() {
+        clear();
+    }
+
+    private synchronized void clear() {
+        resolutions.clear();
+        bundles.clear();
+        if (folder != null) {
+            FileUtils.deleteQuietly(folder);
+            folder = null;
+        }
+    }
+
+    private synchronized File getFolder() throws IOException {
+        if (folder == null) {
+            folder = File.createTempFile("p2-reactor-cache", "");
+            FileUtils.forceDelete(folder);
+            FileUtils.forceMkdir(folder);
+        }
+        return folder;
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.fingerprint;
+
+import org.apache.commons.lang.StringUtils;
+import org.reficio.p2.EclipseArtifact;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.P2Site;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SHA-256 fingerprint of everything a build depends on: the normalized configuration, the resolved
+ * artifacts together with the digests of their files, and the version of the plugin itself.
+ * <p>
+ * Every input is recorded as a "key=value" pair and the pairs are sorted before they are digested,
+ * so the order of declaration does not matter, while any change of a value does.
+ *
+ * @since 1.2.0
+ */
+public class BuildFingerprint {
+
+    private final DigestService digests;
+    private final Map<String, String> entries = new TreeMap<String, String>();
+
+    public BuildFingerprint(DigestService digests) {
+        this.digests = digests;
+    }
+
+    public BuildFingerprint put(String key, Object value) {
+        entries.put(key, String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Records the content of the file, or the fact that it does not exist.
+     */
+    public BuildFingerprint putFile(String key, File file) throws IOException {
+        return put(key, file != null && file.isFile() ? digests.digest(file) : "none");
+    }
+
+    public BuildFingerprint putArtifact(String kind, P2Artifact artifact) {
+        putResolutionRequest(kind, artifact);
+        String prefix = kind + "[" + artifact.getId() + "].";
+        put(prefix + "override", artifact.shouldOverrideManifest());
+        put(prefix + "singleton", artifact.isSingleton());
+        for (Object instruction : artifact.getInstructions().entrySet()) {
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) instruction;
+            put(prefix + "instructions." + entry.getKey(), entry.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Records only the part of the artifact configuration that affects its resolution.
+     */
+    public BuildFingerprint putResolutionRequest(String kind, P2Artifact artifact) {
+        String prefix = kind + "[" + artifact.getId() + "].";
+        put(prefix + "transitive", artifact.shouldIncludeTransitive());
+        put(prefix + "source", artifact.shouldIncludeSources());
+        List<String> excludes = new ArrayList<String>(artifact.getExcludes());
+        Collections.sort(excludes);
+        put(prefix + "excludes", excludes);
+        return this;
+    }
+
+    public BuildFingerprint putArtifact(EclipseArtifact artifact) {
+        return put("p2[" + artifact.getId() + "].source", artifact.shouldIncludeSources());
+    }
+
+    /**
+     * Records the artifacts, the content of the category file and the destination of the site.
+     */
+    public BuildFingerprint putSite(P2Site site) throws IOException {
+        String prefix = "site[" + site.getName() + "].";
+        List<String> includes = new ArrayList<String>(site.getIncludes() != null ? site.getIncludes()
+                : Collections.<String>emptyList());
+        Collections.sort(includes);
+        put(prefix + "includes", includes);
+        put(prefix + "categoryFileURL", site.getCategoryFileURL());
+        putFile(prefix + "categoryFile", StringUtils.isBlank(site.getCategoryFileURL()) ? null
+                : new File(site.getCategoryFileURL()));
+        return put(prefix + "destinationDirectory", site.getDestinationDirectory() == null ? null
+                : new File(site.getDestinationDirectory()).getAbsolutePath());
+    }
+
+    /**
+     * Records the exact (e.g. timestamped snapshot) version and the content of the resolved jar and its sources.
+     */
+    public BuildFingerprint putResolved(String kind, P2Artifact artifact, ResolvedArtifact resolved) throws IOException {
+        String prefix = kind + "[" + artifact.getId() + "]." + resolved.getArtifact().getLongId();
+        putResolved(prefix, resolved.getArtifact());
+        put(prefix + ".root", resolved.isRoot());
+        if (resolved.getSourceArtifact() != null) {
+            putResolved(prefix + ".source", resolved.getSourceArtifact());
+        }
+        return this;
+    }
+
+    private void putResolved(String prefix, Artifact artifact) throws IOException {
+        put(prefix + ".version", artifact.getVersion());
+        putFile(prefix + ".file", artifact.getFile());
+    }
+
+    public Map<String, String> getEntries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    public String compute() {
+        MessageDigest digest = DigestService.newSha256();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            digest.update(bytes(entry.getKey() + "=" + entry.getValue() + "\n"));
+        }
+        return DigestService.toHex(digest.digest());
+    }
+
+    private static byte[] bytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.fingerprint;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Up-to-date checks of the individual stages of the build (resolve, bundle, publish, category).
+ * The inputs of every completed stage are persisted as a properties file in the state folder; a stage is
+ * skipped if its inputs did not change, its outputs are still in place and none of the stages it depends on
+ * was executed in the current build. The reason of every decision is logged.
+ *
+ * @since 1.2.0
+ */
+public class BuildStages {
+
+    private static final int REPORTED_CHANGES = 3;
+
+    private final File stateFolder;
+    private final Set<String> executed = new HashSet<String>();
+
+    public BuildStages(File stateFolder) {
+        this.stateFolder = stateFolder;
+    }
+
+    /**
+     * Decides whether the stage has to be executed. If so, the persisted state of the stage is dropped, so that
+     * an interrupted stage is never considered up-to-date.
+     *
+     * @param outdated reason why the previous execution cannot be reused regardless of the inputs (e.g. its outputs
+     *                 are missing), null if there is none
+     * @param upstream stages whose outputs are the inputs of this stage
+     */
+    public boolean shouldRun(String stage, BuildFingerprint fingerprint, String outdated, String... upstream)
+            throws IOException {
+        String reason = whyOutdated(stage, fingerprint, outdated, upstream);
+        if (reason == null) {
+            Logger.getLog().info(String.format("Stage [%s] is up to date - skipping", stage));
+            return false;
+        }
+        Logger.getLog().info(String.format("Stage [%s] runs: %s", stage, reason));
+        FileUtils.deleteQuietly(stateFile(stage));
+        executed.add(stage);
+        return true;
+    }
+
+    public boolean hasRun(String stage) {
+        return executed.contains(stage);
+    }
+
+    public void completed(String stage, BuildFingerprint fingerprint) throws IOException {
+        Properties state = new Properties();
+        state.putAll(fingerprint.getEntries());
+        FileUtils.forceMkdir(stateFolder);
+        OutputStream output = new FileOutputStream(stateFile(stage));
+        try {
+            state.store(output, "inputs of the " + stage + " stage");
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Performs the same check as {@link #shouldRun(String, BuildFingerprint, String, String...)} without recording
+     * anything.
+     *
+     * @return the reason why the stage has to be executed, null if it is up to date
+     */
+    public String whyOutdated(String stage, BuildFingerprint fingerprint, String outdated, String... upstream)
+            throws IOException {
+        for (String upstreamStage : upstream) {
+            if (executed.contains(upstreamStage)) {
+                return String.format("stage [%s] was executed", upstreamStage);
+            }
+        }
+        File stateFile = stateFile(stage);
+        if (!stateFile.exists()) {
+            return "no previous execution recorded";
+        }
+        if (outdated != null) {
+            return outdated;
+        }
+        Properties previous = new Properties();
+        InputStream input = new FileInputStream(stateFile);
+        try {
+            previous.load(input);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+        return describeChanges(previous, fingerprint.getEntries());
+    }
+
+    private static String describeChanges(Properties previous, Map<String, String> current) {
+        Set<String> keys = new TreeSet<String>(previous.stringPropertyNames());
+        keys.addAll(current.keySet());
+        List<String> changes = new ArrayList<String>();
+        for (String key : keys) {
+            String oldValue = previous.getProperty(key);
+            String newValue = current.get(key);
+            if (oldValue == null) {
+                changes.add("added " + key);
+            } else if (newValue == null) {
+                changes.add("removed " + key);
+            } else if (!oldValue.equals(newValue)) {
+                changes.add("changed " + key);
+            }
+        }
+        if (changes.isEmpty()) {
+            return null;
+        }
+        StringBuilder reason = new StringBuilder("inputs changed - ");
+        for (int i = 0; i < Math.min(REPORTED_CHANGES, changes.size()); i++) {
+            reason.append(i > 0 ? ", " : "").append(changes.get(i));
+        }
+        if (changes.size() > REPORTED_CHANGES) {
+            reason.append(String.format(" and %d more", changes.size() - REPORTED_CHANGES));
+        }
+        return reason.toString();
+    }
+
+    private File stateFile(String stage) {
+        return new File(stateFolder, stage + ".properties");
+    }
+
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.fingerprint;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SHA-256 digests of files shared by the whole build - the fingerprints, the checksums of the published
+ * artifacts and the up-to-date checks all use the same instance.
+ * <p>
+ * The digests are remembered by absolute path, size and modification time, so a file is read again only if one of
+ * them changed; persisted to the index file they let the subsequent builds skip the jars of the local Maven
+ * repository altogether. The files are read through a direct buffer reused by each thread, which spares the copying
+ * to a heap buffer without keeping the files mapped (and locked on Windows) until a garbage collection, and many
+ * files can be digested at once on a pool of threads.
+ *
+ * @since 1.2.0
+ */
+public class DigestService {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private final File indexFile;
+    private final int threads;
+    private final Map<String, String> entries = new ConcurrentHashMap<String, String>();
+    private ExecutorService executor;
+
+    private DigestService(File indexFile, int threads) {
+        this.indexFile = indexFile;
+        this.threads = threads;
+    }
+
+    /**
+     * @param indexFile file the digests are persisted to, null if they should be kept in memory only
+     * @param threads   number of files digested at once by {@link #digestAll(Collection)}
+     */
+    public static DigestService load(File indexFile, int threads) throws IOException {
+        DigestService service = new DigestService(indexFile, Math.max(1, threads));
+        if (indexFile != null && indexFile.exists()) {
+            Properties properties = new Properties();
+            InputStream input = new FileInputStream(indexFile);
+            try {
+                properties.load(input);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+            for (String path : properties.stringPropertyNames()) {
+                service.entries.put(path, properties.getProperty(path));
+            }
+        }
+        return service;
+    }
+
+    /**
+     * @return the index file of the given build directory in the cache directory, out of the reach of mvn clean
+     */
+    public static File indexFile(File cacheDirectory, File buildDirectory) {
+        try {
+            byte[] path = buildDirectory.getAbsolutePath().getBytes("UTF-8");
+            return new File(cacheDirectory, toHex(newSha256().digest(path)) + ".properties");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return a service that keeps the digests in memory and uses as many threads as there are processors
+     */
+    public static DigestService inMemory() {
+        return new DigestService(null, Runtime.getRuntime().availableProcessors());
+    }
+
+    public String digest(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        String stamp = file.length() + ":" + file.lastModified() + ":";
+        String entry = entries.get(path);
+        if (entry != null && entry.startsWith(stamp)) {
+            return entry.substring(stamp.length());
+        }
+        String digest = sha256(file);
+        entries.put(path, stamp + digest);
+        return digest;
+    }
+
+    /**
+     * Digests the files in parallel; the files already known to the index are not read at all.
+     *
+     * @return the digests in the iteration order of the given files
+     */
+    public Map<File, String> digestAll(Collection<File> files) throws IOException {
+        List<Future<String>> digests = new ArrayList<Future<String>>(files.size());
+        for (final File file : files) {
+            digests.add(getExecutor().submit(Logger.bind(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    return digest(file);
+                }
+            })));
+        }
+        Map<File, String> result = new LinkedHashMap<File, String>();
+        int i = 0;
+        for (File file : files) {
+            result.put(file, await(digests.get(i++)));
+        }
+        return result;
+    }
+
+    public void save() throws IOException {
+        if (indexFile == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            if (new File(entry.getKey()).exists()) {
+                properties.setProperty(entry.getKey(), entry.getValue());
+            }
+        }
+        File folder = indexFile.getAbsoluteFile().getParentFile();
+        FileUtils.forceMkdir(folder);
+        // written aside and renamed, so that a build reading the index never sees it half written
+        File tmp = File.createTempFile(indexFile.getName(), ".tmp", folder);
+        try {
+            OutputStream output = new FileOutputStream(tmp);
+            try {
+                properties.store(output, "path=size:lastModified:sha256");
+            } finally {
+                IOUtils.closeQuietly(output);
+            }
+            if (!tmp.renameTo(indexFile)) {
+                FileUtils.deleteQuietly(indexFile);
+                if (!tmp.renameTo(indexFile)) {
+                    throw new IOException("Cannot write the digest index " + indexFile);
+                }
+            }
+        } finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Stops the threads of the pool; the service remains usable and starts a new pool on demand.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
+        }
+        return executor;
+    }
+
+    private static String await(Future<String> digest) throws IOException {
+        try {
+            return digest.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while digesting files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static String sha256(File file) throws IOException {
+        MessageDigest digest = newSha256();
+        ByteBuffer buffer = BUFFER.get();
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+        return toHex(digest.digest());
+    }
+
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "p2-digest-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
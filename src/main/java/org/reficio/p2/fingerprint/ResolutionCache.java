@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.fingerprint;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ArtifactIdentity;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the result of the resolution stage - the resolved artifacts of every configured artifact -
+ * so that an up-to-date build can reuse it without contacting the repositories.
+ * One resolved artifact is stored per line as tab separated fields.
+ *
+ * @since 1.2.0
+ */
+public class ResolutionCache {
+
+    private static final String SEPARATOR = "\t";
+    private static final String NONE = "-";
+    private static final int ARTIFACT_FIELDS = 8;
+
+    private ResolutionCache() {
+    }
+
+    public static void save(File file, Multimap<P2Artifact, ResolvedArtifact> resolved) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<P2Artifact, ResolvedArtifact> entry : resolved.entries()) {
+            ResolvedArtifact artifact = entry.getValue();
+            StringBuilder line = new StringBuilder(entry.getKey().getId());
+            line.append(SEPARATOR).append(artifact.isRoot());
+            append(line, artifact.getArtifact());
+            append(line, artifact.getSourceArtifact());
+            lines.add(line.toString());
+        }
+        FileUtils.writeLines(file, "UTF-8", lines, "\n");
+    }
+
+    /**
+     * @return the resolved artifacts, or null if the cache is missing, does not cover all the given artifacts
+     * or refers to files that do not exist any more
+     */
+    public static Multimap<P2Artifact, ResolvedArtifact> load(File file, List<P2Artifact> artifacts) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        Map<String, P2Artifact> artifactsById = new HashMap<String, P2Artifact>();
+        for (P2Artifact artifact : artifacts) {
+            artifactsById.put(artifact.getId(), artifact);
+        }
+        Multimap<P2Artifact, ResolvedArtifact> resolved = ArrayListMultimap.create();
+        for (String line : FileUtils.readLines(file, "UTF-8")) {
+            String[] fields = line.split(SEPARATOR, -1);
+            P2Artifact p2Artifact = artifactsById.get(fields[0]);
+            if (p2Artifact == null || fields.length != 2 + 2 * ARTIFACT_FIELDS) {
+                return null;
+            }
+            Artifact artifact = parse(fields, 2);
+            Artifact sourceArtifact = parse(fields, 2 + ARTIFACT_FIELDS);
+            if (artifact == null || !artifact.getFile().exists()
+                    || (sourceArtifact != null && !sourceArtifact.getFile().exists())) {
+                return null;
+            }
+            resolved.put(p2Artifact, new ResolvedArtifact(artifact, sourceArtifact, Boolean.parseBoolean(fields[1])));
+        }
+        if (!resolved.keySet().containsAll(artifacts)) {
+            return null;
+        }
+        return resolved;
+    }
+
+    private static void append(StringBuilder line, Artifact artifact) {
+        if (artifact == null) {
+            for (int i = 0; i < ARTIFACT_FIELDS; i++) {
+                line.append(SEPARATOR).append(NONE);
+            }
+            return;
+        }
+        ArtifactIdentity identity = artifact.getIdentity();
+        line.append(SEPARATOR).append(identity.getGroupId())
+                .append(SEPARATOR).append(identity.getArtifactId())
+                .append(SEPARATOR).append(identity.getBaseVersion())
+                .append(SEPARATOR).append(identity.getExtension())
+                .append(SEPARATOR).append(identity.getClassifier())
+                .append(SEPARATOR).append(artifact.isSnapshot())
+                .append(SEPARATOR).append(identity.getVersion())
+                .append(SEPARATOR).append(artifact.getFile().getAbsolutePath());
+    }
+
+    private static Artifact parse(String[] fields, int offset) {
+        if (NONE.equals(fields[offset]) && NONE.equals(fields[offset + ARTIFACT_FIELDS - 1])) {
+            return null;
+        }
+        return new Artifact(fields[offset], fields[offset + 1], fields[offset + 2], fields[offset + 3],
+                fields[offset + 4], Boolean.parseBoolean(fields[offset + 5]), fields[offset + 6],
+                new File(fields[offset + 7]));
+    }
+
+}
@@ -0,0 +1,389 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.fingerprint;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimap;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.reficio.p2.EclipseArtifact;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.P2Site;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+import org.reficio.p2.utils.BuildTimestamp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The fingerprints of the build and of its stages, each one made of the inputs the stage depends on: the options of
+ * the plugin, the declared artifacts and the content of the files they were resolved to.
+ *
+ * @since 1.2.0
+ */
+public class StageFingerprints {
+
+    private DigestService digests;
+    private String pluginVersion;
+    private List<P2Artifact> artifacts = Collections.emptyList();
+    private List<P2Artifact> features = Collections.emptyList();
+    private List<EclipseArtifact> eclipseArtifacts = Collections.emptyList();
+    private List<P2Site> sites = Collections.emptyList();
+    private List<Object> repositories = Collections.emptyList();
+    private boolean batchBomResolution;
+    private boolean pedantic;
+    private boolean skipInvalidArtifacts;
+    private boolean deduplicateArtifacts;
+    private File destinationDirectory;
+    private String repositoryName;
+    private String additionalArgs;
+    private boolean nativePublishing;
+    private boolean appendPublishing;
+    private boolean inProcessCategoryPublishing;
+    private String categoryFileURL;
+    private boolean compressSite;
+    private boolean xzCompressSite;
+    private int compressionLevel;
+    private String shardBy;
+    private int shardGroupIdSegments;
+    private int shardSizeInMegabytes;
+
+    private StageFingerprints() {
+    }
+
+    public BuildFingerprint resolution() {
+        BuildFingerprint fingerprint = new BuildFingerprint(digests)
+                .put("pluginVersion", pluginVersion)
+                .put("repositories", repositories)
+                .put("batchBomResolution", batchBomResolution);
+        for (P2Artifact artifact : artifacts) {
+            fingerprint.putResolutionRequest("artifact", artifact);
+        }
+        for (P2Artifact feature : features) {
+            fingerprint.putResolutionRequest("feature", feature);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * The bundles depend on the configuration of the artifacts and on the content of the resolved files.
+     */
+    public BuildFingerprint bundle(Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts,
+                                   Multimap<P2Artifact, ResolvedArtifact> resolvedFeatures) throws IOException {
+        BuildFingerprint fingerprint = new BuildFingerprint(digests)
+                .put("pluginVersion", pluginVersion)
+                .put("timestamp", getReproducibleTimestamp())
+                .put("pedantic", pedantic)
+                .put("skipInvalidArtifacts", skipInvalidArtifacts)
+                .put("deduplicateArtifacts", deduplicateArtifacts);
+        return putArtifacts(fingerprint, resolvedArtifacts, resolvedFeatures);
+    }
+
+    /**
+     * The metadata depends on the set of the bundled jars only, whatever produced them.
+     */
+    public BuildFingerprint publish(File bundleDirectory) throws IOException {
+        BuildFingerprint fingerprint = new BuildFingerprint(digests)
+                .put("pluginVersion", pluginVersion)
+                .put("timestamp", getReproducibleTimestamp())
+                .put("destinationDirectory", destinationDirectory.getAbsolutePath())
+                .put("additionalArgs", additionalArgs)
+                .put("nativePublishing", nativePublishing)
+                .put("appendPublishing", appendPublishing)
+                .put("projectName", repositoryName);
+        String root = bundleDirectory.getAbsolutePath();
+        Map<File, String> jars = digests.digestAll(FileUtils.listFiles(bundleDirectory, new String[]{"jar"}, true));
+        for (Map.Entry<File, String> jar : jars.entrySet()) {
+            fingerprint.put("jar[" + jar.getKey().getAbsolutePath().substring(root.length() + 1) + "]", jar.getValue());
+        }
+        return fingerprint;
+    }
+
+    public BuildFingerprint category() throws IOException {
+        return new BuildFingerprint(digests)
+                .put("pluginVersion", pluginVersion)
+                .put("additionalArgs", additionalArgs)
+                .put("inProcessCategoryPublishing", inProcessCategoryPublishing)
+                .put("categoryFileURL", categoryFileURL)
+                .putFile("categoryFile", getCategoryFile());
+    }
+
+    public BuildFingerprint compress() {
+        return new BuildFingerprint(digests)
+                .put("pluginVersion", pluginVersion)
+                .put("compressSite", compressSite)
+                .put("xzCompressSite", xzCompressSite)
+                .put("compressionLevel", compressionLevel);
+    }
+
+    /**
+     * The fingerprint of the whole build: the whole configuration, the resolved artifacts (including the digests
+     * of the resolved files) and the version of the plugin.
+     */
+    public String build(Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts,
+                        Multimap<P2Artifact, ResolvedArtifact> resolvedFeatures) throws IOException {
+        BuildFingerprint fingerprint = new BuildFingerprint(digests)
+                .put("pluginVersion", pluginVersion)
+                .put("timestamp", getReproducibleTimestamp())
+                .put("destinationDirectory", destinationDirectory.getAbsolutePath())
+                .put("pedantic", pedantic)
+                .put("skipInvalidArtifacts", skipInvalidArtifacts)
+                .put("deduplicateArtifacts", deduplicateArtifacts)
+                .put("compressSite", compressSite)
+                .put("xzCompressSite", xzCompressSite)
+                .put("compressionLevel", compressionLevel)
+                .put("additionalArgs", additionalArgs)
+                .put("inProcessCategoryPublishing", inProcessCategoryPublishing)
+                .put("nativePublishing", nativePublishing)
+                .put("appendPublishing", appendPublishing)
+                .put("shardBy", shardBy)
+                .put("shardGroupIdSegments", shardGroupIdSegments)
+                .put("shardSizeInMegabytes", shardSizeInMegabytes)
+                .put("projectName", repositoryName)
+                .put("categoryFileURL", categoryFileURL)
+                .putFile("categoryFile", getCategoryFile());
+        for (P2Site site : sites) {
+            fingerprint.putSite(site);
+        }
+        return putArtifacts(fingerprint, resolvedArtifacts, resolvedFeatures).compute();
+    }
+
+    /**
+     * The configuration the shards of a build have in common - computed before the artifacts are split.
+     */
+    public String shardBuild(int shards) {
+        BuildFingerprint fingerprint = new BuildFingerprint(digests).put("shards", shards);
+        for (P2Artifact artifact : artifacts) {
+            fingerprint.putArtifact("artifact", artifact);
+        }
+        for (P2Artifact feature : features) {
+            fingerprint.putArtifact("feature", feature);
+        }
+        for (EclipseArtifact artifact : eclipseArtifacts) {
+            fingerprint.putArtifact(artifact);
+        }
+        return fingerprint.compute();
+    }
+
+    /**
+     * Everything the bundle of the artifact depends on: the configuration of the artifact, the resolved files and
+     * the options of the bundler.
+     */
+    public String bundleCacheKey(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) throws IOException {
+        return new BuildFingerprint(digests)
+                .put("pluginVersion", pluginVersion)
+                .put("timestamp", getReproducibleTimestamp())
+                .put("pedantic", pedantic)
+                .putArtifact("artifact", p2Artifact)
+                .putResolved("artifact", p2Artifact, resolvedArtifact)
+                .compute();
+    }
+
+    /**
+     * Digests all the resolved files at once, the fingerprint then picks the digests up one by one.
+     */
+    private BuildFingerprint putArtifacts(BuildFingerprint fingerprint,
+                                          Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts,
+                                          Multimap<P2Artifact, ResolvedArtifact> resolvedFeatures) throws IOException {
+        List<File> files = new ArrayList<File>();
+        for (ResolvedArtifact resolved : Iterables.concat(resolvedArtifacts.values(), resolvedFeatures.values())) {
+            addIfFile(files, resolved.getArtifact());
+            addIfFile(files, resolved.getSourceArtifact());
+        }
+        digests.digestAll(files);
+        for (P2Artifact artifact : artifacts) {
+            fingerprint.putArtifact("artifact", artifact);
+            for (ResolvedArtifact resolvedArtifact : resolvedArtifacts.get(artifact)) {
+                fingerprint.putResolved("artifact", artifact, resolvedArtifact);
+            }
+        }
+        for (P2Artifact feature : features) {
+            fingerprint.putArtifact("feature", feature);
+            for (ResolvedArtifact resolvedFeature : resolvedFeatures.get(feature)) {
+                fingerprint.putResolved("feature", feature, resolvedFeature);
+            }
+        }
+        for (EclipseArtifact eclipseArtifact : eclipseArtifacts) {
+            fingerprint.putArtifact(eclipseArtifact);
+        }
+        return fingerprint;
+    }
+
+    private File getCategoryFile() {
+        return StringUtils.isBlank(categoryFileURL) ? null : new File(categoryFileURL);
+    }
+
+    private static void addIfFile(List<File> files, Artifact artifact) {
+        if (artifact != null && artifact.getFile() != null && artifact.getFile().isFile()) {
+            files.add(artifact.getFile());
+        }
+    }
+
+    /**
+     * The output of a reproducible build depends on its timestamp, otherwise the timestamp is not an input.
+     */
+    private static String getReproducibleTimestamp() {
+        BuildTimestamp timestamp = BuildTimestamp.get();
+        return timestamp.isReproducible() ? Long.toString(timestamp.getTimeMillis()) : "none";
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private final StageFingerprints fingerprints = new StageFingerprints();
+
+        public Builder digestService(DigestService digests) {
+            fingerprints.digests = checkNotNull(digests, "digestService cannot be null");
+            return this;
+        }
+
+        public Builder pluginVersion(String pluginVersion) {
+            fingerprints.pluginVersion = pluginVersion;
+            return this;
+        }
+
+        public Builder artifacts(List<P2Artifact> artifacts) {
+            fingerprints.artifacts = checkNotNull(artifacts, "artifacts cannot be null");
+            return this;
+        }
+
+        public Builder features(List<P2Artifact> features) {
+            fingerprints.features = checkNotNull(features, "features cannot be null");
+            return this;
+        }
+
+        public Builder eclipseArtifacts(List<EclipseArtifact> eclipseArtifacts) {
+            fingerprints.eclipseArtifacts = checkNotNull(eclipseArtifacts, "eclipseArtifacts cannot be null");
+            return this;
+        }
+
+        public Builder sites(List<P2Site> sites) {
+            fingerprints.sites = checkNotNull(sites, "sites cannot be null");
+            return this;
+        }
+
+        public Builder repositories(List<Object> repositories) {
+            fingerprints.repositories = repositories;
+            return this;
+        }
+
+        public Builder batchBomResolution(boolean batchBomResolution) {
+            fingerprints.batchBomResolution = batchBomResolution;
+            return this;
+        }
+
+        public Builder pedantic(boolean pedantic) {
+            fingerprints.pedantic = pedantic;
+            return this;
+        }
+
+        public Builder skipInvalidArtifacts(boolean skipInvalidArtifacts) {
+            fingerprints.skipInvalidArtifacts = skipInvalidArtifacts;
+            return this;
+        }
+
+        public Builder deduplicateArtifacts(boolean deduplicateArtifacts) {
+            fingerprints.deduplicateArtifacts = deduplicateArtifacts;
+            return this;
+        }
+
+        public Builder destinationDirectory(File destinationDirectory) {
+            fingerprints.destinationDirectory = checkNotNull(destinationDirectory, "destinationDirectory cannot be null");
+            return this;
+        }
+
+        public Builder repositoryName(String repositoryName) {
+            fingerprints.repositoryName = repositoryName;
+            return this;
+        }
+
+        public Builder additionalArgs(String additionalArgs) {
+            fingerprints.additionalArgs = additionalArgs;
+            return this;
+        }
+
+        public Builder nativePublishing(boolean nativePublishing) {
+            fingerprints.nativePublishing = nativePublishing;
+            return this;
+        }
+
+        public Builder appendPublishing(boolean appendPublishing) {
+            fingerprints.appendPublishing = appendPublishing;
+            return this;
+        }
+
+        public Builder inProcessCategoryPublishing(boolean inProcessCategoryPublishing) {
+            fingerprints.inProcessCategoryPublishing = inProcessCategoryPublishing;
+            return this;
+        }
+
+        public Builder categoryFileURL(String categoryFileURL) {
+            fingerprints.categoryFileURL = categoryFileURL;
+            return this;
+        }
+
+        public Builder compressSite(boolean compressSite) {
+            fingerprints.compressSite = compressSite;
+            return this;
+        }
+
+        public Builder xzCompressSite(boolean xzCompressSite) {
+            fingerprints.xzCompressSite = xzCompressSite;
+            return this;
+        }
+
+        public Builder compressionLevel(int compressionLevel) {
+            fingerprints.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        public Builder shardBy(String shardBy) {
+            fingerprints.shardBy = shardBy;
+            return this;
+        }
+
+        public Builder shardGroupIdSegments(int shardGroupIdSegments) {
+            fingerprints.shardGroupIdSegments = shardGroupIdSegments;
+            return this;
+        }
+
+        public Builder shardSizeInMegabytes(int shardSizeInMegabytes) {
+            fingerprints.shardSizeInMegabytes = shardSizeInMegabytes;
+            return this;
+        }
+
+        public StageFingerprints build() {
+            checkNotNull(fingerprints.digests, "digestService cannot be null");
+            checkNotNull(fingerprints.destinationDirectory, "destinationDirectory cannot be null");
+            return fingerprints;
+        }
+
+    }
+
+}
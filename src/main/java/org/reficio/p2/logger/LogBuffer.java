@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.logger;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output of one thread collected by {@link Logger#buffer()}. The collected lines are written by {@link #flush()}
+ * while holding a lock shared by all the buffers, so the output of two buffers is never interleaved.
+ *
+ * @since 1.2.0
+ */
+public final class LogBuffer implements Log {
+
+    private static final Object FLUSH_LOCK = new Object();
+
+    private enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private final Log target;
+    private final Log previous;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private boolean flushed;
+
+    LogBuffer(Log target, Log previous) {
+        this.target = target;
+        this.previous = previous;
+    }
+
+    Log getTarget() {
+        return target;
+    }
+
+    /**
+     * Writes the collected output and makes the thread log directly again; the buffer must be flushed by the
+     * thread that created it.
+     */
+    public void flush() {
+        if (flushed) {
+            return;
+        }
+        flushed = true;
+        Logger.restore(previous);
+        synchronized (FLUSH_LOCK) {
+            for (Entry entry : entries) {
+                entry.writeTo(target);
+            }
+        }
+        entries.clear();
+    }
+
+    private void add(Level level, CharSequence content, Throwable error) {
+        entries.add(new Entry(level, content, error));
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return target.isDebugEnabled();
+    }
+
+    @Override
+    public void debug(CharSequence content) {
+        if (target.isDebugEnabled()) {
+            add(Level.DEBUG, content, null);
+        }
+    }
+
+    @Override
+    public void debug(CharSequence content, Throwable error) {
+        if (target.isDebugEnabled()) {
+            add(Level.DEBUG, content, error);
+        }
+    }
+
+    @Override
+    public void debug(Throwable error) {
+        if (target.isDebugEnabled()) {
+            add(Level.DEBUG, null, error);
+        }
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return target.isInfoEnabled();
+    }
+
+    @Override
+    public void info(CharSequence content) {
+        add(Level.INFO, content, null);
+    }
+
+    @Override
+    public void info(CharSequence content, Throwable error) {
+        add(Level.INFO, content, error);
+    }
+
+    @Override
+    public void info(Throwable error) {
+        add(Level.INFO, null, error);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return target.isWarnEnabled();
+    }
+
+    @Override
+    public void warn(CharSequence content) {
+        add(Level.WARN, content, null);
+    }
+
+    @Override
+    public void warn(CharSequence content, Throwable error) {
+        add(Level.WARN, content, error);
+    }
+
+    @Override
+    public void warn(Throwable error) {
+        add(Level.WARN, null, error);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return target.isErrorEnabled();
+    }
+
+    @Override
+    public void error(CharSequence content) {
+        add(Level.ERROR, content, null);
+    }
+
+    @Override
+    public void error(CharSequence content, Throwable error) {
+        add(Level.ERROR, content, error);
+    }
+
+    @Override
+    public void error(Throwable error) {
+        add(Level.ERROR, null, error);
+    }
+
+    private static class Entry {
+        private final Level level;
+        private final CharSequence content;
+        private final Throwable error;
+
+        Entry(Level level, CharSequence content, Throwable error) {
+            this.level = level;
+            this.content = content;
+            this.error = error;
+        }
+
+        void writeTo(Log log) {
+            switch (level) {
+                case DEBUG:
+                    if (error == null) {
+                        log.debug(content);
+                    } else if (content == null) {
+                        log.debug(error);
+                    } else {
+                        log.debug(content, error);
+                    }
+                    break;
+                case INFO:
+                    if (error == null) {
+                        log.info(content);
+                    } else if (content == null) {
+                        log.info(error);
+                    } else {
+                        log.info(content, error);
+                    }
+                    break;
+                case WARN:
+                    if (error == null) {
+                        log.warn(content);
+                    } else if (content == null) {
+                        log.warn(error);
+                    } else {
+                        log.warn(content, error);
+                    }
+                    break;
+                default:
+                    if (error == null) {
+                        log.error(content);
+                    } else if (content == null) {
+                        log.error(error);
+                    } else {
+                        log.error(content, error);
+                    }
+            }
+        }
+    }
+
+}
@@ -20,7 +20,14 @@ package org.reficio.p2.logger;
 
 import org.apache.maven.plugin.logging.Log;
 
+import java.util.concurrent.Callable;
+
 /**
+ * Log of the plugin, reachable from any class. The Maven log is bound to the execution of the mojo: it is held per
+ * thread and inherited by the threads the execution starts, so the executions of the modules of a parallel build
+ * (mvn -T) do not write to each other's output. The tasks run by thread pools get the log of the thread submitting
+ * them through {@link #bind(Callable)}, as a pooled thread may outlive the execution that started it.
+ *
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
  *         Reficio (TM) - Reestablish your software!<br>
  *         http://www.reficio.org
@@ -28,99 +35,177 @@ import org.apache.maven.plugin.logging.Log;
  */
 public final class Logger implements Log {
 
-    static Log log;
+    private static final Logger INSTANCE = new Logger();
+    private static final InheritableThreadLocal<Log> CONTEXT = new InheritableThreadLocal<Log>();
 
     private Logger() {
     }
 
     public static Logger getLog() {
-        if (log == null) {
+        if (current() == null) {
             throw new RuntimeException("P2Log is not initialized");
         }
-        return new Logger();
+        return INSTANCE;
     }
 
+    /**
+     * Binds the log to the current thread and to the threads it starts from now on.
+     */
     public static void initialize(Log log) {
-        Logger.log = log;
+        CONTEXT.set(log);
+    }
+
+    /**
+     * Unbinds the log from the current thread at the end of the execution.
+     */
+    public static void release() {
+        CONTEXT.remove();
+    }
+
+    /**
+     * Collects the output of the current thread until {@link LogBuffer#flush()} writes it at once, so that
+     * the output of the processing of one artifact is not interleaved with the output of the other threads.
+     */
+    public static LogBuffer buffer() {
+        Log target = current();
+        if (target == null) {
+            throw new RuntimeException("P2Log is not initialized");
+        }
+        LogBuffer buffer = new LogBuffer(target, CONTEXT.get());
+        CONTEXT.set(buffer);
+        return buffer;
+    }
+
+    /**
+     * Makes the task log to the log of the current thread, whichever thread runs it. A task submitted while the
+     * output of the current thread is buffered writes to the log behind the buffer, as the buffer belongs to one
+     * thread only.
+     */
+    public static <T> Callable<T> bind(final Callable<T> task) {
+        final Log log = direct(CONTEXT.get());
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                Log previous = CONTEXT.get();
+                restore(log);
+                try {
+                    return task.call();
+                } finally {
+                    restore(previous);
+                }
+            }
+        };
+    }
+
+    public static Runnable bind(final Runnable task) {
+        final Log log = direct(CONTEXT.get());
+        return new Runnable() {
+            @Override
+            public void run() {
+                Log previous = CONTEXT.get();
+                restore(log);
+                try {
+                    task.run();
+                } finally {
+                    restore(previous);
+                }
+            }
+        };
+    }
+
+    private static Log direct(Log log) {
+        return log instanceof LogBuffer ? direct(((LogBuffer) log).getTarget()) : log;
+    }
+
+    static void restore(Log previous) {
+        if (previous != null) {
+            CONTEXT.set(previous);
+        } else {
+            CONTEXT.remove();
+        }
+    }
+
+    private static Log current() {
+        return CONTEXT.get();
     }
 
     @Override
     public boolean isDebugEnabled() {
-        return log.isDebugEnabled();
+        return current().isDebugEnabled();
     }
 
     @Override
     public void debug(CharSequence charSequence) {
-        log.debug(charSequence);
+        current().debug(charSequence);
     }
 
     @Override
     public void debug(CharSequence charSequence, Throwable throwable) {
-        log.debug(charSequence, throwable);
+        current().debug(charSequence, throwable);
     }
 
     @Override
     public void debug(Throwable throwable) {
-        log.debug(throwable);
+        current().debug(throwable);
     }
 
     @Override
     public boolean isInfoEnabled() {
-        return log.isInfoEnabled();
+        return current().isInfoEnabled();
     }
 
     @Override
     public void info(CharSequence charSequence) {
-        log.info(charSequence);
+        current().info(charSequence);
     }
 
     @Override
     public void info(CharSequence charSequence, Throwable throwable) {
-        log.info(charSequence, throwable);
+        current().info(charSequence, throwable);
     }
 
     @Override
     public void info(Throwable throwable) {
-        log.info(throwable);
+        current().info(throwable);
     }
 
     @Override
     public boolean isWarnEnabled() {
-        return log.isWarnEnabled();
+        return current().isWarnEnabled();
     }
 
     @Override
     public void warn(CharSequence charSequence) {
-        log.warn(charSequence);
+        current().warn(charSequence);
     }
 
     @Override
     public void warn(CharSequence charSequence, Throwable throwable) {
-        log.warn(charSequence, throwable);
+        current().warn(charSequence, throwable);
     }
 
     @Override
     public void warn(Throwable throwable) {
-        log.warn(throwable);
+        current().warn(throwable);
     }
 
     @Override
     public boolean isErrorEnabled() {
-        return log.isErrorEnabled();
+        return current().isErrorEnabled();
     }
 
     @Override
     public void error(CharSequence charSequence) {
-        log.error(charSequence);
+        current().error(charSequence);
     }
 
     @Override
     public void error(CharSequence charSequence, Throwable throwable) {
-        log.error(charSequence, throwable);
+        current().error(charSequence, throwable);
     }
 
     @Override
     public void error(Throwable throwable) {
-        log.error(throwable);
+        current().error(throwable);
     }
 }
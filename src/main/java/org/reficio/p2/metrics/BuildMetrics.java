@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.metrics;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Wall time, bytes read and written and artifact counts of the phases of a build and of the individual
+ * artifacts processed in them. At the end of the build the slowest artifacts are logged and the whole report
+ * is written as JSON, so that it can be tracked by the CI.
+ * <p>
+ * The phases follow each other - starting a phase ends the current one; the artifacts are recorded in the current
+ * phase and may be recorded concurrently.
+ *
+ * @since 1.2.0
+ */
+public class BuildMetrics {
+
+    private static final Comparator<ArtifactMetrics> SLOWEST_FIRST = new Comparator<ArtifactMetrics>() {
+        @Override
+        public int compare(ArtifactMetrics first, ArtifactMetrics second) {
+            return first.millis < second.millis ? 1 : (first.millis == second.millis ? 0 : -1);
+        }
+    };
+
+    private final long startMillis = System.currentTimeMillis();
+    private final List<PhaseMetrics> phases = new ArrayList<PhaseMetrics>();
+    private final List<ArtifactMetrics> artifacts = new ArrayList<ArtifactMetrics>();
+    private PhaseMetrics current;
+    private long totalMillis = -1;
+
+    public synchronized void startPhase(String name) {
+        endPhase();
+        current = new PhaseMetrics(name, System.currentTimeMillis());
+        phases.add(current);
+    }
+
+    /**
+     * Marks the current phase as skipped, e.g. because it is up to date.
+     */
+    public synchronized void skipPhase() {
+        if (current != null) {
+            current.skipped = true;
+        }
+    }
+
+    public synchronized void endPhase() {
+        if (current != null) {
+            current.millis = System.currentTimeMillis() - current.startMillis;
+            current = null;
+        }
+    }
+
+    public synchronized void addBytesRead(long bytes) {
+        if (current != null) {
+            current.bytesRead += bytes;
+        }
+    }
+
+    public synchronized void addBytesWritten(long bytes) {
+        if (current != null) {
+            current.bytesWritten += bytes;
+        }
+    }
+
+    public ArtifactTimer startArtifact(String id) {
+        return new ArtifactTimer(id);
+    }
+
+    synchronized void record(ArtifactMetrics artifact) {
+        artifacts.add(artifact);
+        if (current != null) {
+            artifact.phase = current.name;
+            current.artifacts++;
+            current.bytesRead += artifact.bytesRead;
+            current.bytesWritten += artifact.bytesWritten;
+        }
+    }
+
+    public synchronized void finish() {
+        endPhase();
+        totalMillis = System.currentTimeMillis() - startMillis;
+    }
+
+    public synchronized List<ArtifactMetrics> getSlowestArtifacts(int count) {
+        List<ArtifactMetrics> sorted = new ArrayList<ArtifactMetrics>(artifacts);
+        Collections.sort(sorted, SLOWEST_FIRST);
+        return sorted.subList(0, Math.min(count, sorted.size()));
+    }
+
+    public synchronized void logSummary(int slowestArtifacts) {
+        for (PhaseMetrics phase : phases) {
+            Logger.getLog().info(String.format("\t [%s] %s ms, %d artifacts, %s read, %s written%s", phase.name,
+                    phase.millis, phase.artifacts, FileUtils.byteCountToDisplaySize(phase.bytesRead),
+                    FileUtils.byteCountToDisplaySize(phase.bytesWritten), phase.skipped ? " (skipped)" : ""));
+        }
+        List<ArtifactMetrics> slowest = getSlowestArtifacts(slowestArtifacts);
+        if (!slowest.isEmpty()) {
+            Logger.getLog().info(String.format("Slowest %d artifacts:", slowest.size()));
+            for (ArtifactMetrics artifact : slowest) {
+                Logger.getLog().info(String.format("\t [%s] %s %d ms", artifact.phase, artifact.id, artifact.millis));
+            }
+        }
+    }
+
+    public synchronized void writeJson(File file, int slowestArtifacts) throws IOException {
+        JsonWriter json = new JsonWriter();
+        json.beginObject()
+                .name("startMillis").value(startMillis)
+                .name("totalMillis").value(totalMillis)
+                .name("phases").beginArray();
+        for (PhaseMetrics phase : phases) {
+            json.beginObject()
+                    .name("name").value(phase.name)
+                    .name("skipped").value(phase.skipped)
+                    .name("millis").value(phase.millis)
+                    .name("bytesRead").value(phase.bytesRead)
+                    .name("bytesWritten").value(phase.bytesWritten)
+                    .name("artifacts").value(phase.artifacts)
+                    .endObject();
+        }
+        json.endArray().name("slowestArtifacts");
+        writeArtifacts(json, getSlowestArtifacts(slowestArtifacts));
+        json.name("artifacts");
+        writeArtifacts(json, artifacts);
+        json.endObject();
+        FileUtils.writeStringToFile(file, json.toString(), "UTF-8");
+    }
+
+    private static void writeArtifacts(JsonWriter json, List<ArtifactMetrics> artifacts) {
+        json.beginArray();
+        for (ArtifactMetrics artifact : artifacts) {
+            json.beginObject()
+                    .name("id").value(artifact.id)
+                    .name("phase").value(artifact.phase)
+                    .name("millis").value(artifact.millis)
+                    .name("bytesRead").value(artifact.bytesRead)
+                    .name("bytesWritten").value(artifact.bytesWritten)
+                    .endObject();
+        }
+        json.endArray();
+    }
+
+    /**
+     * @return the total size of the given files, the missing ones (or nulls) are ignored
+     */
+    public static long sizeOf(File... files) {
+        long size = 0;
+        for (File file : files) {
+            if (file != null && file.isFile()) {
+                size += file.length();
+            } else if (file != null && file.isDirectory()) {
+                size += FileUtils.sizeOfDirectory(file);
+            }
+        }
+        return size;
+    }
+
+    private static class PhaseMetrics {
+        private final String name;
+        private final long startMillis;
+        private long millis;
+        private long bytesRead;
+        private long bytesWritten;
+        private int artifacts;
+        private boolean skipped;
+
+        private PhaseMetrics(String name, long startMillis) {
+            this.name = name;
+            this.startMillis = startMillis;
+        }
+    }
+
+    public static class ArtifactMetrics {
+        private final String id;
+        private final long millis;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private String phase;
+
+        ArtifactMetrics(String id, long millis, long bytesRead, long bytesWritten) {
+            this.id = id;
+            this.millis = millis;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    /**
+     * Measures the processing of a single artifact.
+     */
+    public class ArtifactTimer {
+        private final String id;
+        private final long startMillis = System.currentTimeMillis();
+
+        private ArtifactTimer(String id) {
+            this.id = id;
+        }
+
+        public void stop(long bytesRead, long bytesWritten) {
+            record(new ArtifactMetrics(id, System.currentTimeMillis() - startMillis, bytesRead, bytesWritten));
+        }
+    }
+
+}
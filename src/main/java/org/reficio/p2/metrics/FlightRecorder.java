@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.metrics;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Custom Java Flight Recorder events of the plugin, so that a recording captured with -XX:StartFlightRecording
+ * shows the resolution, bundling and publishing next to the GC and I/O events of the JVM.
+ * <p>
+ * The plugin targets JVMs that do not ship the jdk.jfr API, so the event types are defined at runtime through
+ * jdk.jfr.EventFactory by reflection. If the API is not available, or the event type is not enabled in the running
+ * recording, the events cost nothing but the check.
+ * <p>
+ * All the event types share the same fields: artifact (coordinates or name), step, bytes and outcome.
+ *
+ * @since 1.2.0
+ */
+public final class FlightRecorder {
+
+    public static final String RESOLVE = "Resolve";
+    public static final String BUNDLE = "Bundle";
+    public static final String ECLIPSE_DOWNLOAD = "EclipseDownload";
+    public static final String PUBLISH = "Publish";
+    public static final String CATEGORY_PUBLISH = "CategoryPublish";
+
+    public static final String SUCCESS = "success";
+    public static final String FAILURE = "failure";
+
+    private static final String EVENT_PREFIX = "org.reficio.p2.";
+    private static final String CATEGORY = "p2-maven-plugin";
+    private static final int ARTIFACT = 0;
+    private static final int STEP = 1;
+    private static final int BYTES = 2;
+    private static final int OUTCOME = 3;
+
+    private static final Api API = Api.load();
+    private static final ConcurrentMap<String, Object> FACTORIES = new ConcurrentHashMap<String, Object>();
+
+    private FlightRecorder() {
+    }
+
+    public static boolean isAvailable() {
+        return API != null;
+    }
+
+    /**
+     * Begins an event of the given type, to be committed with {@link FlightEvent#commit(String)}.
+     */
+    public static FlightEvent begin(String type, String artifact) {
+        if (API == null) {
+            return FlightEvent.DISABLED;
+        }
+        try {
+            Object event = API.newEvent.invoke(factory(type));
+            if (!(Boolean) API.isEnabled.invoke(event)) {
+                return FlightEvent.DISABLED;
+            }
+            API.begin.invoke(event);
+            return new FlightEvent(event, artifact);
+        } catch (Exception e) {
+            return FlightEvent.DISABLED;
+        }
+    }
+
+    private static Object factory(String type) throws Exception {
+        Object factory = FACTORIES.get(type);
+        if (factory == null) {
+            FACTORIES.putIfAbsent(type, API.createFactory(type));
+            factory = FACTORIES.get(type);
+        }
+        return factory;
+    }
+
+    /**
+     * An event in progress; the events that are not recorded are represented by a shared no-op instance.
+     */
+    public static final class FlightEvent {
+
+        private static final FlightEvent DISABLED = new FlightEvent(null, null);
+
+        private final Object event;
+        private final String artifact;
+        private String step;
+        private long bytes;
+
+        private FlightEvent(Object event, String artifact) {
+            this.event = event;
+            this.artifact = artifact;
+        }
+
+        public FlightEvent step(String step) {
+            this.step = step;
+            return this;
+        }
+
+        public FlightEvent bytes(long bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        public void commit(String outcome) {
+            if (event == null) {
+                return;
+            }
+            try {
+                API.end.invoke(event);
+                if ((Boolean) API.shouldCommit.invoke(event)) {
+                    API.set.invoke(event, ARTIFACT, artifact);
+                    API.set.invoke(event, STEP, step);
+                    API.set.invoke(event, BYTES, bytes);
+                    API.set.invoke(event, OUTCOME, outcome);
+                    API.commit.invoke(event);
+                }
+            } catch (Exception e) {
+                // the recording must never break the build
+            }
+        }
+    }
+
+    /**
+     * The reflectively bound part of the jdk.jfr API.
+     */
+    private static final class Api {
+
+        private final Method createFactory;
+        private final Method newEvent;
+        private final Method isEnabled;
+        private final Method shouldCommit;
+        private final Method begin;
+        private final Method end;
+        private final Method set;
+        private final Method commit;
+        private final Constructor<?> annotationElement;
+        private final Constructor<?> valueDescriptor;
+        private final Class<?> nameAnnotation;
+        private final Class<?> labelAnnotation;
+        private final Class<?> categoryAnnotation;
+
+        private Api() throws Exception {
+            Class<?> eventFactory = type("EventFactory");
+            Class<?> event = type("Event");
+            Class<?> annotationElementClass = type("AnnotationElement");
+            Class<?> valueDescriptorClass = type("ValueDescriptor");
+            createFactory = eventFactory.getMethod("create", List.class, List.class);
+            newEvent = eventFactory.getMethod("newEvent");
+            isEnabled = event.getMethod("isEnabled");
+            shouldCommit = event.getMethod("shouldCommit");
+            begin = event.getMethod("begin");
+            end = event.getMethod("end");
+            set = event.getMethod("set", int.class, Object.class);
+            commit = event.getMethod("commit");
+            annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+            valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class);
+            nameAnnotation = type("Name");
+            labelAnnotation = type("Label");
+            categoryAnnotation = type("Category");
+        }
+
+        /**
+         * The plugin class realm does not see the platform modules, the system class loader does.
+         */
+        private static Class<?> type(String name) throws ClassNotFoundException {
+            return Class.forName("jdk.jfr." + name, true, ClassLoader.getSystemClassLoader());
+        }
+
+        private static Api load() {
+            try {
+                return new Api();
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+
+        private Object createFactory(String type) throws Exception {
+            List<Object> annotations = Arrays.asList(
+                    annotationElement.newInstance(nameAnnotation, EVENT_PREFIX + type),
+                    annotationElement.newInstance(labelAnnotation, "p2 " + type),
+                    annotationElement.newInstance(categoryAnnotation, new String[]{CATEGORY}));
+            List<Object> fields = new ArrayList<Object>();
+            fields.add(valueDescriptor.newInstance(String.class, "artifact"));
+            fields.add(valueDescriptor.newInstance(String.class, "step"));
+            fields.add(valueDescriptor.newInstance(long.class, "bytes"));
+            fields.add(valueDescriptor.newInstance(String.class, "outcome"));
+            return createFactory.invoke(null, annotations, fields);
+        }
+    }
+
+}
@@ -0,0 +1,414 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.pipeline;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multiset;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.logger.LogBuffer;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.maven.ArtifactIdentity;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bundles the artifacts while they are being resolved. The artifacts are resolved one by one in the order of their
+ * declaration by a resolver thread that hands the results over through a bounded queue; the calling thread
+ * deduplicates them and dispatches them to a pool of bundling workers. Whenever the workers fall behind the calling
+ * thread bundles itself and the resolver blocks on the full queue, so only a bounded number of resolved artifacts is
+ * held in memory. The output of every bundling task is buffered and written at once when the task completes.
+ * <p>
+ * The precedence of the sequential processing is kept: a root artifact is bundled with its own instructions even if
+ * it is a transitive dependency of an artifact declared before it. A transitive dependency that may still turn out
+ * to be a root artifact of a later declaration (same groupId and artifactId) is therefore deferred until that
+ * declaration is resolved, so only the transitive dependencies waiting for a declaration still in the resolution are
+ * held back. As in the sequential processing, an artifact counts as bundled once its bundling succeeded: if it fails
+ * and is skipped, its next occurrence is bundled instead.
+ *
+ * @since 1.2.0
+ */
+public class StreamingPipeline {
+
+    /**
+     * Resolves a single declared artifact, the results have to list the root artifact first.
+     */
+    public interface Resolver {
+        List<ResolvedArtifact> resolve(P2Artifact p2Artifact);
+    }
+
+    public interface Bundler {
+        void bundle(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact);
+    }
+
+    private static final Resolution END = new Resolution(null, Collections.<ResolvedArtifact>emptyList(), null);
+
+    private final List<P2Artifact> artifacts;
+    private final Resolver resolver;
+    private final Bundler bundler;
+    private final int threads;
+    private final int queueSize;
+    private final boolean skipInvalidArtifacts;
+
+    private final Claims claims = new Claims();
+    private final Multiset<String> pendingRoots = HashMultiset.create();
+    private final ListMultimap<String, Task> deferred = ArrayListMultimap.create();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+    private StreamingPipeline(List<P2Artifact> artifacts, Resolver resolver, Bundler bundler, int threads,
+                              int queueSize, boolean skipInvalidArtifacts) {
+        this.artifacts = artifacts;
+        this.resolver = resolver;
+        this.bundler = bundler;
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.skipInvalidArtifacts = skipInvalidArtifacts;
+    }
+
+    public void execute() {
+        for (P2Artifact p2Artifact : artifacts) {
+            pendingRoots.add(groupAndArtifactId(p2Artifact.getId()));
+        }
+        BlockingQueue<Resolution> resolutions = new ArrayBlockingQueue<Resolution>(queueSize);
+        Thread resolverThread = new Thread(Logger.bind(new ResolverTask(resolutions)), "p2-resolver");
+        resolverThread.setDaemon(true);
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new DaemonThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        resolverThread.start();
+        try {
+            dispatchResolutions(resolutions, workers);
+            workers.shutdown();
+            awaitTermination(workers);
+        } finally {
+            resolverThread.interrupt();
+            if (!workers.isTerminated()) {
+                workers.shutdownNow();
+                awaitTermination(workers);
+            }
+        }
+        throwFailure();
+    }
+
+    private void dispatchResolutions(BlockingQueue<Resolution> resolutions, ThreadPoolExecutor workers) {
+        while (true) {
+            Resolution resolution = take(resolutions);
+            if (resolution.failure != null) {
+                failure.compareAndSet(null, resolution.failure);
+            }
+            throwFailure();
+            if (resolution == END) {
+                return;
+            }
+            for (ResolvedArtifact resolvedArtifact : resolution.resolvedArtifacts) {
+                if (resolvedArtifact.isRoot()) {
+                    dispatchRoot(new Task(resolution.p2Artifact, resolvedArtifact), workers);
+                }
+            }
+            String root = groupAndArtifactId(resolution.p2Artifact.getId());
+            pendingRoots.remove(root);
+            if (!pendingRoots.contains(root)) {
+                for (Task task : deferred.removeAll(root)) {
+                    dispatchTransitive(task, workers);
+                }
+            }
+            for (ResolvedArtifact resolvedArtifact : resolution.resolvedArtifacts) {
+                if (!resolvedArtifact.isRoot()) {
+                    dispatchTransitive(new Task(resolution.p2Artifact, resolvedArtifact), workers);
+                }
+            }
+        }
+    }
+
+    private void dispatchRoot(Task task, ThreadPoolExecutor workers) {
+        if (!claims.claimRoot(task)) {
+            throw new RuntimeException(String.format("p2-maven-plugin misconfiguration" +
+                    "\n\n\tJar [%s] is configured as an artifact multiple times. " +
+                    "\n\tRemove the duplicate artifact definitions.\n", task.identity()));
+        }
+        workers.execute(Logger.bind(task));
+    }
+
+    private void dispatchTransitive(Task task, ThreadPoolExecutor workers) {
+        ArtifactIdentity identity = task.identity();
+        String root = identity.getGroupId() + ":" + identity.getArtifactId();
+        if (pendingRoots.contains(root)) {
+            deferred.put(root, task);
+        } else if (claims.claimTransitive(task)) {
+            workers.execute(Logger.bind(task));
+        }
+    }
+
+    private void throwFailure() {
+        RuntimeException exception = failure.get();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private static String groupAndArtifactId(String id) {
+        String[] tokens = id.split(":");
+        return tokens.length > 1 ? tokens[0] + ":" + tokens[1] : id;
+    }
+
+    private static Resolution take(BlockingQueue<Resolution> resolutions) {
+        try {
+            return resolutions.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the resolution of the artifacts", e);
+        }
+    }
+
+    private static void awaitTermination(ThreadPoolExecutor workers) {
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                Logger.getLog().debug(String.format("Waiting for %d bundling tasks", workers.getActiveCount()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the bundling of the artifacts", e);
+        }
+    }
+
+    private static class Resolution {
+        private final P2Artifact p2Artifact;
+        private final List<ResolvedArtifact> resolvedArtifacts;
+        private final RuntimeException failure;
+
+        Resolution(P2Artifact p2Artifact, List<ResolvedArtifact> resolvedArtifacts, RuntimeException failure) {
+            this.p2Artifact = p2Artifact;
+            this.resolvedArtifacts = resolvedArtifacts;
+            this.failure = failure;
+        }
+    }
+
+    private class ResolverTask implements Runnable {
+        private final BlockingQueue<Resolution> resolutions;
+
+        ResolverTask(BlockingQueue<Resolution> resolutions) {
+            this.resolutions = resolutions;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (P2Artifact p2Artifact : artifacts) {
+                    if (failure.get() != null) {
+                        break;
+                    }
+                    resolutions.put(resolve(p2Artifact));
+                }
+                resolutions.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private Resolution resolve(P2Artifact p2Artifact) {
+            try {
+                return new Resolution(p2Artifact, resolver.resolve(p2Artifact), null);
+            } catch (RuntimeException ex) {
+                return new Resolution(p2Artifact, Collections.<ResolvedArtifact>emptyList(), ex);
+            }
+        }
+    }
+
+    /**
+     * Tracks the artifacts being bundled and the ones bundled successfully. An occurrence of an artifact whose bundling
+     * is still running waits for its outcome: it is dropped if the bundling succeeds and bundled instead if it fails.
+     */
+    private static class Claims {
+        private final Set<ArtifactIdentity> bundled = new HashSet<ArtifactIdentity>();
+        private final Map<ArtifactIdentity, Deque<Task>> running = new HashMap<ArtifactIdentity, Deque<Task>>();
+
+        synchronized boolean claimRoot(Task task) {
+            ArtifactIdentity identity = task.identity();
+            if (bundled.contains(identity) || running.containsKey(identity)) {
+                return false;
+            }
+            running.put(identity, new ArrayDeque<Task>());
+            return true;
+        }
+
+        synchronized boolean claimTransitive(Task task) {
+            ArtifactIdentity identity = task.identity();
+            if (bundled.contains(identity)) {
+                Logger.getLog().debug(String.format(
+                        "Not bundling transitive dependency since it has already been bundled [%s]", identity));
+                return false;
+            }
+            Deque<Task> waiting = running.get(identity);
+            if (waiting != null) {
+                waiting.add(task);
+                return false;
+            }
+            running.put(identity, new ArrayDeque<Task>());
+            return true;
+        }
+
+        synchronized void succeeded(Task task) {
+            running.remove(task.identity());
+            bundled.add(task.identity());
+        }
+
+        synchronized Task skipped(Task task) {
+            Deque<Task> waiting = running.get(task.identity());
+            Task next = waiting.poll();
+            if (next == null) {
+                running.remove(task.identity());
+            }
+            return next;
+        }
+    }
+
+    private class Task implements Runnable {
+        private final P2Artifact p2Artifact;
+        private final ResolvedArtifact resolvedArtifact;
+
+        Task(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
+            this.p2Artifact = p2Artifact;
+            this.resolvedArtifact = resolvedArtifact;
+        }
+
+        ArtifactIdentity identity() {
+            return resolvedArtifact.getArtifact().getIdentity();
+        }
+
+        @Override
+        public void run() {
+            Task task = this;
+            while (task != null && failure.get() == null) {
+                task = task.bundle();
+            }
+        }
+
+        /**
+         * @return the next occurrence of the artifact to bundle if this one failed and was skipped
+         */
+        private Task bundle() {
+            LogBuffer output = Logger.buffer();
+            try {
+                bundler.bundle(p2Artifact, resolvedArtifact);
+                claims.succeeded(this);
+                return null;
+            } catch (RuntimeException ex) {
+                if (skipInvalidArtifacts && !resolvedArtifact.isRoot()) {
+                    Logger.getLog().warn(String.format("Skip artifact=[%s]: %s", p2Artifact.getId(), ex.getMessage()));
+                    return claims.skipped(this);
+                }
+                failure.compareAndSet(null, ex);
+                return null;
+            } finally {
+                output.flush();
+            }
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "p2-bundler-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private List<P2Artifact> artifacts;
+        private Resolver resolver;
+        private Bundler bundler;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int queueSize;
+        private boolean skipInvalidArtifacts;
+
+        public Builder artifacts(List<P2Artifact> artifacts) {
+            this.artifacts = checkNotNull(artifacts, "artifacts cannot be null");
+            return this;
+        }
+
+        public Builder resolver(Resolver resolver) {
+            this.resolver = checkNotNull(resolver, "resolver cannot be null");
+            return this;
+        }
+
+        public Builder bundler(Bundler bundler) {
+            this.bundler = checkNotNull(bundler, "bundler cannot be null");
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            checkArgument(threads > 0, "threads has to be positive");
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Number of resolved artifacts and of bundling tasks that may wait for processing, twice the number of
+         * threads by default.
+         */
+        public Builder queueSize(int queueSize) {
+            checkArgument(queueSize > 0, "queueSize has to be positive");
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        public Builder skipInvalidArtifacts(boolean skipInvalidArtifacts) {
+            this.skipInvalidArtifacts = skipInvalidArtifacts;
+            return this;
+        }
+
+        public StreamingPipeline build() {
+            checkNotNull(artifacts, "artifacts cannot be null");
+            checkNotNull(resolver, "resolver cannot be null");
+            checkNotNull(bundler, "bundler cannot be null");
+            return new StreamingPipeline(artifacts, resolver, bundler, threads,
+                    queueSize > 0 ? queueSize : 2 * threads, skipInvalidArtifacts);
+        }
+
+    }
+
+}
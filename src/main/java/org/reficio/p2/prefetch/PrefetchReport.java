@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.prefetch;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * What the prefetch goal fetched and from where. An artifact counts as downloaded if its file was written after
+ * the prefetch started, otherwise it was already cached; the repository a Maven artifact comes from is read from
+ * the _remote.repositories file Maven keeps next to it in the local repository.
+ *
+ * @since 1.2.0
+ */
+public class PrefetchReport {
+
+    public static final String DOWNLOADED = "downloaded";
+    public static final String CACHED = "cached";
+    public static final String MISSING = "missing";
+
+    static final String REMOTE_REPOSITORIES = "_remote.repositories";
+
+    private static final String SEPARATOR = "\t";
+
+    private final long startMillis;
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    public PrefetchReport(long startMillis) {
+        this.startMillis = startMillis;
+    }
+
+    public void addMavenArtifact(String id, File file) {
+        add(id, file, file != null ? mavenOriginOf(file) : null);
+    }
+
+    public void addP2Artifact(String id, File file, String origin) {
+        add(id, file, origin);
+    }
+
+    public void addMissing(String id, String reason) {
+        add(id, null, reason);
+    }
+
+    private synchronized void add(String id, File file, String origin) {
+        String status = file == null || !file.exists() ? MISSING
+                : file.lastModified() >= startMillis ? DOWNLOADED : CACHED;
+        entries.add(new Entry(id, file, status, origin != null ? origin : "unknown"));
+    }
+
+    /**
+     * @return repository id the file was downloaded from, "local" if it was installed locally
+     */
+    static String mavenOriginOf(File file) {
+        File remoteRepositories = new File(file.getParentFile(), REMOTE_REPOSITORIES);
+        if (!remoteRepositories.isFile()) {
+            return null;
+        }
+        try {
+            for (String line : FileUtils.readLines(remoteRepositories, "UTF-8")) {
+                // <file name>><repository id>=
+                int separator = line.indexOf('>');
+                if (separator > 0 && line.endsWith("=") && line.substring(0, separator).equals(file.getName())) {
+                    String repository = line.substring(separator + 1, line.length() - 1);
+                    return repository.length() > 0 ? repository : "local";
+                }
+            }
+            return null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    public synchronized int count(String status) {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.status.equals(status)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized long downloadedBytes() {
+        long bytes = 0;
+        for (Entry entry : entries) {
+            if (entry.status.equals(DOWNLOADED)) {
+                bytes += entry.file.length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes one "status TAB id TAB origin TAB file" line per artifact, sorted by the ids.
+     */
+    public synchronized void write(File report) throws IOException {
+        List<Entry> sorted = new ArrayList<Entry>(entries);
+        Collections.sort(sorted, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry first, Entry second) {
+                return first.id.compareTo(second.id);
+            }
+        });
+        List<String> lines = new ArrayList<String>();
+        for (Entry entry : sorted) {
+            lines.add(entry.status + SEPARATOR + entry.id + SEPARATOR + entry.origin + SEPARATOR
+                    + (entry.file != null ? entry.file.getAbsolutePath() : "-"));
+        }
+        FileUtils.writeLines(report, "UTF-8", lines, "\n");
+    }
+
+    public synchronized void logSummary() {
+        for (Entry entry : entries) {
+            if (entry.status.equals(MISSING)) {
+                Logger.getLog().warn(String.format("Not fetched [%s]: %s", entry.id, entry.origin));
+            }
+        }
+        Logger.getLog().info(String.format(
+                "Prefetched %d artifacts: %d downloaded (%d KB), %d already cached, %d missing",
+                entries.size(), count(DOWNLOADED), downloadedBytes() / 1024, count(CACHED), count(MISSING)));
+    }
+
+    private static class Entry {
+        private final String id;
+        private final File file;
+        private final String status;
+        private final String origin;
+
+        Entry(String id, File file, String status, String origin) {
+            this.id = id;
+            this.file = file;
+            this.status = status;
+            this.origin = origin;
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.prefetch;
+
+import org.reficio.p2.EclipseArtifact;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Resolves all the artifacts, features and p2 artifacts in parallel without bundling anything and reports what was
+ * downloaded and from where. An artifact that cannot be resolved is reported as missing; the prefetch fails at the
+ * end if any is missing, unless the invalid artifacts are skipped.
+ *
+ * @since 1.2.0
+ */
+public class Prefetcher {
+
+    public interface Resolver {
+        List<ResolvedArtifact> resolve(P2Artifact p2Artifact);
+
+        /**
+         * @return the resolved files, each one with the repository it comes from
+         */
+        Map<File, String> resolve(EclipseArtifact eclipseArtifact);
+    }
+
+    private final Iterable<P2Artifact> artifacts;
+    private final List<EclipseArtifact> eclipseArtifacts;
+    private final Resolver resolver;
+    private final int threads;
+    private final File reportFile;
+    private final boolean skipInvalidArtifacts;
+
+    private Prefetcher(Iterable<P2Artifact> artifacts, List<EclipseArtifact> eclipseArtifacts, Resolver resolver,
+                       int threads, File reportFile, boolean skipInvalidArtifacts) {
+        this.artifacts = artifacts;
+        this.eclipseArtifacts = eclipseArtifacts;
+        this.resolver = resolver;
+        this.threads = threads;
+        this.reportFile = reportFile;
+        this.skipInvalidArtifacts = skipInvalidArtifacts;
+    }
+
+    public void execute() throws IOException, InterruptedException {
+        final PrefetchReport report = new PrefetchReport(System.currentTimeMillis());
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final P2Artifact p2Artifact : artifacts) {
+            tasks.add(Logger.bind(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        for (ResolvedArtifact resolvedArtifact : resolver.resolve(p2Artifact)) {
+                            Artifact artifact = resolvedArtifact.getArtifact();
+                            report.addMavenArtifact(artifact.getLongId(), artifact.getFile());
+                            Artifact sourceArtifact = resolvedArtifact.getSourceArtifact();
+                            if (sourceArtifact != null) {
+                                report.addMavenArtifact(sourceArtifact.getLongId(), sourceArtifact.getFile());
+                            }
+                        }
+                    } catch (RuntimeException ex) {
+                        report.addMissing(p2Artifact.getId(), ex.getMessage());
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (final EclipseArtifact eclipseArtifact : eclipseArtifacts) {
+            tasks.add(Logger.bind(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        for (Map.Entry<File, String> file : resolver.resolve(eclipseArtifact).entrySet()) {
+                            report.addP2Artifact(file.getKey().getName(), file.getKey(), file.getValue());
+                        }
+                    } catch (RuntimeException ex) {
+                        report.addMissing(eclipseArtifact.getId(), ex.getMessage());
+                    }
+                    return null;
+                }
+            }));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            executor.invokeAll(tasks);
+        } finally {
+            executor.shutdownNow();
+        }
+        report.write(reportFile);
+        Logger.getLog().info("Prefetch report: " + reportFile.getAbsolutePath());
+        report.logSummary();
+        int missing = report.count(PrefetchReport.MISSING);
+        if (missing > 0 && !skipInvalidArtifacts) {
+            throw new RuntimeException(String.format("Cannot prefetch %d artifacts, see %s", missing, reportFile));
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private Iterable<P2Artifact> artifacts;
+        private List<EclipseArtifact> eclipseArtifacts;
+        private Resolver resolver;
+        private int threads = 1;
+        private File reportFile;
+        private boolean skipInvalidArtifacts;
+
+        /**
+         * @param artifacts the artifacts and the features
+         */
+        public Builder artifacts(Iterable<P2Artifact> artifacts) {
+            this.artifacts = checkNotNull(artifacts, "artifacts cannot be null");
+            return this;
+        }
+
+        public Builder eclipseArtifacts(List<EclipseArtifact> eclipseArtifacts) {
+            this.eclipseArtifacts = checkNotNull(eclipseArtifacts, "eclipseArtifacts cannot be null");
+            return this;
+        }
+
+        public Builder resolver(Resolver resolver) {
+            this.resolver = checkNotNull(resolver, "resolver cannot be null");
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            this.threads = Math.max(1, threads);
+            return this;
+        }
+
+        public Builder reportFile(File reportFile) {
+            this.reportFile = checkNotNull(reportFile, "reportFile cannot be null");
+            return this;
+        }
+
+        public Builder skipInvalidArtifacts(boolean skipInvalidArtifacts) {
+            this.skipInvalidArtifacts = skipInvalidArtifacts;
+            return this;
+        }
+
+        public Prefetcher build() {
+            checkNotNull(artifacts, "artifacts cannot be null");
+            checkNotNull(eclipseArtifacts, "eclipseArtifacts cannot be null");
+            checkNotNull(resolver, "resolver cannot be null");
+            checkNotNull(reportFile, "reportFile cannot be null");
+            return new Prefetcher(artifacts, eclipseArtifacts, resolver, threads, reportFile, skipInvalidArtifacts);
+        }
+
+    }
+
+}
@@ -22,7 +22,10 @@ import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
+import org.reficio.p2.metrics.FlightRecorder;
+import org.reficio.p2.metrics.FlightRecorder.FlightEvent;
 
+import java.io.File;
 import java.io.IOException;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -40,20 +43,33 @@ public class BundlePublisher {
 
     private final Boolean compressSite;
     private final String additionalArgs;
+    private final File sourceLocation;
     private final MavenProject mavenProject;
     private final MavenSession mavenSession;
     private final BuildPluginManager buildPluginManager;
 
-    public BundlePublisher(Boolean compressSite, String additionalArgs,
+    public BundlePublisher(Boolean compressSite, String additionalArgs, File sourceLocation,
                            MavenProject mavenProject, MavenSession mavenSession, BuildPluginManager buildPluginManager) {
         this.compressSite = compressSite;
         this.additionalArgs = additionalArgs;
+        this.sourceLocation = sourceLocation;
         this.mavenProject = mavenProject;
         this.mavenSession = mavenSession;
         this.buildPluginManager = buildPluginManager;
     }
 
     public void execute() throws MojoExecutionException, IOException {
+        FlightEvent event = FlightRecorder.begin(FlightRecorder.PUBLISH, mavenProject.getId()).step("tycho");
+        String outcome = FlightRecorder.FAILURE;
+        try {
+            executePublisher();
+            outcome = FlightRecorder.SUCCESS;
+        } finally {
+            event.commit(outcome);
+        }
+    }
+
+    private void executePublisher() throws MojoExecutionException {
         executeMojo(
                 plugin(
                         groupId("org.eclipse.tycho.extras"),
@@ -62,6 +78,7 @@ public class BundlePublisher {
                 ),
                 goal("publish-features-and-bundles"),
                 configuration(
+                        element(name("sourceLocation"), sourceLocation.getAbsolutePath()),
                         element(name("compress"), Boolean.toString(compressSite)),
                         element(name("additionalArgs"), additionalArgs)
                 ),
@@ -80,6 +97,7 @@ public class BundlePublisher {
     public static class Builder {
         private Boolean compressSite;
         private String additionalArgs;
+        private File sourceLocation;
         private MavenProject mavenProject;
         private MavenSession mavenSession;
         private BuildPluginManager buildPluginManager;
@@ -94,6 +112,11 @@ public class BundlePublisher {
             return this;
         }
 
+        public Builder sourceLocation(File sourceLocation) {
+            this.sourceLocation = sourceLocation;
+            return this;
+        }
+
         public Builder mavenProject(MavenProject mavenProject) {
             this.mavenProject = mavenProject;
             return this;
@@ -110,7 +133,7 @@ public class BundlePublisher {
         }
 
         public BundlePublisher build() {
-            return new BundlePublisher(compressSite, additionalArgs, checkNotNull(mavenProject),
+            return new BundlePublisher(compressSite, additionalArgs, checkNotNull(sourceLocation), checkNotNull(mavenProject),
                     checkNotNull(mavenSession), checkNotNull(buildPluginManager));
         }
     }
@@ -23,6 +23,8 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.eclipse.sisu.equinox.launching.internal.P2ApplicationLauncher;
+import org.reficio.p2.metrics.FlightRecorder;
+import org.reficio.p2.metrics.FlightRecorder.FlightEvent;
 
 import java.io.File;
 import java.io.IOException;
@@ -56,8 +58,16 @@ public class CategoryPublisher {
     }
 
     public void execute() throws AbstractMojoExecutionException, IOException {
-        configureLauncher(categoryFileLocation, metadataRepositoryLocation);
-        executeLauncher();
+        FlightEvent event = FlightRecorder.begin(FlightRecorder.CATEGORY_PUBLISH, categoryFileLocation)
+                .step("forked").bytes(new File(categoryFileLocation).length());
+        String outcome = FlightRecorder.FAILURE;
+        try {
+            configureLauncher(categoryFileLocation, metadataRepositoryLocation);
+            executeLauncher();
+            outcome = FlightRecorder.SUCCESS;
+        } finally {
+            event.commit(outcome);
+        }
     }
 
     private void configureLauncher(String categoryFileLocation, String metadataRepositoryLocation) throws AbstractMojoExecutionException, IOException {
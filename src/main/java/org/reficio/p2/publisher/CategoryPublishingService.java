@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import com.google.common.base.Supplier;
+import org.apache.maven.plugin.AbstractMojoExecutionException;
+import org.eclipse.sisu.equinox.launching.internal.P2ApplicationLauncher;
+import org.reficio.p2.logger.Logger;
+
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Publishes the categories in-process if requested and if the category file allows it, with the forked Equinox
+ * CategoryPublisher otherwise.
+ *
+ * @since 1.2.0
+ */
+public class CategoryPublishingService {
+
+    private final Supplier<P2ApplicationLauncher> launchers;
+    private final String additionalArgs;
+    private final int forkedProcessTimeoutInSeconds;
+
+    private CategoryPublishingService(Supplier<P2ApplicationLauncher> launchers, String additionalArgs,
+                                      int forkedProcessTimeoutInSeconds) {
+        this.launchers = launchers;
+        this.additionalArgs = additionalArgs;
+        this.forkedProcessTimeoutInSeconds = forkedProcessTimeoutInSeconds;
+    }
+
+    public void publish(String categoryFileLocation, String repositoryLocation, boolean inProcess)
+            throws AbstractMojoExecutionException, IOException {
+        if (inProcess) {
+            InProcessCategoryPublisher inProcessPublisher = InProcessCategoryPublisher.builder()
+                    .categoryFileLocation(categoryFileLocation)
+                    .metadataRepositoryLocation(repositoryLocation)
+                    .build();
+            if (inProcessPublisher.isSupported()) {
+                inProcessPublisher.execute();
+                return;
+            }
+            Logger.getLog().warn("Cannot publish categories in-process, the category file uses query expressions "
+                    + "that only the forked publisher evaluates - falling back to it");
+        }
+        CategoryPublisher publisher = CategoryPublisher.builder()
+                .p2ApplicationLauncher(launchers.get())
+                .additionalArgs(additionalArgs)
+                .forkedProcessTimeoutInSeconds(forkedProcessTimeoutInSeconds)
+                .categoryFileLocation(categoryFileLocation)
+                .metadataRepositoryLocation(repositoryLocation)
+                .build();
+        publisher.execute();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private Supplier<P2ApplicationLauncher> launchers;
+        private String additionalArgs;
+        private int forkedProcessTimeoutInSeconds = 0;
+
+        /**
+         * @param launchers supplies the launcher of each forked publisher - the launcher keeps the arguments of its
+         *                  previous executions, so it cannot be shared by the threads publishing the sites
+         */
+        public Builder launchers(Supplier<P2ApplicationLauncher> launchers) {
+            checkNotNull(launchers, "launchers cannot be null");
+            this.launchers = launchers;
+            return this;
+        }
+
+        public Builder additionalArgs(String additionalArgs) {
+            this.additionalArgs = additionalArgs;
+            return this;
+        }
+
+        public Builder forkedProcessTimeoutInSeconds(int forkedProcessTimeoutInSeconds) {
+            checkArgument(forkedProcessTimeoutInSeconds >= 0, "forkedProcessTimeoutInSeconds cannot be negative");
+            this.forkedProcessTimeoutInSeconds = forkedProcessTimeoutInSeconds;
+            return this;
+        }
+
+        public CategoryPublishingService build() {
+            checkNotNull(launchers, "launchers cannot be null");
+            return new CategoryPublishingService(launchers, additionalArgs, forkedProcessTimeoutInSeconds);
+        }
+
+    }
+
+}
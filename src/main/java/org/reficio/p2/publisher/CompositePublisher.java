@@ -0,0 +1,497 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.fingerprint.DigestService;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.metadata.CategoryDefinition;
+import org.reficio.p2.publisher.metadata.InstallableUnit;
+import org.reficio.p2.publisher.metadata.MetadataFiles;
+import org.reficio.p2.publisher.metadata.MetadataReader;
+import org.reficio.p2.publisher.metadata.MetadataWriter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Publishes the bundles and features located in the source folder as a composite p2 repository.
+ * The bundles are split into shards - child repositories located in the shards folder - either by the prefix
+ * of their groupId or by a size budget; the features and the categories get a child repository of their own.
+ * The shards are published in parallel (using the {@link NativeBundlePublisher}) and a shard is republished
+ * only if its fingerprint (the checksums of its jars and the publishing options) differs from the one
+ * recorded in the state file by the previous execution.
+ *
+ * @since 1.2.0
+ */
+public class CompositePublisher {
+
+    public enum ShardStrategy {
+        GROUP_ID, SIZE
+    }
+
+    static final String SHARDS = "shards";
+    static final String FEATURES = "features";
+    static final String CATEGORIES = "categories";
+
+    private static final String PLUGINS = "plugins";
+    private static final String COMPOSITE_INDEX = "version=1\n" +
+            "metadata.repository.factory.order=" + MetadataFiles.COMPOSITE_CONTENT + ".xml,!\n" +
+            "artifact.repository.factory.order=" + MetadataFiles.COMPOSITE_ARTIFACTS + ".xml,!\n";
+
+    private final File sourceLocation;
+    private final File repositoryLocation;
+    private final String repositoryName;
+    private final ShardStrategy shardStrategy;
+    private final int groupIdSegments;
+    private final long shardSize;
+    private final String categoryFileLocation;
+    private final File stateFile;
+    private final boolean compressSite;
+    private final boolean xzCompressSite;
+    private final int compressionLevel;
+    private final int threads;
+    private final DigestService digests;
+
+    public CompositePublisher(File sourceLocation, File repositoryLocation, String repositoryName,
+                              ShardStrategy shardStrategy, int groupIdSegments, long shardSize,
+                              String categoryFileLocation, File stateFile, boolean compressSite,
+                              boolean xzCompressSite, int compressionLevel, int threads, DigestService digests) {
+        this.sourceLocation = sourceLocation;
+        this.repositoryLocation = repositoryLocation;
+        this.repositoryName = repositoryName;
+        this.shardStrategy = shardStrategy;
+        this.groupIdSegments = groupIdSegments;
+        this.shardSize = shardSize;
+        this.categoryFileLocation = categoryFileLocation;
+        this.stateFile = stateFile;
+        this.compressSite = compressSite;
+        this.xzCompressSite = xzCompressSite;
+        this.compressionLevel = compressionLevel;
+        this.threads = threads;
+        this.digests = digests;
+    }
+
+    public void execute() throws IOException {
+        prepareRepositoryLocation();
+        Properties previous = loadState();
+        Properties current = new Properties();
+
+        Map<String, List<File>> shards = shard(new File(sourceLocation, PLUGINS));
+        List<String> children = new ArrayList<String>();
+        List<Future<String>> tasks = new ArrayList<Future<String>>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Map.Entry<String, List<File>> shard : shards.entrySet()) {
+                String location = SHARDS + "/" + shard.getKey();
+                children.add(location);
+                tasks.add(executor.submit(Logger.bind(new ChildTask(location, shard.getValue(),
+                        Collections.<File>emptyList(), previous))));
+            }
+            List<File> features = NativeBundlePublisher.listJars(new File(sourceLocation, FEATURES));
+            if (!features.isEmpty()) {
+                children.add(FEATURES);
+                tasks.add(executor.submit(Logger.bind(new ChildTask(FEATURES, Collections.<File>emptyList(), features,
+                        previous))));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                current.setProperty(children.get(i), await(tasks.get(i)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        List<String> contentChildren = new ArrayList<String>(children);
+        if (categoryFileLocation != null) {
+            current.setProperty(CATEGORIES, publishCategories(children, current, previous));
+            contentChildren.add(CATEGORIES);
+        }
+        removeObsoleteChildren(previous, current);
+        MetadataWriter.writeComposite(repositoryLocation, repositoryName, false, contentChildren, compressSite);
+        MetadataWriter.writeComposite(repositoryLocation, repositoryName, true, children, compressSite);
+        FileUtils.writeStringToFile(new File(repositoryLocation, MetadataCompressor.P2_INDEX), COMPOSITE_INDEX, "UTF-8");
+        saveState(current);
+        Logger.getLog().info(String.format("Published composite repository with %d children to %s",
+                contentChildren.size(), repositoryLocation));
+    }
+
+    /**
+     * Groups the bundles into shards. The bundles of one groupId (one folder of the source location) always end up
+     * in the same shard; the jars lying directly in the plugins folder (e.g. the ones resolved from Eclipse
+     * repositories) are grouped by their symbolic name.
+     */
+    Map<String, List<File>> shard(File pluginsFolder) {
+        Map<String, List<File>> groups = new TreeMap<String, List<File>>();
+        for (File jar : NativeBundlePublisher.listJars(pluginsFolder)) {
+            String group = jar.getParentFile().equals(pluginsFolder) ? symbolicName(jar) : jar.getParentFile().getName();
+            List<File> jars = groups.get(group);
+            if (jars == null) {
+                jars = new ArrayList<File>();
+                groups.put(group, jars);
+            }
+            jars.add(jar);
+        }
+        Map<String, List<File>> shards = new TreeMap<String, List<File>>();
+        if (shardStrategy == ShardStrategy.GROUP_ID) {
+            for (Map.Entry<String, List<File>> group : groups.entrySet()) {
+                addAll(shards, prefix(group.getKey()), group.getValue());
+            }
+        } else {
+            // greedy packing in the order of the groupIds - a new groupId only shifts the shards that follow it
+            int index = 1;
+            long size = 0;
+            for (List<File> jars : groups.values()) {
+                long groupSize = 0;
+                for (File jar : jars) {
+                    groupSize += jar.length();
+                }
+                if (size > 0 && size + groupSize > shardSize) {
+                    index++;
+                    size = 0;
+                }
+                size += groupSize;
+                addAll(shards, String.format("shard-%03d", index), jars);
+            }
+        }
+        return shards;
+    }
+
+    private String prefix(String groupId) {
+        String[] segments = groupId.split("\\.");
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < Math.min(groupIdSegments, segments.length); i++) {
+            if (i > 0) {
+                prefix.append('.');
+            }
+            prefix.append(segments[i]);
+        }
+        return prefix.toString();
+    }
+
+    private static String symbolicName(File jar) {
+        String name = jar.getName().substring(0, jar.getName().length() - ".jar".length());
+        int separator = name.indexOf('_');
+        return separator > 0 ? name.substring(0, separator) : name;
+    }
+
+    private static void addAll(Map<String, List<File>> shards, String shard, List<File> jars) {
+        List<File> shardJars = shards.get(shard);
+        if (shardJars == null) {
+            shardJars = new ArrayList<File>();
+            shards.put(shard, shardJars);
+        }
+        shardJars.addAll(jars);
+    }
+
+    /**
+     * @return the fingerprint of the child repository
+     */
+    private String publishChild(String location, List<File> bundles, List<File> features, Properties previous)
+            throws IOException {
+        MessageDigest digest = DigestService.newSha256();
+        update(digest, options() + "|" + childName(location));
+        for (Map.Entry<File, String> jar : digests.digestAll(bundles).entrySet()) {
+            update(digest, relativePath(jar.getKey()) + "=" + jar.getValue());
+        }
+        for (Map.Entry<File, String> jar : digests.digestAll(features).entrySet()) {
+            update(digest, relativePath(jar.getKey()) + "=" + jar.getValue());
+        }
+        String fingerprint = DigestService.toHex(digest.digest());
+        File childLocation = new File(repositoryLocation, location);
+        if (fingerprint.equals(previous.getProperty(location)) && MetadataFiles.exists(childLocation, MetadataFiles.CONTENT)) {
+            Logger.getLog().info("\t [UNCHANGED] " + location);
+            return fingerprint;
+        }
+        Logger.getLog().info("\t [PUBLISH] " + location);
+        FileUtils.deleteDirectory(childLocation);
+        NativeBundlePublisher.builder()
+                .bundles(bundles)
+                .features(features)
+                .repositoryLocation(childLocation)
+                .repositoryName(childName(location))
+                .compressSite(false)
+                .digestService(digests)
+                .build()
+                .execute();
+        compress(childLocation);
+        return fingerprint;
+    }
+
+    /**
+     * The categories live in a child repository of their own, as their units reference units of all the shards.
+     *
+     * @return the fingerprint of the categories repository
+     */
+    private String publishCategories(List<String> children, Properties current, Properties previous) throws IOException {
+        MessageDigest digest = DigestService.newSha256();
+        update(digest, options());
+        update(digest, digests.digest(new File(categoryFileLocation)));
+        for (String child : children) {
+            update(digest, child + "=" + current.getProperty(child));
+        }
+        String fingerprint = DigestService.toHex(digest.digest());
+        File categoriesLocation = new File(repositoryLocation, CATEGORIES);
+        if (fingerprint.equals(previous.getProperty(CATEGORIES))
+                && MetadataFiles.exists(categoriesLocation, MetadataFiles.CONTENT)) {
+            Logger.getLog().info("\t [UNCHANGED] " + CATEGORIES);
+            return fingerprint;
+        }
+        Logger.getLog().info("\t [PUBLISH] " + CATEGORIES);
+        List<InstallableUnit> units = new ArrayList<InstallableUnit>();
+        for (String child : children) {
+            units.addAll(MetadataReader.readUnits(new File(repositoryLocation, child)));
+        }
+        List<InstallableUnit> categories = InProcessCategoryPublisher.createCategories(units,
+                CategoryDefinition.parse(new File(categoryFileLocation)));
+        FileUtils.deleteDirectory(categoriesLocation);
+        FileUtils.copyFile(new File(categoryFileLocation), new File(categoriesLocation, "category.xml"));
+        MetadataWriter.writeContent(categoriesLocation, childName(CATEGORIES), categories, false);
+        compress(categoriesLocation);
+        return fingerprint;
+    }
+
+    private void compress(File childLocation) throws IOException {
+        MetadataCompressor.builder()
+                .repositoryLocation(childLocation)
+                .compressSite(compressSite)
+                .xzCompressSite(xzCompressSite)
+                .compressionLevel(compressionLevel)
+                .threads(1)
+                .build()
+                .execute();
+    }
+
+    /**
+     * A flat repository generated by a previous execution is replaced as a whole.
+     */
+    private void prepareRepositoryLocation() throws IOException {
+        if (MetadataFiles.exists(repositoryLocation, MetadataFiles.CONTENT)
+                || MetadataFiles.exists(repositoryLocation, MetadataFiles.ARTIFACTS)) {
+            FileUtils.deleteDirectory(repositoryLocation);
+        }
+        FileUtils.forceMkdir(repositoryLocation);
+    }
+
+    private void removeObsoleteChildren(Properties previous, Properties current) throws IOException {
+        for (String child : previous.stringPropertyNames()) {
+            if (!current.containsKey(child)) {
+                Logger.getLog().info("\t [REMOVE] " + child);
+                FileUtils.deleteDirectory(new File(repositoryLocation, child));
+            }
+        }
+    }
+
+    private String options() {
+        return String.format("compress=%s,xz=%s,level=%d", compressSite, xzCompressSite, compressionLevel);
+    }
+
+    private String childName(String location) {
+        return repositoryName + " (" + location + ")";
+    }
+
+    private String relativePath(File jar) {
+        return sourceLocation.toURI().relativize(jar.toURI()).getPath();
+    }
+
+    private Properties loadState() throws IOException {
+        Properties state = new Properties();
+        if (stateFile.exists()) {
+            InputStream input = new FileInputStream(stateFile);
+            try {
+                state.load(input);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        }
+        return state;
+    }
+
+    private void saveState(Properties state) throws IOException {
+        FileUtils.forceMkdir(stateFile.getAbsoluteFile().getParentFile());
+        OutputStream output = new FileOutputStream(stateFile);
+        try {
+            state.store(output, "p2-maven-plugin composite repository state");
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    private static String await(Future<String> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while publishing the shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Cannot publish shard", e.getCause());
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        try {
+            digest.update(value.getBytes("UTF-8"));
+            digest.update((byte) '\n');
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private class ChildTask implements Callable<String> {
+
+        private final String location;
+        private final List<File> bundles;
+        private final List<File> features;
+        private final Properties previous;
+
+        ChildTask(String location, List<File> bundles, List<File> features, Properties previous) {
+            this.location = location;
+            this.bundles = bundles;
+            this.features = features;
+            this.previous = previous;
+        }
+
+        @Override
+        public String call() throws IOException {
+            return publishChild(location, bundles, features, previous);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private File sourceLocation;
+        private File repositoryLocation;
+        private String repositoryName;
+        private ShardStrategy shardStrategy = ShardStrategy.GROUP_ID;
+        private int groupIdSegments = 2;
+        private long shardSize = 100L * 1024 * 1024;
+        private String categoryFileLocation;
+        private File stateFile;
+        private boolean compressSite = true;
+        private boolean xzCompressSite;
+        private int compressionLevel = MetadataCompressor.DEFAULT_COMPRESSION_LEVEL;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private DigestService digestService;
+
+        public Builder sourceLocation(File sourceLocation) {
+            this.sourceLocation = checkNotNull(sourceLocation, "sourceLocation cannot be null");
+            return this;
+        }
+
+        public Builder repositoryLocation(File repositoryLocation) {
+            this.repositoryLocation = checkNotNull(repositoryLocation, "repositoryLocation cannot be null");
+            return this;
+        }
+
+        public Builder repositoryName(String repositoryName) {
+            this.repositoryName = repositoryName;
+            return this;
+        }
+
+        public Builder shardStrategy(ShardStrategy shardStrategy) {
+            this.shardStrategy = checkNotNull(shardStrategy, "shardStrategy cannot be null");
+            return this;
+        }
+
+        public Builder groupIdSegments(int groupIdSegments) {
+            checkArgument(groupIdSegments > 0, "groupIdSegments has to be positive");
+            this.groupIdSegments = groupIdSegments;
+            return this;
+        }
+
+        public Builder shardSize(long shardSize) {
+            checkArgument(shardSize > 0, "shardSize has to be positive");
+            this.shardSize = shardSize;
+            return this;
+        }
+
+        public Builder categoryFileLocation(String categoryFileLocation) {
+            this.categoryFileLocation = categoryFileLocation;
+            return this;
+        }
+
+        public Builder stateFile(File stateFile) {
+            this.stateFile = checkNotNull(stateFile, "stateFile cannot be null");
+            return this;
+        }
+
+        public Builder compressSite(boolean compressSite) {
+            this.compressSite = compressSite;
+            return this;
+        }
+
+        public Builder xzCompressSite(boolean xzCompressSite) {
+            this.xzCompressSite = xzCompressSite;
+            return this;
+        }
+
+        public Builder compressionLevel(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            checkArgument(threads > 0, "threads has to be positive");
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder digestService(DigestService digestService) {
+            this.digestService = digestService;
+            return this;
+        }
+
+        public CompositePublisher build() {
+            checkNotNull(sourceLocation, "sourceLocation cannot be null");
+            checkNotNull(repositoryLocation, "repositoryLocation cannot be null");
+            checkNotNull(stateFile, "stateFile cannot be null");
+            String name = repositoryName != null ? repositoryName : repositoryLocation.getName();
+            return new CompositePublisher(sourceLocation, repositoryLocation, name, shardStrategy, groupIdSegments,
+                    shardSize, categoryFileLocation, stateFile, compressSite, xzCompressSite, compressionLevel, threads,
+                    digestService != null ? digestService : DigestService.inMemory());
+        }
+
+    }
+
+}
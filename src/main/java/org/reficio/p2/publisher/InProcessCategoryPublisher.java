@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import aQute.bnd.version.Version;
+import org.codehaus.plexus.util.FileUtils;
+import org.reficio.p2.publisher.metadata.CategoryDefinition;
+import org.reficio.p2.publisher.metadata.InstallableUnit;
+import org.reficio.p2.publisher.metadata.InstallableUnits;
+import org.reficio.p2.publisher.metadata.MetadataReader;
+import org.reficio.p2.publisher.metadata.MetadataWriter;
+import org.reficio.p2.publisher.metadata.UnitQuery;
+import org.reficio.p2.utils.JarUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Publishes the categories defined in the category.xml file directly into the metadata
+ * repository (content.xml / content.jar) - without forking the Equinox p2 application.
+ * Existing category units are replaced, so the publisher may be re-applied on the same repository.
+ * The repository is streamed: the units are scanned for the category queries and then copied one at a time.
+ *
+ * @since 1.2.0
+ */
+public class InProcessCategoryPublisher {
+
+    private static final String FEATURE_GROUP_POSTFIX = ".feature.group";
+    private static final String EMPTY_VERSION = "0.0.0";
+
+    private final String categoryFileLocation;
+    private final String metadataRepositoryLocation;
+
+    public InProcessCategoryPublisher(String categoryFileLocation, String metadataRepositoryLocation) {
+        this.categoryFileLocation = categoryFileLocation;
+        this.metadataRepositoryLocation = metadataRepositoryLocation;
+    }
+
+    /**
+     * @return false if the category file uses constructs that cannot be evaluated in-process (the forked publisher
+     * should be used then)
+     */
+    public boolean isSupported() throws IOException {
+        return isSupported(CategoryDefinition.parse(new File(categoryFileLocation)));
+    }
+
+    public static boolean isSupported(CategoryDefinition definition) {
+        for (CategoryDefinition.Entry entry : definition.getEntries()) {
+            if (isQuery(entry) && !UnitQuery.isSupported(entry.getQuery())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the category file is not supported, see {@link #isSupported()}
+     */
+    public void execute() throws IOException {
+        File metadataRepositoryDir = new File(metadataRepositoryLocation).getCanonicalFile();
+        File categoryDefinitionFileSource = new File(categoryFileLocation);
+        File categoryDefinitionFileTarget = new File(metadataRepositoryDir, "category.xml");
+        if (!categoryDefinitionFileSource.getCanonicalFile().equals(categoryDefinitionFileTarget)) {
+            FileUtils.copyFile(categoryDefinitionFileSource, categoryDefinitionFileTarget);
+        }
+
+        CategoryDefinition definition = CategoryDefinition.parse(categoryDefinitionFileTarget);
+        List<InstallableUnit> units = new ArrayList<InstallableUnit>();
+        for (InstallableUnit unit : MetadataReader.readUnits(metadataRepositoryDir)) {
+            if (!InstallableUnits.isCategory(unit)) {
+                units.add(unit);
+            }
+        }
+        MetadataWriter.replaceCategories(metadataRepositoryDir, units.size(), createCategories(units, definition));
+    }
+
+    /**
+     * @param units the units the categories may reference, without the categories
+     */
+    public static List<InstallableUnit> createCategories(List<InstallableUnit> units, CategoryDefinition definition) {
+        Map<String, Set<InstallableUnit>> members = new LinkedHashMap<String, Set<InstallableUnit>>();
+        for (CategoryDefinition.Category category : definition.getCategories()) {
+            members.put(category.getName(), new LinkedHashSet<InstallableUnit>());
+        }
+        for (CategoryDefinition.Entry entry : definition.getEntries()) {
+            List<InstallableUnit> matched = match(entry, units);
+            for (String categoryName : entry.getCategories()) {
+                Set<InstallableUnit> categoryMembers = members.get(categoryName);
+                if (categoryMembers == null) {
+                    throw new IllegalArgumentException("Category [" + categoryName + "] is not defined in the category file");
+                }
+                categoryMembers.addAll(matched);
+            }
+        }
+
+        String version = EMPTY_VERSION + "." + JarUtils.getTimeStamp();
+        List<InstallableUnit> categories = new ArrayList<InstallableUnit>();
+        for (CategoryDefinition.Category category : definition.getCategories()) {
+            InstallableUnit unit = new InstallableUnit(category.getName(), version);
+            unit.setProperty(InstallableUnits.PROP_NAME, category.getLabel());
+            unit.setProperty(InstallableUnits.PROP_DESCRIPTION, category.getDescription());
+            unit.setProperty(InstallableUnits.PROP_TYPE_CATEGORY, "true");
+            unit.provide(InstallableUnits.IU_NAMESPACE, category.getName(), version);
+            for (InstallableUnit member : members.get(category.getName())) {
+                String memberVersion = member.getVersion();
+                unit.require(InstallableUnits.IU_NAMESPACE, member.getId(),
+                        "[" + memberVersion + "," + memberVersion + "]", false);
+            }
+            for (CategoryDefinition.Category child : definition.getCategories()) {
+                if (child.getParents().contains(category.getName())) {
+                    unit.require(InstallableUnits.IU_NAMESPACE, child.getName(), "[" + version + "," + version + "]",
+                            false);
+                }
+            }
+            categories.add(unit);
+        }
+        return categories;
+    }
+
+    private static boolean isQuery(CategoryDefinition.Entry entry) {
+        return entry.getType() == CategoryDefinition.EntryType.IU && entry.getQuery() != null;
+    }
+
+    private static List<InstallableUnit> match(CategoryDefinition.Entry entry, List<InstallableUnit> units) {
+        if (isQuery(entry)) {
+            return UnitQuery.parse(entry.getQuery()).filter(units);
+        }
+        String id = entry.getType() == CategoryDefinition.EntryType.FEATURE ? entry.getId() + FEATURE_GROUP_POSTFIX : entry.getId();
+        String version = entry.getVersion();
+        boolean anyVersion = version == null || version.length() == 0 || EMPTY_VERSION.equals(version);
+        InstallableUnit best = null;
+        for (InstallableUnit unit : units) {
+            if (!id.equals(unit.getId())) {
+                continue;
+            }
+            String unitVersion = unit.getVersion();
+            if (anyVersion) {
+                if (best == null || Version.parseVersion(unitVersion).compareTo(Version.parseVersion(best.getVersion())) > 0) {
+                    best = unit;
+                }
+            } else if (Version.parseVersion(version).equals(Version.parseVersion(unitVersion))) {
+                best = unit;
+            }
+        }
+        List<InstallableUnit> result = new ArrayList<InstallableUnit>();
+        if (best != null) {
+            result.add(best);
+        }
+        return result;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private String categoryFileLocation;
+        private String metadataRepositoryLocation;
+
+        public Builder categoryFileLocation(String categoryFileLocation) {
+            checkNotNull(categoryFileLocation, "categoryFileLocation cannot be null");
+            this.categoryFileLocation = categoryFileLocation;
+            return this;
+        }
+
+        public Builder metadataRepositoryLocation(String metadataRepositoryLocation) {
+            checkNotNull(metadataRepositoryLocation, "metadataRepositoryLocation cannot be null");
+            this.metadataRepositoryLocation = metadataRepositoryLocation;
+            return this;
+        }
+
+        public InProcessCategoryPublisher build() {
+            checkNotNull(categoryFileLocation, "categoryFileLocation cannot be null");
+            checkNotNull(metadataRepositoryLocation, "metadataRepositoryLocation cannot be null");
+            return new InProcessCategoryPublisher(categoryFileLocation, metadataRepositoryLocation);
+        }
+
+    }
+
+}
@@ -0,0 +1,303 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.metadata.MetadataFiles;
+import org.reficio.p2.publisher.metadata.ParallelDeflater;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Final step of the site generation - turns the plain content and artifacts descriptors into their
+ * compressed flavours and writes the p2.index that tells p2 clients which flavour to fetch first.
+ * The .jar descriptors are deflated in parallel blocks, the .xml.xz descriptors (read by p2 since Eclipse Mars)
+ * are written next to them, so old clients keep working while new ones download the much smaller xz files.
+ *
+ * @since 1.2.0
+ */
+public class MetadataCompressor {
+
+    public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+    static final String P2_INDEX = "p2.index";
+
+    private static final String XML = ".xml";
+    private static final String JAR = ".jar";
+    private static final String XZ = ".xml.xz";
+    private static final String TMP = ".tmp";
+    // the repository properties are written before the units, well within the first block
+    private static final int HEADER_SIZE = 64 * 1024;
+    private static final Pattern COMPRESSED_PROPERTY =
+            Pattern.compile("(name=['\"]p2\\.compressed['\"]\\s+value=['\"])(?:true|false)(['\"])");
+
+    private final File repositoryLocation;
+    private final boolean compressSite;
+    private final boolean xzCompressSite;
+    private final int compressionLevel;
+    private final int threads;
+
+    public MetadataCompressor(File repositoryLocation, boolean compressSite, boolean xzCompressSite,
+                              int compressionLevel, int threads) {
+        this.repositoryLocation = repositoryLocation;
+        this.compressSite = compressSite;
+        this.xzCompressSite = xzCompressSite;
+        this.compressionLevel = compressionLevel;
+        this.threads = threads;
+    }
+
+    public void execute() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> xzTasks = new ArrayList<Future<Void>>();
+            List<String> published = new ArrayList<String>();
+            for (String name : new String[]{MetadataFiles.CONTENT, MetadataFiles.ARTIFACTS}) {
+                if (!MetadataFiles.exists(repositoryLocation, name)) {
+                    continue;
+                }
+                published.add(name);
+                if (xzCompressSite) {
+                    xzTasks.add(executor.submit(Logger.bind(new XzTask(name))));
+                } else {
+                    FileUtils.deleteQuietly(new File(repositoryLocation, name + XZ));
+                }
+            }
+            // the blocks of the jars are deflated on the same executor, so the xz files are written meanwhile
+            if (compressSite) {
+                ParallelDeflater deflater = new ParallelDeflater(executor, threads, compressionLevel,
+                        ParallelDeflater.DEFAULT_BLOCK_SIZE);
+                for (String name : published) {
+                    writeJar(name, deflater);
+                }
+            }
+            await(xzTasks);
+            if (compressSite) {
+                for (String name : published) {
+                    FileUtils.deleteQuietly(new File(repositoryLocation, name + XML));
+                }
+            }
+            writeIndex();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Compresses the metadata compressed before with other options: the plain descriptors are restored first.
+     */
+    public void recompress() throws IOException {
+        for (String name : new String[]{MetadataFiles.CONTENT, MetadataFiles.ARTIFACTS}) {
+            File jar = new File(repositoryLocation, name + JAR);
+            if (!jar.exists()) {
+                continue;
+            }
+            File tmp = new File(repositoryLocation, name + XML + TMP);
+            InputStream input = withCompressedProperty(MetadataFiles.openInputStream(repositoryLocation, name), false);
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(tmp));
+            try {
+                IOUtils.copyLarge(input, output);
+            } finally {
+                IOUtils.closeQuietly(input);
+                IOUtils.closeQuietly(output);
+            }
+            move(tmp, new File(repositoryLocation, name + XML));
+            FileUtils.forceDelete(jar);
+        }
+        execute();
+    }
+
+    private void writeJar(String name, ParallelDeflater deflater) throws IOException {
+        File jar = new File(repositoryLocation, name + JAR);
+        if (jar.exists() && !new File(repositoryLocation, name + XML).exists()) {
+            // already compressed by the publisher
+            return;
+        }
+        long start = System.currentTimeMillis();
+        File tmp = new File(repositoryLocation, name + JAR + TMP);
+        InputStream input = openSource(name);
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(tmp));
+        try {
+            deflater.writeZip(input, name + XML, output);
+        } finally {
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+        }
+        move(tmp, jar);
+        Logger.getLog().info(String.format("Compressed %s in %d ms", jar.getName(),
+                System.currentTimeMillis() - start));
+    }
+
+    private void writeXz(String name) throws IOException {
+        long start = System.currentTimeMillis();
+        File xz = new File(repositoryLocation, name + XZ);
+        File tmp = new File(repositoryLocation, name + XZ + TMP);
+        OutputStream output = new XZOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)),
+                new LZMA2Options(compressionLevel));
+        InputStream input = null;
+        try {
+            input = openSource(name);
+            IOUtils.copyLarge(input, output);
+        } finally {
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+        }
+        move(tmp, xz);
+        Logger.getLog().info(String.format("Compressed %s in %d ms", xz.getName(), System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Opens the plain descriptor; when the site gets compressed its p2.compressed repository property is
+     * switched to true, so that p2 keeps the compressed flavour when the repository is modified later on.
+     */
+    private InputStream openSource(String name) throws IOException {
+        InputStream input = MetadataFiles.openInputStream(repositoryLocation, name);
+        return compressSite ? withCompressedProperty(input, true) : input;
+    }
+
+    private static InputStream withCompressedProperty(InputStream input, boolean compressed) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        int read = IOUtils.read(input, header);
+        // ISO-8859-1 maps every byte to a single char, so the remaining bytes are preserved verbatim
+        String text = new String(header, 0, read, "ISO-8859-1");
+        Matcher matcher = COMPRESSED_PROPERTY.matcher(text);
+        if (matcher.find()) {
+            text = matcher.replaceFirst("$1" + compressed + "$2");
+        }
+        return new SequenceInputStream(new ByteArrayInputStream(text.getBytes("ISO-8859-1")), input);
+    }
+
+    private void writeIndex() throws IOException {
+        String index = "version=1\n" +
+                "metadata.repository.factory.order=" + factoryOrder(MetadataFiles.CONTENT) + "\n" +
+                "artifact.repository.factory.order=" + factoryOrder(MetadataFiles.ARTIFACTS) + "\n";
+        FileUtils.writeStringToFile(new File(repositoryLocation, P2_INDEX), index, "UTF-8");
+    }
+
+    private String factoryOrder(String name) {
+        // the "xml" factory of p2 loads the .jar flavour as well, the "!" stops p2 from probing other ones
+        return xzCompressSite ? name + XZ + "," + name + XML + ",!" : name + XML + ",!";
+    }
+
+    private static void move(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void await(List<Future<Void>> tasks) throws IOException {
+        try {
+            for (Future<Void> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing the metadata", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Cannot compress the metadata", e.getCause());
+        }
+    }
+
+    private class XzTask implements Callable<Void> {
+
+        private final String name;
+
+        XzTask(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            writeXz(name);
+            return null;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private File repositoryLocation;
+        private boolean compressSite = true;
+        private boolean xzCompressSite;
+        private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        public Builder repositoryLocation(File repositoryLocation) {
+            this.repositoryLocation = checkNotNull(repositoryLocation, "repositoryLocation cannot be null");
+            return this;
+        }
+
+        public Builder compressSite(boolean compressSite) {
+            this.compressSite = compressSite;
+            return this;
+        }
+
+        public Builder xzCompressSite(boolean xzCompressSite) {
+            this.xzCompressSite = xzCompressSite;
+            return this;
+        }
+
+        public Builder compressionLevel(int compressionLevel) {
+            checkArgument(compressionLevel >= 0 && compressionLevel <= 9, "compressionLevel has to be between 0 and 9");
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            checkArgument(threads > 0, "threads has to be positive");
+            this.threads = threads;
+            return this;
+        }
+
+        public MetadataCompressor build() {
+            checkNotNull(repositoryLocation, "repositoryLocation cannot be null");
+            return new MetadataCompressor(repositoryLocation, compressSite, xzCompressSite, compressionLevel, threads);
+        }
+
+    }
+
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.fingerprint.DigestService;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.metadata.ArtifactDescriptor;
+import org.reficio.p2.publisher.metadata.ArtifactKey;
+import org.reficio.p2.publisher.metadata.InstallableUnit;
+import org.reficio.p2.publisher.metadata.MetadataWriter;
+import org.reficio.p2.publisher.metadata.RepositoryIndex;
+import org.reficio.p2.publisher.metadata.UnitFactory;
+import org.reficio.p2.utils.JarUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Publishes the bundles and features located in the source folder as a p2 repository.
+ * In contrast to the {@link BundlePublisher} it does not execute Tycho - the metadata is generated directly from
+ * the manifests (and feature.xml files) of the jars which have already been computed while bundling.
+ * Size and SHA-256 checksum of every artifact are calculated while the jar is copied to the repository.
+ * <p>
+ * In the append mode the existing repository is updated in place: unchanged artifacts (same SHA-256 checksum)
+ * are retained together with their units, new and changed ones are published, and the ones that are not
+ * present in the source folder any more are pruned. Category units are always dropped - they have to be
+ * re-applied by the category publisher.
+ *
+ * @since 1.2.0
+ */
+public class NativeBundlePublisher {
+
+    private static final String PLUGINS = "plugins";
+    private static final String FEATURES = "features";
+    private static final String FEATURE_XML = "feature.xml";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<File> bundles;
+    private final List<File> features;
+    private final File repositoryLocation;
+    private final String repositoryName;
+    private final boolean compressSite;
+    private final boolean append;
+    private final DigestService digests;
+
+    public NativeBundlePublisher(List<File> bundles, List<File> features, File repositoryLocation, String repositoryName,
+                                 boolean compressSite, boolean append, DigestService digests) {
+        this.bundles = bundles;
+        this.features = features;
+        this.repositoryLocation = repositoryLocation;
+        this.repositoryName = repositoryName;
+        this.compressSite = compressSite;
+        this.append = append;
+        this.digests = digests;
+    }
+
+    public void execute() throws IOException {
+        RepositoryIndex existing = append ? RepositoryIndex.load(repositoryLocation) : RepositoryIndex.empty();
+        Publication publication = new Publication(existing);
+        for (File bundle : bundles) {
+            publishBundle(bundle, publication);
+        }
+        for (File feature : features) {
+            publishFeature(feature, publication);
+        }
+        pruneRemovedArtifacts(publication);
+        MetadataWriter.writeContent(repositoryLocation, repositoryName, publication.retainedUnits, publication.units, compressSite);
+        MetadataWriter.writeArtifacts(repositoryLocation, repositoryName, publication.retainedArtifacts, publication.artifacts, compressSite);
+        if (append) {
+            Logger.getLog().info(String.format("Appended %d artifacts to %s (%d unchanged, %d removed)",
+                    publication.artifacts.size(), repositoryLocation, publication.retainedArtifacts.size(),
+                    publication.removed));
+        } else {
+            Logger.getLog().info(String.format("Published %d units and %d artifacts to %s", publication.units.size(),
+                    publication.artifacts.size(), repositoryLocation));
+        }
+    }
+
+    private void publishBundle(File bundle, Publication publication) throws IOException {
+        Manifest manifest = readManifest(bundle);
+        if (manifest == null || UnitFactory.bundleSymbolicName(manifest) == null) {
+            Logger.getLog().warn("Skipping publishing of " + bundle.getName() + " - it is not an OSGi bundle");
+            return;
+        }
+        InstallableUnit unit = UnitFactory.createBundleUnit(manifest);
+        ArtifactKey key = unit.getArtifacts().get(0);
+        if (publication.isDuplicate(key) || publication.retain(key, bundle)) {
+            return;
+        }
+        publication.units.add(unit);
+        publication.artifacts.add(copyArtifact(bundle, key));
+    }
+
+    private void publishFeature(File feature, Publication publication) throws IOException {
+        List<InstallableUnit> featureUnits = UnitFactory.createFeatureUnits(readFeatureXml(feature));
+        ArtifactKey key = featureUnits.get(0).getArtifacts().get(0);
+        if (publication.isDuplicate(key) || publication.retain(key, feature)) {
+            return;
+        }
+        publication.units.addAll(featureUnits);
+        ArtifactDescriptor descriptor = copyArtifact(feature, key);
+        descriptor.setProperty(ArtifactDescriptor.DOWNLOAD_CONTENT_TYPE, "application/zip");
+        publication.artifacts.add(descriptor);
+    }
+
+    private void pruneRemovedArtifacts(Publication publication) {
+        for (ArtifactKey key : publication.existing.getArtifactKeys()) {
+            if (!publication.published.contains(key)) {
+                Logger.getLog().info("\t [REMOVE] " + key.getPath());
+                FileUtils.deleteQuietly(new File(repositoryLocation, key.getPath()));
+                publication.removed++;
+            }
+        }
+    }
+
+    private ArtifactDescriptor copyArtifact(File source, ArtifactKey key) throws IOException {
+        File target = new File(repositoryLocation, key.getPath());
+        FileUtils.forceMkdir(target.getParentFile());
+        MessageDigest digest = DigestService.newSha256();
+        InputStream input = new FileInputStream(source);
+        OutputStream output = new DigestOutputStream(new FileOutputStream(target), digest);
+        long size;
+        try {
+            size = IOUtils.copyLarge(input, output, new byte[BUFFER_SIZE]);
+        } finally {
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+        }
+        ArtifactDescriptor descriptor = new ArtifactDescriptor(key);
+        descriptor.setProperty(ArtifactDescriptor.ARTIFACT_SIZE, Long.toString(size));
+        descriptor.setProperty(ArtifactDescriptor.DOWNLOAD_SIZE, Long.toString(size));
+        descriptor.setProperty(ArtifactDescriptor.CHECKSUM_SHA_256, DigestService.toHex(digest.digest()));
+        return descriptor;
+    }
+
+    private static Manifest readManifest(File jar) throws IOException {
+        JarFile jarFile = new JarFile(jar);
+        try {
+            return jarFile.getManifest();
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    private static Document readFeatureXml(File feature) throws IOException {
+        JarFile jarFile = new JarFile(feature);
+        try {
+            ZipEntry entry = jarFile.getEntry(FEATURE_XML);
+            if (entry == null) {
+                throw new IOException("Feature " + feature + " does not contain " + FEATURE_XML);
+            }
+            InputStream input = jarFile.getInputStream(entry);
+            try {
+                return JarUtils.parseXml(input);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    static List<File> listJars(File folder) {
+        List<File> jars = new ArrayList<File>();
+        if (folder.isDirectory()) {
+            Collection<File> files = FileUtils.listFiles(folder, new String[]{"jar"}, true);
+            jars.addAll(files);
+        }
+        // stable order -> stable metadata
+        Collections.sort(jars);
+        return jars;
+    }
+
+    /**
+     * State of a single publication - what is published anew and what is retained from the existing repository.
+     */
+    private final class Publication {
+        private final RepositoryIndex existing;
+        private final Set<ArtifactKey> published = new HashSet<ArtifactKey>();
+        private final List<Element> retainedUnits = new ArrayList<Element>();
+        private final List<Element> retainedArtifacts = new ArrayList<Element>();
+        private final List<InstallableUnit> units = new ArrayList<InstallableUnit>();
+        private final List<ArtifactDescriptor> artifacts = new ArrayList<ArtifactDescriptor>();
+        private int removed;
+
+        private Publication(RepositoryIndex existing) {
+            this.existing = existing;
+        }
+
+        private boolean isDuplicate(ArtifactKey key) {
+            if (published.add(key)) {
+                return false;
+            }
+            Logger.getLog().warn("Skipping duplicate artifact " + key.getPath());
+            return true;
+        }
+
+        /**
+         * @return true if the artifact is already published with exactly the same content
+         */
+        private boolean retain(ArtifactKey key, File source) throws IOException {
+            String checksum = existing.getProperty(key, ArtifactDescriptor.CHECKSUM_SHA_256);
+            if (checksum == null || !new File(repositoryLocation, key.getPath()).exists()) {
+                return false;
+            }
+            if (!checksum.equals(digests.digest(source))) {
+                Logger.getLog().info("\t [UPDATE] " + key.getPath());
+                return false;
+            }
+            retainedUnits.addAll(existing.getUnits(key));
+            retainedArtifacts.add(existing.getArtifact(key));
+            return true;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private File sourceLocation;
+        private List<File> bundles;
+        private List<File> features;
+        private File repositoryLocation;
+        private String repositoryName;
+        private boolean compressSite = true;
+        private boolean append = false;
+        private DigestService digestService;
+
+        public Builder sourceLocation(File sourceLocation) {
+            this.sourceLocation = sourceLocation;
+            return this;
+        }
+
+        /**
+         * Publishes exactly the given bundles instead of the ones found in the source location.
+         */
+        public Builder bundles(List<File> bundles) {
+            this.bundles = bundles;
+            return this;
+        }
+
+        /**
+         * Publishes exactly the given features instead of the ones found in the source location.
+         */
+        public Builder features(List<File> features) {
+            this.features = features;
+            return this;
+        }
+
+        public Builder repositoryLocation(File repositoryLocation) {
+            this.repositoryLocation = repositoryLocation;
+            return this;
+        }
+
+        public Builder repositoryName(String repositoryName) {
+            this.repositoryName = repositoryName;
+            return this;
+        }
+
+        public Builder compressSite(boolean compressSite) {
+            this.compressSite = compressSite;
+            return this;
+        }
+
+        public Builder append(boolean append) {
+            this.append = append;
+            return this;
+        }
+
+        /**
+         * Digests of the source jars shared with the rest of the build, by default they are computed on demand.
+         */
+        public Builder digestService(DigestService digestService) {
+            this.digestService = digestService;
+            return this;
+        }
+
+        public NativeBundlePublisher build() {
+            if (bundles == null || features == null) {
+                checkNotNull(sourceLocation, "sourceLocation cannot be null");
+            }
+            checkNotNull(repositoryLocation, "repositoryLocation cannot be null");
+            String name = repositoryName != null ? repositoryName : repositoryLocation.getName();
+            return new NativeBundlePublisher(
+                    bundles != null ? bundles : listJars(new File(sourceLocation, PLUGINS)),
+                    features != null ? features : listJars(new File(sourceLocation, FEATURES)),
+                    repositoryLocation, name, compressSite, append,
+                    digestService != null ? digestService : DigestService.inMemory());
+        }
+    }
+
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.metadata.ArtifactDescriptor;
+import org.reficio.p2.publisher.metadata.ArtifactKey;
+import org.reficio.p2.publisher.metadata.InstallableUnit;
+import org.reficio.p2.publisher.metadata.InstallableUnits;
+import org.reficio.p2.publisher.metadata.MetadataFiles;
+import org.reficio.p2.publisher.metadata.MetadataWriter;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Merges p2 repositories (e.g. the partial sites built by the shards of a build) into one repository without
+ * publishing the jars again. The jars are hard-linked into the merged repository (copied if the file system
+ * does not support it) and the metadata of the repositories - their installable units and artifact descriptors -
+ * is streamed into one descriptor of each kind. An artifact published by several repositories is taken from the
+ * first one; categories with the same id are merged into one category requiring the units of all of them.
+ *
+ * @since 1.2.0
+ */
+public class RepositoryMerger {
+
+    private static final String[] ARTIFACT_FOLDERS = {"plugins", "features", "binary"};
+
+    private final List<File> sourceLocations;
+    private final File repositoryLocation;
+    private final String repositoryName;
+    private final boolean compressSite;
+    private final boolean xzCompressSite;
+    private final int compressionLevel;
+
+    public RepositoryMerger(List<File> sourceLocations, File repositoryLocation, String repositoryName,
+                            boolean compressSite, boolean xzCompressSite, int compressionLevel) {
+        this.sourceLocations = sourceLocations;
+        this.repositoryLocation = repositoryLocation;
+        this.repositoryName = repositoryName;
+        this.compressSite = compressSite;
+        this.xzCompressSite = xzCompressSite;
+        this.compressionLevel = compressionLevel;
+    }
+
+    public void execute() throws IOException {
+        FileUtils.deleteDirectory(repositoryLocation);
+        FileUtils.forceMkdir(repositoryLocation);
+        Map<String, Element> units = new LinkedHashMap<String, Element>();
+        Map<ArtifactKey, Element> artifacts = new LinkedHashMap<ArtifactKey, Element>();
+        int linked = 0;
+        for (File source : sourceLocations) {
+            if (!MetadataFiles.exists(source, MetadataFiles.CONTENT) || !MetadataFiles.exists(source, MetadataFiles.ARTIFACTS)) {
+                throw new IOException("There is no p2 repository in " + source.getAbsolutePath());
+            }
+            mergeUnits(MetadataFiles.read(source, MetadataFiles.CONTENT), units);
+            mergeArtifacts(MetadataFiles.read(source, MetadataFiles.ARTIFACTS), artifacts);
+            for (String folder : ARTIFACT_FOLDERS) {
+                linked += linkFiles(new File(source, folder), new File(repositoryLocation, folder));
+            }
+        }
+        MetadataWriter.writeContent(repositoryLocation, repositoryName, units.values(),
+                Collections.<InstallableUnit>emptyList(), false);
+        MetadataWriter.writeArtifacts(repositoryLocation, repositoryName, artifacts.values(),
+                Collections.<ArtifactDescriptor>emptyList(), false);
+        MetadataCompressor.builder()
+                .repositoryLocation(repositoryLocation)
+                .compressSite(compressSite)
+                .xzCompressSite(xzCompressSite)
+                .compressionLevel(compressionLevel)
+                .build()
+                .execute();
+        Logger.getLog().info(String.format("Merged %d repositories into %s - %d units, %d artifacts, %d files",
+                sourceLocations.size(), repositoryLocation, units.size(), artifacts.size(), linked));
+    }
+
+    private static void mergeUnits(Document content, Map<String, Element> units) {
+        for (Element unit : InstallableUnits.getUnits(content)) {
+            boolean category = InstallableUnits.isCategory(unit);
+            // the categories of the repositories differ only in the units they require
+            String key = category ? unit.getAttribute("id") : unit.getAttribute("id") + "_" + unit.getAttribute("version");
+            Element merged = units.get(key);
+            if (merged == null) {
+                units.put(key, unit);
+            } else if (category) {
+                mergeRequirements(merged, unit);
+            }
+        }
+    }
+
+    private static void mergeRequirements(Element category, Element other) {
+        Element requires = InstallableUnits.firstChild(category, "requires");
+        Element otherRequires = InstallableUnits.firstChild(other, "requires");
+        if (requires == null || otherRequires == null) {
+            return;
+        }
+        Set<String> present = new HashSet<String>();
+        for (Element required : InstallableUnits.children(requires, "required")) {
+            present.add(requirementOf(required));
+        }
+        for (Element required : InstallableUnits.children(otherRequires, "required")) {
+            if (present.add(requirementOf(required))) {
+                requires.appendChild(requires.getOwnerDocument().importNode(required, true));
+            }
+        }
+        InstallableUnits.updateSize(requires);
+    }
+
+    private static String requirementOf(Element required) {
+        return required.getAttribute("namespace") + "/" + required.getAttribute("name") + "/" + required.getAttribute("range");
+    }
+
+    private static void mergeArtifacts(Document artifactsDocument, Map<ArtifactKey, Element> artifacts) {
+        Element artifactsElement = InstallableUnits.firstChild(artifactsDocument.getDocumentElement(), "artifacts");
+        if (artifactsElement == null) {
+            return;
+        }
+        for (Element artifact : InstallableUnits.children(artifactsElement, "artifact")) {
+            ArtifactKey key = new ArtifactKey(artifact.getAttribute("classifier"), artifact.getAttribute("id"),
+                    artifact.getAttribute("version"));
+            if (!artifacts.containsKey(key)) {
+                artifacts.put(key, artifact);
+            }
+        }
+    }
+
+    /**
+     * @return the number of files linked (or copied)
+     */
+    private int linkFiles(File sourceFolder, File targetFolder) throws IOException {
+        File[] files = sourceFolder.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int linked = 0;
+        for (File file : files) {
+            File target = new File(targetFolder, file.getName());
+            if (file.isDirectory()) {
+                linked += linkFiles(file, target);
+            } else if (target.exists()) {
+                if (target.length() != file.length()) {
+                    Logger.getLog().warn(String.format(
+                            "%s differs between the merged repositories - keeping the first one", file.getName()));
+                }
+            } else {
+                link(file, target);
+                linked++;
+            }
+        }
+        return linked;
+    }
+
+    private static void link(File source, File target) throws IOException {
+        FileUtils.forceMkdir(target.getParentFile());
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException ex) {
+            // e.g. a different file system
+            FileUtils.copyFile(source, target);
+        } catch (UnsupportedOperationException ex) {
+            FileUtils.copyFile(source, target);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private List<File> sourceLocations = new ArrayList<File>();
+        private File repositoryLocation;
+        private String repositoryName;
+        private boolean compressSite = true;
+        private boolean xzCompressSite;
+        private int compressionLevel = MetadataCompressor.DEFAULT_COMPRESSION_LEVEL;
+
+        public Builder sourceLocations(Collection<File> sourceLocations) {
+            this.sourceLocations = new ArrayList<File>(sourceLocations);
+            return this;
+        }
+
+        public Builder repositoryLocation(File repositoryLocation) {
+            this.repositoryLocation = repositoryLocation;
+            return this;
+        }
+
+        public Builder repositoryName(String repositoryName) {
+            this.repositoryName = repositoryName;
+            return this;
+        }
+
+        public Builder compressSite(boolean compressSite) {
+            this.compressSite = compressSite;
+            return this;
+        }
+
+        public Builder xzCompressSite(boolean xzCompressSite) {
+            this.xzCompressSite = xzCompressSite;
+            return this;
+        }
+
+        public Builder compressionLevel(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        public RepositoryMerger build() {
+            checkArgument(!sourceLocations.isEmpty(), "There are no repositories to merge");
+            checkNotNull(repositoryLocation);
+            for (File source : sourceLocations) {
+                checkArgument(!source.getAbsoluteFile().equals(repositoryLocation.getAbsoluteFile()),
+                        "The merged repository cannot be one of the merged repositories");
+            }
+            return new RepositoryMerger(sourceLocations, repositoryLocation,
+                    repositoryName != null ? repositoryName : repositoryLocation.getName(),
+                    compressSite, xzCompressSite, compressionLevel);
+        }
+    }
+
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import com.google.common.collect.Multimap;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.AbstractMojoExecutionException;
+import org.reficio.p2.EclipseArtifact;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.P2Helper;
+import org.reficio.p2.P2Site;
+import org.reficio.p2.bundler.ArtifactBundlerRequest;
+import org.reficio.p2.bundler.ArtifactDeduplicator;
+import org.reficio.p2.fingerprint.DigestService;
+import org.reficio.p2.logger.LogBuffer;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.eclipse.EclipseResolutionRequest;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Publishes the sites in parallel, each one directly from its part of the shared bundles, with its own categories.
+ *
+ * @since 1.2.0
+ */
+public class SitePublisher {
+
+    private List<P2Site> sites = Collections.emptyList();
+    private List<P2Artifact> artifacts = Collections.emptyList();
+    private List<P2Artifact> features = Collections.emptyList();
+    private List<EclipseArtifact> eclipseArtifacts = Collections.emptyList();
+    private Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts;
+    private Multimap<P2Artifact, ResolvedArtifact> resolvedFeatures;
+    private File bundlesFolder;
+    private File featuresFolder;
+    private File destinationDirectory;
+    private String categoryFileLocation;
+    private CategoryPublishingService categoryPublishing;
+    private ArtifactDeduplicator deduplicator;
+    private DigestService digests;
+    private boolean compressSite;
+    private boolean xzCompressSite;
+    private int compressionLevel;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private SitePublisher() {
+    }
+
+    /**
+     * @return the repositories of the sites, in the order of the sites
+     */
+    public List<File> execute() throws InterruptedException {
+        List<File> repositories = new ArrayList<File>();
+        if (sites.isEmpty()) {
+            return repositories;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(sites.size(), threads));
+        try {
+            List<Future<File>> tasks = new ArrayList<Future<File>>();
+            for (final P2Site site : sites) {
+                tasks.add(executor.submit(Logger.bind(new Callable<File>() {
+                    @Override
+                    public File call() throws Exception {
+                        LogBuffer output = Logger.buffer();
+                        try {
+                            return publish(site);
+                        } finally {
+                            output.flush();
+                        }
+                    }
+                })));
+            }
+            for (Future<File> task : tasks) {
+                repositories.add(task.get());
+            }
+            return repositories;
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Cannot publish the sites", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private File publish(P2Site site) throws IOException, AbstractMojoExecutionException {
+        checkArgument(StringUtils.isNotBlank(site.getName()), "Every site needs a name");
+        List<File> bundles = getSiteBundles(site);
+        List<File> siteFeatures = getSiteFeatures(site);
+        File siteRepository = StringUtils.isNotBlank(site.getDestinationDirectory())
+                ? new File(site.getDestinationDirectory()) : new File(destinationDirectory, site.getName());
+        FileUtils.deleteDirectory(siteRepository);
+        NativeBundlePublisher.builder()
+                .bundles(bundles)
+                .features(siteFeatures)
+                .repositoryLocation(siteRepository)
+                .repositoryName(site.getName())
+                .compressSite(false)
+                .digestService(digests)
+                .build()
+                .execute();
+        categoryPublishing.publish(StringUtils.isNotBlank(site.getCategoryFileURL()) ? site.getCategoryFileURL()
+                : categoryFileLocation, siteRepository.getAbsolutePath(), true);
+        MetadataCompressor.builder()
+                .repositoryLocation(siteRepository)
+                .compressSite(compressSite)
+                .xzCompressSite(xzCompressSite)
+                .compressionLevel(compressionLevel)
+                .build()
+                .execute();
+        Logger.getLog().info(String.format("Published site [%s] with %d bundles and %d features to %s", site.getName(),
+                bundles.size(), siteFeatures.size(), siteRepository));
+        return siteRepository;
+    }
+
+    /**
+     * The bundles are named after the resolved files, so the bundles of the site are found even if the bundling
+     * was skipped as up to date.
+     */
+    private List<File> getSiteBundles(P2Site site) {
+        Set<File> files = new LinkedHashSet<File>();
+        for (P2Artifact p2Artifact : artifacts) {
+            if (site.includes(p2Artifact.getId())) {
+                addBundleFiles(files, p2Artifact, resolvedArtifacts.get(p2Artifact), bundlesFolder);
+            }
+        }
+        for (EclipseArtifact eclipseArtifact : eclipseArtifacts) {
+            if (site.includes(eclipseArtifact.getId())) {
+                EclipseResolutionRequest request = P2Helper.createEclipseRequest(eclipseArtifact);
+                addIfExists(files, new File(bundlesFolder, request.getId() + "_" + request.getVersion() + ".jar"));
+                addIfExists(files, new File(bundlesFolder,
+                        request.getId() + ".source_" + request.getVersion() + ".jar"));
+            }
+        }
+        return new ArrayList<File>(files);
+    }
+
+    private List<File> getSiteFeatures(P2Site site) {
+        Set<File> files = new LinkedHashSet<File>();
+        for (P2Artifact feature : features) {
+            if (site.includes(feature.getId())) {
+                addBundleFiles(files, feature, resolvedFeatures.get(feature), featuresFolder);
+            }
+        }
+        return new ArrayList<File>(files);
+    }
+
+    private void addBundleFiles(Set<File> files, P2Artifact p2Artifact, Collection<ResolvedArtifact> resolved,
+                                File folder) {
+        for (ResolvedArtifact resolvedArtifact : resolved) {
+            // a skipped duplicate is published as the bundle kept instead of it
+            ArtifactBundlerRequest request = P2Helper.createBundlerRequest(p2Artifact,
+                    deduplicator.getBundled(resolvedArtifact), folder);
+            // a skipped invalid artifact has no bundle
+            addIfExists(files, request.getBinaryOutputFile());
+            addIfExists(files, request.getSourceOutputFile());
+        }
+    }
+
+    private static void addIfExists(Set<File> files, File file) {
+        if (file != null && file.isFile()) {
+            files.add(file);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private final SitePublisher publisher = new SitePublisher();
+
+        public Builder sites(List<P2Site> sites) {
+            publisher.sites = checkNotNull(sites, "sites cannot be null");
+            return this;
+        }
+
+        public Builder artifacts(List<P2Artifact> artifacts, Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts) {
+            publisher.artifacts = checkNotNull(artifacts, "artifacts cannot be null");
+            publisher.resolvedArtifacts = checkNotNull(resolvedArtifacts, "resolvedArtifacts cannot be null");
+            return this;
+        }
+
+        public Builder features(List<P2Artifact> features, Multimap<P2Artifact, ResolvedArtifact> resolvedFeatures) {
+            publisher.features = checkNotNull(features, "features cannot be null");
+            publisher.resolvedFeatures = checkNotNull(resolvedFeatures, "resolvedFeatures cannot be null");
+            return this;
+        }
+
+        public Builder eclipseArtifacts(List<EclipseArtifact> eclipseArtifacts) {
+            publisher.eclipseArtifacts = checkNotNull(eclipseArtifacts, "eclipseArtifacts cannot be null");
+            return this;
+        }
+
+        public Builder bundlesFolder(File bundlesFolder) {
+            publisher.bundlesFolder = checkNotNull(bundlesFolder, "bundlesFolder cannot be null");
+            return this;
+        }
+
+        public Builder featuresFolder(File featuresFolder) {
+            publisher.featuresFolder = checkNotNull(featuresFolder, "featuresFolder cannot be null");
+            return this;
+        }
+
+        /**
+         * The parent of the repositories of the sites that have no destination directory of their own.
+         */
+        public Builder destinationDirectory(File destinationDirectory) {
+            publisher.destinationDirectory = checkNotNull(destinationDirectory, "destinationDirectory cannot be null");
+            return this;
+        }
+
+        /**
+         * The categories of the sites that have no category file of their own.
+         */
+        public Builder categoryFileLocation(String categoryFileLocation) {
+            publisher.categoryFileLocation = checkNotNull(categoryFileLocation, "categoryFileLocation cannot be null");
+            return this;
+        }
+
+        public Builder categoryPublishing(CategoryPublishingService categoryPublishing) {
+            publisher.categoryPublishing = checkNotNull(categoryPublishing, "categoryPublishing cannot be null");
+            return this;
+        }
+
+        public Builder deduplicator(ArtifactDeduplicator deduplicator) {
+            publisher.deduplicator = checkNotNull(deduplicator, "deduplicator cannot be null");
+            return this;
+        }
+
+        public Builder digestService(DigestService digests) {
+            publisher.digests = checkNotNull(digests, "digestService cannot be null");
+            return this;
+        }
+
+        public Builder compressSite(boolean compressSite) {
+            publisher.compressSite = compressSite;
+            return this;
+        }
+
+        public Builder xzCompressSite(boolean xzCompressSite) {
+            publisher.xzCompressSite = xzCompressSite;
+            return this;
+        }
+
+        public Builder compressionLevel(int compressionLevel) {
+            publisher.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            checkArgument(threads > 0, "threads has to be positive");
+            publisher.threads = threads;
+            return this;
+        }
+
+        public SitePublisher build() {
+            checkNotNull(publisher.resolvedArtifacts, "resolvedArtifacts cannot be null");
+            checkNotNull(publisher.resolvedFeatures, "resolvedFeatures cannot be null");
+            checkNotNull(publisher.bundlesFolder, "bundlesFolder cannot be null");
+            checkNotNull(publisher.featuresFolder, "featuresFolder cannot be null");
+            checkNotNull(publisher.destinationDirectory, "destinationDirectory cannot be null");
+            checkNotNull(publisher.categoryFileLocation, "categoryFileLocation cannot be null");
+            checkNotNull(publisher.categoryPublishing, "categoryPublishing cannot be null");
+            checkNotNull(publisher.deduplicator, "deduplicator cannot be null");
+            checkNotNull(publisher.digests, "digestService cannot be null");
+            return publisher;
+        }
+
+    }
+
+}
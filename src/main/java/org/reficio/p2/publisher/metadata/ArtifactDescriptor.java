@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Entry of the artifacts.xml file - the artifact key together with its properties (size, checksums).
+ *
+ * @since 1.2.0
+ */
+public class ArtifactDescriptor {
+
+    public static final String ARTIFACT_SIZE = "artifact.size";
+    public static final String DOWNLOAD_SIZE = "download.size";
+    public static final String DOWNLOAD_CONTENT_TYPE = "download.contentType";
+    public static final String CHECKSUM_SHA_256 = "download.checksum.sha-256";
+
+    private final ArtifactKey key;
+    private final Map<String, String> properties = new LinkedHashMap<String, String>();
+
+    public ArtifactDescriptor(ArtifactKey key) {
+        this.key = key;
+    }
+
+    public ArtifactKey getKey() {
+        return key;
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public void setProperty(String name, String value) {
+        properties.put(name, value);
+    }
+
+}
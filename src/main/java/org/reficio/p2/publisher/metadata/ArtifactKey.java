@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+/**
+ * Identifies an artifact of a p2 artifact repository.
+ *
+ * @since 1.2.0
+ */
+public final class ArtifactKey {
+
+    public static final String BUNDLE = "osgi.bundle";
+    public static final String FEATURE = "org.eclipse.update.feature";
+
+    private final String classifier;
+    private final String id;
+    private final String version;
+
+    public ArtifactKey(String classifier, String id, String version) {
+        this.classifier = classifier;
+        this.id = id;
+        this.version = version;
+    }
+
+    public String getClassifier() {
+        return classifier;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return location of the artifact relative to the repository root
+     */
+    public String getPath() {
+        String folder = FEATURE.equals(classifier) ? "features" : "plugins";
+        return folder + "/" + id + "_" + version + ".jar";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ArtifactKey)) {
+            return false;
+        }
+        ArtifactKey that = (ArtifactKey) other;
+        return classifier.equals(that.classifier) && id.equals(that.id) && version.equals(that.version);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * classifier.hashCode() + id.hashCode()) + version.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return classifier + "/" + id + "/" + version;
+    }
+
+}
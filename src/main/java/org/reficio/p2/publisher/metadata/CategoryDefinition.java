@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.utils.JarUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-memory representation of a category.xml file (the format consumed by the p2 CategoryPublisher).
+ *
+ * @since 1.2.0
+ */
+public final class CategoryDefinition {
+
+    public enum EntryType {
+        FEATURE, BUNDLE, IU
+    }
+
+    private final List<Category> categories;
+    private final List<Entry> entries;
+
+    private CategoryDefinition(List<Category> categories, List<Entry> entries) {
+        this.categories = Collections.unmodifiableList(categories);
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public List<Category> getCategories() {
+        return categories;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public static CategoryDefinition parse(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            return parse(JarUtils.parseXml(input));
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    public static CategoryDefinition parse(Document document) {
+        List<Category> categories = new ArrayList<Category>();
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Element element : children(document.getDocumentElement())) {
+            String tag = element.getTagName();
+            if ("category-def".equals(tag)) {
+                Element description = firstChild(element, "description");
+                categories.add(new Category(element.getAttribute("name"), element.getAttribute("label"),
+                        description != null ? description.getTextContent().trim() : null, categoryNames(element)));
+            } else if ("feature".equals(tag)) {
+                entries.add(new Entry(EntryType.FEATURE, element.getAttribute("id"), element.getAttribute("version"),
+                        null, categoryNames(element)));
+            } else if ("bundle".equals(tag)) {
+                entries.add(new Entry(EntryType.BUNDLE, element.getAttribute("id"), element.getAttribute("version"),
+                        null, categoryNames(element)));
+            } else if ("iu".equals(tag)) {
+                entries.add(new Entry(EntryType.IU, element.getAttribute("id"), element.getAttribute("version"),
+                        parseQuery(element), categoryNames(element)));
+            }
+        }
+        return new CategoryDefinition(categories, entries);
+    }
+
+    private static String parseQuery(Element iu) {
+        Element query = firstChild(iu, "query");
+        if (query == null) {
+            return null;
+        }
+        Element expression = firstChild(query, "expression");
+        if (expression == null) {
+            return null;
+        }
+        String result = expression.getTextContent().trim();
+        // parameters are referenced as $0, $1, ... in the expression
+        List<Element> params = children(query, "param");
+        for (int i = params.size() - 1; i >= 0; i--) {
+            result = result.replace("$" + i, "'" + params.get(i).getTextContent().trim() + "'");
+        }
+        return result;
+    }
+
+    private static List<String> categoryNames(Element element) {
+        List<String> names = new ArrayList<String>();
+        for (Element category : children(element, "category")) {
+            names.add(category.getAttribute("name"));
+        }
+        return names;
+    }
+
+    private static Element firstChild(Element parent, String tag) {
+        List<Element> children = children(parent, tag);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    private static List<Element> children(Element parent, String tag) {
+        List<Element> result = new ArrayList<Element>();
+        for (Element child : children(parent)) {
+            if (tag.equals(child.getTagName())) {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+
+    private static List<Element> children(Element parent) {
+        List<Element> result = new ArrayList<Element>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                result.add((Element) node);
+            }
+        }
+        return result;
+    }
+
+    public static final class Category {
+        private final String name;
+        private final String label;
+        private final String description;
+        private final List<String> parents;
+
+        Category(String name, String label, String description, List<String> parents) {
+            this.name = name;
+            this.label = label;
+            this.description = description;
+            this.parents = parents;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public List<String> getParents() {
+            return parents;
+        }
+    }
+
+    public static final class Entry {
+        private final EntryType type;
+        private final String id;
+        private final String version;
+        private final String query;
+        private final List<String> categories;
+
+        Entry(EntryType type, String id, String version, String query, List<String> categories) {
+            this.type = type;
+            this.id = id;
+            this.version = version;
+            this.query = query;
+            this.categories = categories;
+        }
+
+        public EntryType getType() {
+            return type;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public List<String> getCategories() {
+            return categories;
+        }
+    }
+
+}
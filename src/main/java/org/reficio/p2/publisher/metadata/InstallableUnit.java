@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model of a single installable unit of a p2 metadata repository.
+ * Holds only the parts of the p2 model that the plugin generates.
+ *
+ * @since 1.2.0
+ */
+public class InstallableUnit {
+
+    private final String id;
+    private final String version;
+    private boolean singleton;
+    private String filter;
+    private String updateRange;
+    private final Map<String, String> properties = new LinkedHashMap<String, String>();
+    private final List<Capability> provided = new ArrayList<Capability>();
+    private final List<Requirement> required = new ArrayList<Requirement>();
+    private final List<ArtifactKey> artifacts = new ArrayList<ArtifactKey>();
+    private String touchpointId = "null";
+    private String touchpointVersion = "0.0.0";
+    private final Map<String, String> touchpointInstructions = new LinkedHashMap<String, String>();
+
+    public InstallableUnit(String id, String version) {
+        this.id = id;
+        this.version = version;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public boolean isSingleton() {
+        return singleton;
+    }
+
+    public void setSingleton(boolean singleton) {
+        this.singleton = singleton;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+
+    public String getUpdateRange() {
+        return updateRange;
+    }
+
+    public void setUpdateRange(String updateRange) {
+        this.updateRange = updateRange;
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public void setProperty(String name, String value) {
+        if (value != null) {
+            properties.put(name, value);
+        }
+    }
+
+    public List<Capability> getProvided() {
+        return provided;
+    }
+
+    public void provide(String namespace, String name, String version) {
+        provided.add(new Capability(namespace, name, version));
+    }
+
+    public List<Requirement> getRequired() {
+        return required;
+    }
+
+    public void require(String namespace, String name, String range, boolean optional) {
+        require(namespace, name, range, null, optional);
+    }
+
+    /**
+     * @param filter LDAP filter restricting the requirement to some environments, null if it always applies
+     */
+    public void require(String namespace, String name, String range, String filter, boolean optional) {
+        required.add(new Requirement(namespace, name, range, filter, optional));
+    }
+
+    public List<ArtifactKey> getArtifacts() {
+        return artifacts;
+    }
+
+    public void addArtifact(ArtifactKey artifact) {
+        artifacts.add(artifact);
+    }
+
+    public String getTouchpointId() {
+        return touchpointId;
+    }
+
+    public String getTouchpointVersion() {
+        return touchpointVersion;
+    }
+
+    public void setTouchpoint(String touchpointId, String touchpointVersion) {
+        this.touchpointId = touchpointId;
+        this.touchpointVersion = touchpointVersion;
+    }
+
+    public Map<String, String> getTouchpointInstructions() {
+        return touchpointInstructions;
+    }
+
+    public static final class Capability {
+        private final String namespace;
+        private final String name;
+        private final String version;
+
+        public Capability(String namespace, String name, String version) {
+            this.namespace = namespace;
+            this.name = name;
+            this.version = version;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+
+    public static final class Requirement {
+        private final String namespace;
+        private final String name;
+        private final String range;
+        private final String filter;
+        private final boolean optional;
+
+        public Requirement(String namespace, String name, String range, String filter, boolean optional) {
+            this.namespace = namespace;
+            this.name = name;
+            this.range = range;
+            this.filter = filter;
+            this.optional = optional;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getRange() {
+            return range;
+        }
+
+        public String getFilter() {
+            return filter;
+        }
+
+        public boolean isOptional() {
+            return optional;
+        }
+    }
+
+}
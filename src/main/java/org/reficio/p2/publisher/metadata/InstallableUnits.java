@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper methods operating on the DOM of a p2 content.xml document.
+ *
+ * @since 1.2.0
+ */
+public class InstallableUnits {
+
+    public static final String IU_NAMESPACE = "org.eclipse.equinox.p2.iu";
+    public static final String PROP_NAME = "org.eclipse.equinox.p2.name";
+    public static final String PROP_DESCRIPTION = "org.eclipse.equinox.p2.description";
+    public static final String PROP_TYPE_CATEGORY = "org.eclipse.equinox.p2.type.category";
+    public static final String PROP_TYPE_GROUP = "org.eclipse.equinox.p2.type.group";
+
+    public static Element getUnitsElement(Document content) {
+        Element units = firstChild(content.getDocumentElement(), "units");
+        if (units == null) {
+            units = content.createElement("units");
+            units.setAttribute("size", "0");
+            content.getDocumentElement().appendChild(units);
+        }
+        return units;
+    }
+
+    public static List<Element> getUnits(Document content) {
+        return children(getUnitsElement(content), "unit");
+    }
+
+    public static void updateSize(Element element) {
+        int size = 0;
+        NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                size++;
+            }
+        }
+        element.setAttribute("size", Integer.toString(size));
+    }
+
+    public static String getProperty(Element unit, String name) {
+        Element properties = firstChild(unit, "properties");
+        if (properties == null) {
+            return null;
+        }
+        for (Element property : children(properties, "property")) {
+            if (name.equals(property.getAttribute("name"))) {
+                return property.getAttribute("value");
+            }
+        }
+        return null;
+    }
+
+    public static boolean isCategory(Element unit) {
+        return Boolean.parseBoolean(getProperty(unit, PROP_TYPE_CATEGORY));
+    }
+
+    public static boolean isCategory(InstallableUnit unit) {
+        return Boolean.parseBoolean(unit.getProperties().get(PROP_TYPE_CATEGORY));
+    }
+
+    public static Element firstChild(Element parent, String tag) {
+        List<Element> children = children(parent, tag);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    public static List<Element> children(Element parent, String tag) {
+        List<Element> result = new ArrayList<Element>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE && tag.equals(((Element) node).getTagName())) {
+                result.add((Element) node);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.utils.JarUtils;
+import org.w3c.dom.Document;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Reads and writes the p2 repository descriptors ("content" and "artifacts") in both
+ * the plain (.xml) and the compressed (.jar) flavour.
+ *
+ * @since 1.2.0
+ */
+public class MetadataFiles {
+
+    public static final String CONTENT = "content";
+    public static final String ARTIFACTS = "artifacts";
+    public static final String COMPOSITE_CONTENT = "compositeContent";
+    public static final String COMPOSITE_ARTIFACTS = "compositeArtifacts";
+
+    private static final String XML = ".xml";
+    private static final String JAR = ".jar";
+
+    public static File find(File repositoryDir, String name) {
+        File jar = new File(repositoryDir, name + JAR);
+        if (jar.exists()) {
+            return jar;
+        }
+        File xml = new File(repositoryDir, name + XML);
+        if (xml.exists()) {
+            return xml;
+        }
+        return null;
+    }
+
+    public static boolean exists(File repositoryDir, String name) {
+        return find(repositoryDir, name) != null;
+    }
+
+    public static boolean isCompressed(File repositoryDir, String name) {
+        File file = find(repositoryDir, name);
+        return file != null && file.getName().endsWith(JAR);
+    }
+
+    public static InputStream openInputStream(File repositoryDir, String name) throws IOException {
+        File file = find(repositoryDir, name);
+        if (file == null) {
+            throw new IOException(String.format("Cannot find %s metadata in %s", name, repositoryDir));
+        }
+        return openDescriptor(file, name);
+    }
+
+    /**
+     * Opens the given file of the descriptor, either flavour - e.g. a copy of it kept while it is being rewritten.
+     */
+    public static InputStream openDescriptor(File file, String name) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        if (!file.getName().endsWith(JAR)) {
+            return input;
+        }
+        ZipInputStream zip = new ZipInputStream(input);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entry.getName().equals(name + XML)) {
+                return zip;
+            }
+        }
+        IOUtils.closeQuietly(zip);
+        throw new IOException(String.format("Entry %s not found in %s", name + XML, file));
+    }
+
+    public static Document read(File repositoryDir, String name) throws IOException {
+        InputStream input = openInputStream(repositoryDir, name);
+        try {
+            return JarUtils.parseXml(input);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Opens a stream for the given descriptor; the other flavour of the descriptor is deleted,
+     * so that p2 never sees two diverging versions of the same file.
+     */
+    public static OutputStream openOutputStream(File repositoryDir, String name, boolean compress) throws IOException {
+        FileUtils.forceMkdir(repositoryDir);
+        File xml = new File(repositoryDir, name + XML);
+        File jar = new File(repositoryDir, name + JAR);
+        if (compress) {
+            FileUtils.deleteQuietly(xml);
+            ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(jar)));
+            zip.putNextEntry(new ZipEntry(name + XML));
+            return zip;
+        } else {
+            FileUtils.deleteQuietly(jar);
+            return new BufferedOutputStream(new FileOutputStream(xml));
+        }
+    }
+
+    public static void write(Document document, File repositoryDir, String name, boolean compress) throws IOException {
+        OutputStream output = openOutputStream(repositoryDir, name, compress);
+        try {
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            transformer.transform(new DOMSource(document), new StreamResult(output));
+        } catch (Exception e) {
+            throw new IOException("Cannot write " + name + " metadata to " + repositoryDir, e);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+}
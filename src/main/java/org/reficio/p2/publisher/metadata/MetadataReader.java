@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+import org.apache.commons.io.IOUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams the installable units of a p2 content descriptor (content.xml or content.jar) - the document is never
+ * kept in memory as a whole. Only the identity, the properties and the provided capabilities of the units are
+ * read, which is what the category queries evaluate.
+ *
+ * @since 1.2.0
+ */
+public class MetadataReader {
+
+    public static List<InstallableUnit> readUnits(File repositoryDir) throws IOException {
+        InputStream input = MetadataFiles.openInputStream(repositoryDir, MetadataFiles.CONTENT);
+        try {
+            return readUnits(input);
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read content metadata of " + repositoryDir, e);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private static List<InstallableUnit> readUnits(InputStream input) throws XMLStreamException {
+        XMLStreamReader reader = newInputFactory().createXMLStreamReader(input);
+        try {
+            List<InstallableUnit> units = new ArrayList<InstallableUnit>();
+            InstallableUnit unit = null;
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (depth == 3 && "unit".equals(name)) {
+                        unit = new InstallableUnit(reader.getAttributeValue(null, "id"),
+                                reader.getAttributeValue(null, "version"));
+                        units.add(unit);
+                    } else if (depth == 5 && unit != null && "property".equals(name)) {
+                        unit.setProperty(reader.getAttributeValue(null, "name"), reader.getAttributeValue(null, "value"));
+                    } else if (depth == 5 && unit != null && "provided".equals(name)) {
+                        unit.provide(reader.getAttributeValue(null, "namespace"), reader.getAttributeValue(null, "name"),
+                                reader.getAttributeValue(null, "version"));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 3) {
+                        unit = null;
+                    }
+                    depth--;
+                }
+            }
+            return units;
+        } finally {
+            reader.close();
+        }
+    }
+
+    static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+}
@@ -0,0 +1,588 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.utils.BuildTimestamp;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams the p2 repository descriptors (content.xml and artifacts.xml) - the documents are never
+ * kept in memory as a whole.
+ *
+ * @since 1.2.0
+ */
+public class MetadataWriter {
+
+    private static final String METADATA_REPOSITORY_TYPE = "org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository";
+    private static final String ARTIFACT_REPOSITORY_TYPE = "org.eclipse.equinox.p2.artifact.repository.simpleRepository";
+    private static final String COMPOSITE_METADATA_REPOSITORY_TYPE =
+            "org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository";
+    private static final String COMPOSITE_ARTIFACT_REPOSITORY_TYPE =
+            "org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository";
+    private static final String[][] MAPPING_RULES = {
+            {"(& (classifier=osgi.bundle))", "${repoUrl}/plugins/${id}_${version}.jar"},
+            {"(& (classifier=binary))", "${repoUrl}/binary/${id}_${version}"},
+            {"(& (classifier=org.eclipse.update.feature))", "${repoUrl}/features/${id}_${version}.jar"}
+    };
+
+    private final XMLStreamWriter writer;
+    private final OutputStream output;
+
+    private MetadataWriter(OutputStream output) throws IOException {
+        try {
+            this.output = output;
+            this.writer = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot create metadata writer", e);
+        }
+    }
+
+    public static void writeContent(File repositoryDir, String repositoryName, Collection<InstallableUnit> units,
+                                    boolean compress) throws IOException {
+        writeContent(repositoryDir, repositoryName, Collections.<Element>emptyList(), units, compress);
+    }
+
+    /**
+     * @param retainedUnits units of an existing repository (DOM elements) that are copied as they are
+     */
+    public static void writeContent(File repositoryDir, String repositoryName, Collection<Element> retainedUnits,
+                                    Collection<InstallableUnit> units, boolean compress) throws IOException {
+        MetadataWriter metadataWriter = new MetadataWriter(
+                MetadataFiles.openOutputStream(repositoryDir, MetadataFiles.CONTENT, compress));
+        try {
+            metadataWriter.startRepository("metadataRepository", repositoryName, METADATA_REPOSITORY_TYPE, compress);
+            metadataWriter.start(1, "units");
+            metadataWriter.attribute("size", retainedUnits.size() + units.size());
+            for (Element unit : retainedUnits) {
+                metadataWriter.writeElement(2, unit);
+            }
+            for (InstallableUnit unit : units) {
+                metadataWriter.writeUnit(unit);
+            }
+            metadataWriter.end(1);
+            metadataWriter.endRepository();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot write content metadata to " + repositoryDir, e);
+        } finally {
+            metadataWriter.close();
+        }
+    }
+
+    /**
+     * Replaces the category units of the content descriptor with the given ones. The other units are copied as they
+     * are, one at a time, and the descriptor keeps its flavour.
+     *
+     * @param retainedUnits number of the units of the descriptor that are not categories
+     */
+    public static void replaceCategories(File repositoryDir, int retainedUnits, Collection<InstallableUnit> categories)
+            throws IOException {
+        File source = MetadataFiles.find(repositoryDir, MetadataFiles.CONTENT);
+        if (source == null) {
+            throw new IOException("Cannot find content metadata in " + repositoryDir);
+        }
+        boolean compress = MetadataFiles.isCompressed(repositoryDir, MetadataFiles.CONTENT);
+        File previous = new File(repositoryDir, "previous-" + source.getName());
+        FileUtils.deleteQuietly(previous);
+        if (!source.renameTo(previous)) {
+            throw new IOException("Cannot move " + source + " aside");
+        }
+        boolean replaced = false;
+        InputStream input = MetadataFiles.openDescriptor(previous, MetadataFiles.CONTENT);
+        try {
+            MetadataWriter metadataWriter = new MetadataWriter(
+                    MetadataFiles.openOutputStream(repositoryDir, MetadataFiles.CONTENT, compress));
+            try {
+                metadataWriter.copyContent(input, retainedUnits, categories);
+            } catch (XMLStreamException e) {
+                throw new IOException("Cannot write content metadata to " + repositoryDir, e);
+            } finally {
+                metadataWriter.close();
+            }
+            replaced = true;
+        } finally {
+            IOUtils.closeQuietly(input);
+            if (replaced) {
+                FileUtils.deleteQuietly(previous);
+            } else {
+                FileUtils.deleteQuietly(MetadataFiles.find(repositoryDir, MetadataFiles.CONTENT));
+                previous.renameTo(source);
+            }
+        }
+    }
+
+    public static void writeArtifacts(File repositoryDir, String repositoryName, Collection<ArtifactDescriptor> artifacts,
+                                      boolean compress) throws IOException {
+        writeArtifacts(repositoryDir, repositoryName, Collections.<Element>emptyList(), artifacts, compress);
+    }
+
+    /**
+     * @param retainedArtifacts artifacts of an existing repository (DOM elements) that are copied as they are
+     */
+    public static void writeArtifacts(File repositoryDir, String repositoryName, Collection<Element> retainedArtifacts,
+                                      Collection<ArtifactDescriptor> artifacts, boolean compress) throws IOException {
+        MetadataWriter metadataWriter = new MetadataWriter(
+                MetadataFiles.openOutputStream(repositoryDir, MetadataFiles.ARTIFACTS, compress));
+        try {
+            metadataWriter.startRepository("artifactRepository", repositoryName, ARTIFACT_REPOSITORY_TYPE, compress);
+            metadataWriter.writeMappings();
+            metadataWriter.start(1, "artifacts");
+            metadataWriter.attribute("size", retainedArtifacts.size() + artifacts.size());
+            for (Element artifact : retainedArtifacts) {
+                metadataWriter.writeElement(2, artifact);
+            }
+            for (ArtifactDescriptor artifact : artifacts) {
+                metadataWriter.writeArtifact(artifact);
+            }
+            metadataWriter.end(1);
+            metadataWriter.endRepository();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot write artifacts metadata to " + repositoryDir, e);
+        } finally {
+            metadataWriter.close();
+        }
+    }
+
+    /**
+     * Writes compositeContent (or compositeArtifacts, if artifacts is true) referencing the given child locations.
+     */
+    public static void writeComposite(File repositoryDir, String repositoryName, boolean artifacts,
+                                      Collection<String> children, boolean compress) throws IOException {
+        String name = artifacts ? MetadataFiles.COMPOSITE_ARTIFACTS : MetadataFiles.COMPOSITE_CONTENT;
+        MetadataWriter metadataWriter = new MetadataWriter(MetadataFiles.openOutputStream(repositoryDir, name, compress));
+        try {
+            metadataWriter.startDocument(artifacts ? "compositeArtifactRepository" : "compositeMetadataRepository",
+                    "1.0.0");
+            metadataWriter.startRepositoryElement(repositoryName,
+                    artifacts ? COMPOSITE_ARTIFACT_REPOSITORY_TYPE : COMPOSITE_METADATA_REPOSITORY_TYPE, "1.0.0", compress);
+            metadataWriter.start(1, "children");
+            metadataWriter.attribute("size", children.size());
+            for (String child : children) {
+                metadataWriter.empty(2, "child");
+                metadataWriter.writer.writeAttribute("location", child);
+            }
+            metadataWriter.end(1);
+            metadataWriter.endRepository();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot write " + name + " metadata to " + repositoryDir, e);
+        } finally {
+            metadataWriter.close();
+        }
+    }
+
+    private void startRepository(String kind, String name, String type, boolean compress) throws XMLStreamException {
+        startDocument(kind, "1.1.0");
+        startRepositoryElement(name, type, "1", compress);
+    }
+
+    private void startDocument(String kind, String version) throws XMLStreamException {
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeCharacters("\n");
+        writer.writeProcessingInstruction(kind, "version='" + version + "'");
+        writer.writeCharacters("\n");
+    }
+
+    private void startRepositoryElement(String name, String type, String version, boolean compress) throws XMLStreamException {
+        writer.writeStartElement("repository");
+        writer.writeAttribute("name", name);
+        writer.writeAttribute("type", type);
+        writer.writeAttribute("version", version);
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        properties.put("p2.timestamp", Long.toString(BuildTimestamp.get().getTimeMillis()));
+        properties.put("p2.compressed", Boolean.toString(compress));
+        writeProperties(1, properties);
+    }
+
+    private void endRepository() throws XMLStreamException {
+        end(0);
+        writer.writeCharacters("\n");
+        writer.writeEndDocument();
+    }
+
+    private void writeMappings() throws XMLStreamException {
+        start(1, "mappings");
+        attribute("size", MAPPING_RULES.length);
+        for (String[] rule : MAPPING_RULES) {
+            empty(2, "rule");
+            writer.writeAttribute("filter", rule[0]);
+            writer.writeAttribute("output", rule[1]);
+        }
+        end(1);
+    }
+
+    private void writeUnit(InstallableUnit unit) throws XMLStreamException {
+        start(2, "unit");
+        writer.writeAttribute("id", unit.getId());
+        writer.writeAttribute("version", unit.getVersion());
+        if (unit.isSingleton()) {
+            writer.writeAttribute("singleton", "true");
+        }
+        if (unit.getUpdateRange() != null) {
+            empty(3, "update");
+            writer.writeAttribute("id", unit.getId());
+            writer.writeAttribute("range", unit.getUpdateRange());
+            writer.writeAttribute("severity", "0");
+        }
+        writeProperties(3, unit.getProperties());
+        if (!unit.getProvided().isEmpty()) {
+            start(3, "provides");
+            attribute("size", unit.getProvided().size());
+            for (InstallableUnit.Capability capability : unit.getProvided()) {
+                empty(4, "provided");
+                writer.writeAttribute("namespace", capability.getNamespace());
+                writer.writeAttribute("name", capability.getName());
+                writer.writeAttribute("version", capability.getVersion());
+            }
+            end(3);
+        }
+        if (!unit.getRequired().isEmpty()) {
+            start(3, "requires");
+            attribute("size", unit.getRequired().size());
+            for (InstallableUnit.Requirement requirement : unit.getRequired()) {
+                if (requirement.getFilter() == null) {
+                    empty(4, "required");
+                } else {
+                    start(4, "required");
+                }
+                writer.writeAttribute("namespace", requirement.getNamespace());
+                writer.writeAttribute("name", requirement.getName());
+                writer.writeAttribute("range", requirement.getRange());
+                if (requirement.isOptional()) {
+                    writer.writeAttribute("optional", "true");
+                    writer.writeAttribute("greedy", "false");
+                }
+                if (requirement.getFilter() != null) {
+                    start(5, "filter");
+                    writer.writeCharacters(requirement.getFilter());
+                    writer.writeEndElement();
+                    end(4);
+                }
+            }
+            end(3);
+        }
+        if (unit.getFilter() != null) {
+            start(3, "filter");
+            writer.writeCharacters(unit.getFilter());
+            writer.writeEndElement();
+        }
+        if (!unit.getArtifacts().isEmpty()) {
+            start(3, "artifacts");
+            attribute("size", unit.getArtifacts().size());
+            for (ArtifactKey artifact : unit.getArtifacts()) {
+                empty(4, "artifact");
+                writeKey(artifact);
+            }
+            end(3);
+        }
+        empty(3, "touchpoint");
+        writer.writeAttribute("id", unit.getTouchpointId());
+        writer.writeAttribute("version", unit.getTouchpointVersion());
+        if (!unit.getTouchpointInstructions().isEmpty()) {
+            start(3, "touchpointData");
+            attribute("size", 1);
+            start(4, "instructions");
+            attribute("size", unit.getTouchpointInstructions().size());
+            for (Map.Entry<String, String> instruction : unit.getTouchpointInstructions().entrySet()) {
+                start(5, "instruction");
+                writer.writeAttribute("key", instruction.getKey());
+                writer.writeCharacters(instruction.getValue());
+                writer.writeEndElement();
+            }
+            end(4);
+            end(3);
+        }
+        end(2);
+    }
+
+    /**
+     * Copies the descriptor event by event; a unit is buffered until its end, when it is known whether it is a
+     * category, and the units are indented anew as the skipped categories leave gaps.
+     */
+    private void copyContent(InputStream input, int retainedUnits, Collection<InstallableUnit> categories)
+            throws XMLStreamException {
+        XMLEventReader reader = MetadataReader.newInputFactory().createXMLEventReader(input);
+        try {
+            List<XMLEvent> unit = null;
+            boolean category = false;
+            boolean inUnits = false;
+            boolean unitsWritten = false;
+            int depth = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                    StartElement element = event.asStartElement();
+                    String name = element.getName().getLocalPart();
+                    if (inUnits && depth == 3 && "unit".equals(name)) {
+                        unit = new ArrayList<XMLEvent>();
+                        category = false;
+                    } else if (unit != null && "property".equals(name)
+                            && InstallableUnits.PROP_TYPE_CATEGORY.equals(attribute(element, "name"))) {
+                        category = Boolean.parseBoolean(attribute(element, "value"));
+                    } else if (depth == 2 && "units".equals(name)) {
+                        inUnits = true;
+                    }
+                }
+                if (unit != null) {
+                    unit.add(event);
+                    if (event.isEndElement() && depth == 3) {
+                        if (!category) {
+                            indent(2);
+                            copy(unit.iterator());
+                        }
+                        unit = null;
+                    }
+                } else if (inUnits && depth == 2 && event.isStartElement()) {
+                    writer.writeStartElement("units");
+                    attribute("size", retainedUnits + categories.size());
+                    unitsWritten = true;
+                } else if (inUnits && depth == 2 && event.isEndElement()) {
+                    writeUnits(categories);
+                    end(1);
+                    inUnits = false;
+                } else if (depth == 1 && event.isEndElement() && !unitsWritten) {
+                    // a repository without units
+                    start(1, "units");
+                    attribute("size", categories.size());
+                    writeUnits(categories);
+                    end(1);
+                    end(0);
+                } else if (!inUnits || !isWhitespace(event)) {
+                    if (copy(event, reader.hasNext() ? reader.peek() : null)) {
+                        reader.nextEvent();
+                        depth--;
+                    }
+                }
+                if (event.isEndElement()) {
+                    depth--;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void writeUnits(Collection<InstallableUnit> units) throws XMLStreamException {
+        for (InstallableUnit unit : units) {
+            writeUnit(unit);
+        }
+    }
+
+    private void copy(Iterator<XMLEvent> events) throws XMLStreamException {
+        XMLEvent next = events.hasNext() ? events.next() : null;
+        while (next != null) {
+            XMLEvent event = next;
+            next = events.hasNext() ? events.next() : null;
+            if (copy(event, next)) {
+                next = events.hasNext() ? events.next() : null;
+            }
+        }
+    }
+
+    /**
+     * @return true if the next event was written as well - the end of an empty element
+     */
+    private boolean copy(XMLEvent event, XMLEvent next) throws XMLStreamException {
+        switch (event.getEventType()) {
+            case XMLEvent.START_DOCUMENT:
+                writer.writeStartDocument("UTF-8", "1.0");
+                return false;
+            case XMLEvent.START_ELEMENT:
+                StartElement element = event.asStartElement();
+                boolean empty = next != null && next.isEndElement();
+                QName name = element.getName();
+                if (empty) {
+                    writer.writeEmptyElement(name.getPrefix(), name.getLocalPart(), name.getNamespaceURI());
+                } else {
+                    writer.writeStartElement(name.getPrefix(), name.getLocalPart(), name.getNamespaceURI());
+                }
+                for (Iterator<?> namespaces = element.getNamespaces(); namespaces.hasNext(); ) {
+                    Namespace namespace = (Namespace) namespaces.next();
+                    writer.writeNamespace(namespace.getPrefix(), namespace.getNamespaceURI());
+                }
+                for (Iterator<?> attributes = element.getAttributes(); attributes.hasNext(); ) {
+                    Attribute attribute = (Attribute) attributes.next();
+                    QName attributeName = attribute.getName();
+                    writer.writeAttribute(attributeName.getPrefix(), attributeName.getNamespaceURI(),
+                            attributeName.getLocalPart(), attribute.getValue());
+                }
+                return empty;
+            case XMLEvent.END_ELEMENT:
+                writer.writeEndElement();
+                return false;
+            case XMLEvent.CHARACTERS:
+            case XMLEvent.SPACE:
+            case XMLEvent.CDATA:
+                Characters characters = event.asCharacters();
+                if (characters.isCData()) {
+                    writer.writeCData(characters.getData());
+                } else {
+                    writer.writeCharacters(characters.getData());
+                }
+                return false;
+            case XMLEvent.COMMENT:
+                writer.writeComment(((Comment) event).getText());
+                return false;
+            case XMLEvent.PROCESSING_INSTRUCTION:
+                ProcessingInstruction instruction = (ProcessingInstruction) event;
+                writer.writeProcessingInstruction(instruction.getTarget(), instruction.getData());
+                return false;
+            case XMLEvent.END_DOCUMENT:
+                writer.writeEndDocument();
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private static String attribute(StartElement element, String name) {
+        Attribute attribute = element.getAttributeByName(new QName(name));
+        return attribute != null ? attribute.getValue() : null;
+    }
+
+    private static boolean isWhitespace(XMLEvent event) {
+        return event.isCharacters() && event.asCharacters().isWhiteSpace();
+    }
+
+    private void writeArtifact(ArtifactDescriptor artifact) throws XMLStreamException {
+        start(2, "artifact");
+        writeKey(artifact.getKey());
+        writeProperties(3, artifact.getProperties());
+        end(2);
+    }
+
+    private void writeElement(int depth, Element element) throws XMLStreamException {
+        List<Element> children = new ArrayList<Element>();
+        StringBuilder text = new StringBuilder();
+        NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) node);
+            } else if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+                text.append(node.getNodeValue());
+            }
+        }
+        boolean hasText = children.isEmpty() && text.toString().trim().length() > 0;
+        if (children.isEmpty() && !hasText) {
+            empty(depth, element.getTagName());
+        } else {
+            start(depth, element.getTagName());
+        }
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            writer.writeAttribute(attribute.getNodeName(), attribute.getNodeValue());
+        }
+        if (hasText) {
+            writer.writeCharacters(text.toString());
+            writer.writeEndElement();
+        } else if (!children.isEmpty()) {
+            for (Element child : children) {
+                writeElement(depth + 1, child);
+            }
+            end(depth);
+        }
+    }
+
+    private void writeKey(ArtifactKey key) throws XMLStreamException {
+        writer.writeAttribute("classifier", key.getClassifier());
+        writer.writeAttribute("id", key.getId());
+        writer.writeAttribute("version", key.getVersion());
+    }
+
+    private void writeProperties(int depth, Map<String, String> properties) throws XMLStreamException {
+        if (properties.isEmpty()) {
+            return;
+        }
+        start(depth, "properties");
+        attribute("size", properties.size());
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            empty(depth + 1, "property");
+            writer.writeAttribute("name", property.getKey());
+            writer.writeAttribute("value", property.getValue());
+        }
+        end(depth);
+    }
+
+    private void start(int depth, String name) throws XMLStreamException {
+        indent(depth);
+        writer.writeStartElement(name);
+    }
+
+    private void empty(int depth, String name) throws XMLStreamException {
+        indent(depth);
+        writer.writeEmptyElement(name);
+    }
+
+    private void end(int depth) throws XMLStreamException {
+        indent(depth);
+        writer.writeEndElement();
+    }
+
+    private void attribute(String name, int value) throws XMLStreamException {
+        writer.writeAttribute(name, Integer.toString(value));
+    }
+
+    private void indent(int depth) throws XMLStreamException {
+        StringBuilder indentation = new StringBuilder("\n");
+        for (int i = 0; i < depth; i++) {
+            indentation.append("  ");
+        }
+        writer.writeCharacters(indentation.toString());
+    }
+
+    private void close() {
+        try {
+            writer.close();
+        } catch (XMLStreamException e) {
+            // the underlying stream is closed anyway
+        }
+        IOUtils.closeQuietly(output);
+    }
+
+}
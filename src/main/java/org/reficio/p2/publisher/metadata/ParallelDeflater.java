@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes a zip archive holding a single deflated entry, compressing the input in independent blocks
+ * on the given executor. Each block is primed with the last 32 KiB of the previous one and terminated
+ * with a sync flush, so the concatenated blocks form one valid deflate stream (the pigz approach)
+ * that any zip reader can inflate.
+ *
+ * @since 1.2.0
+ */
+public class ParallelDeflater {
+
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+    private static final int FLAG_UTF8 = 0x800;
+    private static final int DEFLATED = 8;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    // fixed 1980-01-01 00:00 entry time, so the same metadata always yields the same archive
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (1 << 5) | 1;
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int level;
+    private final int blockSize;
+
+    public ParallelDeflater(ExecutorService executor, int parallelism, int level, int blockSize) {
+        checkArgument(parallelism > 0, "parallelism has to be positive");
+        checkArgument(level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION,
+                "level has to be between 0 and 9");
+        checkArgument(blockSize > DICTIONARY_SIZE, "blockSize has to be bigger than the deflate window");
+        this.executor = checkNotNull(executor);
+        this.parallelism = parallelism;
+        this.level = level;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Reads the input to its end and writes it as the only entry of a zip archive. The streams are not closed.
+     */
+    public void writeZip(InputStream input, String entryName, OutputStream output) throws IOException {
+        byte[] name = entryName.getBytes("UTF-8");
+        int flags = FLAG_DATA_DESCRIPTOR | FLAG_UTF8;
+        Counter out = new Counter(output);
+
+        writeInt(out, LOCAL_HEADER);
+        writeShort(out, VERSION);
+        writeShort(out, flags);
+        writeShort(out, DEFLATED);
+        writeShort(out, DOS_TIME);
+        writeShort(out, DOS_DATE);
+        writeInt(out, 0); // crc, sizes follow the data
+        writeInt(out, 0);
+        writeInt(out, 0);
+        writeShort(out, name.length);
+        writeShort(out, 0);
+        out.write(name);
+
+        long dataOffset = out.count;
+        CRC32 crc = new CRC32();
+        long size = deflate(input, out, crc);
+        long compressedSize = out.count - dataOffset;
+        if (size > MAX_SIZE || compressedSize > MAX_SIZE) {
+            throw new IOException(entryName + " is too big to be stored without zip64 extensions");
+        }
+
+        writeInt(out, DATA_DESCRIPTOR);
+        writeInt(out, crc.getValue());
+        writeInt(out, compressedSize);
+        writeInt(out, size);
+
+        long centralOffset = out.count;
+        writeInt(out, CENTRAL_HEADER);
+        writeShort(out, VERSION);
+        writeShort(out, VERSION);
+        writeShort(out, flags);
+        writeShort(out, DEFLATED);
+        writeShort(out, DOS_TIME);
+        writeShort(out, DOS_DATE);
+        writeInt(out, crc.getValue());
+        writeInt(out, compressedSize);
+        writeInt(out, size);
+        writeShort(out, name.length);
+        writeShort(out, 0); // extra
+        writeShort(out, 0); // comment
+        writeShort(out, 0); // disk
+        writeShort(out, 0); // internal attributes
+        writeInt(out, 0); // external attributes
+        writeInt(out, 0); // local header offset
+        out.write(name);
+        long centralSize = out.count - centralOffset;
+
+        writeInt(out, END_OF_CENTRAL_DIRECTORY);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, 1);
+        writeShort(out, 1);
+        writeInt(out, centralSize);
+        writeInt(out, centralOffset);
+        writeShort(out, 0);
+        out.flush();
+    }
+
+    /**
+     * Writes the raw deflate stream of the input and returns the number of uncompressed bytes.
+     */
+    long deflate(InputStream input, OutputStream output, CRC32 crc) throws IOException {
+        Deque<Future<byte[]>> window = new ArrayDeque<Future<byte[]>>();
+        long size = 0;
+        byte[] previous = null;
+        byte[] current = readBlock(input);
+        try {
+            while (true) {
+                byte[] next = readBlock(input);
+                boolean last = next.length == 0;
+                crc.update(current);
+                size += current.length;
+                window.add(executor.submit(new Block(current, previous, last)));
+                if (window.size() >= parallelism * 2) {
+                    output.write(window.poll().get());
+                }
+                if (last) {
+                    break;
+                }
+                previous = current;
+                current = next;
+            }
+            while (!window.isEmpty()) {
+                output.write(window.poll().get());
+            }
+            return size;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot compress block", e.getCause());
+        } finally {
+            for (Future<byte[]> pending : window) {
+                pending.cancel(true);
+            }
+        }
+    }
+
+    private byte[] readBlock(InputStream input) throws IOException {
+        byte[] block = new byte[blockSize];
+        int read = IOUtils.read(input, block);
+        return read == blockSize ? block : Arrays.copyOf(block, read);
+    }
+
+    private class Block implements Callable<byte[]> {
+
+        private final byte[] data;
+        private final byte[] previous;
+        private final boolean last;
+
+        Block(byte[] data, byte[] previous, boolean last) {
+            this.data = data;
+            this.previous = previous;
+            this.last = last;
+        }
+
+        @Override
+        public byte[] call() {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (previous != null) {
+                    deflater.setDictionary(previous, previous.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+                }
+                deflater.setInput(data);
+                ByteArrayOutputStream result = new ByteArrayOutputStream(data.length / 4 + 64);
+                byte[] buffer = new byte[64 * 1024];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        result.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                } else {
+                    int written;
+                    do {
+                        written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        result.write(buffer, 0, written);
+                    } while (written == buffer.length);
+                }
+                return result.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private static void writeInt(OutputStream out, long value) throws IOException {
+        writeShort(out, (int) (value & 0xFFFF));
+        writeShort(out, (int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private static class Counter extends OutputStream {
+
+        private final OutputStream delegate;
+        private long count;
+
+        Counter(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+    }
+
+}
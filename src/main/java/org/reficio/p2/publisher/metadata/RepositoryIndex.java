@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of an already published p2 repository - maps every artifact to its descriptor and to the
+ * installable units derived from it. Used to update a repository in place.
+ *
+ * @since 1.2.0
+ */
+public class RepositoryIndex {
+
+    private final Map<ArtifactKey, Element> artifacts = new LinkedHashMap<ArtifactKey, Element>();
+    private final Map<ArtifactKey, List<Element>> units = new LinkedHashMap<ArtifactKey, List<Element>>();
+
+    private RepositoryIndex() {
+    }
+
+    public static RepositoryIndex empty() {
+        return new RepositoryIndex();
+    }
+
+    /**
+     * @return index of the repository or an empty index if there is no repository in the given folder
+     */
+    public static RepositoryIndex load(File repositoryDir) throws IOException {
+        RepositoryIndex index = new RepositoryIndex();
+        if (!MetadataFiles.exists(repositoryDir, MetadataFiles.CONTENT) || !MetadataFiles.exists(repositoryDir, MetadataFiles.ARTIFACTS)) {
+            return index;
+        }
+        Document artifactsDocument = MetadataFiles.read(repositoryDir, MetadataFiles.ARTIFACTS);
+        Element artifactsElement = InstallableUnits.firstChild(artifactsDocument.getDocumentElement(), "artifacts");
+        if (artifactsElement != null) {
+            for (Element artifact : InstallableUnits.children(artifactsElement, "artifact")) {
+                index.artifacts.put(key(artifact), artifact);
+            }
+        }
+        for (Element unit : InstallableUnits.getUnits(MetadataFiles.read(repositoryDir, MetadataFiles.CONTENT))) {
+            ArtifactKey key = artifactOf(unit);
+            // units that are not derived from an artifact (e.g. categories) are not indexed - they are regenerated
+            if (key != null && index.artifacts.containsKey(key)) {
+                List<Element> artifactUnits = index.units.get(key);
+                if (artifactUnits == null) {
+                    artifactUnits = new ArrayList<Element>();
+                    index.units.put(key, artifactUnits);
+                }
+                artifactUnits.add(unit);
+            }
+        }
+        return index;
+    }
+
+    private static ArtifactKey artifactOf(Element unit) {
+        Element unitArtifacts = InstallableUnits.firstChild(unit, "artifacts");
+        if (unitArtifacts != null) {
+            Element artifact = InstallableUnits.firstChild(unitArtifacts, "artifact");
+            if (artifact != null) {
+                return key(artifact);
+            }
+        }
+        String id = unit.getAttribute("id");
+        if (id.endsWith(UnitFactory.FEATURE_GROUP_POSTFIX)) {
+            String featureId = id.substring(0, id.length() - UnitFactory.FEATURE_GROUP_POSTFIX.length());
+            return new ArtifactKey(ArtifactKey.FEATURE, featureId, unit.getAttribute("version"));
+        }
+        return null;
+    }
+
+    private static ArtifactKey key(Element artifact) {
+        return new ArtifactKey(artifact.getAttribute("classifier"), artifact.getAttribute("id"), artifact.getAttribute("version"));
+    }
+
+    public Set<ArtifactKey> getArtifactKeys() {
+        return Collections.unmodifiableSet(artifacts.keySet());
+    }
+
+    public Element getArtifact(ArtifactKey key) {
+        return artifacts.get(key);
+    }
+
+    public List<Element> getUnits(ArtifactKey key) {
+        List<Element> result = units.get(key);
+        return result != null ? result : Collections.<Element>emptyList();
+    }
+
+    public String getProperty(ArtifactKey key, String name) {
+        Element artifact = artifacts.get(key);
+        return artifact != null ? InstallableUnits.getProperty(artifact, name) : null;
+    }
+
+}
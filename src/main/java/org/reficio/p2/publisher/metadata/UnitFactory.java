@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+import aQute.bnd.header.Attrs;
+import aQute.bnd.header.OSGiHeader;
+import aQute.bnd.header.Parameters;
+import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.Processor;
+import aQute.bnd.version.Version;
+import aQute.bnd.version.VersionRange;
+import org.apache.commons.lang.StringUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Creates the installable units of bundles and features on the basis of their descriptors
+ * (MANIFEST.MF and feature.xml) - the classes of the bundles are never analyzed.
+ *
+ * @since 1.2.0
+ */
+public class UnitFactory {
+
+    public static final String NAMESPACE_IU = "org.eclipse.equinox.p2.iu";
+    public static final String NAMESPACE_BUNDLE = "osgi.bundle";
+    public static final String NAMESPACE_FRAGMENT = "osgi.fragment";
+    public static final String NAMESPACE_PACKAGE = "java.package";
+    public static final String NAMESPACE_ECLIPSE_TYPE = "org.eclipse.equinox.p2.eclipse.type";
+    public static final String NAMESPACE_FEATURE = "org.eclipse.update.feature";
+
+    public static final String PROP_PROVIDER = "org.eclipse.equinox.p2.provider";
+
+    public static final String FEATURE_JAR_POSTFIX = ".feature.jar";
+    public static final String FEATURE_GROUP_POSTFIX = ".feature.group";
+
+    private static final String ECLIPSE_SOURCE_BUNDLE = "Eclipse-SourceBundle";
+    private static final String TOUCHPOINT_OSGI = "org.eclipse.equinox.p2.osgi";
+    private static final String ANY_VERSION = "0.0.0";
+    private static final String FEATURE_JAR_FILTER = "(org.eclipse.update.install.features=true)";
+
+    private static final String MATCH_PERFECT = "perfect";
+    private static final String MATCH_EQUIVALENT = "equivalent";
+    private static final String MATCH_GREATER_OR_EQUAL = "greaterOrEqual";
+    private static final String[][] ENVIRONMENT_PROPERTIES = {
+            {"os", "osgi.os"}, {"ws", "osgi.ws"}, {"arch", "osgi.arch"}, {"nl", "osgi.nl"}
+    };
+
+    public static String bundleSymbolicName(Manifest manifest) {
+        String header = manifest.getMainAttributes().getValue(Analyzer.BUNDLE_SYMBOLICNAME);
+        if (header == null) {
+            return null;
+        }
+        Parameters parameters = OSGiHeader.parseHeader(header);
+        return parameters.isEmpty() ? null : Processor.removeDuplicateMarker(parameters.keySet().iterator().next());
+    }
+
+    public static String bundleVersion(Manifest manifest) {
+        return version(manifest.getMainAttributes().getValue(Analyzer.BUNDLE_VERSION));
+    }
+
+    public static InstallableUnit createBundleUnit(Manifest manifest) {
+        Attributes attributes = manifest.getMainAttributes();
+        String symbolicName = bundleSymbolicName(manifest);
+        if (symbolicName == null) {
+            throw new IllegalArgumentException("Not an OSGi bundle - Bundle-SymbolicName is missing");
+        }
+        String version = bundleVersion(manifest);
+        Attrs symbolicNameAttrs = OSGiHeader.parseHeader(attributes.getValue(Analyzer.BUNDLE_SYMBOLICNAME)).values().iterator().next();
+
+        InstallableUnit unit = new InstallableUnit(symbolicName, version);
+        unit.setSingleton(Boolean.parseBoolean(symbolicNameAttrs.get("singleton:")));
+        unit.setUpdateRange("[0.0.0," + version + ")");
+        unit.setProperty(InstallableUnits.PROP_NAME, attributes.getValue(Analyzer.BUNDLE_NAME));
+        unit.setProperty(PROP_PROVIDER, attributes.getValue(Analyzer.BUNDLE_VENDOR));
+
+        unit.provide(NAMESPACE_IU, symbolicName, version);
+        unit.provide(NAMESPACE_BUNDLE, symbolicName, version);
+        for (Map.Entry<String, Attrs> export : parse(attributes.getValue(Analyzer.EXPORT_PACKAGE))) {
+            unit.provide(NAMESPACE_PACKAGE, export.getKey(), version(export.getValue().get("version")));
+        }
+        String fragmentHost = attributes.getValue(Analyzer.FRAGMENT_HOST);
+        if (fragmentHost != null) {
+            for (Map.Entry<String, Attrs> host : parse(fragmentHost)) {
+                unit.provide(NAMESPACE_FRAGMENT, host.getKey(), version);
+                unit.require(NAMESPACE_BUNDLE, host.getKey(), range(host.getValue().get("bundle-version")), false);
+            }
+        }
+        boolean source = attributes.getValue(ECLIPSE_SOURCE_BUNDLE) != null;
+        unit.provide(NAMESPACE_ECLIPSE_TYPE, source ? "source" : "bundle", "1.0.0");
+
+        for (Map.Entry<String, Attrs> bundle : parse(attributes.getValue(Analyzer.REQUIRE_BUNDLE))) {
+            unit.require(NAMESPACE_BUNDLE, bundle.getKey(), range(bundle.getValue().get("bundle-version")),
+                    "optional".equals(bundle.getValue().get("resolution:")));
+        }
+        for (Map.Entry<String, Attrs> imported : parse(attributes.getValue(Analyzer.IMPORT_PACKAGE))) {
+            unit.require(NAMESPACE_PACKAGE, imported.getKey(), range(imported.getValue().get("version")),
+                    "optional".equals(imported.getValue().get("resolution:")));
+        }
+
+        unit.addArtifact(new ArtifactKey(ArtifactKey.BUNDLE, symbolicName, version));
+        unit.setTouchpoint(TOUCHPOINT_OSGI, "1.0.0");
+        StringBuilder touchpointManifest = new StringBuilder();
+        touchpointManifest.append("Bundle-SymbolicName: ").append(attributes.getValue(Analyzer.BUNDLE_SYMBOLICNAME)).append('\n');
+        touchpointManifest.append("Bundle-Version: ").append(attributes.getValue(Analyzer.BUNDLE_VERSION)).append('\n');
+        if (fragmentHost != null) {
+            touchpointManifest.append("Fragment-Host: ").append(fragmentHost).append('\n');
+        }
+        unit.getTouchpointInstructions().put("manifest", touchpointManifest.toString());
+        return unit;
+    }
+
+    /**
+     * @return the feature jar unit and the feature group unit
+     */
+    public static List<InstallableUnit> createFeatureUnits(Document featureXml) {
+        Element feature = featureXml.getDocumentElement();
+        String id = feature.getAttribute("id");
+        String version = version(feature.getAttribute("version"));
+        String label = StringUtils.defaultIfEmpty(feature.getAttribute("label"), null);
+        String provider = StringUtils.defaultIfEmpty(feature.getAttribute("provider-name"), null);
+        String strictVersion = "[" + version + "," + version + "]";
+
+        InstallableUnit jar = new InstallableUnit(id + FEATURE_JAR_POSTFIX, version);
+        jar.setProperty(InstallableUnits.PROP_NAME, label);
+        jar.setProperty(PROP_PROVIDER, provider);
+        jar.provide(NAMESPACE_IU, id + FEATURE_JAR_POSTFIX, version);
+        jar.provide(NAMESPACE_ECLIPSE_TYPE, "feature", "1.0.0");
+        jar.provide(NAMESPACE_FEATURE, id, version);
+        jar.setFilter(FEATURE_JAR_FILTER);
+        jar.addArtifact(new ArtifactKey(ArtifactKey.FEATURE, id, version));
+        jar.setTouchpoint(TOUCHPOINT_OSGI, "1.0.0");
+        jar.getTouchpointInstructions().put("zipped", "true");
+
+        InstallableUnit group = new InstallableUnit(id + FEATURE_GROUP_POSTFIX, version);
+        group.setUpdateRange("[0.0.0," + version + ")");
+        group.setProperty(InstallableUnits.PROP_NAME, label);
+        group.setProperty(PROP_PROVIDER, provider);
+        group.setProperty(InstallableUnits.PROP_TYPE_GROUP, "true");
+        group.provide(NAMESPACE_IU, id + FEATURE_GROUP_POSTFIX, version);
+        for (Element plugin : InstallableUnits.children(feature, "plugin")) {
+            // fragments are required by their unit id, like the bundles - only their filters tell them apart
+            group.require(NAMESPACE_IU, plugin.getAttribute("id"), includedRange(plugin.getAttribute("version")),
+                    filter(plugin), false);
+        }
+        for (Element includes : InstallableUnits.children(feature, "includes")) {
+            group.require(NAMESPACE_IU, includes.getAttribute("id") + FEATURE_GROUP_POSTFIX,
+                    includedRange(includes.getAttribute("version")), filter(includes),
+                    "true".equals(includes.getAttribute("optional")));
+        }
+        Element requires = InstallableUnits.firstChild(feature, "requires");
+        if (requires != null) {
+            for (Element imported : InstallableUnits.children(requires, "import")) {
+                String importedRange = importedRange(imported.getAttribute("version"), imported.getAttribute("match"));
+                if (imported.hasAttribute("feature")) {
+                    group.require(NAMESPACE_IU, imported.getAttribute("feature") + FEATURE_GROUP_POSTFIX,
+                            importedRange, filter(imported), false);
+                } else {
+                    group.require(NAMESPACE_IU, imported.getAttribute("plugin"), importedRange, filter(imported), false);
+                }
+            }
+        }
+        group.require(NAMESPACE_IU, id + FEATURE_JAR_POSTFIX, strictVersion, FEATURE_JAR_FILTER, false);
+
+        List<InstallableUnit> units = new ArrayList<InstallableUnit>();
+        units.add(jar);
+        units.add(group);
+        return units;
+    }
+
+    /**
+     * The plugins and features included by a feature are required in the exact version, unless it is 0.0.0 -
+     * any version then.
+     */
+    private static String includedRange(String version) {
+        String included = version(version);
+        return ANY_VERSION.equals(included) ? ANY_VERSION : "[" + included + "," + included + "]";
+    }
+
+    /**
+     * The range of an imported plugin or feature, derived from its match rule as p2 does - compatible by default.
+     */
+    private static String importedRange(String version, String match) {
+        if (StringUtils.isBlank(version) || isRange(version)) {
+            return range(version);
+        }
+        Version low = Version.parseVersion(version.trim());
+        if (ANY_VERSION.equals(low.toString()) || MATCH_GREATER_OR_EQUAL.equals(match)) {
+            return low.toString();
+        } else if (MATCH_PERFECT.equals(match)) {
+            return "[" + low + "," + low + "]";
+        } else if (MATCH_EQUIVALENT.equals(match)) {
+            return "[" + low + "," + new Version(low.getMajor(), low.getMinor() + 1, 0) + ")";
+        }
+        return "[" + low + "," + new Version(low.getMajor() + 1, 0, 0) + ")";
+    }
+
+    private static boolean isRange(String version) {
+        String trimmed = version.trim();
+        return trimmed.startsWith("[") || trimmed.startsWith("(");
+    }
+
+    /**
+     * @return the LDAP filter of the os, ws, arch and nl attributes of a feature entry, null if it has none
+     */
+    private static String filter(Element entry) {
+        List<String> clauses = new ArrayList<String>();
+        if (StringUtils.isNotBlank(entry.getAttribute("filter"))) {
+            clauses.add(entry.getAttribute("filter").trim());
+        }
+        for (String[] environment : ENVIRONMENT_PROPERTIES) {
+            String clause = environmentClause(environment[1], entry.getAttribute(environment[0]));
+            if (clause != null) {
+                clauses.add(clause);
+            }
+        }
+        if (clauses.isEmpty()) {
+            return null;
+        }
+        return clauses.size() == 1 ? clauses.get(0) : "(&" + StringUtils.join(clauses, "") + ")";
+    }
+
+    private static String environmentClause(String property, String values) {
+        List<String> clauses = new ArrayList<String>();
+        for (String value : StringUtils.split(StringUtils.defaultString(values), ',')) {
+            if (StringUtils.isNotBlank(value)) {
+                clauses.add("(" + property + "=" + value.trim() + ")");
+            }
+        }
+        if (clauses.isEmpty()) {
+            return null;
+        }
+        return clauses.size() == 1 ? clauses.get(0) : "(|" + StringUtils.join(clauses, "") + ")";
+    }
+
+    private static Iterable<Map.Entry<String, Attrs>> parse(String header) {
+        List<Map.Entry<String, Attrs>> result = new ArrayList<Map.Entry<String, Attrs>>();
+        if (StringUtils.isBlank(header)) {
+            return result;
+        }
+        Parameters parameters = OSGiHeader.parseHeader(header);
+        for (Map.Entry<String, Attrs> entry : parameters.entrySet()) {
+            String key = Processor.removeDuplicateMarker(entry.getKey());
+            result.add(new AbstractMap.SimpleImmutableEntry<String, Attrs>(key, entry.getValue()));
+        }
+        return result;
+    }
+
+    public static String version(String version) {
+        if (StringUtils.isBlank(version)) {
+            return ANY_VERSION;
+        }
+        return Version.parseVersion(version.trim()).toString();
+    }
+
+    public static String range(String range) {
+        if (StringUtils.isBlank(range)) {
+            return ANY_VERSION;
+        }
+        VersionRange versionRange = new VersionRange(range.trim());
+        if (!versionRange.isRange()) {
+            return versionRange.getLow().toString();
+        }
+        return (versionRange.includeLow() ? "[" : "(") + versionRange.getLow() + "," + versionRange.getHigh()
+                + (versionRange.includeHigh() ? "]" : ")");
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher.metadata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal evaluator of the p2 QL "match" expressions used in category.xml files.
+ * Supports the expressions that are used in practice:
+ * <ul>
+ * <li>{@code id == 'x'}</li>
+ * <li>{@code providedCapabilities.exists(p | p.namespace == 'x' && p.name == 'y')}</li>
+ * </ul>
+ * Whether an expression is supported can be checked with {@link #isSupported(String)} before it is parsed; parsing
+ * any other expression is rejected with an {@link UnsupportedOperationException}.
+ *
+ * @since 1.2.0
+ */
+public final class UnitQuery {
+
+    private static final Pattern ID_EQUALS = Pattern.compile("^id\\s*==\\s*'([^']*)'$");
+    private static final Pattern CAPABILITY_EXISTS = Pattern.compile(
+            "^providedCapabilities\\.exists\\(\\s*(\\w+)\\s*\\|(.*)\\)$");
+    private static final Pattern CAPABILITY_CONDITION = Pattern.compile("^(\\w+)\\.(namespace|name|version)\\s*==\\s*'([^']*)'$");
+
+    private final String id;
+    // namespace, name, version - null means "any"
+    private final String[] capability;
+
+    private UnitQuery(String id, String[] capability) {
+        this.id = id;
+        this.capability = capability;
+    }
+
+    public static boolean isSupported(String expression) {
+        return tryParse(expression) != null;
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the expression is not supported, see {@link #isSupported(String)}
+     */
+    public static UnitQuery parse(String expression) {
+        UnitQuery query = tryParse(expression);
+        if (query == null) {
+            throw new UnsupportedOperationException("Unsupported category query expression [" + expression + "]");
+        }
+        return query;
+    }
+
+    private static UnitQuery tryParse(String expression) {
+        String trimmed = expression.trim();
+        Matcher idMatcher = ID_EQUALS.matcher(trimmed);
+        if (idMatcher.matches()) {
+            return new UnitQuery(idMatcher.group(1), null);
+        }
+        Matcher existsMatcher = CAPABILITY_EXISTS.matcher(trimmed);
+        if (!existsMatcher.matches()) {
+            return null;
+        }
+        String variable = existsMatcher.group(1);
+        String[] capability = new String[3];
+        for (String condition : existsMatcher.group(2).split("&&")) {
+            Matcher conditionMatcher = CAPABILITY_CONDITION.matcher(condition.trim());
+            if (!conditionMatcher.matches() || !conditionMatcher.group(1).equals(variable)) {
+                return null;
+            }
+            String attribute = conditionMatcher.group(2);
+            int index = "namespace".equals(attribute) ? 0 : "name".equals(attribute) ? 1 : 2;
+            capability[index] = conditionMatcher.group(3);
+        }
+        return new UnitQuery(null, capability);
+    }
+
+    public boolean matches(InstallableUnit unit) {
+        if (id != null) {
+            return id.equals(unit.getId());
+        }
+        for (InstallableUnit.Capability provided : unit.getProvided()) {
+            if (matches(capability[0], provided.getNamespace())
+                    && matches(capability[1], provided.getName())
+                    && matches(capability[2], provided.getVersion())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<InstallableUnit> filter(List<InstallableUnit> units) {
+        List<InstallableUnit> result = new ArrayList<InstallableUnit>();
+        for (InstallableUnit unit : units) {
+            if (matches(unit)) {
+                result.add(unit);
+            }
+        }
+        return result;
+    }
+
+    private static boolean matches(String expected, String actual) {
+        return expected == null || expected.equals(actual);
+    }
+
+}
@@ -19,10 +19,6 @@
 package org.reficio.p2.resolver.maven;
 
 import java.io.File;
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
-
-import static java.util.Arrays.asList;
 
 /**
  * Represents one artifact (normally a jar file).
@@ -43,6 +39,7 @@ public class Artifact {
     private final boolean snapshot;
     private final String version;
     private final File file;
+    private final ArtifactIdentity identity;
 
     public Artifact(String groupId, String artifactId, String baseVersion, String extension, String classifier,
                     boolean snapshot, String version, File file) {
@@ -54,6 +51,7 @@ public class Artifact {
         this.snapshot = snapshot;
         this.version = version;
         this.file = file;
+        this.identity = ArtifactIdentity.of(groupId, artifactId, extension, classifier, baseVersion, version);
     }
 
     public String getGroupId() {
@@ -88,6 +86,13 @@ public class Artifact {
         return file;
     }
 
+    /**
+     * @return the coordinates of the artifact, the file is not part of the identity
+     */
+    public ArtifactIdentity getIdentity() {
+        return identity;
+    }
+
     public String getShortId() {
         // <groupId>:<artifactId>:<version>
         return String.format("%s:%s:%s", getGroupId(), getArtifactId(),
@@ -102,8 +107,7 @@ public class Artifact {
 
     public String getLongId() {
         // <groupId>:<artifactId>:<extension>:<classifier>:<version>
-        return String.format("%s:%s:%s:%s:%s", getGroupId(), getArtifactId(),
-                getExtension(), getClassifier(), getBaseVersion());
+        return identity.getLongId();
     }
 
     public String toString() {
@@ -116,11 +120,12 @@ public class Artifact {
 
     @Override
     public boolean equals(Object other) {
-        return EqualsBuilder.reflectionEquals(this, other, asList("file"));
+        return this == other || (other instanceof Artifact
+                && snapshot == ((Artifact) other).snapshot && identity.equals(((Artifact) other).identity));
     }
 
     @Override
     public int hashCode() {
-        return HashCodeBuilder.reflectionHashCode(this, asList("file"));
+        return identity.hashCode();
     }
 }
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.maven;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Immutable key identifying an artifact by its coordinates: groupId, artifactId, extension, classifier and
+ * (base and exact) version. Instances are interned, so equal identities are normally the same instance and the
+ * hash code is computed only once - which keeps the lookups in the deduplication sets cheap for large graphs.
+ *
+ * @since 1.2.0
+ */
+public final class ArtifactIdentity {
+
+    private static final Interner<ArtifactIdentity> INTERNER = Interners.newWeakInterner();
+
+    private final String groupId;
+    private final String artifactId;
+    private final String extension;
+    private final String classifier;
+    private final String baseVersion;
+    private final String version;
+    private final int hash;
+    private String longId;
+
+    private ArtifactIdentity(String groupId, String artifactId, String extension, String classifier,
+                             String baseVersion, String version) {
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.extension = extension;
+        this.classifier = classifier;
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.hash = Objects.hashCode(groupId, artifactId, extension, classifier, baseVersion, version);
+    }
+
+    public static ArtifactIdentity of(String groupId, String artifactId, String extension, String classifier,
+                                      String baseVersion, String version) {
+        return INTERNER.intern(new ArtifactIdentity(groupId, artifactId, extension, classifier, baseVersion, version));
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public String getArtifactId() {
+        return artifactId;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getClassifier() {
+        return classifier;
+    }
+
+    public String getBaseVersion() {
+        return baseVersion;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return groupId:artifactId:extension:classifier:baseVersion
+     */
+    public String getLongId() {
+        String id = longId;
+        if (id == null) {
+            id = groupId + ":" + artifactId + ":" + extension + ":" + classifier + ":" + baseVersion;
+            longId = id;
+        }
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ArtifactIdentity)) {
+            return false;
+        }
+        ArtifactIdentity that = (ArtifactIdentity) other;
+        return hash == that.hash
+                && Objects.equal(groupId, that.groupId)
+                && Objects.equal(artifactId, that.artifactId)
+                && Objects.equal(extension, that.extension)
+                && Objects.equal(classifier, that.classifier)
+                && Objects.equal(baseVersion, that.baseVersion)
+                && Objects.equal(version, that.version);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return baseVersion != null && baseVersion.equals(version) ? getLongId() : getLongId() + " (" + version + ")";
+    }
+
+}
@@ -18,6 +18,8 @@
  */
 package org.reficio.p2.resolver.maven;
 
+import java.util.List;
+
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
  *         Reficio (TM) - Reestablish your software!<br>
@@ -28,4 +30,19 @@ public interface ArtifactResolver {
 
     ArtifactResolutionResult resolve(ArtifactResolutionRequest request);
 
+    /**
+     * Resolves several root artifacts together - the dependency graph of all of them is collected and resolved
+     * at once, so the dependencies they share are traversed and downloaded only once. The versions of the
+     * transitive dependencies are mediated across all the roots, so the result may differ from resolving each
+     * request on its own.
+     *
+     * @return the results in the order of the requests
+     */
+    List<ArtifactResolutionResult> resolve(List<ArtifactResolutionRequest> requests);
+
+    /**
+     * @return ids of the jars managed by the dependencyManagement section of the pom (including the imported BOMs)
+     */
+    List<String> resolveManagedDependencies(String pomId);
+
 }
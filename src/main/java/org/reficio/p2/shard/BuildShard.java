@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.shard;
+
+import com.google.common.base.Function;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Part K of N of a build, which lets N machines build one site together - each one takes the K-th of every N
+ * configured artifacts. The artifacts are sorted by their ids first, so the split depends neither on the order
+ * of the declaration nor on the machine, and taken round-robin, so neighbouring (often similar) artifacts end up
+ * in different shards.
+ *
+ * @since 1.2.0
+ */
+public class BuildShard {
+
+    private final int index;
+    private final int count;
+
+    public BuildShard(int index, int count) {
+        checkArgument(count > 0, "The shard count has to be positive");
+        checkArgument(index >= 0 && index < count, "The shard index has to be between 0 and %s", count - 1);
+        this.index = index;
+        this.count = count;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isWholeBuild() {
+        return count == 1;
+    }
+
+    /**
+     * @return the elements of this shard, sorted by their ids
+     */
+    public <T> List<T> select(List<T> elements, final Function<T, String> id) {
+        List<T> sorted = new ArrayList<T>(elements);
+        Collections.sort(sorted, new Comparator<T>() {
+            @Override
+            public int compare(T first, T second) {
+                return id.apply(first).compareTo(id.apply(second));
+            }
+        });
+        List<T> selected = new ArrayList<T>();
+        for (int i = index; i < sorted.size(); i += count) {
+            selected.add(sorted.get(i));
+        }
+        return selected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d", index, count);
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.shard;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Manifest of the transitive artifacts bundled by the shards of a build, shared by all of them (e.g. on a network
+ * file system). The shards are split by the configured artifacts, so the transitive dependencies they have in common
+ * would be bundled by each of them; instead, the first shard that claims an artifact bundles it and the others skip
+ * it. The manifest is an append-only file with one "id TAB shard" line per artifact, guarded by a file lock; the
+ * claims read by a shard are kept in memory, so only the lines appended since are read again.
+ * <p/>
+ * The first line of the manifest holds the id of the build that wrote the claims - a fingerprint of the configuration
+ * that all the shards of a build have in common. A shard of a different build starts the manifest over, so that the
+ * claims of a former configuration do not keep artifacts out of the shards that need them now.
+ *
+ * @since 1.2.0
+ */
+public class ShardManifest {
+
+    private static final String SEPARATOR = "\t";
+    private static final String ENCODING = "UTF-8";
+    private static final String BUILD = "build";
+
+    private final File file;
+    private final String shard;
+    private final String header;
+    private final Map<String, String> owners = new HashMap<String, String>();
+    private long readOffset;
+
+    public ShardManifest(File file, BuildShard shard, String buildId) throws IOException {
+        this.file = file;
+        this.shard = Integer.toString(shard.getIndex());
+        this.header = BUILD + SEPARATOR + buildId + "\n";
+        FileUtils.forceMkdir(file.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Claims the artifact for this shard unless another shard did it before.
+     *
+     * @return true if this shard owns the artifact - also if it claimed it in a previous run
+     */
+    public synchronized boolean claim(String id) throws IOException {
+        String owner = owners.get(id);
+        if (owner != null) {
+            return owner.equals(shard);
+        }
+        RandomAccessFile manifest = new RandomAccessFile(file, "rw");
+        try {
+            FileLock lock = manifest.getChannel().lock();
+            try {
+                if (readOffset == 0) {
+                    startBuild(manifest);
+                }
+                readClaims(manifest);
+                owner = owners.get(id);
+                if (owner != null) {
+                    return owner.equals(shard);
+                }
+                manifest.seek(manifest.length());
+                manifest.write((id + SEPARATOR + shard + "\n").getBytes(ENCODING));
+                readOffset = manifest.length();
+                owners.put(id, shard);
+                return true;
+            } finally {
+                lock.release();
+            }
+        } finally {
+            IOUtils.closeQuietly(manifest);
+        }
+    }
+
+    private void startBuild(RandomAccessFile manifest) throws IOException {
+        byte[] expected = header.getBytes(ENCODING);
+        if (manifest.length() >= expected.length) {
+            byte[] actual = new byte[expected.length];
+            manifest.seek(0);
+            manifest.readFully(actual);
+            if (Arrays.equals(expected, actual)) {
+                readOffset = expected.length;
+                return;
+            }
+        }
+        if (manifest.length() > 0) {
+            Logger.getLog().info("Discarding the shard claims of another build in " + file);
+        }
+        manifest.setLength(0);
+        manifest.write(expected);
+        readOffset = expected.length;
+    }
+
+    private void readClaims(RandomAccessFile manifest) throws IOException {
+        long length = manifest.length();
+        if (length <= readOffset) {
+            return;
+        }
+        byte[] content = new byte[(int) (length - readOffset)];
+        manifest.seek(readOffset);
+        manifest.readFully(content);
+        int lineStart = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] == '\n') {
+                String[] claim = new String(content, lineStart, i - lineStart, ENCODING).split(SEPARATOR);
+                if (claim.length == 2 && !owners.containsKey(claim[0])) {
+                    owners.put(claim[0], claim[1]);
+                }
+                lineStart = i + 1;
+            }
+        }
+        readOffset += lineStart;
+    }
+
+}
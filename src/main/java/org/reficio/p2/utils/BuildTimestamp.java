@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * The single timestamp of an execution of the plugin - snapshot and feature qualifiers, proposed versions,
+ * jar entries and the site metadata all use it, so they never differ within one build.
+ * <p>
+ * The timestamp is taken from the SOURCE_DATE_EPOCH environment variable (seconds since the epoch) or from the
+ * project.build.outputTimestamp property (ISO-8601 or seconds since the epoch); in that case the build is
+ * reproducible - qualifiers are formatted in UTC and the written jars are normalized. Otherwise the time of the
+ * initialization is used.
+ * <p>
+ * Like the log, the timestamp is bound to the execution: it is held per thread and inherited by the threads the
+ * execution starts, so the executions of the modules of a parallel build (mvn -T) do not change each other's
+ * timestamp. Threads started elsewhere fall back to the most recently initialized timestamp.
+ *
+ * @since 1.2.0
+ */
+public final class BuildTimestamp {
+
+    public static final String SOURCE_DATE_EPOCH = "SOURCE_DATE_EPOCH";
+
+    private static final String QUALIFIER_FORMAT = "yyyyMMddHHmmss";
+    private static final String[] ISO_8601_FORMATS = {"yyyy-MM-dd'T'HH:mm:ssXXX", "yyyy-MM-dd'T'HH:mm:ss.SSSXXX"};
+
+    private static final InheritableThreadLocal<BuildTimestamp> CONTEXT = new InheritableThreadLocal<BuildTimestamp>();
+    private static volatile BuildTimestamp fallback;
+
+    private final long timeMillis;
+    private final boolean reproducible;
+    private final String qualifier;
+
+    BuildTimestamp(long timeMillis, boolean reproducible) {
+        this.timeMillis = timeMillis;
+        this.reproducible = reproducible;
+        SimpleDateFormat format = new SimpleDateFormat(QUALIFIER_FORMAT);
+        if (reproducible) {
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+        this.qualifier = format.format(new Date(timeMillis));
+    }
+
+    /**
+     * Fixes the timestamp of the current execution and binds it to the current thread and to the threads it
+     * starts from now on.
+     *
+     * @param outputTimestamp value of project.build.outputTimestamp, may be null
+     */
+    public static BuildTimestamp initialize(String outputTimestamp) {
+        BuildTimestamp timestamp = create(System.getenv(SOURCE_DATE_EPOCH), outputTimestamp, System.currentTimeMillis());
+        CONTEXT.set(timestamp);
+        fallback = timestamp;
+        return timestamp;
+    }
+
+    /**
+     * Unbinds the timestamp from the current thread at the end of the execution.
+     */
+    public static void release() {
+        CONTEXT.remove();
+    }
+
+    /**
+     * @return the timestamp of the current execution, the current time if it has not been initialized
+     */
+    public static BuildTimestamp get() {
+        BuildTimestamp timestamp = CONTEXT.get();
+        if (timestamp != null) {
+            return timestamp;
+        }
+        timestamp = fallback;
+        if (timestamp == null) {
+            synchronized (BuildTimestamp.class) {
+                if (fallback == null) {
+                    fallback = new BuildTimestamp(System.currentTimeMillis(), false);
+                }
+                timestamp = fallback;
+            }
+        }
+        return timestamp;
+    }
+
+    static BuildTimestamp create(String sourceDateEpoch, String outputTimestamp, long now) {
+        if (StringUtils.isNotBlank(sourceDateEpoch)) {
+            return new BuildTimestamp(parseEpochSeconds(sourceDateEpoch.trim(), SOURCE_DATE_EPOCH), true);
+        }
+        // as in the maven-archiver a single character (e.g. the inherited default) disables the output timestamp
+        if (outputTimestamp != null && outputTimestamp.trim().length() > 1) {
+            return new BuildTimestamp(parseOutputTimestamp(outputTimestamp.trim()), true);
+        }
+        return new BuildTimestamp(now, false);
+    }
+
+    private static long parseOutputTimestamp(String value) {
+        if (StringUtils.isNumeric(value)) {
+            return parseEpochSeconds(value, "project.build.outputTimestamp");
+        }
+        for (String pattern : ISO_8601_FORMATS) {
+            try {
+                return new SimpleDateFormat(pattern).parse(value).getTime();
+            } catch (ParseException e) {
+                // try the next format
+            }
+        }
+        throw new IllegalArgumentException("Invalid project.build.outputTimestamp [" + value
+                + "], expected ISO-8601 (e.g. 2015-06-25T12:00:00Z) or seconds since the epoch");
+    }
+
+    private static long parseEpochSeconds(String value, String source) {
+        try {
+            return Long.parseLong(value) * 1000L;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + source + " [" + value + "], expected seconds since the epoch");
+        }
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public boolean isReproducible() {
+        return reproducible;
+    }
+
+    /**
+     * @return the timestamp in the yyyyMMddHHmmss form used in the version qualifiers
+     */
+    public String getQualifier() {
+        return qualifier;
+    }
+
+}
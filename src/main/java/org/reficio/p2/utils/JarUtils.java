@@ -38,10 +38,13 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
 import java.util.jar.Attributes;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -58,6 +61,20 @@ public class JarUtils {
     private static final String JAR_SNAPSHOT_POSTFIX = "-SNAPSHOT";
     private static final String OSGI_SNAPSHOT_POSTFIX = ".SNAPSHOT";
     private static final String ECLIPSE_QUALIFIER_POSTFIX = ".qualifier";
+    private static final String BND_LAST_MODIFIED = "Bnd-LastModified";
+    private static final Comparator<String> MANIFEST_FIRST = new Comparator<String>() {
+        @Override
+        public int compare(String first, String second) {
+            return rank(first) != rank(second) ? rank(first) - rank(second) : first.compareTo(second);
+        }
+
+        private int rank(String name) {
+            if ("META-INF/".equals(name)) {
+                return 0;
+            }
+            return JarFile.MANIFEST_NAME.equals(name) ? 1 : 2;
+        }
+    };
 
     public static void adjustSnapshotOutputVersion(File inputFile, File outputFile, String version) {
         Jar jar = null;
@@ -67,6 +84,7 @@ public class JarUtils {
             Attributes attributes = manifest.getMainAttributes();
             attributes.putValue(Analyzer.BUNDLE_VERSION, version);
             jar.write(outputFile);
+            normalizeJar(outputFile);
         } catch (Exception e) {
             throw new RuntimeException("Cannot open jar " + outputFile, e);
         } finally {
@@ -90,6 +108,7 @@ public class JarUtils {
             FileResource newRes = new FileResource(newXml);
             jar.putResource("feature.xml", newRes, true);
             jar.write(outputFile);
+            normalizeJar(outputFile);
         } catch (Exception e) {
             throw new RuntimeException("Cannot open jar " + outputFile, e);
         } finally {
@@ -141,8 +160,79 @@ public class JarUtils {
     }
 
     public static String getTimeStamp() {
-        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
-        return format.format(new Date());
+        return BuildTimestamp.get().getQualifier();
+    }
+
+    /**
+     * Rewrites the jar so that it depends on its content only if the build is reproducible (see
+     * {@link BuildTimestamp}): the entries are sorted by name (the manifest first), all of them get the build
+     * timestamp, and the Bnd-LastModified header is dropped from the manifest. Does nothing otherwise.
+     */
+    public static void normalizeJar(File jar) {
+        BuildTimestamp timestamp = BuildTimestamp.get();
+        if (!timestamp.isReproducible()) {
+            return;
+        }
+        File normalizedJar = new File(jar.getParent(), jar.getName() + ".tmp");
+        try {
+            ZipFile zip = new ZipFile(jar);
+            try {
+                Map<String, ZipEntry> entries = new TreeMap<String, ZipEntry>(MANIFEST_FIRST);
+                for (Enumeration list = zip.entries(); list.hasMoreElements(); ) {
+                    ZipEntry entry = (ZipEntry) list.nextElement();
+                    entries.put(entry.getName(), entry);
+                }
+                // zip entries store the local time, shifting it keeps the jar identical in all time zones
+                long time = timestamp.getTimeMillis() - TimeZone.getDefault().getOffset(timestamp.getTimeMillis());
+                ZipOutputStream output = new ZipOutputStream(new FileOutputStream(normalizedJar));
+                try {
+                    for (ZipEntry entry : entries.values()) {
+                        ZipEntry normalizedEntry = new ZipEntry(entry.getName());
+                        normalizedEntry.setTime(time);
+                        output.putNextEntry(normalizedEntry);
+                        InputStream input = zip.getInputStream(entry);
+                        try {
+                            if (JarFile.MANIFEST_NAME.equals(entry.getName())) {
+                                output.write(removeManifestHeader(IOUtils.toByteArray(input), BND_LAST_MODIFIED));
+                            } else {
+                                IOUtils.copy(input, output);
+                            }
+                        } finally {
+                            input.close();
+                        }
+                        output.closeEntry();
+                    }
+                } finally {
+                    IOUtils.closeQuietly(output);
+                }
+            } finally {
+                zip.close();
+            }
+            FileUtils.copyFile(normalizedJar, jar);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot normalize jar " + jar, e);
+        } finally {
+            FileUtils.deleteQuietly(normalizedJar);
+        }
+    }
+
+    /**
+     * Drops the header (including its continuation lines) without touching the rest of the manifest.
+     */
+    static byte[] removeManifestHeader(byte[] manifest, String header) throws IOException {
+        String content = new String(manifest, "UTF-8");
+        StringBuilder result = new StringBuilder(content.length());
+        boolean removing = false;
+        for (String line : content.split("(?<=\\n)")) {
+            if (removing && line.startsWith(" ")) {
+                continue;
+            }
+            removing = line.startsWith(header + ":");
+            if (!removing) {
+                result.append(line);
+            }
+        }
+        return result.toString().getBytes("UTF-8");
     }
 
     public static void removeSignature(File jar) {
@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+//
+// $Id$
+//
+
+File target = new File(basedir, 'target/repository/plugins')
+assert target.exists()
+def files = target.listFiles().collect { it.name }
+
+// the jars managed by the BOM are bundled, the BOM itself is not
+assert files.contains("com.fasterxml.jackson.core.jackson-databind_2.9.9.jar")
+assert files.contains("com.fasterxml.jackson.core.jackson-annotations_2.9.0.jar")
+assert files.contains("com.fasterxml.jackson.core.jackson-core_2.9.9.jar")
+assert !files.any { it.contains("jackson-bom") }
+
+// the artifact configured explicitly takes precedence over the one managed by the BOM
+assert files.findAll { it.contains(".source_") } == ["com.fasterxml.jackson.core.jackson-core.source_2.9.9.jar"]
@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+//
+// $Id$
+//
+
+import aQute.bnd.osgi.Jar
+import org.reficio.p2.utils.TestUtils as Util;
+
+String jarName = "org.mockito.mockito-core_1.9.0.jar"
+
+// the bundle goal leaves the bundles for the publish goal
+File bundles = new File(basedir, 'target/source/plugins')
+assert bundles.exists()
+assert bundles.listFiles().collect { it.name } == [jarName]
+
+// the publish goal publishes them without bundling again
+File target = new File(basedir, 'target/repository/plugins')
+assert target.exists()
+assert target.listFiles().collect { it.name } == [jarName]
+assert new File(basedir, 'target/repository/content.jar').exists()
+assert new File(basedir, 'target/repository/artifacts.jar').exists()
+
+Jar jar = new Jar(new File(target, jarName));
+assert Util.symbolicName(jar) == "org.mockito.mockito-core"
+assert Util.version(jar) == "1.9.0"
@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+//
+// $Id$
+//
+
+// the prefetch goal fetched everything the site needs
+List<String> report = new File(basedir, 'target/p2-prefetch.txt').readLines()
+assert report.size() == 2
+assert report.every { !it.startsWith("missing") }
+
+// the offline site build found all of it in the local repository and the p2 download cache
+File target = new File(basedir, 'target/repository/plugins')
+assert target.exists()
+def files = target.listFiles().collect { it.name }
+assert files.size() == 2
+assert files.contains("org.mockito.mockito-core_1.9.0.jar")
+assert files.contains("org.junit_4.11.0.v201303080030.jar")
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+//
+// $Id$
+//
+
+def plugins = { String site -> new File(basedir, "target/${site}/plugins").listFiles().collect { it.name }.sort() }
+
+String mockito = "org.mockito.mockito-core_1.9.0.jar"
+String hamcrest = "org.hamcrest.core_1.1.0.jar"
+String objenesis = "org.objenesis_1.0.0.jar"
+
+// objenesis is a dependency of mockito, but the shard configuring it bundles it
+assert plugins("shard0") == [mockito, hamcrest].sort()
+assert plugins("shard1") == [objenesis]
+
+// the merged site holds the bundles of both shards
+assert plugins("repository") == [mockito, hamcrest, objenesis].sort()
+assert new File(basedir, 'target/repository/content.jar').exists()
+assert new File(basedir, 'target/repository/artifacts.jar').exists()
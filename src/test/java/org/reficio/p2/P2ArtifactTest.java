@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class P2ArtifactTest {
+
+    @Test
+    public void bomIsRecognizedByTheSuffix() {
+        assertTrue(artifact("org.reficio:bom:1.0.0@pom").isBom());
+        assertFalse(artifact("org.reficio:core:1.0.0").isBom());
+        assertEquals("org.reficio:bom:pom:1.0.0", artifact("org.reficio:bom:1.0.0@pom").getBomPomId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bomWithClassifierIsRejected() {
+        artifact("org.reficio:bom:jar:tests:1.0.0@pom").getBomPomId();
+    }
+
+    @Test
+    public void importedArtifactIsConfiguredLikeTheBom() {
+        // given
+        P2Artifact bom = artifact("org.reficio:bom:1.0.0@pom");
+        bom.setTransitive(false);
+        bom.setExcludes(Arrays.asList("org.slf4j:*"));
+        bom.getInstructions().put("Import-Package", "*;resolution:=optional");
+
+        // when
+        P2Artifact imported = bom.importArtifact("org.reficio:core:1.0.0");
+
+        // then
+        assertEquals("org.reficio:core:1.0.0", imported.getId());
+        assertFalse(imported.shouldIncludeTransitive());
+        assertEquals(bom.getExcludes(), imported.getExcludes());
+        assertNotSame(bom.getExcludes(), imported.getExcludes());
+        assertEquals("*;resolution:=optional", imported.getInstructions().get("Import-Package"));
+    }
+
+    private static P2Artifact artifact(String id) {
+        P2Artifact artifact = new P2Artifact();
+        artifact.setId(id);
+        return artifact;
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.bundler;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.fingerprint.DigestService;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ArtifactDeduplicatorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private P2Artifact first;
+    private P2Artifact second;
+    private ResolvedArtifact javax;
+    private ResolvedArtifact jakarta;
+    private ResolvedArtifact relocatedRoot;
+    private Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.initialize(new SystemStreamLog());
+        File jar = temporaryFolder.newFile("javax.jar");
+        FileUtils.writeStringToFile(jar, "javax.annotation");
+        File relocated = temporaryFolder.newFile("jakarta.jar");
+        FileUtils.copyFile(jar, relocated);
+        first = new P2Artifact();
+        first.setId("org.reficio:first:1.0.0");
+        second = new P2Artifact();
+        second.setId("org.reficio:second:1.0.0");
+        javax = new ResolvedArtifact(artifact("javax.annotation", "javax.annotation-api", jar), null, false);
+        jakarta = new ResolvedArtifact(artifact("jakarta.annotation", "jakarta.annotation-api", relocated), null, false);
+        relocatedRoot = new ResolvedArtifact(artifact("org.reficio", "second", relocated), null, true);
+        resolvedArtifacts = ArrayListMultimap.create();
+        resolvedArtifacts.putAll(first, Arrays.asList(javax, jakarta));
+        resolvedArtifacts.put(second, relocatedRoot);
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void transitiveDuplicateIsPublishedAsTheKeptBundle() throws IOException {
+        // given
+        ArtifactDeduplicator deduplicator = new ArtifactDeduplicator(DigestService.inMemory(), true);
+
+        // when
+        deduplicator.findDuplicates(Arrays.asList(first, second), resolvedArtifacts);
+
+        // then
+        assertFalse(deduplicator.isDuplicate(relocatedRoot));
+        assertTrue(deduplicator.isDuplicate(javax));
+        assertTrue(deduplicator.isDuplicate(jakarta));
+        assertSame(relocatedRoot, deduplicator.getBundled(javax));
+        assertSame(relocatedRoot, deduplicator.getBundled(relocatedRoot));
+    }
+
+    @Test
+    public void nothingIsSkippedUnlessEnabled() throws IOException {
+        // given
+        ArtifactDeduplicator deduplicator = new ArtifactDeduplicator(DigestService.inMemory(), false);
+
+        // when
+        deduplicator.findDuplicates(Arrays.asList(first, second), resolvedArtifacts);
+
+        // then
+        assertFalse(deduplicator.isDuplicate(jakarta));
+        assertSame(jakarta, deduplicator.getBundled(jakarta));
+    }
+
+    private static Artifact artifact(String groupId, String artifactId, File file) {
+        return new Artifact(groupId, artifactId, "1.0.0", "jar", "", false, "1.0.0", file);
+    }
+
+}
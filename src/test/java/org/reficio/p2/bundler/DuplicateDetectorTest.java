@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.bundler;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.fingerprint.DigestService;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @since 1.2.0
+ */
+public class DuplicateDetectorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File root;
+    private DuplicateDetector detector;
+
+    @Before
+    public void setup() throws IOException {
+        root = temporaryFolder.getRoot();
+        detector = new DuplicateDetector(DigestService.inMemory());
+    }
+
+    @Test
+    public void sameContentUnderDifferentCoordinatesIsDetected() throws IOException {
+        // given
+        Artifact javax = artifact("javax.annotation", "javax.annotation-api", jar("javax.jar", "javax.annotation", "1.3.2"));
+        File relocated = new File(root, "jakarta.jar");
+        FileUtils.copyFile(javax.getFile(), relocated);
+        Artifact jakarta = artifact("jakarta.annotation", "jakarta.annotation-api", relocated);
+        Artifact other = artifact("org.reficio", "other", jar("other.jar", "org.reficio.other", "1.0.0"));
+
+        // when
+        assertNull(detector.claimContent(resolved(javax)));
+        assertNull(detector.claimContent(resolved(other)));
+
+        // then
+        assertEquals(javax, detector.claimContent(resolved(jakarta)).getArtifact());
+        assertNull(detector.claimContent(resolved(javax)));
+    }
+
+    @Test
+    public void bundlesWithTheSameSymbolicNameAndVersionAreDetected() throws IOException {
+        // given
+        Artifact first = artifact("org.reficio", "first", jar("first.jar", "org.reficio.core", "1.0.0"));
+        Artifact second = artifact("com.acme", "second", jar("second.jar", "org.reficio.core", "1.0.0"));
+        Artifact newer = artifact("com.acme", "newer", jar("newer.jar", "org.reficio.core", "2.0.0"));
+
+        // when
+        assertNull(detector.claimBundle(first, first.getFile()));
+        assertNull(detector.claimBundle(newer, newer.getFile()));
+
+        // then
+        assertEquals(first, detector.claimBundle(second, second.getFile()));
+    }
+
+    private static ResolvedArtifact resolved(Artifact artifact) {
+        return new ResolvedArtifact(artifact, null, false);
+    }
+
+    private static Artifact artifact(String groupId, String artifactId, File file) {
+        return new Artifact(groupId, artifactId, "1.0.0", "jar", "", false, "1.0.0", file);
+    }
+
+    private File jar(String name, String symbolicName, String version) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Bundle-ManifestVersion", "2");
+        attributes.putValue("Bundle-SymbolicName", symbolicName);
+        attributes.putValue("Bundle-Version", version);
+        File jar = new File(root, name);
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest);
+        IOUtils.closeQuietly(output);
+        return jar;
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class FileCacheStoreTest {
+
+    private static final String KEY = "ab12cd";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File root;
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+        root = temporaryFolder.getRoot();
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void concurrentWritersOfAnEntryWriteItOnce() throws Exception {
+        // given
+        final AtomicInteger writes = new AtomicInteger();
+        final FileCacheStore.EntryWriter writer = new FileCacheStore.EntryWriter() {
+            @Override
+            public void write(File folder) throws IOException {
+                writes.incrementAndGet();
+                FileUtils.writeStringToFile(new File(folder, "content.txt"), "content", "UTF-8");
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<File>> results = new ArrayList<Future<File>>();
+
+        // when
+        try {
+            for (int i = 0; i < 8; i++) {
+                // a store per writer, as if every build had its own
+                final FileCacheStore store = FileCacheStore.open(root, 5000);
+                results.add(executor.submit(new Callable<File>() {
+                    @Override
+                    public File call() throws IOException {
+                        return store.computeIfAbsent(KEY, writer);
+                    }
+                }));
+            }
+            for (Future<File> result : results) {
+                assertEquals("content", FileUtils.readFileToString(new File(result.get(), "content.txt"), "UTF-8"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // then
+        assertEquals(1, writes.get());
+        assertEquals(0, new File(root, "tmp").list().length);
+    }
+
+    @Test
+    public void staleLockIsIgnoredAfterTheTimeout() throws IOException {
+        // given
+        FileCacheStore store = FileCacheStore.open(root, 200);
+        RandomAccessFile lockFile = new RandomAccessFile(new File(root, "locks/ab.lock"), "rw");
+        FileLock staleLock = lockFile.getChannel().lock();
+
+        // when
+        File entry;
+        try {
+            entry = store.computeIfAbsent(KEY, new FileCacheStore.EntryWriter() {
+                @Override
+                public void write(File folder) throws IOException {
+                    FileUtils.touch(new File(folder, "content.txt"));
+                }
+            });
+        } finally {
+            staleLock.release();
+            lockFile.close();
+        }
+
+        // then
+        assertTrue(new File(entry, "content.txt").exists());
+        assertEquals(entry, store.get(KEY));
+    }
+
+    @Test
+    public void failedWriteLeavesNoEntry() throws IOException {
+        // given
+        FileCacheStore store = FileCacheStore.open(root, 200);
+        File staleTmp = new File(root, "tmp/" + UUID.randomUUID().toString());
+        FileUtils.forceMkdir(staleTmp);
+        assertTrue(staleTmp.setLastModified(System.currentTimeMillis() - 2 * 24 * 3600 * 1000L));
+
+        // when
+        try {
+            store.computeIfAbsent(KEY, new FileCacheStore.EntryWriter() {
+                @Override
+                public void write(File folder) throws IOException {
+                    FileUtils.touch(new File(folder, "partial.txt"));
+                    throw new IOException("failure");
+                }
+            });
+        } catch (IOException expected) {
+            // expected
+        }
+        FileCacheStore.open(root, 200);
+
+        // then
+        assertNull(store.get(KEY));
+        assertFalse(staleTmp.exists());
+        assertEquals(0, new File(root, "tmp").list().length);
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class ReactorCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ReactorCache cache = new ReactorCache();
+    private final Object session = new Object();
+    private File folder;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.initialize(new SystemStreamLog());
+        cache.attach(session);
+        folder = temporaryFolder.getRoot();
+    }
+
+    @After
+    public void cleanup() {
+        cache.dispose();
+        Logger.release();
+    }
+
+    @Test
+    public void concurrentModulesResolveAnArtifactOnce() throws Exception {
+        // given
+        final AtomicInteger resolutions = new AtomicInteger();
+        final Callable<List<ResolvedArtifact>> resolution = new Callable<List<ResolvedArtifact>>() {
+            @Override
+            public List<ResolvedArtifact> call() throws InterruptedException {
+                resolutions.incrementAndGet();
+                Thread.sleep(50);
+                Artifact artifact = new Artifact("org.reficio", "core", "1.0", "jar", "", false, "1.0", new File("core.jar"));
+                return Collections.singletonList(new ResolvedArtifact(artifact, null, true));
+            }
+        };
+        ExecutorService modules = Executors.newFixedThreadPool(4);
+        List<Future<List<ResolvedArtifact>>> results = new ArrayList<Future<List<ResolvedArtifact>>>();
+
+        // when
+        for (int i = 0; i < 8; i++) {
+            results.add(modules.submit(new Callable<List<ResolvedArtifact>>() {
+                @Override
+                public List<ResolvedArtifact> call() {
+                    return cache.resolve("org.reficio:core:1.0", resolution);
+                }
+            }));
+        }
+
+        // then
+        for (Future<List<ResolvedArtifact>> result : results) {
+            assertEquals(1, result.get().size());
+        }
+        modules.shutdown();
+        assertEquals(1, resolutions.get());
+    }
+
+    @Test
+    public void storedBundleIsRestored() throws IOException {
+        // given
+        File bundle = new File(folder, "module-a/core.jar");
+        FileUtils.writeStringToFile(bundle, "bundle", "UTF-8");
+        cache.storeBundle("key", bundle, null);
+        FileUtils.deleteDirectory(new File(folder, "module-a"));
+        File restored = new File(folder, "module-b/core.jar");
+
+        // when
+        boolean hit = cache.restoreBundle("key", restored, new File(folder, "module-b/core-sources.jar"));
+
+        // then
+        assertTrue(hit);
+        assertEquals("bundle", FileUtils.readFileToString(restored, "UTF-8"));
+        assertFalse(new File(folder, "module-b/core-sources.jar").exists());
+    }
+
+    @Test
+    public void newSessionStartsWithAnEmptyCache() throws IOException {
+        // given
+        File bundle = new File(folder, "core.jar");
+        FileUtils.writeStringToFile(bundle, "bundle", "UTF-8");
+        cache.storeBundle("key", bundle, null);
+
+        // when
+        cache.attach(new Object());
+
+        // then
+        assertFalse(cache.restoreBundle("key", new File(folder, "restored.jar"), null));
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.fingerprint;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.P2Site;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @since 1.2.0
+ */
+public class BuildFingerprintTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File folder;
+
+    @Before
+    public void setup() throws IOException {
+        folder = temporaryFolder.getRoot();
+    }
+
+    @Test
+    public void declarationOrderDoesNotMatter() throws IOException {
+        // given
+        P2Artifact first = artifact("org.reficio:a:1.0", "org.slf4j:slf4j-api", "commons-io:commons-io");
+        P2Artifact second = artifact("org.reficio:b:1.0");
+        P2Artifact reordered = artifact("org.reficio:a:1.0", "commons-io:commons-io", "org.slf4j:slf4j-api");
+
+        // when
+        String fingerprint = fingerprint().putArtifact("artifact", first).putArtifact("artifact", second).compute();
+        String other = fingerprint().putArtifact("artifact", second).putArtifact("artifact", reordered).compute();
+
+        // then
+        assertEquals(fingerprint, other);
+    }
+
+    @Test
+    public void anyConfigurationChangeIsDetected() throws IOException {
+        // given
+        P2Artifact artifact = artifact("org.reficio:a:1.0");
+        String fingerprint = fingerprint().putArtifact("artifact", artifact).compute();
+
+        // when
+        artifact.getInstructions().put("Import-Package", "*;resolution:=optional");
+
+        // then
+        assertFalse(fingerprint.equals(fingerprint().putArtifact("artifact", artifact).compute()));
+        assertFalse(fingerprint.equals(fingerprint().putArtifact("feature", artifact("org.reficio:a:1.0")).compute()));
+    }
+
+    @Test
+    public void fileContentChangeIsDetected() throws IOException {
+        // given
+        File jar = new File(folder, "a.jar");
+        FileUtils.writeStringToFile(jar, "first");
+        String fingerprint = fingerprint().putFile("jar", jar).compute();
+
+        // when
+        FileUtils.writeStringToFile(jar, "second");
+
+        // then
+        assertFalse(fingerprint.equals(fingerprint().putFile("jar", jar).compute()));
+    }
+
+    @Test
+    public void siteChangeIsDetected() throws IOException {
+        // given
+        File category = new File(folder, "category.xml");
+        FileUtils.writeStringToFile(category, "<site/>");
+        P2Site site = new P2Site();
+        site.setName("slim");
+        site.setIncludes(Arrays.asList("org.reficio:b:1.0", "org.reficio:a:1.0"));
+        site.setCategoryFileURL(category.getPath());
+        String fingerprint = fingerprint().putSite(site).compute();
+
+        // when
+        site.setIncludes(Arrays.asList("org.reficio:a:1.0", "org.reficio:b:1.0"));
+        String reordered = fingerprint().putSite(site).compute();
+        FileUtils.writeStringToFile(category, "<site><category-def name='all' label='All'/></site>");
+
+        // then
+        assertEquals(fingerprint, reordered);
+        assertFalse(fingerprint.equals(fingerprint().putSite(site).compute()));
+    }
+
+    private BuildFingerprint fingerprint() throws IOException {
+        return new BuildFingerprint(DigestService.inMemory());
+    }
+
+    private static P2Artifact artifact(String id, String... excludes) {
+        P2Artifact artifact = new P2Artifact();
+        artifact.setId(id);
+        artifact.setExcludes(Arrays.asList(excludes));
+        return artifact;
+    }
+
+}
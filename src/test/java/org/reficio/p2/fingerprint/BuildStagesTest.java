@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.fingerprint;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class BuildStagesTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File stateFolder;
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+        stateFolder = temporaryFolder.getRoot();
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void stageWithUnchangedInputsIsSkipped() throws IOException {
+        // given
+        new BuildStages(stateFolder).completed("bundle", fingerprint("1.0"));
+
+        // when
+        BuildStages stages = new BuildStages(stateFolder);
+
+        // then
+        assertFalse(stages.shouldRun("bundle", fingerprint("1.0"), null));
+        assertFalse(stages.hasRun("bundle"));
+    }
+
+    @Test
+    public void changedInputsAreReported() throws IOException {
+        // given
+        new BuildStages(stateFolder).completed("bundle", fingerprint("1.0"));
+
+        // when
+        String reason = new BuildStages(stateFolder).whyOutdated("bundle", fingerprint("2.0").put("pedantic", true), null);
+
+        // then
+        assertEquals("inputs changed - changed artifact.version, added pedantic", reason);
+    }
+
+    @Test
+    public void stageRunsIfUpstreamStageRan() throws IOException {
+        // given
+        BuildStages previous = new BuildStages(stateFolder);
+        previous.completed("publish", fingerprint("1.0"));
+        previous.completed("category", fingerprint("1.0"));
+        BuildStages stages = new BuildStages(stateFolder);
+
+        // when
+        boolean publish = stages.shouldRun("publish", fingerprint("1.0"), "the site metadata does not exist");
+
+        // then
+        assertTrue(publish);
+        assertEquals("stage [publish] was executed", stages.whyOutdated("category", fingerprint("1.0"), null, "publish"));
+    }
+
+    @Test
+    public void interruptedStageIsNotUpToDate() throws IOException {
+        // given
+        new BuildStages(stateFolder).completed("bundle", fingerprint("1.0"));
+        new BuildStages(stateFolder).shouldRun("bundle", fingerprint("2.0"), null);
+
+        // when
+        String reason = new BuildStages(stateFolder).whyOutdated("bundle", fingerprint("2.0"), null);
+
+        // then
+        assertEquals("no previous execution recorded", reason);
+    }
+
+    private static BuildFingerprint fingerprint(String version) throws IOException {
+        return new BuildFingerprint(DigestService.inMemory()).put("artifact.version", version);
+    }
+
+}
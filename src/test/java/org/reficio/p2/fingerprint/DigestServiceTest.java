@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.fingerprint;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class DigestServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File folder;
+
+    @Before
+    public void setup() throws IOException {
+        folder = temporaryFolder.getRoot();
+    }
+
+    @Test
+    public void largeFilesAreDigestedThroughTheReusedBuffer() throws IOException {
+        // given
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        File large = new File(folder, "large.jar");
+        FileUtils.writeByteArrayToFile(large, content);
+
+        // when
+        String digest = DigestService.inMemory().digest(large);
+
+        // then
+        assertEquals(DigestService.toHex(DigestService.newSha256().digest(content)), digest);
+    }
+
+    @Test
+    public void filesAreDigestedInParallelInOrder() throws IOException {
+        // given
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 20; i++) {
+            File file = new File(folder, "bundle-" + i + ".jar");
+            FileUtils.writeStringToFile(file, "content " + i);
+            files.add(file);
+        }
+        DigestService service = DigestService.load(null, 4);
+
+        // when
+        Map<File, String> digests = service.digestAll(files);
+        service.shutdown();
+
+        // then
+        assertEquals(files, new ArrayList<File>(digests.keySet()));
+        for (File file : files) {
+            assertEquals(DigestService.inMemory().digest(file), digests.get(file));
+        }
+    }
+
+    @Test
+    public void digestsArePersistedByPathSizeAndModificationTime() throws IOException {
+        // given
+        File index = new File(folder, "digests.properties");
+        File jar = new File(folder, "a.jar");
+        FileUtils.writeStringToFile(jar, "first");
+        assertTrue(jar.setLastModified(1000L));
+        DigestService service = DigestService.load(index, 1);
+        String digest = service.digest(jar);
+        service.save();
+
+        // when
+        FileUtils.writeStringToFile(jar, "other");
+        assertTrue(jar.setLastModified(1000L));
+
+        // then
+        assertEquals(digest, DigestService.load(index, 1).digest(jar));
+        assertTrue(jar.setLastModified(2000L));
+        assertFalse(digest.equals(DigestService.load(index, 1).digest(jar)));
+    }
+
+    @Test
+    public void indexIsKeptInTheCacheDirectoryPerBuildDirectory() throws IOException {
+        // given
+        File cache = new File(folder, "cache");
+        File first = DigestService.indexFile(cache, new File(folder, "module-a/target"));
+        File second = DigestService.indexFile(cache, new File(folder, "module-b/target"));
+        File jar = new File(folder, "a.jar");
+        FileUtils.writeStringToFile(jar, "content");
+
+        // when
+        DigestService service = DigestService.load(first, 1);
+        service.digest(jar);
+        service.save();
+
+        // then
+        assertEquals(cache, first.getParentFile());
+        assertFalse(first.equals(second));
+        assertEquals(first, DigestService.indexFile(cache, new File(folder, "module-a/target")));
+        assertEquals(1, cache.listFiles().length);
+        assertTrue(first.isFile());
+    }
+
+}
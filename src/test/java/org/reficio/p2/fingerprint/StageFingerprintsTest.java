@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.fingerprint;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class StageFingerprintsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File folder;
+    private DigestService digests;
+    private P2Artifact artifact;
+    private File jar;
+    private Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts;
+    private Multimap<P2Artifact, ResolvedArtifact> resolvedFeatures;
+
+    @Before
+    public void setup() throws IOException {
+        folder = temporaryFolder.getRoot();
+        digests = DigestService.inMemory();
+        artifact = new P2Artifact();
+        artifact.setId("org.reficio:a:1.0");
+        jar = new File(folder, "a-1.0.jar");
+        FileUtils.writeStringToFile(jar, "first");
+        resolvedArtifacts = ArrayListMultimap.create();
+        resolvedArtifacts.put(artifact, new ResolvedArtifact(
+                new Artifact("org.reficio", "a", "1.0", "jar", null, false, "1.0", jar), null, true));
+        resolvedFeatures = ArrayListMultimap.create();
+    }
+
+    @Test
+    public void bundleFingerprintFollowsTheResolvedFiles() throws IOException {
+        // given
+        String fingerprint = fingerprints().build().bundle(resolvedArtifacts, resolvedFeatures).compute();
+
+        // when
+        FileUtils.writeStringToFile(jar, "second");
+        String changed = fingerprints().build().bundle(resolvedArtifacts, resolvedFeatures).compute();
+
+        // then
+        assertFalse(fingerprint.equals(changed));
+    }
+
+    @Test
+    public void publishFingerprintFollowsTheBundledJars() throws IOException {
+        // given
+        File bundles = temporaryFolder.newFolder("bundles");
+        FileUtils.writeStringToFile(new File(bundles, "plugins/a_1.0.0.jar"), "bundle");
+        String fingerprint = fingerprints().build().publish(bundles).compute();
+        String compressed = fingerprints().compressSite(true).build().publish(bundles).compute();
+
+        // when
+        FileUtils.writeStringToFile(new File(bundles, "plugins/b_1.0.0.jar"), "bundle");
+
+        // then
+        assertEquals(fingerprint, compressed);
+        assertFalse(fingerprint.equals(fingerprints().build().publish(bundles).compute()));
+    }
+
+    @Test
+    public void shardBuildIgnoresTheOptions() {
+        // given
+        String buildId = fingerprints().build().shardBuild(4);
+
+        // when
+        String other = fingerprints().pedantic(true).compressSite(true).build().shardBuild(4);
+
+        // then
+        assertEquals(buildId, other);
+        assertFalse(buildId.equals(fingerprints().build().shardBuild(2)));
+    }
+
+    private StageFingerprints.Builder fingerprints() {
+        return StageFingerprints.builder()
+                .digestService(digests)
+                .pluginVersion("1.2.0")
+                .artifacts(Arrays.asList(artifact))
+                .destinationDirectory(new File(folder, "repository"));
+    }
+
+}
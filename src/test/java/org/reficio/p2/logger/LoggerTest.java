@@ -18,8 +18,19 @@
  */
 package org.reficio.p2.logger;
 
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
 /**
  * @author Tom Bujok (tom.bujok@gmail.com)<br>
  *         Reficio (TM) - Reestablish your software!<br>
@@ -33,4 +44,103 @@ public class LoggerTest {
         Logger.getLog();
     }
 
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void threadsStartedByTheExecutionInheritItsLog() throws InterruptedException {
+        // given
+        final RecordingLog first = new RecordingLog();
+        final RecordingLog second = new RecordingLog();
+        Thread otherExecution = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Logger.initialize(second);
+                Logger.getLog().info("second");
+            }
+        });
+        Logger.initialize(first);
+
+        // when
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Logger.getLog().info("worker");
+            }
+        });
+        otherExecution.start();
+        otherExecution.join();
+        worker.start();
+        worker.join();
+        Logger.getLog().info("first");
+
+        // then
+        assertEquals(Arrays.asList("worker", "first"), first.lines);
+        assertEquals(Arrays.asList("second"), second.lines);
+    }
+
+    @Test
+    public void pooledTasksLogToTheExecutionSubmittingThem() throws Exception {
+        // given
+        RecordingLog first = new RecordingLog();
+        RecordingLog second = new RecordingLog();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                Logger.getLog().info("task");
+            }
+        };
+
+        // when
+        try {
+            Logger.initialize(first);
+            pool.submit(Logger.bind(task)).get();
+            Logger.initialize(second);
+            pool.submit(Logger.bind(task)).get();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // then
+        assertEquals(Arrays.asList("task"), first.lines);
+        assertEquals(Arrays.asList("task"), second.lines);
+    }
+
+    @Test
+    public void bufferedOutputIsWrittenAtOnce() {
+        // given
+        RecordingLog log = new RecordingLog();
+        Logger.initialize(log);
+        LogBuffer buffer = Logger.buffer();
+
+        // when
+        Logger.getLog().info("analyze");
+        Logger.getLog().warn("unsigned");
+        List<String> beforeFlush = new ArrayList<String>(log.lines);
+        buffer.flush();
+        Logger.getLog().info("next");
+
+        // then
+        assertEquals(Collections.emptyList(), beforeFlush);
+        assertEquals(Arrays.asList("analyze", "WARN unsigned", "next"), log.lines);
+    }
+
+    private static class RecordingLog extends SystemStreamLog {
+
+        private final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void info(CharSequence content) {
+            lines.add(content.toString());
+        }
+
+        @Override
+        public void warn(CharSequence content) {
+            lines.add("WARN " + content);
+        }
+    }
+
 }
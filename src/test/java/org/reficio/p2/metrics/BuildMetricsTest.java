@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.metrics;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class BuildMetricsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private BuildMetrics metrics;
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+        metrics = new BuildMetrics();
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void slowestArtifactsComeFirst() throws InterruptedException {
+        // given
+        metrics.startPhase("bundle");
+        BuildMetrics.ArtifactTimer slow = metrics.startArtifact("org.reficio:slow:1.0");
+        BuildMetrics.ArtifactTimer fast = metrics.startArtifact("org.reficio:fast:1.0");
+        fast.stop(10, 20);
+        Thread.sleep(20);
+        slow.stop(10, 20);
+        metrics.finish();
+
+        // when
+        List<BuildMetrics.ArtifactMetrics> slowest = metrics.getSlowestArtifacts(1);
+
+        // then
+        assertEquals(1, slowest.size());
+        assertEquals("org.reficio:slow:1.0", slowest.get(0).getId());
+        assertEquals("bundle", slowest.get(0).getPhase());
+    }
+
+    @Test
+    public void reportIsWrittenAsJson() throws IOException {
+        // given
+        metrics.startPhase("resolve");
+        metrics.startArtifact("org.reficio:\"quoted\":1.0").stop(100, 0);
+        metrics.startPhase("publish");
+        metrics.skipPhase();
+        metrics.addBytesWritten(42);
+        metrics.finish();
+        File report = new File(temporaryFolder.getRoot(), "p2-metrics.json");
+
+        // when
+        metrics.writeJson(report, 5);
+
+        // then
+        String json = FileUtils.readFileToString(report, "UTF-8");
+        assertTrue(json, json.contains("\"name\": \"resolve\""));
+        assertTrue(json, json.contains("\"bytesRead\": 100"));
+        assertTrue(json, json.contains("\"skipped\": true"));
+        assertTrue(json, json.contains("\"bytesWritten\": 42"));
+        assertTrue(json, json.contains("\"id\": \"org.reficio:\\\"quoted\\\":1.0\""));
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.metrics;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The jdk.jfr API is driven by reflection here as well, the tests have to compile on JVMs without it.
+ *
+ * @since 1.2.0
+ */
+public class FlightRecorderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void eventsWithoutRecordingAreIgnored() {
+        FlightRecorder.begin(FlightRecorder.RESOLVE, "org.reficio:a:1.0").bytes(10).commit(FlightRecorder.SUCCESS);
+    }
+
+    @Test
+    public void eventsAreRecorded() throws Exception {
+        Assume.assumeTrue(FlightRecorder.isAvailable());
+
+        // given
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.newInstance();
+        recordingClass.getMethod("enable", String.class).invoke(recording, "org.reficio.p2.Bundle");
+        recordingClass.getMethod("start").invoke(recording);
+
+        // when
+        FlightRecorder.begin(FlightRecorder.BUNDLE, "commons-io-2.4.jar").step("write").bytes(185140)
+                .commit(FlightRecorder.SUCCESS);
+
+        // then
+        recordingClass.getMethod("stop").invoke(recording);
+        File dump = new File(temporaryFolder.getRoot(), "recording.jfr");
+        recordingClass.getMethod("dump", Class.forName("java.nio.file.Path")).invoke(recording,
+                File.class.getMethod("toPath").invoke(dump));
+        recordingClass.getMethod("close").invoke(recording);
+        Method readAllEvents = Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", Class.forName("java.nio.file.Path"));
+        List<?> events = (List<?>) readAllEvents.invoke(null, File.class.getMethod("toPath").invoke(dump));
+        Object event = null;
+        for (Object candidate : events) {
+            Object type = candidate.getClass().getMethod("getEventType").invoke(candidate);
+            if ("org.reficio.p2.Bundle".equals(type.getClass().getMethod("getName").invoke(type))) {
+                event = candidate;
+            }
+        }
+        assertTrue("event not recorded", event != null);
+        Method getValue = event.getClass().getMethod("getValue", String.class);
+        assertEquals("commons-io-2.4.jar", getValue.invoke(event, "artifact"));
+        assertEquals("write", getValue.invoke(event, "step"));
+        assertEquals(185140L, getValue.invoke(event, "bytes"));
+        assertEquals(FlightRecorder.SUCCESS, getValue.invoke(event, "outcome"));
+    }
+
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.pipeline;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @since 1.2.0
+ */
+public class StreamingPipelineTest {
+
+    private final ListMultimap<P2Artifact, ResolvedArtifact> resolutions = ArrayListMultimap.create();
+    private final List<P2Artifact> artifacts = new ArrayList<P2Artifact>();
+    private final Map<String, String> bundledBy = new ConcurrentHashMap<String, String>();
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void rootArtifactTakesPrecedenceOverEarlierTransitiveDependency() {
+        // given
+        declare("org.reficio:app:1.0", "org.reficio:core:1.0", "org.reficio:util:1.0");
+        declare("org.reficio:core:1.0");
+
+        // when
+        pipeline().execute();
+
+        // then
+        assertEquals(3, bundledBy.size());
+        assertEquals("org.reficio:app:1.0", bundledBy.get("org.reficio:app:1.0"));
+        assertEquals("org.reficio:core:1.0", bundledBy.get("org.reficio:core:1.0"));
+        assertEquals("org.reficio:app:1.0", bundledBy.get("org.reficio:util:1.0"));
+    }
+
+    @Test
+    public void sharedTransitiveDependencyIsBundledOnce() {
+        // given
+        for (int i = 0; i < 20; i++) {
+            declare("org.reficio:app" + i + ":1.0", "org.reficio:util:1.0");
+        }
+        final List<String> bundles = Collections.synchronizedList(new ArrayList<String>());
+
+        // when
+        pipeline(new StreamingPipeline.Bundler() {
+            @Override
+            public void bundle(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
+                bundles.add(resolvedArtifact.getArtifact().getArtifactId());
+            }
+        }).execute();
+
+        // then
+        assertEquals(21, bundles.size());
+        assertEquals(1, Collections.frequency(bundles, "util"));
+    }
+
+    @Test
+    public void duplicateRootArtifactFails() {
+        // given
+        declare("org.reficio:core:1.0");
+        declare("org.reficio:core:1.0");
+
+        // when
+        try {
+            pipeline().execute();
+            fail("duplicate artifact not detected");
+        } catch (RuntimeException ex) {
+            // then
+            assertTrue(ex.getMessage().contains("configured as an artifact multiple times"));
+        }
+    }
+
+    @Test
+    public void bundlingFailureOfRootArtifactIsPropagated() {
+        // given
+        declare("org.reficio:core:1.0");
+        declare("org.reficio:broken:1.0");
+
+        // when
+        try {
+            pipeline(new StreamingPipeline.Bundler() {
+                @Override
+                public void bundle(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
+                    if (resolvedArtifact.getArtifact().getArtifactId().equals("broken")) {
+                        throw new IllegalStateException("broken jar");
+                    }
+                }
+            }).execute();
+            fail("bundling failure not propagated");
+        } catch (IllegalStateException ex) {
+            // then
+            assertEquals("broken jar", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void skippedTransitiveDependencyIsBundledByItsNextOccurrence() {
+        // given
+        for (int i = 0; i < 10; i++) {
+            declare("org.reficio:app" + i + ":1.0", "org.reficio:util:1.0");
+        }
+        final List<String> bundles = Collections.synchronizedList(new ArrayList<String>());
+
+        // when
+        pipeline(new StreamingPipeline.Bundler() {
+            @Override
+            public void bundle(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
+                String artifactId = resolvedArtifact.getArtifact().getArtifactId();
+                if (artifactId.equals("util") && p2Artifact.getId().equals("org.reficio:app0:1.0")) {
+                    throw new IllegalStateException("invalid instructions");
+                }
+                bundles.add(artifactId);
+                bundledBy.put(resolvedArtifact.getArtifact().getShortId(), p2Artifact.getId());
+            }
+        }, true).execute();
+
+        // then
+        assertEquals(11, bundles.size());
+        assertEquals(1, Collections.frequency(bundles, "util"));
+        assertEquals("org.reficio:app1:1.0", bundledBy.get("org.reficio:util:1.0"));
+    }
+
+    @Test
+    public void deferredDependencyIsReleasedOnceItsRootIsResolved() {
+        // given
+        declare("org.reficio:app:1.0", "org.reficio:core:2.0");
+        declare("org.reficio:core:1.0");
+        declare("org.reficio:other:1.0", "org.reficio:core:2.0");
+        final List<String> resolved = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> bundled = Collections.synchronizedList(new ArrayList<String>());
+
+        // when
+        StreamingPipeline.builder()
+                .artifacts(artifacts)
+                .resolver(new StreamingPipeline.Resolver() {
+                    @Override
+                    public List<ResolvedArtifact> resolve(P2Artifact p2Artifact) {
+                        if (p2Artifact.getId().equals("org.reficio:other:1.0")) {
+                            waitFor(bundled, "org.reficio:core:2.0");
+                        }
+                        resolved.add(p2Artifact.getId());
+                        return resolutions.get(p2Artifact);
+                    }
+                })
+                .bundler(new StreamingPipeline.Bundler() {
+                    @Override
+                    public void bundle(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
+                        bundledBy.put(resolvedArtifact.getArtifact().getShortId(), p2Artifact.getId());
+                        bundled.add(resolvedArtifact.getArtifact().getShortId());
+                    }
+                })
+                .threads(2)
+                .queueSize(1)
+                .build().execute();
+
+        // then
+        assertEquals(3, resolved.size());
+        assertEquals("org.reficio:app:1.0", bundledBy.get("org.reficio:core:2.0"));
+        assertEquals("org.reficio:core:1.0", bundledBy.get("org.reficio:core:1.0"));
+    }
+
+    private static void waitFor(List<String> bundled, String id) {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!bundled.contains(id)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("deferred dependency not released before the end of the resolution");
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private StreamingPipeline pipeline() {
+        return pipeline(new StreamingPipeline.Bundler() {
+            @Override
+            public void bundle(P2Artifact p2Artifact, ResolvedArtifact resolvedArtifact) {
+                bundledBy.put(resolvedArtifact.getArtifact().getShortId(), p2Artifact.getId());
+            }
+        });
+    }
+
+    private StreamingPipeline pipeline(StreamingPipeline.Bundler bundler) {
+        return pipeline(bundler, false);
+    }
+
+    private StreamingPipeline pipeline(StreamingPipeline.Bundler bundler, boolean skipInvalidArtifacts) {
+        return StreamingPipeline.builder()
+                .artifacts(artifacts)
+                .resolver(new StreamingPipeline.Resolver() {
+                    @Override
+                    public List<ResolvedArtifact> resolve(P2Artifact p2Artifact) {
+                        return resolutions.get(p2Artifact);
+                    }
+                })
+                .bundler(bundler)
+                .threads(4)
+                .queueSize(2)
+                .skipInvalidArtifacts(skipInvalidArtifacts)
+                .build();
+    }
+
+    private void declare(String root, String... transitive) {
+        P2Artifact p2Artifact = new P2Artifact();
+        p2Artifact.setId(root);
+        artifacts.add(p2Artifact);
+        resolutions.put(p2Artifact, new ResolvedArtifact(artifact(root), null, true));
+        for (String id : Arrays.asList(transitive)) {
+            resolutions.put(p2Artifact, new ResolvedArtifact(artifact(id), null, false));
+        }
+    }
+
+    private static Artifact artifact(String id) {
+        String[] tokens = id.split(":");
+        return new Artifact(tokens[0], tokens[1], tokens[2], "jar", "", false, tokens[2],
+                new File(tokens[1] + ".jar"));
+    }
+
+}
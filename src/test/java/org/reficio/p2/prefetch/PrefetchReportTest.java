@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.prefetch;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @since 1.2.0
+ */
+public class PrefetchReportTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File folder;
+
+    @Before
+    public void setup() throws IOException {
+        folder = temporaryFolder.getRoot();
+    }
+
+    @Test
+    public void originIsReadFromTheLocalRepository() throws IOException {
+        // given
+        File jar = new File(folder, "core-1.0.jar");
+        File installed = new File(folder, "core-1.0-sources.jar");
+        FileUtils.writeLines(new File(folder, PrefetchReport.REMOTE_REPOSITORIES), Arrays.asList(
+                "#NOTE: This is an internal implementation file", "core-1.0.pom>central=", "core-1.0.jar>central=",
+                "core-1.0-sources.jar>="));
+
+        // then
+        assertEquals("central", PrefetchReport.mavenOriginOf(jar));
+        assertEquals("local", PrefetchReport.mavenOriginOf(installed));
+        assertNull(PrefetchReport.mavenOriginOf(new File(folder, "other-1.0.jar")));
+    }
+
+    @Test
+    public void artifactsAreReportedAsDownloadedCachedOrMissing() throws IOException {
+        // given
+        File cached = new File(folder, "cached.jar");
+        FileUtils.touch(cached);
+        cached.setLastModified(1000L);
+        File downloaded = new File(folder, "downloaded.jar");
+        FileUtils.writeStringToFile(downloaded, "content", "UTF-8");
+        PrefetchReport report = new PrefetchReport(System.currentTimeMillis() - 60000L);
+
+        // when
+        report.addP2Artifact("downloaded", downloaded, "http://download.eclipse.org/releases/mars");
+        report.addMavenArtifact("cached", cached);
+        report.addMissing("missing", "not found");
+        File reportFile = new File(folder, "report.txt");
+        report.write(reportFile);
+
+        // then
+        assertEquals(1, report.count(PrefetchReport.DOWNLOADED));
+        assertEquals(1, report.count(PrefetchReport.CACHED));
+        assertEquals(1, report.count(PrefetchReport.MISSING));
+        assertEquals(Arrays.asList(
+                "cached\tcached\tunknown\t" + cached.getAbsolutePath(),
+                "downloaded\tdownloaded\thttp://download.eclipse.org/releases/mars\t" + downloaded.getAbsolutePath(),
+                "missing\tmissing\tnot found\t-"), FileUtils.readLines(reportFile, "UTF-8"));
+    }
+
+}
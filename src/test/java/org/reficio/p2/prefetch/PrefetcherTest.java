@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.prefetch;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.EclipseArtifact;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrefetcherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File folder;
+    private File report;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.initialize(new SystemStreamLog());
+        folder = temporaryFolder.getRoot();
+        report = new File(folder, "p2-prefetch.txt");
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void everyResolvedFileIsReported() throws Exception {
+        // given
+        List<P2Artifact> artifacts = Arrays.asList(p2Artifact("org.reficio:core:1.0"), p2Artifact("org.reficio:util:1.0"));
+        EclipseArtifact eclipseArtifact = new EclipseArtifact();
+        eclipseArtifact.setId("org.eclipse.core.runtime:3.10.0");
+
+        // when
+        prefetcher(artifacts, Collections.singletonList(eclipseArtifact), false).execute();
+
+        // then
+        List<String> lines = FileUtils.readLines(report, "UTF-8");
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("org.eclipse.core.runtime_3.10.0.jar\thttp://download.eclipse.org"));
+        assertTrue(lines.get(1).contains("org.reficio:core:jar::1.0"));
+        assertTrue(lines.get(2).contains("org.reficio:util:jar::1.0"));
+    }
+
+    @Test
+    public void missingArtifactsFailThePrefetch() throws Exception {
+        // given
+        List<P2Artifact> artifacts = Arrays.asList(p2Artifact("org.reficio:core:1.0"), p2Artifact("org.reficio:broken:1.0"));
+
+        // when
+        try {
+            prefetcher(artifacts, Collections.<EclipseArtifact>emptyList(), false).execute();
+            fail("missing artifact not reported");
+        } catch (RuntimeException ex) {
+            // then
+            assertTrue(ex.getMessage().startsWith("Cannot prefetch 1 artifacts"));
+        }
+        assertTrue(FileUtils.readFileToString(report, "UTF-8").contains("missing\torg.reficio:broken:1.0\tnot found"));
+    }
+
+    @Test
+    public void missingArtifactsAreOnlyReportedIfSkipped() throws Exception {
+        // given
+        List<P2Artifact> artifacts = Collections.singletonList(p2Artifact("org.reficio:broken:1.0"));
+
+        // when
+        prefetcher(artifacts, Collections.<EclipseArtifact>emptyList(), true).execute();
+
+        // then
+        assertTrue(FileUtils.readFileToString(report, "UTF-8").startsWith(PrefetchReport.MISSING));
+    }
+
+    private Prefetcher prefetcher(List<P2Artifact> artifacts, List<EclipseArtifact> eclipseArtifacts,
+                                  boolean skipInvalidArtifacts) {
+        return Prefetcher.builder()
+                .artifacts(artifacts)
+                .eclipseArtifacts(eclipseArtifacts)
+                .resolver(new Prefetcher.Resolver() {
+                    @Override
+                    public List<ResolvedArtifact> resolve(P2Artifact p2Artifact) {
+                        String[] tokens = p2Artifact.getId().split(":");
+                        if (tokens[1].equals("broken")) {
+                            throw new IllegalStateException("not found");
+                        }
+                        File jar = write(tokens[1] + "-" + tokens[2] + ".jar");
+                        Artifact artifact = new Artifact(tokens[0], tokens[1], tokens[2], "jar", "", false, tokens[2], jar);
+                        return new ArrayList<ResolvedArtifact>(Collections.singletonList(
+                                new ResolvedArtifact(artifact, null, true)));
+                    }
+
+                    @Override
+                    public Map<File, String> resolve(EclipseArtifact eclipseArtifact) {
+                        String[] tokens = eclipseArtifact.getId().split(":");
+                        return Collections.singletonMap(write(tokens[0] + "_" + tokens[1] + ".jar"),
+                                "http://download.eclipse.org/releases/mars");
+                    }
+                })
+                .threads(4)
+                .reportFile(report)
+                .skipInvalidArtifacts(skipInvalidArtifacts)
+                .build();
+    }
+
+    private File write(String name) {
+        try {
+            File file = new File(folder, name);
+            FileUtils.writeStringToFile(file, name, "UTF-8");
+            return file;
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static P2Artifact p2Artifact(String id) {
+        P2Artifact p2Artifact = new P2Artifact();
+        p2Artifact.setId(id);
+        return p2Artifact;
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import com.google.common.base.Supplier;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.sisu.equinox.launching.internal.P2ApplicationLauncher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.metadata.InstallableUnit;
+import org.reficio.p2.publisher.metadata.InstallableUnits;
+import org.reficio.p2.publisher.metadata.MetadataReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CategoryPublishingServiceTest {
+
+    private static final String CONTENT = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+            "<?metadataRepository version='1.1.0'?>\n" +
+            "<repository name='test' type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>\n" +
+            "  <units size='1'>\n" +
+            "    <unit id='org.reficio.a' version='1.0.0'>\n" +
+            "      <provides size='1'><provided namespace='osgi.bundle' name='org.reficio.a' version='1.0.0'/></provides>\n" +
+            "    </unit>\n" +
+            "  </units>\n" +
+            "</repository>\n";
+
+    private static final String CATEGORY = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+            "<site>\n" +
+            "  <category-def name='all' label='All bundles'/>\n" +
+            "  <iu><category name='all'/>\n" +
+            "    <query><expression type='match'>providedCapabilities.exists(p | p.namespace == 'osgi.bundle')</expression></query>\n" +
+            "  </iu>\n" +
+            "</site>\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final AtomicInteger launchers = new AtomicInteger();
+    private File repository;
+    private File category;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.initialize(new SystemStreamLog());
+        repository = temporaryFolder.newFolder();
+        FileUtils.writeStringToFile(new File(repository, "content.xml"), CONTENT, "UTF-8");
+        category = temporaryFolder.newFile("category.xml");
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void supportedCategoriesArePublishedInProcess() throws Exception {
+        // given
+        FileUtils.writeStringToFile(category, CATEGORY, "UTF-8");
+
+        // when
+        service().publish(category.getPath(), repository.getPath(), true);
+
+        // then
+        assertEquals(0, launchers.get());
+        List<InstallableUnit> units = MetadataReader.readUnits(repository);
+        assertEquals(2, units.size());
+        assertTrue(InstallableUnits.isCategory(units.get(1)));
+    }
+
+    @Test
+    public void unsupportedCategoriesArePublishedByTheForkedPublisher() throws Exception {
+        // given
+        FileUtils.writeStringToFile(category, CATEGORY.replace("p.namespace ==", "p.namespace ~="), "UTF-8");
+
+        // when
+        try {
+            service().publish(category.getPath(), repository.getPath(), true);
+            fail("The forked publisher has not been launched");
+        } catch (IllegalStateException ex) {
+            // then
+            assertEquals(1, launchers.get());
+        }
+    }
+
+    private CategoryPublishingService service() {
+        return CategoryPublishingService.builder()
+                .launchers(new Supplier<P2ApplicationLauncher>() {
+                    @Override
+                    public P2ApplicationLauncher get() {
+                        launchers.incrementAndGet();
+                        throw new IllegalStateException("forked");
+                    }
+                })
+                .build();
+    }
+
+}
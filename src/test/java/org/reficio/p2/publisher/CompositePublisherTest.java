@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.metadata.InstallableUnits;
+import org.reficio.p2.publisher.metadata.MetadataFiles;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class CompositePublisherTest {
+
+    private static final String CATEGORY_XML = "<site><category-def name='all' label='All'/>" +
+            "<iu><category name='all'/><query><expression type='match'>" +
+            "providedCapabilities.exists(p | p.namespace == 'osgi.bundle')</expression></query></iu></site>";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File source;
+    private File repository;
+    private File stateFile;
+    private File categoryFile;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.initialize(new SystemStreamLog());
+        File root = temporaryFolder.getRoot();
+        source = new File(root, "source");
+        repository = new File(root, "repository");
+        stateFile = new File(root, "p2-composite.properties");
+        categoryFile = new File(root, "category.xml");
+        FileUtils.writeStringToFile(categoryFile, CATEGORY_XML, "UTF-8");
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void bundlesAreShardedByGroupIdPrefix() throws IOException {
+        // given
+        createBundle("org.reficio.core", "org.reficio.core");
+        createBundle("org.reficio.extra", "org.reficio.extra");
+        createBundle("com.acme", "com.acme.bundle");
+
+        // when
+        publish(CompositePublisher.ShardStrategy.GROUP_ID);
+
+        // then
+        assertEquals(2, unitIds("shards/org.reficio").size());
+        assertEquals(1, unitIds("shards/com.acme").size());
+        assertEquals(Arrays.asList("shards/com.acme", "shards/org.reficio", "categories"),
+                childLocations(MetadataFiles.COMPOSITE_CONTENT));
+        assertEquals(Arrays.asList("shards/com.acme", "shards/org.reficio"), childLocations(MetadataFiles.COMPOSITE_ARTIFACTS));
+        Element category = InstallableUnits.getUnits(
+                MetadataFiles.read(new File(repository, "categories"), MetadataFiles.CONTENT)).get(0);
+        assertTrue(InstallableUnits.isCategory(category));
+        assertEquals("3", InstallableUnits.firstChild(category, "requires").getAttribute("size"));
+    }
+
+    @Test
+    public void bundlesAreShardedBySize() throws IOException {
+        // given
+        createBundle("org.reficio.core", "org.reficio.core");
+        createBundle("org.reficio.extra", "org.reficio.extra");
+        createBundle("com.acme", "com.acme.bundle");
+
+        // when
+        CompositePublisher publisher = builder(CompositePublisher.ShardStrategy.SIZE).shardSize(1).build();
+        Map<String, List<File>> shards = publisher.shard(new File(source, "plugins"));
+
+        // then
+        assertEquals(Arrays.asList("shard-001", "shard-002", "shard-003"), new ArrayList<String>(shards.keySet()));
+    }
+
+    @Test
+    public void onlyChangedShardsAreRepublished() throws IOException {
+        // given
+        createBundle("org.reficio.core", "org.reficio.core");
+        createBundle("com.acme", "com.acme.bundle");
+        publish(CompositePublisher.ShardStrategy.GROUP_ID);
+        File unchanged = new File(repository, "shards/org.reficio/content.xml");
+        assertTrue(unchanged.setLastModified(1000L));
+        FileUtils.deleteDirectory(new File(source, "plugins/com.acme"));
+        createBundle("com.acme", "com.acme.bundle", "2.0.0");
+
+        // when
+        publish(CompositePublisher.ShardStrategy.GROUP_ID);
+
+        // then
+        assertEquals(1000L, unchanged.lastModified());
+        assertTrue(new File(repository, "shards/com.acme/plugins/com.acme.bundle_2.0.0.jar").exists());
+        assertFalse(new File(repository, "shards/com.acme/plugins/com.acme.bundle_1.0.0.jar").exists());
+    }
+
+    @Test
+    public void removedShardsAreDeleted() throws IOException {
+        // given
+        createBundle("org.reficio.core", "org.reficio.core");
+        createBundle("com.acme", "com.acme.bundle");
+        publish(CompositePublisher.ShardStrategy.GROUP_ID);
+        FileUtils.deleteDirectory(new File(source, "plugins/com.acme"));
+
+        // when
+        publish(CompositePublisher.ShardStrategy.GROUP_ID);
+
+        // then
+        assertFalse(new File(repository, "shards/com.acme").exists());
+        assertEquals(Arrays.asList("shards/org.reficio", "categories"), childLocations(MetadataFiles.COMPOSITE_CONTENT));
+    }
+
+    private void publish(CompositePublisher.ShardStrategy strategy) throws IOException {
+        builder(strategy).build().execute();
+    }
+
+    private CompositePublisher.Builder builder(CompositePublisher.ShardStrategy strategy) {
+        return CompositePublisher.builder()
+                .sourceLocation(source)
+                .repositoryLocation(repository)
+                .shardStrategy(strategy)
+                .categoryFileLocation(categoryFile.getPath())
+                .stateFile(stateFile)
+                .compressSite(false)
+                .threads(2);
+    }
+
+    private List<String> unitIds(String child) throws IOException {
+        List<String> ids = new ArrayList<String>();
+        for (Element unit : InstallableUnits.getUnits(MetadataFiles.read(new File(repository, child), MetadataFiles.CONTENT))) {
+            ids.add(unit.getAttribute("id"));
+        }
+        return ids;
+    }
+
+    private List<String> childLocations(String composite) throws IOException {
+        List<String> locations = new ArrayList<String>();
+        Element children = InstallableUnits.firstChild(MetadataFiles.read(repository, composite).getDocumentElement(),
+                "children");
+        for (Element child : InstallableUnits.children(children, "child")) {
+            locations.add(child.getAttribute("location"));
+        }
+        return locations;
+    }
+
+    private void createBundle(String groupId, String symbolicName) throws IOException {
+        createBundle(groupId, symbolicName, "1.0.0");
+    }
+
+    private void createBundle(String groupId, String symbolicName, String version) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Bundle-ManifestVersion", "2");
+        attributes.putValue("Bundle-SymbolicName", symbolicName);
+        attributes.putValue("Bundle-Version", version);
+        File jar = new File(source, "plugins/" + groupId + "/" + symbolicName + "-" + version + ".jar");
+        FileUtils.forceMkdir(jar.getParentFile());
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest);
+        try {
+            output.putNextEntry(new ZipEntry("readme.txt"));
+            output.write(symbolicName.getBytes("UTF-8"));
+            output.closeEntry();
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.publisher.metadata.CategoryDefinition;
+import org.reficio.p2.publisher.metadata.InstallableUnits;
+import org.reficio.p2.publisher.metadata.MetadataFiles;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class InProcessCategoryPublisherTest {
+
+    private static final String CONTENT = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+            "<?metadataRepository version='1.1.0'?>\n" +
+            "<repository name='test' type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>\n" +
+            "  <units size='2'>\n" +
+            "    <unit id='org.reficio.a' version='1.0.0'>\n" +
+            "      <provides size='1'><provided namespace='osgi.bundle' name='org.reficio.a' version='1.0.0'/></provides>\n" +
+            "      <filter>(osgi.os=linux)</filter>\n" +
+            "    </unit>\n" +
+            "    <unit id='org.reficio.b.feature.jar' version='2.0.0'>\n" +
+            "      <provides size='1'><provided namespace='org.eclipse.update.feature' name='org.reficio.b' version='2.0.0'/></provides>\n" +
+            "    </unit>\n" +
+            "  </units>\n" +
+            "</repository>\n";
+
+    private static final String CATEGORY = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+            "<site>\n" +
+            "  <category-def name='all' label='All bundles'/>\n" +
+            "  <iu><category name='all'/>\n" +
+            "    <query><expression type='match'>providedCapabilities.exists(p | p.namespace == 'osgi.bundle')</expression></query>\n" +
+            "  </iu>\n" +
+            "</site>\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void categoryUnitReferencesMatchingBundles() throws IOException {
+        // given
+        File repository = createRepository(false);
+
+        // when
+        publish(repository);
+
+        // then
+        Element category = findCategory(MetadataFiles.read(repository, MetadataFiles.CONTENT));
+        Element required = InstallableUnits.firstChild(InstallableUnits.firstChild(category, "requires"), "required");
+        assertEquals("all", category.getAttribute("id"));
+        assertEquals("All bundles", InstallableUnits.getProperty(category, InstallableUnits.PROP_NAME));
+        assertEquals("org.reficio.a", required.getAttribute("name"));
+        assertEquals("[1.0.0,1.0.0]", required.getAttribute("range"));
+    }
+
+    @Test
+    public void compressedMetadataStaysCompressed() throws IOException {
+        // given
+        File repository = createRepository(true);
+
+        // when
+        publish(repository);
+
+        // then
+        assertTrue(MetadataFiles.isCompressed(repository, MetadataFiles.CONTENT));
+        findCategory(MetadataFiles.read(repository, MetadataFiles.CONTENT));
+    }
+
+    @Test
+    public void republishingReplacesCategories() throws IOException {
+        // given
+        File repository = createRepository(false);
+
+        // when
+        publish(repository);
+        publish(repository);
+
+        // then
+        List<Element> units = InstallableUnits.getUnits(MetadataFiles.read(repository, MetadataFiles.CONTENT));
+        assertEquals(3, units.size());
+        assertEquals("3", InstallableUnits.getUnitsElement(MetadataFiles.read(repository, MetadataFiles.CONTENT)).getAttribute("size"));
+    }
+
+    @Test
+    public void otherUnitsAreCopiedAsTheyAre() throws IOException {
+        // given
+        File repository = createRepository(false);
+
+        // when
+        publish(repository);
+
+        // then
+        List<Element> units = InstallableUnits.getUnits(MetadataFiles.read(repository, MetadataFiles.CONTENT));
+        Element unit = units.get(0);
+        assertEquals("org.reficio.a", unit.getAttribute("id"));
+        assertEquals("(osgi.os=linux)", InstallableUnits.firstChild(unit, "filter").getTextContent());
+        assertEquals("osgi.bundle", InstallableUnits.firstChild(InstallableUnits.firstChild(unit, "provides"),
+                "provided").getAttribute("namespace"));
+        assertEquals("org.reficio.b.feature.jar", units.get(1).getAttribute("id"));
+        assertFalse(new File(repository, "previous-content.xml").exists());
+    }
+
+    @Test
+    public void unsupportedQueryIsReportedBeforePublishing() throws IOException {
+        // given
+        File repository = createRepository(false);
+        File category = new File(repository, "category.xml");
+        FileUtils.writeStringToFile(category, CATEGORY.replace("p.namespace ==", "p.namespace ~="), "UTF-8");
+
+        // when
+        boolean supported = InProcessCategoryPublisher.builder()
+                .categoryFileLocation(category.getPath())
+                .metadataRepositoryLocation(repository.getPath())
+                .build()
+                .isSupported();
+
+        // then
+        assertFalse(supported);
+        FileUtils.writeStringToFile(category, CATEGORY, "UTF-8");
+        assertTrue(InProcessCategoryPublisher.isSupported(CategoryDefinition.parse(category)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void unsupportedQueryIsRejected() throws IOException {
+        // given
+        File repository = createRepository(false);
+        FileUtils.writeStringToFile(new File(repository, "category.xml"), CATEGORY.replace("p.namespace ==", "p.namespace ~="), "UTF-8");
+
+        // when
+        InProcessCategoryPublisher.builder()
+                .categoryFileLocation(new File(repository, "category.xml").getPath())
+                .metadataRepositoryLocation(repository.getPath())
+                .build()
+                .execute();
+    }
+
+    private File createRepository(boolean compress) throws IOException {
+        File repository = temporaryFolder.newFolder();
+        File xml = new File(repository, "content.xml");
+        FileUtils.writeStringToFile(xml, CONTENT, "UTF-8");
+        if (compress) {
+            Document content = MetadataFiles.read(repository, MetadataFiles.CONTENT);
+            MetadataFiles.write(content, repository, MetadataFiles.CONTENT, true);
+        }
+        FileUtils.writeStringToFile(new File(repository, "category.xml"), CATEGORY, "UTF-8");
+        return repository;
+    }
+
+    private void publish(File repository) throws IOException {
+        InProcessCategoryPublisher.builder()
+                .categoryFileLocation(new File(repository, "category.xml").getPath())
+                .metadataRepositoryLocation(repository.getPath())
+                .build()
+                .execute();
+    }
+
+    private Element findCategory(Document content) {
+        for (Element unit : InstallableUnits.getUnits(content)) {
+            if (InstallableUnits.isCategory(unit)) {
+                return unit;
+            }
+        }
+        throw new AssertionError("Category unit not found");
+    }
+
+}
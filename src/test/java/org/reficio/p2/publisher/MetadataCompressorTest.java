@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.metadata.MetadataFiles;
+import org.reficio.p2.publisher.metadata.ParallelDeflater;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class MetadataCompressorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File repository;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.initialize(new SystemStreamLog());
+        repository = temporaryFolder.getRoot();
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void blocksFormSingleDeflateStream() throws Exception {
+        // given
+        byte[] data = new byte[1024 * 1024 + 17];
+        Random random = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+        File zip = new File(repository, "data.zip");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // when
+        OutputStream output = new FileOutputStream(zip);
+        try {
+            new ParallelDeflater(executor, 4, 9, 64 * 1024).writeZip(new ByteArrayInputStream(data), "data.bin", output);
+        } finally {
+            IOUtils.closeQuietly(output);
+            executor.shutdown();
+        }
+
+        // then
+        ZipFile zipFile = new ZipFile(zip);
+        try {
+            ZipEntry entry = zipFile.getEntry("data.bin");
+            assertEquals(data.length, entry.getSize());
+            assertTrue(entry.getCompressedSize() < data.length / 2);
+            assertArrayEquals(data, IOUtils.toByteArray(zipFile.getInputStream(entry)));
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void compressedSiteHasJarsAndIndex() throws IOException {
+        // given
+        writeDescriptor(MetadataFiles.CONTENT);
+        writeDescriptor(MetadataFiles.ARTIFACTS);
+
+        // when
+        MetadataCompressor.builder().repositoryLocation(repository).threads(2).build().execute();
+
+        // then
+        assertFalse(new File(repository, "content.xml").exists());
+        assertFalse(new File(repository, "artifacts.xml").exists());
+        assertTrue(MetadataFiles.isCompressed(repository, MetadataFiles.CONTENT));
+        String content = read(MetadataFiles.CONTENT);
+        assertTrue(content.contains("<property name='p2.compressed' value='true'/>"));
+        assertTrue(content.endsWith("</repository>"));
+        assertEquals("version=1\n" +
+                "metadata.repository.factory.order=content.xml,!\n" +
+                "artifact.repository.factory.order=artifacts.xml,!\n",
+                FileUtils.readFileToString(new File(repository, MetadataCompressor.P2_INDEX), "UTF-8"));
+    }
+
+    @Test
+    public void plainSiteIsKeptAsIs() throws IOException {
+        // given
+        writeDescriptor(MetadataFiles.CONTENT);
+        String expected = FileUtils.readFileToString(new File(repository, "content.xml"), "UTF-8");
+
+        // when
+        MetadataCompressor.builder().repositoryLocation(repository).compressSite(false).build().execute();
+
+        // then
+        assertFalse(MetadataFiles.isCompressed(repository, MetadataFiles.CONTENT));
+        assertEquals(expected, read(MetadataFiles.CONTENT));
+        assertTrue(new File(repository, MetadataCompressor.P2_INDEX).exists());
+    }
+
+    @Test
+    public void compressedSiteIsRestoredWhenTheCompressionIsTurnedOff() throws IOException {
+        // given
+        writeDescriptor(MetadataFiles.CONTENT);
+        String expected = FileUtils.readFileToString(new File(repository, "content.xml"), "UTF-8");
+        MetadataCompressor.builder().repositoryLocation(repository).xzCompressSite(true).build().execute();
+
+        // when
+        MetadataCompressor.builder().repositoryLocation(repository).compressSite(false).build().recompress();
+
+        // then
+        assertFalse(new File(repository, "content.jar").exists());
+        assertFalse(new File(repository, "content.xml.xz").exists());
+        assertEquals(expected, read(MetadataFiles.CONTENT));
+    }
+
+    private void writeDescriptor(String name) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n<repository name='test'>\n" +
+                "  <properties size='1'>\n    <property name='p2.compressed' value='false'/>\n  </properties>\n");
+        for (int i = 0; i < 5000; i++) {
+            xml.append("  <unit id='org.reficio.bundle").append(i).append("' version='1.0.0'/>\n");
+        }
+        xml.append("</repository>");
+        FileUtils.writeStringToFile(new File(repository, name + ".xml"), xml.toString(), "UTF-8");
+    }
+
+    private String read(String name) throws IOException {
+        InputStream input = MetadataFiles.openInputStream(repository, name);
+        try {
+            return IOUtils.toString(input, "UTF-8");
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+}
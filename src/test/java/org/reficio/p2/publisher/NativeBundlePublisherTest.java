@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.metadata.InstallableUnits;
+import org.reficio.p2.publisher.metadata.MetadataFiles;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class NativeBundlePublisherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File source;
+    private File repository;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.initialize(new SystemStreamLog());
+        File root = temporaryFolder.getRoot();
+        source = new File(root, "source");
+        repository = new File(root, "repository");
+        FileUtils.forceMkdir(new File(source, "plugins/org.reficio"));
+        FileUtils.forceMkdir(new File(source, "features/org.reficio"));
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void bundlesAndFeaturesArePublished() throws Exception {
+        // given
+        File bundle = createBundle("org.reficio.bundle", "1.0.0.20120101", "org.reficio.api;version=\"1.0\"",
+                "org.slf4j;version=\"[1.6,2)\";resolution:=optional");
+        createFeature("org.reficio.feature", "2.0.0", "org.reficio.bundle", "1.0.0.20120101");
+
+        // when
+        publish(false);
+
+        // then
+        Map<String, Element> units = unitsById(MetadataFiles.read(repository, MetadataFiles.CONTENT));
+        assertEquals(3, units.size());
+        assertEquals("1.0.0.20120101", units.get("org.reficio.bundle").getAttribute("version"));
+        assertTrue(units.containsKey("org.reficio.feature.feature.jar"));
+        assertTrue(units.containsKey("org.reficio.feature.feature.group"));
+        assertTrue(new File(repository, "plugins/org.reficio.bundle_1.0.0.20120101.jar").exists());
+        assertTrue(new File(repository, "features/org.reficio.feature_2.0.0.jar").exists());
+
+        Element artifact = InstallableUnits.firstChild(InstallableUnits.firstChild(
+                MetadataFiles.read(repository, MetadataFiles.ARTIFACTS).getDocumentElement(), "artifacts"), "artifact");
+        assertEquals(sha256(bundle), propertyValue(artifact, "download.checksum.sha-256"));
+        assertEquals(Long.toString(bundle.length()), propertyValue(artifact, "artifact.size"));
+    }
+
+    @Test
+    public void importsAndExportsArePublished() throws IOException {
+        // given
+        createBundle("org.reficio.bundle", "1.0.0", "org.reficio.api;version=\"1.0\"",
+                "org.slf4j;version=\"[1.6,2)\";resolution:=optional");
+
+        // when
+        publish(false);
+
+        // then
+        Element unit = unitsById(MetadataFiles.read(repository, MetadataFiles.CONTENT)).get("org.reficio.bundle");
+        Element exported = findByName(InstallableUnits.firstChild(unit, "provides"), "provided", "org.reficio.api");
+        Element imported = findByName(InstallableUnits.firstChild(unit, "requires"), "required", "org.slf4j");
+        assertEquals("1.0.0", exported.getAttribute("version"));
+        assertEquals("[1.6.0,2.0.0)", imported.getAttribute("range"));
+        assertEquals("true", imported.getAttribute("optional"));
+    }
+
+    @Test
+    public void featureRequirementsFollowTheFeatureXml() throws IOException {
+        // given
+        createFeatureJar("org.reficio.feature", "<feature id='org.reficio.feature' version='2.0.0'>" +
+                "<plugin id='org.reficio.any' version='0.0.0'/>" +
+                "<plugin id='org.reficio.swt' version='1.0.0' fragment='true' os='win32,linux' ws='win32' arch='x86_64'/>" +
+                "<requires><import plugin='org.reficio.compatible' version='1.2.0'/>" +
+                "<import plugin='org.reficio.equivalent' version='1.2.0' match='equivalent'/>" +
+                "<import feature='org.reficio.other' version='3.0.0' match='greaterOrEqual'/></requires></feature>");
+
+        // when
+        publish(false);
+
+        // then
+        Element requires = InstallableUnits.firstChild(unitsById(MetadataFiles.read(repository, MetadataFiles.CONTENT))
+                .get("org.reficio.feature.feature.group"), "requires");
+        assertEquals("0.0.0", findByName(requires, "required", "org.reficio.any").getAttribute("range"));
+        Element fragment = findByName(requires, "required", "org.reficio.swt");
+        assertEquals("[1.0.0,1.0.0]", fragment.getAttribute("range"));
+        assertEquals("(&(|(osgi.os=win32)(osgi.os=linux))(osgi.ws=win32)(osgi.arch=x86_64))",
+                InstallableUnits.firstChild(fragment, "filter").getTextContent());
+        assertEquals("[1.2.0,2.0.0)", findByName(requires, "required", "org.reficio.compatible").getAttribute("range"));
+        assertEquals("[1.2.0,1.3.0)", findByName(requires, "required", "org.reficio.equivalent").getAttribute("range"));
+        assertEquals("3.0.0", findByName(requires, "required", "org.reficio.other.feature.group").getAttribute("range"));
+        // the feature jar is installed only where features are, so is the requirement on it
+        Element jar = findByName(requires, "required", "org.reficio.feature.feature.jar");
+        assertEquals("[2.0.0,2.0.0]", jar.getAttribute("range"));
+        assertEquals("(org.eclipse.update.install.features=true)",
+                InstallableUnits.firstChild(jar, "filter").getTextContent());
+    }
+
+    @Test
+    public void compressedSiteContainsJarsOnly() throws IOException {
+        // given
+        createBundle("org.reficio.bundle", "1.0.0", null, null);
+
+        // when
+        publish(true);
+
+        // then
+        assertTrue(new File(repository, "content.jar").exists());
+        assertTrue(new File(repository, "artifacts.jar").exists());
+        assertFalse(new File(repository, "content.xml").exists());
+        assertFalse(new File(repository, "artifacts.xml").exists());
+    }
+
+    @Test
+    public void plainJarsAreSkipped() throws IOException {
+        // given
+        createJar(new File(source, "plugins/org.reficio/plain.jar"), new Manifest(), null, null);
+
+        // when
+        publish(false);
+
+        // then
+        assertTrue(unitsById(MetadataFiles.read(repository, MetadataFiles.CONTENT)).isEmpty());
+    }
+
+    @Test
+    public void appendRetainsUnchangedArtifacts() throws IOException {
+        // given
+        createBundle("org.reficio.bundle", "1.0.0", null, null);
+        publish(false);
+        File published = new File(repository, "plugins/org.reficio.bundle_1.0.0.jar");
+        assertTrue(published.setLastModified(1000L));
+        createBundle("org.reficio.other", "1.0.0", null, null);
+
+        // when
+        publish(false, true);
+
+        // then
+        Map<String, Element> units = unitsById(MetadataFiles.read(repository, MetadataFiles.CONTENT));
+        assertEquals(2, units.size());
+        assertEquals(1000L, published.lastModified());
+        assertTrue(new File(repository, "plugins/org.reficio.other_1.0.0.jar").exists());
+    }
+
+    @Test
+    public void appendUpdatesChangedArtifacts() throws Exception {
+        // given
+        createBundle("org.reficio.bundle", "1.0.0", null, null);
+        publish(false);
+        File bundle = createBundle("org.reficio.bundle", "1.0.0", "org.reficio.api;version=\"1.0\"", null);
+
+        // when
+        publish(false, true);
+
+        // then
+        Element unit = unitsById(MetadataFiles.read(repository, MetadataFiles.CONTENT)).get("org.reficio.bundle");
+        findByName(InstallableUnits.firstChild(unit, "provides"), "provided", "org.reficio.api");
+        assertEquals(sha256(bundle), sha256(new File(repository, "plugins/org.reficio.bundle_1.0.0.jar")));
+    }
+
+    @Test
+    public void appendRemovesArtifactsNoLongerPublished() throws IOException {
+        // given
+        File bundle = createBundle("org.reficio.bundle", "1.0.0", null, null);
+        createBundle("org.reficio.other", "1.0.0", null, null);
+        publish(false);
+        FileUtils.forceDelete(bundle);
+
+        // when
+        publish(false, true);
+
+        // then
+        Map<String, Element> units = unitsById(MetadataFiles.read(repository, MetadataFiles.CONTENT));
+        assertEquals(1, units.size());
+        assertTrue(units.containsKey("org.reficio.other"));
+        assertFalse(new File(repository, "plugins/org.reficio.bundle_1.0.0.jar").exists());
+    }
+
+    private void publish(boolean compress) throws IOException {
+        publish(compress, false);
+    }
+
+    private void publish(boolean compress, boolean append) throws IOException {
+        NativeBundlePublisher.builder()
+                .sourceLocation(source)
+                .repositoryLocation(repository)
+                .compressSite(compress)
+                .append(append)
+                .build()
+                .execute();
+    }
+
+    private File createBundle(String symbolicName, String version, String exports, String imports) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Bundle-ManifestVersion", "2");
+        attributes.putValue("Bundle-SymbolicName", symbolicName);
+        attributes.putValue("Bundle-Version", version);
+        if (exports != null) {
+            attributes.putValue("Export-Package", exports);
+        }
+        if (imports != null) {
+            attributes.putValue("Import-Package", imports);
+        }
+        File jar = new File(source, "plugins/org.reficio/" + symbolicName + ".jar");
+        createJar(jar, manifest, null, null);
+        return jar;
+    }
+
+    private void createFeature(String id, String version, String pluginId, String pluginVersion) throws IOException {
+        createFeatureJar(id, String.format("<feature id='%s' version='%s' label='Test feature'>" +
+                "<plugin id='%s' version='%s'/></feature>", id, version, pluginId, pluginVersion));
+    }
+
+    private void createFeatureJar(String id, String featureXml) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        createJar(new File(source, "features/org.reficio/" + id + ".jar"), manifest, "feature.xml", featureXml);
+    }
+
+    private void createJar(File jar, Manifest manifest, String entryName, String entryContent) throws IOException {
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest);
+        try {
+            if (entryName != null) {
+                output.putNextEntry(new ZipEntry(entryName));
+                output.write(entryContent.getBytes("UTF-8"));
+                output.closeEntry();
+            }
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    private static Map<String, Element> unitsById(Document content) {
+        Map<String, Element> result = new HashMap<String, Element>();
+        for (Element unit : InstallableUnits.getUnits(content)) {
+            result.put(unit.getAttribute("id"), unit);
+        }
+        return result;
+    }
+
+    private static Element findByName(Element parent, String tag, String name) {
+        List<Element> children = InstallableUnits.children(parent, tag);
+        for (Element child : children) {
+            if (name.equals(child.getAttribute("name"))) {
+                return child;
+            }
+        }
+        throw new AssertionError(name + " not found");
+    }
+
+    private static String propertyValue(Element element, String name) {
+        for (Element property : InstallableUnits.children(InstallableUnits.firstChild(element, "properties"), "property")) {
+            if (name.equals(property.getAttribute("name"))) {
+                return property.getAttribute("value");
+            }
+        }
+        return null;
+    }
+
+    private static String sha256(File file) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(FileUtils.readFileToByteArray(file));
+        return String.format("%064x", new BigInteger(1, digest));
+    }
+
+}
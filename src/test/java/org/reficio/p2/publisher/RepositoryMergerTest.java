@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.metadata.InstallableUnits;
+import org.reficio.p2.publisher.metadata.MetadataFiles;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class RepositoryMergerTest {
+
+    private static final String CATEGORY_XML = "<site><category-def name='all' label='All'/>" +
+            "<iu><category name='all'/><query><expression type='match'>" +
+            "providedCapabilities.exists(p | p.namespace == 'osgi.bundle')</expression></query></iu></site>";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File root;
+    private File merged;
+
+    @Before
+    public void setup() {
+        Logger.initialize(new SystemStreamLog());
+        root = temporaryFolder.getRoot();
+        merged = new File(root, "merged");
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void repositoriesAreMergedWithoutDuplicates() throws IOException {
+        // given
+        File first = publish("first", "org.reficio.core", "org.reficio.common");
+        File second = publish("second", "org.reficio.extra", "org.reficio.common");
+
+        // when
+        merge(first, second);
+
+        // then
+        assertEquals(Arrays.asList("org.reficio.common", "org.reficio.core", "org.reficio.extra"),
+                sorted(bundleIds()));
+        assertEquals(3, new File(merged, "plugins").list().length);
+        Element artifacts = InstallableUnits.firstChild(
+                MetadataFiles.read(merged, MetadataFiles.ARTIFACTS).getDocumentElement(), "artifacts");
+        assertEquals("3", artifacts.getAttribute("size"));
+    }
+
+    @Test
+    public void categoriesAreMerged() throws IOException {
+        // given
+        File first = publish("first", "org.reficio.core");
+        File second = publish("second", "org.reficio.extra");
+
+        // when
+        merge(first, second);
+
+        // then
+        List<Element> categories = new ArrayList<Element>();
+        for (Element unit : InstallableUnits.getUnits(MetadataFiles.read(merged, MetadataFiles.CONTENT))) {
+            if (InstallableUnits.isCategory(unit)) {
+                categories.add(unit);
+            }
+        }
+        assertEquals(1, categories.size());
+        assertEquals("2", InstallableUnits.firstChild(categories.get(0), "requires").getAttribute("size"));
+    }
+
+    @Test
+    public void mergedMetadataIsCompressed() throws IOException {
+        // given
+        File first = publish("first", "org.reficio.core");
+
+        // when
+        RepositoryMerger.builder()
+                .sourceLocations(Collections.singletonList(first))
+                .repositoryLocation(merged)
+                .build()
+                .execute();
+
+        // then
+        assertTrue(MetadataFiles.isCompressed(merged, MetadataFiles.CONTENT));
+        assertTrue(new File(merged, MetadataCompressor.P2_INDEX).exists());
+    }
+
+    private void merge(File... repositories) throws IOException {
+        RepositoryMerger.builder()
+                .sourceLocations(Arrays.asList(repositories))
+                .repositoryLocation(merged)
+                .compressSite(false)
+                .build()
+                .execute();
+    }
+
+    private List<String> bundleIds() throws IOException {
+        List<String> ids = new ArrayList<String>();
+        Document content = MetadataFiles.read(merged, MetadataFiles.CONTENT);
+        for (Element unit : InstallableUnits.getUnits(content)) {
+            if (!InstallableUnits.isCategory(unit)) {
+                ids.add(unit.getAttribute("id"));
+            }
+        }
+        return ids;
+    }
+
+    private static List<String> sorted(List<String> values) {
+        Collections.sort(values);
+        return values;
+    }
+
+    private File publish(String name, String... symbolicNames) throws IOException {
+        File source = new File(root, name + "-source");
+        File repository = new File(root, name);
+        for (String symbolicName : symbolicNames) {
+            createBundle(new File(source, "plugins"), symbolicName);
+        }
+        NativeBundlePublisher.builder()
+                .sourceLocation(source)
+                .repositoryLocation(repository)
+                .repositoryName(name)
+                .compressSite(false)
+                .build()
+                .execute();
+        File categoryFile = new File(root, "category.xml");
+        FileUtils.writeStringToFile(categoryFile, CATEGORY_XML, "UTF-8");
+        InProcessCategoryPublisher.builder()
+                .categoryFileLocation(categoryFile.getPath())
+                .metadataRepositoryLocation(repository.getPath())
+                .build()
+                .execute();
+        return repository;
+    }
+
+    private static void createBundle(File folder, String symbolicName) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Bundle-ManifestVersion", "2");
+        attributes.putValue("Bundle-SymbolicName", symbolicName);
+        attributes.putValue("Bundle-Version", "1.0.0");
+        File jar = new File(folder, symbolicName + "-1.0.0.jar");
+        FileUtils.forceMkdir(folder);
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest);
+        try {
+            output.putNextEntry(new ZipEntry("readme.txt"));
+            output.write(symbolicName.getBytes("UTF-8"));
+            output.closeEntry();
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+}
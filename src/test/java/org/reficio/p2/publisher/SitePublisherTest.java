@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.publisher;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.sisu.equinox.launching.internal.P2ApplicationLauncher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.EclipseArtifact;
+import org.reficio.p2.P2Artifact;
+import org.reficio.p2.P2Site;
+import org.reficio.p2.bundler.ArtifactDeduplicator;
+import org.reficio.p2.fingerprint.DigestService;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.publisher.metadata.InstallableUnit;
+import org.reficio.p2.publisher.metadata.MetadataReader;
+import org.reficio.p2.resolver.maven.Artifact;
+import org.reficio.p2.resolver.maven.ResolvedArtifact;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.assertEquals;
+
+public class SitePublisherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File bundles;
+    private File destination;
+    private File category;
+    private List<P2Artifact> artifacts;
+    private Multimap<P2Artifact, ResolvedArtifact> resolvedArtifacts;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.initialize(new SystemStreamLog());
+        bundles = temporaryFolder.newFolder("bundles");
+        destination = temporaryFolder.newFolder("repository");
+        category = temporaryFolder.newFile("category.xml");
+        FileUtils.writeStringToFile(category, "<site><category-def name='all' label='All'/></site>", "UTF-8");
+        artifacts = new ArrayList<P2Artifact>();
+        resolvedArtifacts = ArrayListMultimap.create();
+        addBundle("a");
+        addBundle("b");
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void everySiteGetsItsOwnBundles() throws Exception {
+        // given
+        File separate = new File(temporaryFolder.getRoot(), "separate");
+        P2Site first = site("first", "org.reficio:a:1.0.0");
+        P2Site second = site("second", "org.reficio:b:1.0.0");
+        second.setDestinationDirectory(separate.getPath());
+
+        // when
+        List<File> repositories = publisher(first, second).execute();
+
+        // then
+        assertEquals(Arrays.asList(new File(destination, "first"), separate), repositories);
+        assertEquals(Arrays.asList("org.reficio.a"), unitIds(repositories.get(0)));
+        assertEquals(Arrays.asList("org.reficio.b"), unitIds(repositories.get(1)));
+    }
+
+    @Test
+    public void siteWithoutIncludesGetsAllTheBundles() throws Exception {
+        // when
+        List<File> repositories = publisher(site("all")).execute();
+
+        // then
+        assertEquals(Arrays.asList("org.reficio.a", "org.reficio.b"), unitIds(repositories.get(0)));
+    }
+
+    private SitePublisher publisher(P2Site... sites) throws IOException {
+        return SitePublisher.builder()
+                .sites(Arrays.asList(sites))
+                .artifacts(artifacts, resolvedArtifacts)
+                .features(Collections.<P2Artifact>emptyList(), ArrayListMultimap.<P2Artifact, ResolvedArtifact>create())
+                .eclipseArtifacts(Collections.<EclipseArtifact>emptyList())
+                .bundlesFolder(bundles)
+                .featuresFolder(new File(temporaryFolder.getRoot(), "features"))
+                .destinationDirectory(destination)
+                .categoryFileLocation(category.getPath())
+                .categoryPublishing(CategoryPublishingService.builder()
+                        .launchers(new Supplier<P2ApplicationLauncher>() {
+                            @Override
+                            public P2ApplicationLauncher get() {
+                                throw new IllegalStateException("The categories are published in-process");
+                            }
+                        })
+                        .build())
+                .deduplicator(new ArtifactDeduplicator(DigestService.inMemory(), false))
+                .digestService(DigestService.inMemory())
+                .compressSite(false)
+                .threads(2)
+                .build();
+    }
+
+    private static P2Site site(String name, String... includes) {
+        P2Site site = new P2Site();
+        site.setName(name);
+        site.setIncludes(Arrays.asList(includes));
+        return site;
+    }
+
+    private static List<String> unitIds(File repository) throws IOException {
+        List<String> ids = new ArrayList<String>();
+        for (InstallableUnit unit : MetadataReader.readUnits(repository)) {
+            if (unit.getId().startsWith("org.reficio.")) {
+                ids.add(unit.getId());
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * The bundle is where the bundler would have written it - next to the resolved jar, named after it.
+     */
+    private void addBundle(String name) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Bundle-ManifestVersion", "2");
+        attributes.putValue("Bundle-SymbolicName", "org.reficio." + name);
+        attributes.putValue("Bundle-Version", "1.0.0");
+        File jar = new File(bundles, "org.reficio/" + name + "-1.0.0.jar");
+        FileUtils.forceMkdir(jar.getParentFile());
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest);
+        IOUtils.closeQuietly(output);
+        P2Artifact p2Artifact = new P2Artifact();
+        p2Artifact.setId("org.reficio:" + name + ":1.0.0");
+        artifacts.add(p2Artifact);
+        resolvedArtifacts.put(p2Artifact, new ResolvedArtifact(
+                new Artifact("org.reficio", name, "1.0.0", "jar", "", false, "1.0.0", jar), null, true));
+    }
+
+}
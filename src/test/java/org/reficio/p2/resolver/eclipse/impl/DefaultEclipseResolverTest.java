@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.eclipse.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+import org.reficio.p2.resolver.eclipse.EclipseResolutionRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class DefaultEclipseResolverTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File root;
+    private List<Map<String, String>> repositories;
+
+    @Before
+    public void setup() throws IOException {
+        Logger.initialize(new SystemStreamLog());
+        root = temporaryFolder.getRoot();
+        File repository = new File(root, "repository");
+        FileUtils.writeStringToFile(new File(repository, "plugins/org.reficio.core_1.0.0.jar"), "content", "UTF-8");
+        Map<String, String> p2Repository = new HashMap<String, String>();
+        p2Repository.put("type", "p2");
+        p2Repository.put("url", repository.toURI().toString());
+        repositories = Collections.singletonList(p2Repository);
+    }
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void downloadedJarsAreCached() throws IOException {
+        // given
+        File cache = new File(root, "cache");
+        File target = new File(root, "target");
+        EclipseResolutionRequest request = new EclipseResolutionRequest("org.reficio.core", "1.0.0", false);
+        DefaultEclipseResolver prefetch = new DefaultEclipseResolver(repositories, null, cache);
+        prefetch.resolve(request);
+        FileUtils.deleteDirectory(new File(root, "repository"));
+
+        // when
+        DefaultEclipseResolver resolver = new DefaultEclipseResolver(repositories, target, cache);
+        File resolved = resolver.resolve(request).getResolved().get(0);
+
+        // then
+        assertTrue(prefetch.originOf("org.reficio.core_1.0.0.jar").endsWith("/plugins/org.reficio.core_1.0.0.jar"));
+        assertEquals("cache", resolver.originOf("org.reficio.core_1.0.0.jar"));
+        assertEquals(new File(target, "org.reficio.core_1.0.0.jar"), resolved);
+        assertEquals("content", FileUtils.readFileToString(resolved, "UTF-8"));
+        assertEquals(1, cache.list().length);
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.maven;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @since 1.2.0
+ */
+public class ArtifactIdentityTest {
+
+    @Test
+    public void equalIdentitiesAreInterned() {
+        // given
+        Artifact local = artifact("", new File("local/core-1.0.jar"));
+        Artifact remote = artifact("", new File("remote/core-1.0.jar"));
+
+        // then
+        assertSame(local.getIdentity(), remote.getIdentity());
+        assertEquals(local, remote);
+        assertEquals(local.hashCode(), remote.hashCode());
+    }
+
+    @Test
+    public void classifierIsPartOfTheIdentity() {
+        // given
+        Artifact binary = artifact("", new File("core-1.0.jar"));
+        Artifact sources = artifact("sources", new File("core-1.0-sources.jar"));
+
+        // then
+        assertFalse(binary.equals(sources));
+        assertEquals("org.reficio:core:jar:sources:1.0", sources.getLongId());
+    }
+
+    private static Artifact artifact(String classifier, File file) {
+        return new Artifact("org.reficio", "core", "1.0", "jar", classifier, false, "1.0", file);
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.resolver.maven.impl;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.resolution.ArtifactDescriptorRequest;
+import org.eclipse.aether.resolution.ArtifactDescriptorResult;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @since 1.2.0
+ */
+public class AetherResolverTest {
+
+    @Test
+    public void offlineFirstPolicyTrustsTheLocalRepositoryWithinTheFreshnessWindow() {
+        assertEquals("interval:60", AetherResolver.offlineFirstPolicy(60));
+        assertEquals("never", AetherResolver.offlineFirstPolicy(-1));
+    }
+
+    @Test
+    public void updatePolicyIsAppliedToACopyOfTheSession() {
+        // given
+        DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+
+        // when
+        AetherResolver resolver = new AetherResolver(null, session, Collections.emptyList(),
+                AetherResolver.DEFAULT_SCOPE, AetherResolver.offlineFirstPolicy(60));
+
+        // then
+        RepositorySystemSession resolverSession = (RepositorySystemSession) resolver.getRepositorySystemSession();
+        assertEquals("interval:60", resolverSession.getUpdatePolicy());
+        assertNull(session.getUpdatePolicy());
+        assertSame(session, new AetherResolver(null, session, Collections.emptyList()).getRepositorySystemSession());
+    }
+
+    @Test
+    public void managedJarsOfTheBomAreImported() {
+        // given
+        AetherResolver resolver = new AetherResolver(new BomRepositorySystem(), new DefaultRepositorySystemSession(),
+                Collections.emptyList());
+
+        // when
+        List<String> managed = resolver.resolveManagedDependencies("org.reficio:bom:pom:1.0.0");
+
+        // then
+        assertEquals(Arrays.asList("commons-io:commons-io:2.4", "org.reficio:core:jar:tests:1.0.0"), managed);
+    }
+
+    public static class BomRepositorySystem {
+
+        public ArtifactDescriptorResult readArtifactDescriptor(RepositorySystemSession session,
+                                                               ArtifactDescriptorRequest request) {
+            assertEquals("org.reficio:bom:pom:1.0.0", request.getArtifact().toString());
+            return new ArtifactDescriptorResult(request).setManagedDependencies(Arrays.asList(
+                    new Dependency(new DefaultArtifact("commons-io:commons-io:2.4"), null),
+                    new Dependency(new DefaultArtifact("org.reficio:core:jar:tests:1.0.0"), "test"),
+                    new Dependency(new DefaultArtifact("org.reficio:other-bom:pom:1.0.0"), "import")));
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.shard;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reficio.p2.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class BuildShardTest {
+
+    private static final Function<String, String> ID = Functions.identity();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void cleanup() {
+        Logger.release();
+    }
+
+    @Test
+    public void shardsSplitTheSortedArtifacts() {
+        // given
+        List<String> artifacts = Arrays.asList("e", "b", "a", "d", "c");
+
+        // when
+        List<String> first = new BuildShard(0, 2).select(artifacts, ID);
+        List<String> second = new BuildShard(1, 2).select(artifacts, ID);
+
+        // then
+        assertEquals(Arrays.asList("a", "c", "e"), first);
+        assertEquals(Arrays.asList("b", "d"), second);
+    }
+
+    @Test
+    public void splitDoesNotDependOnTheOrderOfDeclaration() {
+        // given
+        List<String> artifacts = Arrays.asList("e", "b", "a", "d", "c");
+        List<String> reversed = new ArrayList<String>(artifacts);
+        Collections.reverse(reversed);
+
+        // when
+        List<String> shard = new BuildShard(1, 3).select(artifacts, ID);
+
+        // then
+        assertEquals(shard, new BuildShard(1, 3).select(reversed, ID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void indexHasToBeLowerThanCount() {
+        new BuildShard(2, 2);
+    }
+
+    @Test
+    public void firstShardClaimingAnArtifactOwnsIt() throws IOException {
+        // given
+        Logger.initialize(new SystemStreamLog());
+        File file = new File(temporaryFolder.getRoot(), "shards.txt");
+        ShardManifest first = new ShardManifest(file, new BuildShard(0, 2), "build");
+        ShardManifest second = new ShardManifest(file, new BuildShard(1, 2), "build");
+
+        // when
+        boolean claimedByFirst = first.claim("org.reficio:common:jar:1.0");
+        boolean claimedBySecond = second.claim("org.reficio:common:jar:1.0");
+
+        // then
+        assertTrue(claimedByFirst);
+        assertFalse(claimedBySecond);
+        assertTrue(second.claim("org.reficio:other:jar:1.0"));
+        // a rerun of the first shard keeps its artifacts
+        assertTrue(new ShardManifest(file, new BuildShard(0, 2), "build").claim("org.reficio:common:jar:1.0"));
+        assertFalse(first.claim("org.reficio:other:jar:1.0"));
+    }
+
+    @Test
+    public void claimsOfAnotherBuildAreDiscarded() throws IOException {
+        // given
+        Logger.initialize(new SystemStreamLog());
+        File file = new File(temporaryFolder.getRoot(), "shards.txt");
+        new ShardManifest(file, new BuildShard(1, 2), "former").claim("org.reficio:common:jar:1.0");
+
+        // when
+        boolean claimed = new ShardManifest(file, new BuildShard(0, 2), "current").claim("org.reficio:common:jar:1.0");
+
+        // then
+        assertTrue(claimed);
+        assertFalse(new ShardManifest(file, new BuildShard(1, 2), "current").claim("org.reficio:common:jar:1.0"));
+    }
+
+}
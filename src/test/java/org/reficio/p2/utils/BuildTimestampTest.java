@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 1.2.0
+ */
+public class BuildTimestampTest {
+
+    private static final long NOW = 1000L;
+
+    @Test
+    public void sourceDateEpochTakesPrecedence() {
+        // when
+        BuildTimestamp timestamp = BuildTimestamp.create("1435233600", "2020-01-01T00:00:00Z", NOW);
+
+        // then
+        assertTrue(timestamp.isReproducible());
+        assertEquals(1435233600000L, timestamp.getTimeMillis());
+        assertEquals("20150625120000", timestamp.getQualifier());
+    }
+
+    @Test
+    public void outputTimestampIsParsed() {
+        // when
+        BuildTimestamp iso = BuildTimestamp.create(null, "2015-06-25T14:00:00+02:00", NOW);
+        BuildTimestamp seconds = BuildTimestamp.create("", "1435233600", NOW);
+
+        // then
+        assertEquals("20150625120000", iso.getQualifier());
+        assertEquals(iso.getTimeMillis(), seconds.getTimeMillis());
+    }
+
+    @Test
+    public void currentTimeIsUsedWithoutConfiguredTimestamp() {
+        // when
+        BuildTimestamp timestamp = BuildTimestamp.create(null, "1", NOW);
+
+        // then
+        assertFalse(timestamp.isReproducible());
+        assertEquals(NOW, timestamp.getTimeMillis());
+    }
+
+    @Test
+    public void timestampIsBoundToTheExecution() throws InterruptedException {
+        // given
+        BuildTimestamp timestamp = BuildTimestamp.initialize("2015-06-25T12:00:00Z");
+        final BuildTimestamp[] inherited = new BuildTimestamp[1];
+
+        // when
+        Thread otherExecution = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                BuildTimestamp.initialize("2020-01-01T00:00:00Z");
+                BuildTimestamp.release();
+            }
+        });
+        otherExecution.start();
+        otherExecution.join();
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                inherited[0] = BuildTimestamp.get();
+            }
+        });
+        worker.start();
+        worker.join();
+
+        // then
+        assertSame(timestamp, BuildTimestamp.get());
+        assertSame(timestamp, inherited[0]);
+        BuildTimestamp.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidOutputTimestampIsRejected() {
+        BuildTimestamp.create(null, "yesterday", NOW);
+    }
+
+}
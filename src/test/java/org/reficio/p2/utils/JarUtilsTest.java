@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2012 Reficio (TM) - Reestablish your software! All Rights Reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.reficio.p2.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @since 1.2.0
+ */
+public class JarUtilsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File folder;
+
+    @Before
+    public void setup() throws IOException {
+        folder = temporaryFolder.getRoot();
+        BuildTimestamp.initialize("2015-06-25T12:00:00Z");
+    }
+
+    @After
+    public void cleanup() {
+        BuildTimestamp.initialize(null);
+    }
+
+    @Test
+    public void normalizedJarsDependOnTheirContentOnly() throws IOException {
+        // given
+        File first = createJar("first.jar", 1000L, "b.txt", "a.txt");
+        File second = createJar("second.jar", 2000L, "a.txt", "b.txt");
+
+        // when
+        JarUtils.normalizeJar(first);
+        JarUtils.normalizeJar(second);
+
+        // then
+        assertArrayEquals(FileUtils.readFileToByteArray(first), FileUtils.readFileToByteArray(second));
+        JarFile jar = new JarFile(first);
+        try {
+            assertNull(jar.getManifest().getMainAttributes().getValue("Bnd-LastModified"));
+            assertEquals("org.reficio.test", jar.getManifest().getMainAttributes().getValue("Bundle-SymbolicName"));
+        } finally {
+            jar.close();
+        }
+    }
+
+    @Test
+    public void qualifiersUseTheBuildTimestamp() {
+        assertEquals("1.0.0.20150625120000", JarUtils.replaceQualifierWithTimestamp("1.0.0.qualifier"));
+        assertEquals("1.0.0-20150625120000", JarUtils.replaceSnapshotWithTimestamp("1.0.0-SNAPSHOT"));
+    }
+
+    private File createJar(String name, long lastModified, String... entries) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Bundle-SymbolicName", "org.reficio.test");
+        attributes.putValue("Bnd-LastModified", Long.toString(lastModified));
+        File jar = new File(folder, name);
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest);
+        try {
+            for (String entry : entries) {
+                ZipEntry zipEntry = new ZipEntry(entry);
+                zipEntry.setTime(lastModified);
+                output.putNextEntry(zipEntry);
+                output.write(entry.getBytes("UTF-8"));
+                output.closeEntry();
+            }
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+        return jar;
+    }
+
+}